@@ -81,12 +81,14 @@
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
@@ -128,6 +130,11 @@ public class HttpClientConnection implements HttpConnection {
 
 	SSLContext ctx;
 
+	private HttpClientConnectionPool pool;
+
+	/** Whether {@link #client} is the shared client of {@link #pool}. */
+	private boolean pooled;
+
 	private HttpClient getClient() {
 		if (client == null) {
 			HttpClientBuilder clientBuilder = HttpClients.custom();
@@ -135,11 +142,14 @@ private HttpClient getClient() {
 			if (proxy != null && !Proxy.NO_PROXY.equals(proxy)) {
 				isUsingProxy = true;
 				InetSocketAddress adr = (InetSocketAddress) proxy.address();
-				clientBuilder.setProxy(
-						new HttpHost(adr.getHostName(), adr.getPort()));
+				HttpHost proxyHost = new HttpHost(adr.getHostName(),
+						adr.getPort());
+				clientBuilder.setProxy(proxyHost);
+				configBuilder.setProxy(proxyHost);
 			}
 			if (timeout != null) {
 				configBuilder.setConnectTimeout(timeout.intValue());
+				configBuilder.setConnectionRequestTimeout(timeout.intValue());
 			}
 			if (readTimeout != null) {
 				configBuilder.setSocketTimeout(readTimeout.intValue());
@@ -148,6 +158,14 @@ private HttpClient getClient() {
 				configBuilder
 						.setRedirectsEnabled(followRedirects.booleanValue());
 			}
+			if (pool != null && hostnameverifier == null && ctx == null
+					&& req instanceof HttpRequestBase) {
+				// The client is shared, so settings travel with the request.
+				((HttpRequestBase) req).setConfig(configBuilder.build());
+				pooled = true;
+				client = pool.getClient();
+				return client;
+			}
 			if (hostnameverifier != null) {
 				SSLConnectionSocketFactory sslConnectionFactory = new SSLConnectionSocketFactory(
 						getSSLContext(), hostnameverifier);
@@ -225,6 +243,17 @@ public HttpClientConnection(String urlStr, Proxy proxy, HttpClient cl)
 		this.proxy = proxy;
 	}
 
+	/**
+	 * Use a pool of connections.
+	 *
+	 * @param pool
+	 *            pool of connections to reuse; the pool is not used if the
+	 *            connection customizes TLS.
+	 */
+	void setPool(HttpClientConnectionPool pool) {
+		this.pool = pool;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public int getResponseCode() throws IOException {
@@ -252,18 +281,25 @@ private void execute() throws IOException, ClientProtocolException {
 
 		if (entity == null) {
 			resp = getClient().execute(req);
-			return;
+		} else {
+			try {
+				if (req instanceof HttpEntityEnclosingRequest) {
+					HttpEntityEnclosingRequest eReq = (HttpEntityEnclosingRequest) req;
+					eReq.setEntity(entity);
+				}
+				resp = getClient().execute(req);
+			} finally {
+				entity.close();
+				entity = null;
+			}
 		}
 
-		try {
-			if (req instanceof HttpEntityEnclosingRequest) {
-				HttpEntityEnclosingRequest eReq = (HttpEntityEnclosingRequest) req;
-				eReq.setEntity(entity);
-			}
-			resp = getClient().execute(req);
-		} finally {
-			entity.close();
-			entity = null;
+		HttpEntity body = resp.getEntity();
+		if (pooled && body != null
+				&& resp.getStatusLine().getStatusCode() >= 300) {
+			// Callers often do not read the body of an error response. Read
+			// it now, so the connection goes back to the pool.
+			resp.setEntity(new BufferedHttpEntity(body));
 		}
 	}
 
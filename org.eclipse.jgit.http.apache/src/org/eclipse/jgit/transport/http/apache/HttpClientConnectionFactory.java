@@ -56,16 +56,40 @@
  * @since 3.3
  */
 public class HttpClientConnectionFactory implements HttpConnectionFactory {
+	private final HttpClientConnectionPool pool;
+
+	/**
+	 * Create a factory whose connections each use their own client.
+	 */
+	public HttpClientConnectionFactory() {
+		this(null);
+	}
+
+	/**
+	 * Create a factory whose connections reuse the connections of a pool.
+	 *
+	 * @param pool
+	 *            pool of keep-alive connections shared by all connections
+	 *            created by this factory; null to not pool connections.
+	 * @since 5.2
+	 */
+	public HttpClientConnectionFactory(HttpClientConnectionPool pool) {
+		this.pool = pool;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public HttpConnection create(URL url) throws IOException {
-		return new HttpClientConnection(url.toString());
+		return create(url, null);
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public HttpConnection create(URL url, Proxy proxy)
 			throws IOException {
-		return new HttpClientConnection(url.toString(), proxy);
+		HttpClientConnection connection = new HttpClientConnection(
+				url.toString(), proxy);
+		connection.setPool(pool);
+		return connection;
 	}
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.transport.http.apache;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * A bounded pool of keep-alive connections shared by all
+ * {@link org.eclipse.jgit.transport.http.apache.HttpClientConnection}s created
+ * by a {@link HttpClientConnectionFactory}.
+ * <p>
+ * Consecutive requests to the same host, including requests of different
+ * {@link org.eclipse.jgit.transport.Transport} instances, reuse an idle
+ * connection instead of paying for a new TCP connection and TLS handshake.
+ * Connections idle for longer than the configured time are closed by a
+ * background thread, which is stopped by {@link #close()}.
+ * <p>
+ * Connections that customize TLS, e.g. because {@code http.sslVerify} is
+ * disabled, do not use the pool.
+ *
+ * @since 5.2
+ */
+public class HttpClientConnectionPool implements AutoCloseable {
+	/** Default maximum number of connections in the pool. */
+	public static final int DEFAULT_MAX_TOTAL = 64;
+
+	/** Default maximum number of connections to a single host. */
+	public static final int DEFAULT_MAX_PER_HOST = 8;
+
+	/** Default time in seconds after which idle connections are closed. */
+	public static final int DEFAULT_MAX_IDLE_SECONDS = 60;
+
+	private final PoolingHttpClientConnectionManager manager;
+
+	private final CloseableHttpClient client;
+
+	/**
+	 * Create a pool with the default limits.
+	 */
+	public HttpClientConnectionPool() {
+		this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_HOST, DEFAULT_MAX_IDLE_SECONDS,
+				TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Create a pool.
+	 *
+	 * @param maxTotal
+	 *            maximum number of connections in the pool.
+	 * @param maxPerHost
+	 *            maximum number of connections to a single host, unless
+	 *            overridden by {@link #setMaxPerHost(URL, int)}.
+	 * @param maxIdleTime
+	 *            time after which idle connections are closed.
+	 * @param unit
+	 *            unit of {@code maxIdleTime}.
+	 */
+	public HttpClientConnectionPool(int maxTotal, int maxPerHost,
+			long maxIdleTime, TimeUnit unit) {
+		manager = new PoolingHttpClientConnectionManager();
+		manager.setMaxTotal(maxTotal);
+		manager.setDefaultMaxPerRoute(maxPerHost);
+		client = HttpClients.custom()
+				.setConnectionManager(manager)
+				.evictExpiredConnections()
+				.evictIdleConnections(maxIdleTime, unit)
+				.build();
+	}
+
+	/**
+	 * Set the maximum number of connections to one host.
+	 * <p>
+	 * The limit applies to direct connections to the host and port of
+	 * {@code url}; connections through a proxy use the default limit.
+	 *
+	 * @param url
+	 *            URL identifying scheme, host and port.
+	 * @param max
+	 *            maximum number of connections.
+	 */
+	public void setMaxPerHost(URL url, int max) {
+		String scheme = url.getProtocol();
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		HttpHost host = new HttpHost(url.getHost(), port, scheme);
+		manager.setMaxPerRoute(
+				new HttpRoute(host, null, "https".equalsIgnoreCase(scheme)), //$NON-NLS-1$
+				max);
+	}
+
+	/**
+	 * Get the number of connections currently used by a request.
+	 *
+	 * @return number of leased connections.
+	 */
+	public int getLeasedConnections() {
+		return getStats().getLeased();
+	}
+
+	/**
+	 * Get the number of idle connections kept open for reuse.
+	 *
+	 * @return number of idle connections.
+	 */
+	public int getAvailableConnections() {
+		return getStats().getAvailable();
+	}
+
+	private PoolStats getStats() {
+		return manager.getTotalStats();
+	}
+
+	HttpClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Close all connections and stop evicting idle connections.
+	 *
+	 * @throws java.io.IOException
+	 *             a connection could not be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		client.close();
+	}
+}
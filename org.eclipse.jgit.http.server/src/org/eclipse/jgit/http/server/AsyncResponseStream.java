@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.server;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Hands response bytes to the container without blocking a request thread.
+ * <p>
+ * The producing thread (usually one from the JGit executor configured by
+ * {@link GitFilter#setAsyncExecutor(java.util.concurrent.ExecutorService)})
+ * writes into a small queue of buffers. The container drains the queue
+ * through a {@link WriteListener} whenever the client socket can accept more
+ * data. When the queue holds more than {@link #LIMIT} bytes the producer is
+ * suspended until the client catches up, so a slow client never causes a
+ * whole pack to be buffered in memory.
+ * <p>
+ * Closing the stream completes the {@link AsyncContext} once all queued data
+ * has been written.
+ */
+class AsyncResponseStream extends OutputStream implements WriteListener {
+	private static final int CHUNK = 16 * 1024;
+
+	private static final int LIMIT = 256 * 1024;
+
+	private final AsyncContext ctx;
+
+	private final ServletOutputStream out;
+
+	private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+
+	private int queued;
+
+	private byte[] buf;
+
+	private int cnt;
+
+	private boolean flushRequested;
+
+	private boolean closed;
+
+	private boolean completed;
+
+	private Throwable error;
+
+	AsyncResponseStream(AsyncContext ctx) throws IOException {
+		this.ctx = ctx;
+		this.out = ctx.getResponse().getOutputStream();
+		out.setWriteListener(this);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (0 < len) {
+			if (buf == null) {
+				buf = new byte[CHUNK];
+				cnt = 0;
+			}
+			int n = Math.min(len, buf.length - cnt);
+			System.arraycopy(b, off, buf, cnt, n);
+			cnt += n;
+			off += n;
+			len -= n;
+			if (cnt == buf.length) {
+				enqueue();
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void flush() throws IOException {
+		enqueue();
+		synchronized (this) {
+			flushRequested = true;
+			drain();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() throws IOException {
+		enqueue();
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			drain();
+		}
+	}
+
+	private void enqueue() throws IOException {
+		if (buf == null || cnt == 0) {
+			checkError();
+			return;
+		}
+		byte[] b = buf;
+		if (cnt < b.length) {
+			byte[] t = new byte[cnt];
+			System.arraycopy(b, 0, t, 0, cnt);
+			b = t;
+		}
+		buf = null;
+		cnt = 0;
+
+		synchronized (this) {
+			checkError();
+			queue.add(b);
+			queued += b.length;
+			drain();
+			try {
+				while (LIMIT < queued && error == null) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			checkError();
+		}
+	}
+
+	private void checkError() throws IOException {
+		Throwable e;
+		synchronized (this) {
+			e = error;
+		}
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		} else if (e != null) {
+			throw new IOException(e);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void onWritePossible() throws IOException {
+		synchronized (this) {
+			drain();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void onError(Throwable t) {
+		synchronized (this) {
+			error = t;
+			queue.clear();
+			queued = 0;
+			notifyAll();
+		}
+		complete();
+	}
+
+	/**
+	 * Write as much queued data as the container accepts without blocking.
+	 * <p>
+	 * Must be called while holding the monitor of this object. When
+	 * {@link ServletOutputStream#isReady()} returns false the container
+	 * promises a later call to {@link #onWritePossible()}, which resumes the
+	 * transfer.
+	 */
+	private void drain() throws IOException {
+		if (error != null || completed) {
+			return;
+		}
+		try {
+			while (out.isReady()) {
+				byte[] b = queue.poll();
+				if (b != null) {
+					queued -= b.length;
+					notifyAll();
+					out.write(b);
+				} else if (flushRequested) {
+					flushRequested = false;
+					out.flush();
+				} else {
+					if (closed) {
+						complete();
+					}
+					return;
+				}
+			}
+		} catch (IOException e) {
+			error = e;
+			notifyAll();
+			throw e;
+		}
+	}
+
+	private void complete() {
+		synchronized (this) {
+			if (completed) {
+				return;
+			}
+			completed = true;
+		}
+		ctx.complete();
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.server;
+
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+import static org.eclipse.jgit.http.server.GitSmartHttpTools.sendError;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * {@link SmartOutputStream} whose overflow is written without blocking the
+ * container.
+ * <p>
+ * Used by {@link UploadPackServlet} and {@link ReceivePackServlet} when an
+ * async executor has been configured and the container supports Servlet 3.1
+ * asynchronous processing. The protocol exchange runs on the executor, and
+ * response bytes are handed to the container through an
+ * {@link AsyncResponseStream}.
+ */
+class AsyncSmartOutputStream extends SmartOutputStream {
+	/** Protocol exchange executed on the async executor. */
+	interface Service {
+		/**
+		 * Run the protocol exchange.
+		 *
+		 * @param out
+		 *            stream to write the response body to.
+		 */
+		void run(SmartOutputStream out);
+	}
+
+	/**
+	 * Put the request into asynchronous mode and run the service on the
+	 * executor.
+	 * <p>
+	 * The repository is kept open until the service completes, even though the
+	 * calling filter chain returns (and closes its reference) immediately.
+	 *
+	 * @param req
+	 *            current request.
+	 * @param rsp
+	 *            current response.
+	 * @param executor
+	 *            executor to run the service on.
+	 * @param db
+	 *            repository the service operates on.
+	 * @param service
+	 *            the protocol exchange.
+	 * @throws IOException
+	 *             the request was rejected and the error could not be sent.
+	 */
+	static void start(HttpServletRequest req, HttpServletResponse rsp,
+			ExecutorService executor, Repository db, Service service)
+			throws IOException {
+		AsyncContext ctx = req.startAsync(req, rsp);
+		// Slow clients are the reason for async mode, let them take as long
+		// as they need. Broken connections are reported through onError.
+		ctx.setTimeout(0);
+		AsyncSmartOutputStream out = new AsyncSmartOutputStream(req, rsp, ctx);
+
+		db.incrementOpen();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						service.run(out);
+					} finally {
+						db.close();
+						out.finish();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			db.close();
+			try {
+				sendError(req, rsp, SC_SERVICE_UNAVAILABLE);
+			} finally {
+				ctx.complete();
+			}
+		}
+	}
+
+	private final AsyncContext ctx;
+
+	private AsyncResponseStream stream;
+
+	private AsyncSmartOutputStream(HttpServletRequest req,
+			HttpServletResponse rsp, AsyncContext ctx) {
+		super(req, rsp, false);
+		this.ctx = ctx;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	OutputStream responseStream() throws IOException {
+		if (stream == null) {
+			stream = new AsyncResponseStream(ctx);
+		}
+		return stream;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	boolean isCommitted() {
+		return stream != null || super.isCommitted();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void flush() throws IOException {
+		doFlush();
+	}
+
+	private void finish() {
+		if (stream == null) {
+			ctx.complete();
+			return;
+		}
+		try {
+			stream.close();
+		} catch (IOException e) {
+			// The client went away, the context is already completed.
+		}
+	}
+}
@@ -47,6 +47,7 @@
 import java.text.MessageFormat;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterConfig;
@@ -98,6 +99,8 @@ public class GitFilter extends MetaFilter {
 
 	private final List<Filter> receivePackFilters = new LinkedList<>();
 
+	private ExecutorService asyncExecutor;
+
 	/**
 	 * New servlet that will load its base directory from {@code web.xml}.
 	 * <p>
@@ -189,6 +192,30 @@ public void addReceivePackFilter(Filter filter) {
 		receivePackFilters.add(filter);
 	}
 
+	/**
+	 * Set the executor for asynchronous upload-pack and receive-pack.
+	 * <p>
+	 * If set, and the container supports asynchronous processing for this
+	 * filter (Servlet 3.1, {@code async-supported} enabled), fetch and push
+	 * requests are released from the container's request thread. The
+	 * protocol exchange runs on this executor, and the response is handed to
+	 * the container with non-blocking writes as the client accepts it. The
+	 * size of the executor bounds the number of concurrent pack operations;
+	 * requests it rejects are answered with {@code 503 Service Unavailable}.
+	 * <p>
+	 * Upload-pack and receive-pack filters see their {@code chain.doFilter}
+	 * call return before the operation has completed.
+	 *
+	 * @param executor
+	 *            executor to run pack operations on; null (the default)
+	 *            processes them on the request thread.
+	 * @since 5.2
+	 */
+	public void setAsyncExecutor(ExecutorService executor) {
+		assertNotInitialized();
+		this.asyncExecutor = executor;
+	}
+
 	private void assertNotInitialized() {
 		if (initialized)
 			throw new IllegalStateException(HttpServerText.get().alreadyInitializedByContainer);
@@ -212,7 +239,7 @@ public void init(FilterConfig filterConfig) throws ServletException {
 			b = b.through(new UploadPackServlet.Factory(uploadPackFactory));
 			for (Filter f : uploadPackFilters)
 				b = b.through(f);
-			b.with(new UploadPackServlet());
+			b.with(new UploadPackServlet(asyncExecutor));
 		}
 
 		if (receivePackFactory != ReceivePackFactory.DISABLED) {
@@ -220,7 +247,7 @@ public void init(FilterConfig filterConfig) throws ServletException {
 			b = b.through(new ReceivePackServlet.Factory(receivePackFactory));
 			for (Filter f : receivePackFilters)
 				b = b.through(f);
-			b.with(new ReceivePackServlet());
+			b.with(new ReceivePackServlet(asyncExecutor));
 		}
 
 		ServletBinder refs = serve("*/" + Constants.INFO_REFS);
@@ -44,6 +44,7 @@
 package org.eclipse.jgit.http.server;
 
 import java.util.Enumeration;
+import java.util.concurrent.ExecutorService;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterConfig;
@@ -181,6 +182,20 @@ public void addReceivePackFilter(Filter filter) {
 		gitFilter.addReceivePackFilter(filter);
 	}
 
+	/**
+	 * Set the executor for asynchronous upload-pack and receive-pack.
+	 *
+	 * @param executor
+	 *            executor to run pack operations on if the container supports
+	 *            asynchronous processing for this servlet; null (the default)
+	 *            processes them on the request thread.
+	 * @see GitFilter#setAsyncExecutor(ExecutorService)
+	 * @since 5.2
+	 */
+	public void setAsyncExecutor(ExecutorService executor) {
+		gitFilter.setAsyncExecutor(executor);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void init(ServletConfig config) throws ServletException {
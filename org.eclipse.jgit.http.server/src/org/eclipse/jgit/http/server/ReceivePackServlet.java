@@ -64,6 +64,7 @@
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -90,6 +91,8 @@
 class ReceivePackServlet extends HttpServlet {
 	private static final long serialVersionUID = 1L;
 
+	private final transient ExecutorService asyncExecutor;
+
 	static class InfoRefs extends SmartServiceInfoRefs {
 		private final ReceivePackFactory<HttpServletRequest> receivePackFactory;
 
@@ -165,6 +168,25 @@ public void destroy() {
 		}
 	}
 
+	/**
+	 * Create a servlet processing push requests on the request thread.
+	 */
+	ReceivePackServlet() {
+		this(null);
+	}
+
+	/**
+	 * Create a servlet processing push requests on an executor.
+	 *
+	 * @param asyncExecutor
+	 *            executor to run the protocol exchange on if the container
+	 *            supports asynchronous requests; null to always process the
+	 *            request on the container's request thread.
+	 */
+	ReceivePackServlet(ExecutorService asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void doPost(final HttpServletRequest req,
@@ -181,14 +203,34 @@ public void doPost(final HttpServletRequest req,
 			return;
 		}
 
+		ReceivePack rp = (ReceivePack) req.getAttribute(ATTRIBUTE_HANDLER);
+		if (asyncExecutor != null && req.isAsyncSupported()) {
+			AsyncSmartOutputStream.start(req, rsp, asyncExecutor,
+					rp.getRepository(), new AsyncSmartOutputStream.Service() {
+						@Override
+						public void run(SmartOutputStream out) {
+							try {
+								receive(req, rsp, rp, version, out);
+							} catch (IOException e) {
+								log(rp.getRepository(), e);
+							}
+						}
+					});
+			return;
+		}
+
 		SmartOutputStream out = new SmartOutputStream(req, rsp, false) {
 			@Override
 			public void flush() throws IOException {
 				doFlush();
 			}
 		};
+		receive(req, rsp, rp, version, out);
+	}
 
-		ReceivePack rp = (ReceivePack) req.getAttribute(ATTRIBUTE_HANDLER);
+	private void receive(HttpServletRequest req, HttpServletResponse rsp,
+			ReceivePack rp, int[] version, SmartOutputStream out)
+			throws IOException {
 		try {
 			rp.setBiDirectionalPipe(false);
 			rp.setEchoCommandFailures(hasPushStatusBug(version));
@@ -213,7 +255,7 @@ public void flush() throws IOException {
 
 		} catch (Throwable e) {
 			log(rp.getRepository(), e);
-			if (!rsp.isCommitted()) {
+			if (!out.isCommitted()) {
 				rsp.reset();
 				sendError(req, rsp, SC_INTERNAL_SERVER_ERROR);
 			}
@@ -88,7 +88,7 @@ class SmartOutputStream extends TemporaryBuffer {
 	protected OutputStream overflow() throws IOException {
 		startedOutput = true;
 
-		OutputStream out = rsp.getOutputStream();
+		OutputStream out = responseStream();
 		if (compressStream && acceptsGzipEncoding(req)) {
 			rsp.setHeader(HDR_CONTENT_ENCODING, ENCODING_GZIP);
 			out = new GZIPOutputStream(out);
@@ -96,6 +96,28 @@ protected OutputStream overflow() throws IOException {
 		return out;
 	}
 
+	/**
+	 * Get the stream the response body is finally written to.
+	 *
+	 * @return the servlet response's output stream. Subclasses may replace it
+	 *         with a stream that does not block the calling thread.
+	 * @throws IOException
+	 *             the response stream cannot be obtained.
+	 */
+	OutputStream responseStream() throws IOException {
+		return rsp.getOutputStream();
+	}
+
+	/**
+	 * Whether the response can no longer be replaced by an error.
+	 *
+	 * @return true if the response was committed by the container, or some of
+	 *         the body was already handed to it.
+	 */
+	boolean isCommitted() {
+		return startedOutput || rsp.isCommitted();
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void close() throws IOException {
@@ -129,7 +151,7 @@ public void close() throws IOException {
 			// hardcoded LIMIT constant above assures us we wouldn't store
 			// more than 2 GiB of content in memory.
 			rsp.setContentLength((int) out.length());
-			try (OutputStream os = rsp.getOutputStream()) {
+			try (OutputStream os = responseStream()) {
 				out.writeTo(os, null);
 				os.flush();
 			}
@@ -63,6 +63,7 @@
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -89,6 +90,8 @@
 class UploadPackServlet extends HttpServlet {
 	private static final long serialVersionUID = 1L;
 
+	private final transient ExecutorService asyncExecutor;
+
 	static class InfoRefs extends SmartServiceInfoRefs {
 		private final UploadPackFactory<HttpServletRequest> uploadPackFactory;
 
@@ -184,6 +187,25 @@ public void destroy() {
 		}
 	}
 
+	/**
+	 * Create a servlet processing fetch requests on the request thread.
+	 */
+	UploadPackServlet() {
+		this(null);
+	}
+
+	/**
+	 * Create a servlet processing fetch requests on an executor.
+	 *
+	 * @param asyncExecutor
+	 *            executor to run the protocol exchange on if the container
+	 *            supports asynchronous requests; null to always process the
+	 *            request on the container's request thread.
+	 */
+	UploadPackServlet(ExecutorService asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void doPost(final HttpServletRequest req,
@@ -200,14 +222,33 @@ public void doPost(final HttpServletRequest req,
 			return;
 		}
 
+		UploadPack up = (UploadPack) req.getAttribute(ATTRIBUTE_HANDLER);
+		if (asyncExecutor != null && req.isAsyncSupported()) {
+			AsyncSmartOutputStream.start(req, rsp, asyncExecutor,
+					up.getRepository(), new AsyncSmartOutputStream.Service() {
+						@Override
+						public void run(SmartOutputStream out) {
+							try {
+								upload(req, rsp, up, out);
+							} catch (IOException e) {
+								log(up.getRepository(), e);
+							}
+						}
+					});
+			return;
+		}
+
 		SmartOutputStream out = new SmartOutputStream(req, rsp, false) {
 			@Override
 			public void flush() throws IOException {
 				doFlush();
 			}
 		};
+		upload(req, rsp, up, out);
+	}
 
-		UploadPack up = (UploadPack) req.getAttribute(ATTRIBUTE_HANDLER);
+	private void upload(HttpServletRequest req, HttpServletResponse rsp,
+			UploadPack up, SmartOutputStream out) throws IOException {
 		try {
 			up.setBiDirectionalPipe(false);
 			rsp.setContentType(UPLOAD_PACK_RESULT_TYPE);
@@ -219,7 +260,7 @@ public void flush() throws IOException {
 			if (e.isOutput()) {
 				consumeRequestBody(req);
 				out.close();
-			} else if (!rsp.isCommitted()) {
+			} else if (!out.isCommitted()) {
 				rsp.reset();
 				sendError(req, rsp, e.getStatusCode(), e.getMessage());
 			}
@@ -233,7 +274,7 @@ public void flush() throws IOException {
 
 		} catch (Throwable e) {
 			log(up.getRepository(), e);
-			if (!rsp.isCommitted()) {
+			if (!out.isCommitted()) {
 				rsp.reset();
 				sendError(req, rsp, SC_INTERNAL_SERVER_ERROR);
 			}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jgit.http.server.GitServlet;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.junit.TestRng;
+import org.eclipse.jgit.junit.http.AccessEvent;
+import org.eclipse.jgit.junit.http.HttpTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncSmartServerTest extends HttpTestCase {
+	private ExecutorService executor;
+
+	private Repository remoteRepository;
+
+	private URIish remoteURI;
+
+	private RevCommit A;
+
+	private RevBlob big;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+
+		TestRepository<Repository> src = createTestRepository();
+		String srcName = src.getRepository().getDirectory().getName();
+
+		executor = Executors.newFixedThreadPool(2);
+		GitServlet gs = new GitServlet();
+		gs.setRepositoryResolver(new TestRepositoryResolver(src, srcName));
+		gs.setAsyncExecutor(executor);
+
+		ServletContextHandler app = server.addContext("/git");
+		ServletHolder holder = new ServletHolder(gs);
+		holder.setAsyncSupported(true);
+		app.addServlet(holder, "/*");
+
+		server.setUp();
+
+		remoteRepository = src.getRepository();
+		remoteURI = toURIish(app, srcName);
+
+		// Larger than the buffer of SmartOutputStream, so the pack is
+		// streamed through the non-blocking response path.
+		big = src.blob(new TestRng("big").nextBytes(512 * 1024));
+		A = src.commit().add("big", big).create();
+		src.update(master, A);
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		super.tearDown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testInitialClone() throws Exception {
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, remoteURI)) {
+			t.fetch(NullProgressMonitor.INSTANCE, mirror(master));
+		}
+
+		assertTrue(dst.hasObject(big));
+		assertEquals(A, dst.exactRef(master).getObjectId());
+		fsck(dst, A);
+
+		List<AccessEvent> requests = getRequests();
+		assertEquals(2, requests.size());
+		assertEquals(200, requests.get(1).getStatus());
+	}
+
+	@Test
+	public void testPush() throws Exception {
+		TestRepository<Repository> src = createTestRepository();
+		RevBlob Q_bin = src.blob(new TestRng("Q").nextBytes(128 * 1024));
+		RevCommit Q = src.commit().add("Q", Q_bin).create();
+		String dstName = Constants.R_HEADS + "new.branch";
+
+		StoredConfig cfg = remoteRepository.getConfig();
+		cfg.setBoolean("http", null, "receivepack", true);
+		cfg.save();
+
+		try (Transport t = Transport.open(src.getRepository(), remoteURI)) {
+			RemoteRefUpdate u = new RemoteRefUpdate(src.getRepository(),
+					Q.name(), dstName, false, null, null);
+			t.push(NullProgressMonitor.INSTANCE, Collections.singleton(u));
+			assertEquals(RemoteRefUpdate.Status.OK, u.getStatus());
+		}
+
+		assertTrue(remoteRepository.hasObject(Q_bin));
+		assertEquals(Q, remoteRepository.exactRef(dstName).getObjectId());
+		fsck(remoteRepository, Q);
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.http.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.http.server.GitServlet;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.junit.http.HttpTestCase;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.HttpTransport;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.transport.http.HttpConnectionFactory;
+import org.eclipse.jgit.transport.http.apache.HttpClientConnectionFactory;
+import org.eclipse.jgit.transport.http.apache.HttpClientConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpClientConnectionPoolTest extends HttpTestCase {
+	private HttpConnectionFactory previousFactory;
+
+	private HttpClientConnectionPool pool;
+
+	private URIish remoteURI;
+
+	private RevCommit A;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+
+		TestRepository<Repository> src = createTestRepository();
+		String srcName = src.getRepository().getDirectory().getName();
+
+		GitServlet gs = new GitServlet();
+		gs.setRepositoryResolver(new TestRepositoryResolver(src, srcName));
+		ServletContextHandler app = server.addContext("/git");
+		app.addServlet(new ServletHolder(gs), "/*");
+		server.setUp();
+
+		remoteURI = toURIish(app, srcName);
+		A = src.commit().add("A", "A").create();
+		src.update(master, A);
+
+		// With a single connection per host every request has to wait for
+		// the previous one to return its connection to the pool.
+		pool = new HttpClientConnectionPool();
+		pool.setMaxPerHost(new URL(remoteURI.toString()), 1);
+		previousFactory = HttpTransport.getConnectionFactory();
+		HttpTransport.setConnectionFactory(
+				new HttpClientConnectionFactory(pool));
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		HttpTransport.setConnectionFactory(previousFactory);
+		pool.close();
+		super.tearDown();
+	}
+
+	@Test
+	public void testConnectionsAreReturnedToPool() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			Repository dst = createBareRepository();
+			try (Transport t = Transport.open(dst, remoteURI)) {
+				t.setTimeout(10);
+				t.fetch(NullProgressMonitor.INSTANCE, mirror(master));
+			}
+			assertEquals(A, dst.exactRef(master).getObjectId());
+		}
+
+		assertEquals(0, pool.getLeasedConnections());
+		assertEquals(1, pool.getAvailableConnections());
+	}
+
+	@Test
+	public void testErrorResponseReturnsConnection() throws Exception {
+		URIish missing = remoteURI.setPath(remoteURI.getPath() + "-missing");
+		try (Transport t = Transport.open(createBareRepository(), missing)) {
+			t.setTimeout(10);
+			t.fetch(NullProgressMonitor.INSTANCE, mirror(master));
+			fail("fetch from missing repository succeeded");
+		} catch (TransportException e) {
+			// Expected, the repository does not exist.
+		}
+		assertEquals(0, pool.getLeasedConnections());
+
+		Repository dst = createBareRepository();
+		try (Transport t = Transport.open(dst, remoteURI)) {
+			t.setTimeout(10);
+			t.fetch(NullProgressMonitor.INSTANCE, mirror(master));
+		}
+		assertEquals(A, dst.exactRef(master).getObjectId());
+		assertTrue(pool.getAvailableConnections() <= 1);
+	}
+}
@@ -53,6 +53,7 @@
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Collection;
 import java.util.Set;
 
 import org.eclipse.jgit.api.errors.FilterFailedException;
@@ -62,6 +63,7 @@
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheBuilder;
 import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.internal.storage.file.PackFile;
 import org.eclipse.jgit.junit.JGitTestUtil;
 import org.eclipse.jgit.junit.RepositoryTestCase;
 import org.eclipse.jgit.lfs.BuiltinLFS;
@@ -132,6 +134,35 @@ public void testAddExistingSingleFile() throws IOException, GitAPIException {
 		}
 	}
 
+	@Test
+	public void testBulkAdd() throws Exception {
+		writeTrashFile(".gitattributes", "crlf.txt eol=lf");
+		writeTrashFile("a.txt", "content");
+		writeTrashFile("crlf.txt", "line\r\n");
+		writeTrashFile("sub/b.txt", "other content");
+		writeTrashFile("sub/c.txt", "content");
+
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".").setBulk(true).call();
+
+			assertEquals(
+					"[.gitattributes, mode:100644, content:crlf.txt eol=lf]"
+							+ "[a.txt, mode:100644, content:content]"
+							+ "[crlf.txt, mode:100644, content:line\n]"
+							+ "[sub/b.txt, mode:100644, content:other content]"
+							+ "[sub/c.txt, mode:100644, content:content]",
+					indexState(CONTENT));
+		}
+		File objects = db.getObjectDatabase().getDirectory();
+		for (File dir : objects.listFiles()) {
+			if (dir.getName().length() == 2)
+				assertEquals(0, dir.list().length);
+		}
+		Collection<PackFile> packs = db.getObjectDatabase().getPacks();
+		assertEquals(1, packs.size());
+		assertEquals(4, packs.iterator().next().getIndex().getObjectCount());
+	}
+
 	@Test
 	public void testCleanFilter() throws IOException, GitAPIException {
 		writeTrashFile(".gitattributes", "*.txt filter=tstFilter");
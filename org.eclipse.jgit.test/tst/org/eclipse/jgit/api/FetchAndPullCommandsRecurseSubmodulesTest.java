@@ -199,6 +199,20 @@ public void shouldFetchSubmodulesWhenYes(boolean fetch) throws Exception {
 		assertSubmoduleFetchHeads(commit1, commit2);
 	}
 
+	@Theory
+	public void shouldFetchSubmodulesInParallelWhenFetchJobsConfigured(
+			boolean fetch) throws Exception {
+		StoredConfig config = git2.getRepository().getConfig();
+		config.setInt(ConfigConstants.CONFIG_SUBMODULE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_FETCH_JOBS, 4);
+		config.save();
+		FetchResult result = execute(FetchRecurseSubmodulesMode.YES, fetch);
+		assertTrue(result.submoduleResults().containsKey("sub"));
+		FetchResult subResult = result.submoduleResults().get("sub");
+		assertTrue(subResult.submoduleResults().containsKey("sub"));
+		assertSubmoduleFetchHeads(commit1, commit2);
+	}
+
 	@Theory
 	public void shouldFetchSubmodulesWhenOnDemandAndRevisionChanged(
 			boolean fetch) throws Exception {
@@ -44,12 +44,21 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.blame.BlameCache;
 import org.eclipse.jgit.blame.BlameGenerator;
 import org.eclipse.jgit.blame.BlameResult;
+import org.eclipse.jgit.blame.CachedBlame;
+import org.eclipse.jgit.blame.FileBlameCache;
+import org.eclipse.jgit.blame.InMemoryBlameCache;
 import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.junit.Test;
@@ -197,6 +206,122 @@ public void testLinesAllDeletedShortenedWalk() throws Exception {
 		}
 	}
 
+	@Test
+	public void testCachedResultReused() throws Exception {
+		try (Git git = new Git(db)) {
+			writeTrashFile("file.txt", join("first", "second"));
+			git.add().addFilepattern("file.txt").call();
+			git.commit().setMessage("create file").call();
+
+			writeTrashFile("file.txt", join("third", "first", "second"));
+			git.add().addFilepattern("file.txt").call();
+			RevCommit c2 = git.commit().setMessage("prepend").call();
+
+			CountingCache cache = new CountingCache(
+					new InMemoryBlameCache(10));
+			BlameResult r2 = blame(c2, cache);
+			assertEquals(0, cache.hits);
+			assertEquals(1, cache.puts);
+			assertSameBlame(blame(c2, null), r2);
+
+			// A second blame of the same commit is answered by the cache.
+			assertSameBlame(r2, blame(c2, cache));
+			assertEquals(1, cache.hits);
+			assertEquals(1, cache.puts);
+
+			writeTrashFile("file.txt",
+					join("third", "first", "second", "fourth"));
+			git.add().addFilepattern("file.txt").call();
+			RevCommit c3 = git.commit().setMessage("append").call();
+
+			// Blame of a descendant reuses the entry for its parent.
+			BlameResult r3 = blame(c3, cache);
+			assertEquals(2, cache.hits);
+			assertEquals(2, cache.puts);
+			assertSameBlame(blame(c3, null), r3);
+			assertEquals(c3, r3.getSourceCommit(3));
+		}
+	}
+
+	@Test
+	public void testFileBlameCache() throws Exception {
+		try (Git git = new Git(db)) {
+			writeTrashFile("file.txt", join("first", "second"));
+			git.add().addFilepattern("file.txt").call();
+			git.commit().setMessage("create file").call();
+
+			writeTrashFile("file.txt", join("first", "changed", "second"));
+			git.add().addFilepattern("file.txt").call();
+			RevCommit c2 = git.commit().setMessage("insert").call();
+
+			FileBlameCache cache = new FileBlameCache(db);
+			BlameResult r = blame(c2, cache);
+			File[] fanout = cache.getDirectory().listFiles();
+			assertNotNull(fanout);
+			assertEquals(1, fanout.length);
+
+			CachedBlame cached = cache.get(c2, "file.txt",
+					"unknown options");
+			assertEquals(null, cached);
+			assertSameBlame(r, blame(c2, cache));
+
+			// Damaged entries are ignored and replaced.
+			File entry = fanout[0].listFiles()[0];
+			write(entry, "garbage");
+			assertSameBlame(r, blame(c2, cache));
+			assertSameBlame(r, blame(c2, cache));
+		}
+	}
+
+	private BlameResult blame(RevCommit start, BlameCache cache)
+			throws IOException {
+		try (BlameGenerator generator = new BlameGenerator(db, "file.txt")) {
+			generator.setBlameCache(cache);
+			generator.push(null, start);
+			return generator.computeBlameResult();
+		}
+	}
+
+	private static void assertSameBlame(BlameResult expect,
+			BlameResult actual) {
+		int cnt = expect.getResultContents().size();
+		assertEquals(cnt, actual.getResultContents().size());
+		for (int i = 0; i < cnt; i++) {
+			assertEquals(expect.getSourceCommit(i), actual.getSourceCommit(i));
+			assertEquals(expect.getSourceAuthor(i), actual.getSourceAuthor(i));
+			assertEquals(expect.getSourcePath(i), actual.getSourcePath(i));
+			assertEquals(expect.getSourceLine(i), actual.getSourceLine(i));
+		}
+	}
+
+	private static class CountingCache implements BlameCache {
+		private final BlameCache cache;
+
+		int hits;
+
+		int puts;
+
+		CountingCache(BlameCache cache) {
+			this.cache = cache;
+		}
+
+		@Override
+		public CachedBlame get(AnyObjectId commit, String path,
+				String options) throws IOException {
+			CachedBlame b = cache.get(commit, path, options);
+			if (b != null)
+				hits++;
+			return b;
+		}
+
+		@Override
+		public void put(AnyObjectId commit, String path, String options,
+				CachedBlame blame) throws IOException {
+			puts++;
+			cache.put(commit, path, options, blame);
+		}
+	}
+
 	private static String join(String... lines) {
 		StringBuilder joined = new StringBuilder();
 		for (String line : lines)
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.eclipse.jgit.attributes;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.api.errors.FilterFailedException;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.dircache.DirCacheCheckout.CheckoutMetadata;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig.EolStreamType;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.transport.PacketLineIn;
+import org.eclipse.jgit.transport.PacketLineOut;
+import org.eclipse.jgit.util.QuotedString;
+import org.junit.Test;
+
+public class FilterProcessTest extends RepositoryTestCase {
+	@Test
+	public void testCleanAndSmudge() throws Exception {
+		File log = configureFilter("");
+		try (Git git = new Git(db)) {
+			writeTrashFile("a.txt", "Hello");
+			writeTrashFile("b.txt", "World");
+			git.add().addFilepattern(".").call();
+			assertEquals("[.gitattributes, mode:100644, content:*.txt filter=tst]"
+					+ "[a.txt, mode:100644, content:hello]"
+					+ "[b.txt, mode:100644, content:world]",
+					indexState(CONTENT));
+			git.commit().setMessage("filtered").call();
+
+			deleteTrashFile("a.txt");
+			deleteTrashFile("b.txt");
+			git.reset().setMode(ResetType.HARD).call();
+			assertEquals("HELLO", read("a.txt"));
+			assertEquals("WORLD", read("b.txt"));
+			assertTrue(git.status().call().isClean());
+		}
+		List<String> requests = Files.readAllLines(log.toPath());
+		assertEquals("start", requests.get(0));
+		assertEquals(1, count(requests, "start"));
+		assertTrue(requests.contains("clean a.txt"));
+		assertTrue(requests.contains("smudge b.txt"));
+	}
+
+	@Test
+	public void testDelay() throws Exception {
+		File log = configureFilter("delay");
+		try (Git git = new Git(db)) {
+			writeTrashFile("a.txt", "Hello");
+			writeTrashFile("b.txt", "World");
+			git.add().addFilepattern(".").call();
+			git.commit().setMessage("filtered").call();
+
+			deleteTrashFile("a.txt");
+			deleteTrashFile("b.txt");
+			git.reset().setMode(ResetType.HARD).call();
+			assertEquals("HELLO", read("a.txt"));
+			assertEquals("WORLD", read("b.txt"));
+			assertTrue(git.status().call().isClean());
+		}
+		List<String> requests = Files.readAllLines(log.toPath());
+		assertEquals(1, count(requests, "list_available_blobs"));
+		assertEquals(2, count(requests, "smudge a.txt"));
+	}
+
+	@Test
+	public void testCapabilityNotSupported() throws Exception {
+		configureFilter("clean-only");
+		try (Git git = new Git(db)) {
+			writeTrashFile("a.txt", "Hello");
+			git.add().addFilepattern(".").call();
+			git.commit().setMessage("filtered").call();
+
+			deleteTrashFile("a.txt");
+			git.reset().setMode(ResetType.HARD).call();
+			assertEquals("hello", read("a.txt"));
+		}
+	}
+
+	@Test
+	public void testErrorStatus() throws Exception {
+		configureFilter("error");
+		FilterProcess process = db.getFilterProcess("tst");
+		for (int i = 0; i < 2; i++) {
+			try {
+				process.smudge("a.txt", ObjectId.zeroId(),
+						new ByteArrayInputStream(new byte[1]),
+						new ByteArrayOutputStream(), false);
+				fail("smudge should have failed");
+			} catch (IOException e) {
+				assertTrue(e.getCause() instanceof FilterFailedException);
+			}
+		}
+	}
+
+	@Test
+	public void testProcessNoLongerConfigured() throws Exception {
+		String smudge = Constants.PROCESS_FILTER_PREFIX + "tst/smudge";
+		assertNull(db.getFilterProcess("tst"));
+		assertNull(FilterProcess.getOneShotCommand(db, smudge));
+		StoredConfig config = db.getConfig();
+		config.setString("filter", "tst", "smudge", "cat");
+		assertEquals("cat", FilterProcess.getOneShotCommand(db, smudge));
+		assertEquals("cat", FilterProcess.getOneShotCommand(db, "cat"));
+		config.unset("filter", "tst", "smudge");
+
+		// Without the process nor a smudge command, content is unfiltered.
+		DirCacheEntry entry = new DirCacheEntry("a.txt");
+		entry.setFileMode(FileMode.REGULAR_FILE);
+		try (ObjectInserter ins = db.newObjectInserter();
+				ObjectReader reader = db.newObjectReader()) {
+			entry.setObjectId(ins.insert(Constants.OBJ_BLOB,
+					"hello".getBytes(UTF_8)));
+			ins.flush();
+			DirCacheCheckout.checkoutEntry(db, entry, reader, false,
+					new CheckoutMetadata(EolStreamType.DIRECT, smudge));
+		}
+		assertEquals("hello", read("a.txt"));
+	}
+
+	private File configureFilter(String mode) throws Exception {
+		File log = new File(trash.getParentFile(), "filter.log");
+		String java = new File(System.getProperty("java.home"), "bin/java")
+				.getPath();
+		StoredConfig config = db.getConfig();
+		config.setString("filter", "tst", "process",
+				QuotedString.BOURNE.quote(java) + " -cp "
+						+ QuotedString.BOURNE
+								.quote(System.getProperty("java.class.path"))
+						+ ' ' + QuotedString.BOURNE.quote(TestFilter.class.getName())
+						+ ' '
+						+ QuotedString.BOURNE.quote(log.getPath()) + ' '
+						+ mode);
+		config.save();
+		writeTrashFile(".gitattributes", "*.txt filter=tst");
+		return log;
+	}
+
+	private static int count(List<String> lines, String line) {
+		int n = 0;
+		for (String l : lines) {
+			if (l.equals(line))
+				n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Filter process lower casing files on clean and upper casing them on
+	 * smudge. Requests are logged to the file given as first argument.
+	 */
+	public static class TestFilter {
+		public static void main(String[] args) throws IOException {
+			File log = new File(args[0]);
+			String mode = args.length > 1 ? args[1] : "";
+			PacketLineIn in = new PacketLineIn(System.in);
+			PacketLineOut out = new PacketLineOut(new BufferedOutputStream(
+					new FileOutputStream(FileDescriptor.out)));
+			log(log, "start");
+			in.readString();
+			readList(in);
+			out.writeString("git-filter-server\n");
+			out.writeString("version=2\n");
+			out.end();
+			readList(in);
+			out.writeString("capability=clean\n");
+			if (!mode.equals("clean-only"))
+				out.writeString("capability=smudge\n");
+			if (mode.equals("delay"))
+				out.writeString("capability=delay\n");
+			out.end();
+
+			Map<String, byte[]> delayed = new HashMap<>();
+			for (;;) {
+				List<String> request;
+				try {
+					request = readList(in);
+				} catch (EOFException e) {
+					return;
+				}
+				String command = value(request, "command");
+				String path = value(request, "pathname");
+				if (command.equals("list_available_blobs")) {
+					log(log, command);
+					for (String p : delayed.keySet())
+						out.writeString("pathname=" + p + '\n');
+					out.end();
+					out.writeString("status=success\n");
+					out.end();
+					continue;
+				}
+				log(log, command + ' ' + path);
+				byte[] content = readContent(in);
+				if (mode.equals("error")) {
+					out.writeString("status=error\n");
+					out.end();
+					continue;
+				}
+				if (request.contains("can-delay=1")) {
+					delayed.put(path, content);
+					out.writeString("status=delayed\n");
+					out.end();
+					continue;
+				}
+				if (delayed.containsKey(path))
+					content = delayed.remove(path);
+				String s = new String(content, UTF_8);
+				s = command.equals("clean") ? s.toLowerCase(Locale.ROOT)
+						: s.toUpperCase(Locale.ROOT);
+				out.writeString("status=success\n");
+				out.end();
+				if (!s.isEmpty())
+					out.writePacket(s.getBytes(UTF_8));
+				out.end();
+				out.end();
+			}
+		}
+
+		private static List<String> readList(PacketLineIn in)
+				throws IOException {
+			List<String> lines = new ArrayList<>();
+			String line;
+			while ((line = in.readString()) != PacketLineIn.END)
+				lines.add(line);
+			return lines;
+		}
+
+		private static String value(List<String> lines, String key) {
+			for (String line : lines) {
+				if (line.startsWith(key + '='))
+					return line.substring(key.length() + 1);
+			}
+			return null;
+		}
+
+		private static byte[] readContent(PacketLineIn in) throws IOException {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buf = new byte[65516];
+			int n;
+			while ((n = in.readPacket(buf)) >= 0)
+				content.write(buf, 0, n);
+			return content.toByteArray();
+		}
+
+		private static void log(File log, String line) throws IOException {
+			Files.write(log.toPath(), (line + '\n').getBytes(UTF_8),
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		}
+	}
+}
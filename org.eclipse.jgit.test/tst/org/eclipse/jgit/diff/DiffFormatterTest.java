@@ -44,6 +44,7 @@
 package org.eclipse.jgit.diff;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
@@ -561,6 +562,88 @@ private void doAutoCrLfTest(String content, String expectedDiff)
 		}
 	}
 
+	@Test
+	public void testLargeFileDiff() throws Exception {
+		StringBuilder a = new StringBuilder();
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			String line = "line " + (i % 250) + "\n";
+			a.append(line);
+			if (i % 400 == 7)
+				b.append("changed ").append(i).append('\n');
+			else if (i % 300 != 11)
+				b.append(line);
+		}
+		b.append("no newline");
+		RevCommit c1 = testDb.commit().add("big.txt", a.toString()).create();
+		RevCommit c2 = testDb.commit().add("big.txt", b.toString()).create();
+
+		String expected = formatLarge(c1, c2, Integer.MAX_VALUE, false,
+				RawTextComparator.DEFAULT);
+		assertTrue(expected.contains("+changed 7\n"));
+		assertTrue(formatLarge(c1, c2, 100, false, RawTextComparator.DEFAULT)
+				.endsWith("Binary files differ\n"));
+		assertEquals(expected, formatLarge(c1, c2, 100, true,
+				RawTextComparator.DEFAULT));
+
+		assertEquals(
+				formatLarge(c1, c2, Integer.MAX_VALUE, false,
+						RawTextComparator.WS_IGNORE_ALL),
+				formatLarge(c1, c2, 100, true,
+						RawTextComparator.WS_IGNORE_ALL));
+	}
+
+	@Test
+	public void testParallelFormatMatchesSequential() throws Exception {
+		TestRepository<Repository>.CommitBuilder b1 = testDb.commit();
+		TestRepository<Repository>.CommitBuilder b2 = testDb.commit();
+		for (int i = 0; i < 60; i++) {
+			String path = "dir" + (i % 7) + "/file" + i;
+			String text = "common\n" + path + "\nline\n";
+			if (i % 10 != 3)
+				b1.add(path, text);
+			if (i % 10 == 5)
+				b2.add(path, "\0binary " + i);
+			else if (i % 10 != 4)
+				b2.add(path, i % 2 == 0 ? text : text + "added " + i + "\n");
+		}
+		RevCommit c1 = b1.create();
+		RevCommit c2 = b2.create();
+
+		String expected = formatThreads(c1, c2, 1);
+		assertTrue(expected.contains("Binary files differ"));
+		assertTrue(expected.contains("new file mode"));
+		assertTrue(expected.contains("deleted file mode"));
+		assertEquals(expected, formatThreads(c1, c2, 4));
+		assertEquals(expected, formatThreads(c1, c2, 0));
+	}
+
+	private String formatThreads(RevCommit c1, RevCommit c2, int threads)
+			throws Exception {
+		try (ByteArrayOutputStream os = new ByteArrayOutputStream();
+				DiffFormatter dfmt = new DiffFormatter(os)) {
+			dfmt.setRepository(db);
+			dfmt.setThreads(threads);
+			dfmt.format(c1.getTree(), c2.getTree());
+			dfmt.flush();
+			return os.toString("UTF-8");
+		}
+	}
+
+	private String formatLarge(RevCommit c1, RevCommit c2, int threshold,
+			boolean large, RawTextComparator cmp) throws Exception {
+		try (ByteArrayOutputStream os = new ByteArrayOutputStream();
+				DiffFormatter dfmt = new DiffFormatter(os)) {
+			dfmt.setRepository(db);
+			dfmt.setBinaryFileThreshold(threshold);
+			dfmt.setLargeFileDiff(large);
+			dfmt.setDiffComparator(cmp);
+			dfmt.format(c1.getTree(), c2.getTree());
+			dfmt.flush();
+			return os.toString("UTF-8");
+		}
+	}
+
 	private static String largeCrLfString() {
 		String line = "012345678901234567890123456789012345678901234567\r\n";
 		StringBuilder builder = new StringBuilder(
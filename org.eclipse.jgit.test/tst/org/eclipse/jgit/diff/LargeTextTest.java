@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.diff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.eclipse.jgit.errors.BinaryBlobException;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.junit.Test;
+
+public class LargeTextTest extends RepositoryTestCase {
+	private static final RawTextComparator[] COMPARATORS = {
+			RawTextComparator.DEFAULT, RawTextComparator.WS_IGNORE_ALL,
+			RawTextComparator.WS_IGNORE_CHANGE,
+			RawTextComparator.WS_IGNORE_LEADING,
+			RawTextComparator.WS_IGNORE_TRAILING };
+
+	@Test
+	public void testMatchesRawText() throws Exception {
+		byte[] data = Constants.encode("a\r\n  b \n\nlast");
+		RawText raw = new RawText(data);
+		LargeText large = load(data);
+
+		assertEquals(raw.size(), large.size());
+		assertArrayEquals(data, large.getRawContent());
+		assertEquals("\r\n", large.getLineDelimiter());
+		assertTrue(large.isMissingNewlineAtEnd());
+		for (int i = 0; i < raw.size(); i++) {
+			assertEquals(raw.getString(i), large.getString(i));
+			assertEquals(raw.getString(0, i + 1, false),
+					large.getString(0, i + 1, false));
+			assertEquals(write(raw, i), write(large, i));
+		}
+	}
+
+	@Test
+	public void testComparatorMatchesRawTextComparator() throws Exception {
+		byte[] a = Constants.encode("x y\n x  y\nx y \nxy\n\nx y");
+		byte[] b = Constants.encode("x  y\n\t x y\nx y\n x y\nxy  \n");
+		RawText rawA = new RawText(a);
+		RawText rawB = new RawText(b);
+		LargeText largeA = load(a);
+		LargeText largeB = load(b);
+
+		for (RawTextComparator cmp : COMPARATORS) {
+			LargeTextComparator lc = new LargeTextComparator(cmp);
+			for (int i = 0; i < rawA.size(); i++) {
+				assertEquals(cmp.hash(rawA, i), lc.hash(largeA, i));
+				for (int j = 0; j < rawB.size(); j++) {
+					boolean eq = cmp.equals(rawA, i, rawB, j);
+					assertEquals(eq, lc.equals(largeA, i, largeB, j));
+					assertEquals(eq, lc.equals(rawA, i, largeB, j));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		LargeText t = load(new byte[0]);
+		assertEquals(0, t.size());
+		assertTrue(t.isMissingNewlineAtEnd());
+		assertEquals(null, t.getLineDelimiter());
+	}
+
+	@Test(expected = BinaryBlobException.class)
+	public void testBinary() throws Exception {
+		byte[] data = Constants.encode("text\n\0more\n");
+		load(data);
+	}
+
+	@Test
+	public void testNotBinaryWithoutNul() throws Exception {
+		assertFalse(load(Constants.encode("a\n")).isMissingNewlineAtEnd());
+	}
+
+	private LargeText load(byte[] data) throws Exception {
+		ObjectId id;
+		try (ObjectInserter ins = db.newObjectInserter()) {
+			id = ins.insert(Constants.OBJ_BLOB, data);
+			ins.flush();
+		}
+		return LargeText.load(db.open(id), null);
+	}
+
+	private static String write(RawText t, int i) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		t.writeLine(out, i);
+		return out.toString("UTF-8");
+	}
+}
@@ -48,6 +48,7 @@
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -621,6 +622,55 @@ public void testRenameLimit() throws Exception {
 		assertSame(d, entries.get(3));
 	}
 
+	@Test
+	public void testInexactRename_ParallelMatchesSequential()
+			throws Exception {
+		int n = 48;
+		ObjectId[] deleted = new ObjectId[n];
+		ObjectId[] added = new ObjectId[n];
+		for (int i = 0; i < n; i++) {
+			deleted[i] = blob(lines(i, 0));
+			// Each added file shares most lines with two deleted files, so
+			// sources compete for destinations.
+			added[i] = blob(lines((i * 7) % n, 3) + lines((i * 7 + 1) % n, 6));
+		}
+
+		List<String> expected = detect(deleted, added, 1,
+				SimilarityRenameDetector.DEFAULT_INDEX_CACHE_LIMIT);
+		assertTrue(expected.stream()
+				.anyMatch(e -> e.startsWith("DiffEntry[RENAME")));
+		assertEquals(expected, detect(deleted, added, 4,
+				SimilarityRenameDetector.DEFAULT_INDEX_CACHE_LIMIT));
+		assertEquals(expected, detect(deleted, added, 4, 0));
+		assertEquals(expected, detect(deleted, added, 1, 0));
+	}
+
+	private List<String> detect(ObjectId[] deleted, ObjectId[] added,
+			int threads, long cacheLimit) throws Exception {
+		RenameDetector d = new RenameDetector(db);
+		d.setThreads(threads);
+		d.setIndexCacheLimit(cacheLimit);
+		d.setRenameScore(30);
+		for (int i = 0; i < deleted.length; i++) {
+			d.add(DiffEntry.delete("old/f" + i, deleted[i]));
+			d.add(DiffEntry.add("new/g" + i, added[i]));
+		}
+		List<String> r = new ArrayList<>();
+		for (DiffEntry e : d.compute()) {
+			r.add(e + " " + e.getScore());
+		}
+		return r;
+	}
+
+	private static String lines(int file, int skip) {
+		StringBuilder b = new StringBuilder();
+		for (int line = skip; line < 20; line++) {
+			b.append("file ").append(file).append(" line ").append(line)
+					.append('\n');
+		}
+		return b.toString();
+	}
+
 	private ObjectId blob(String content) throws Exception {
 		return testDb.blob(content).copy();
 	}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.dircache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.FS;
+import org.junit.Test;
+
+public class ContentIdCacheTest extends IndexCacheTestCase {
+	private static final ObjectId ID = ObjectId
+			.fromString("ab8f93cba2d0bb50bb82c0bd8e1781b27a2e0bcb");
+
+	@Override
+	protected String getConfigKey() {
+		return ConfigConstants.CONFIG_KEY_CONTENT_ID_CACHE;
+	}
+
+	@Test
+	public void testReadWrite() throws Exception {
+		writeTrashFile("a", "a");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern("a").call();
+		}
+		DirCache dc = db.lockDirCache();
+		ContentIdCache cache = new ContentIdCache();
+		cache.put("a", 1, old, "key", "Aa", ID);
+		cache.put("b", 1, old, null, null, ID);
+		dc.setContentIdCache(cache);
+		assertTrue(cache.isModified());
+		dc.write();
+		assertTrue(dc.commit());
+
+		cache = db.readDirCache().getContentIdCache();
+		assertNotNull(cache);
+		assertFalse(cache.isModified());
+		assertEquals(ID, cache.get("a", 1, old, "key", "Aa"));
+		// Only paths in the index are written.
+		assertNull(cache.get("b", 1, old, null, null));
+		assertNull(cache.get("a", 2, old, "key", "Aa"));
+		assertNull(cache.get("a", 1, old + 1, "key", "Aa"));
+		assertNull(cache.get("a", 1, old, "other", "Aa"));
+		assertNull(cache.get("a", 1, old, null, "Aa"));
+		// Same String.hashCode as "Aa".
+		assertNull(cache.get("a", 1, old, "key", "BB"));
+
+		cache.put("a", 1, old, "key", "Aa", ID);
+		assertFalse(cache.isModified());
+	}
+
+	@Test
+	public void testReusesIdOfUnchangedFile() throws Exception {
+		File a = commitFile();
+		// Only the modification time differs from the index entry, the
+		// content is hashed and recorded.
+		assertTrue(a.setLastModified(old));
+		assertEquals(Collections.emptySet(), diff().getModified());
+		ContentIdCache cache = db.readDirCache().getContentIdCache();
+		assertNotNull(cache);
+		assertFalse(cache.isModified());
+
+		// Content changed behind the cache's back is not seen while the
+		// file's length and modification time stay the same.
+		writeTrashFile("a", "bbb");
+		assertTrue(a.setLastModified(old));
+		assertEquals(Collections.emptySet(), diff().getModified());
+
+		assertTrue(a.setLastModified(old + 1000));
+		assertEquals(Collections.singleton("a"), diff().getModified());
+	}
+
+	@Test
+	public void testReplacedFileIsHashed() throws Exception {
+		File a = commitFile();
+		assertTrue(a.setLastModified(old));
+		assertEquals(Collections.emptySet(), diff().getModified());
+		FS.Attributes attributes = db.getFS().getAttributes(a);
+		assumeNotNull(attributes.getFileKey());
+
+		// Same length and modification time, but another file.
+		File b = writeTrashFile("b", "bbb");
+		assertTrue(b.setLastModified(old));
+		Files.move(b.toPath(), a.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		assertEquals(Collections.singleton("a"), diff().getModified());
+	}
+
+	@Test
+	public void testRecentlyModifiedFileIsNotRecorded() throws Exception {
+		File a = commitFile();
+		long now = (System.currentTimeMillis() + 1000) / 1000 * 1000;
+		assertTrue(a.setLastModified(now));
+		assertEquals(Collections.emptySet(), diff().getModified());
+
+		writeTrashFile("a", "bbb");
+		assertTrue(a.setLastModified(now));
+		assertEquals(Collections.singleton("a"), diff().getModified());
+	}
+
+	private File commitFile() throws Exception {
+		File a = writeTrashFile("a", "aaa");
+		// Not racily clean, so the index entry keeps this time.
+		assertTrue(a.setLastModified(old - 1000));
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern("a").call();
+			git.commit().setMessage("initial").call();
+		}
+		return a;
+	}
+}
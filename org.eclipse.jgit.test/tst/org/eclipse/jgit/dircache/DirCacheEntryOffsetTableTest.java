@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.eclipse.jgit.dircache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.util.NB;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirCacheEntryOffsetTableTest extends RepositoryTestCase {
+	private static final int EOIE = 0x454f4945;
+
+	private static final int IEOT = 0x49454f54;
+
+	private static final int CNT = 25000;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		StoredConfig cfg = db.getConfig();
+		cfg.setInt(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_THREADS, 4);
+		cfg.save();
+	}
+
+	@Test
+	public void testWriteReadVersion2() throws Exception {
+		writeIndex(CNT);
+		int[] blocks = readOffsetTable(Files
+				.readAllBytes(db.getIndexFile().toPath()));
+		assertEquals(4, blocks.length);
+		assertEquals(12, blocks[0]);
+		assertEquals(12500, blocks[1]);
+		assertEquals(12500, blocks[3]);
+		assertEntries(CNT);
+	}
+
+	@Test
+	public void testWriteReadVersion4() throws Exception {
+		StoredConfig cfg = db.getConfig();
+		cfg.setInt(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_VERSION, 4);
+		cfg.save();
+		writeIndex(CNT);
+		byte[] raw = Files.readAllBytes(db.getIndexFile().toPath());
+		assertEquals(4, NB.decodeInt32(raw, 4));
+		assertEquals(4, readOffsetTable(raw).length);
+		assertEntries(CNT);
+	}
+
+	@Test
+	public void testSmallIndexHasNoOffsetTable() throws Exception {
+		writeIndex(100);
+		assertEquals(0, readOffsetTable(Files
+				.readAllBytes(db.getIndexFile().toPath())).length);
+		assertEntries(100);
+	}
+
+	@Test
+	public void testRecordOffsetTableDisabled() throws Exception {
+		StoredConfig cfg = db.getConfig();
+		cfg.setInt(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_THREADS, 1);
+		cfg.save();
+		writeIndex(CNT);
+		assertEquals(0, readOffsetTable(Files
+				.readAllBytes(db.getIndexFile().toPath())).length);
+
+		cfg.setBoolean(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_RECORD_OFFSET_TABLE, true);
+		cfg.save();
+		writeIndex(CNT);
+		assertNotEquals(0, readOffsetTable(Files
+				.readAllBytes(db.getIndexFile().toPath())).length);
+		assertEntries(CNT);
+	}
+
+	@Test
+	public void testInvalidOffsetTableIsIgnored() throws Exception {
+		writeIndex(CNT);
+		byte[] raw = Files.readAllBytes(db.getIndexFile().toPath());
+		int ieot = findExtension(raw, IEOT);
+		// Move an entry from the first block into the second one.
+		NB.encodeInt32(raw, ieot + 16, 12499);
+		NB.encodeInt32(raw, ieot + 24, 12501);
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(raw, 0, raw.length - Constants.OBJECT_ID_LENGTH);
+		System.arraycopy(md.digest(), 0, raw,
+				raw.length - Constants.OBJECT_ID_LENGTH,
+				Constants.OBJECT_ID_LENGTH);
+		Files.write(db.getIndexFile().toPath(), raw);
+		assertEntries(CNT);
+	}
+
+	private void writeIndex(int cnt) throws IOException {
+		DirCache dc = db.lockDirCache();
+		DirCacheBuilder b = dc.builder();
+		for (int i = 0; i < cnt; i++) {
+			DirCacheEntry e = new DirCacheEntry(path(i));
+			e.setFileMode(FileMode.REGULAR_FILE);
+			e.setObjectId(id(i));
+			b.add(e);
+		}
+		b.commit();
+	}
+
+	private void assertEntries(int cnt) throws IOException {
+		DirCache dc = db.readDirCache();
+		assertEquals(cnt, dc.getEntryCount());
+		for (int i = 0; i < cnt; i++) {
+			DirCacheEntry e = dc.getEntry(i);
+			assertEquals(path(i), e.getPathString());
+			assertEquals(id(i), e.getObjectId());
+		}
+	}
+
+	private static String path(int i) {
+		return String.format("d%03d/sub/file%05d", Integer.valueOf(i / 100),
+				Integer.valueOf(i));
+	}
+
+	private static ObjectId id(int i) {
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		NB.encodeInt32(raw, 0, i + 1);
+		return ObjectId.fromRaw(raw);
+	}
+
+	private static int[] readOffsetTable(byte[] raw) {
+		int eoie = raw.length - Constants.OBJECT_ID_LENGTH - 32;
+		if (NB.decodeInt32(raw, eoie) != EOIE)
+			return new int[0];
+		int ieot = findExtension(raw, IEOT);
+		int sz = NB.decodeInt32(raw, ieot + 4);
+		assertEquals(1, NB.decodeInt32(raw, ieot + 8));
+		int[] blocks = new int[(sz - 4) / 4];
+		for (int i = 0; i < blocks.length; i++)
+			blocks[i] = NB.decodeInt32(raw, ieot + 12 + 4 * i);
+		return blocks;
+	}
+
+	private static int findExtension(byte[] raw, int sig) {
+		int eoie = raw.length - Constants.OBJECT_ID_LENGTH - 32;
+		int ptr = NB.decodeInt32(raw, eoie + 8);
+		while (NB.decodeInt32(raw, ptr) != sig)
+			ptr += 8 + NB.decodeInt32(raw, ptr + 4);
+		return ptr;
+	}
+}
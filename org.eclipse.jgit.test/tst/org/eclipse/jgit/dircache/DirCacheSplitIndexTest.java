@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.eclipse.jgit.dircache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.util.NB;
+import org.junit.Test;
+
+public class DirCacheSplitIndexTest extends RepositoryTestCase {
+	@Test
+	public void testVersion4RoundTrip() throws Exception {
+		setIndexVersion(4);
+		String[] paths = { "a/b/c/d/file1", "a/b/c/d/file2",
+				"a/b/c/d/file2x", "a/b/e", "a" + longName(300), "z" };
+		DirCache dc = db.lockDirCache();
+		DirCacheBuilder b = dc.builder();
+		for (String p : paths)
+			b.add(entry(p, 0));
+		b.add(entry("zz", DirCacheEntry.STAGE_1));
+		b.add(entry("zz", DirCacheEntry.STAGE_2));
+		b.add(entry("zz", DirCacheEntry.STAGE_3));
+		b.commit();
+
+		assertEquals(4, readHeader(0));
+		dc = db.readDirCache();
+		assertEquals(paths.length + 3, dc.getEntryCount());
+		for (int i = 0; i < paths.length; i++) {
+			DirCacheEntry e = dc.getEntry(i);
+			assertEquals(paths[i], e.getPathString());
+			assertEquals(blob(paths[i]), e.getObjectId());
+			assertEquals(0, e.getStage());
+		}
+		for (int s = 1; s <= 3; s++)
+			assertEquals(s, dc.getEntry(paths.length + s - 1).getStage());
+
+		// Without index.version the version that was read is kept.
+		setIndexVersion(-1);
+		dc = db.lockDirCache();
+		dc.write();
+		assertTrue(dc.commit());
+		assertEquals(4, readHeader(0));
+
+		setIndexVersion(2);
+		dc = db.lockDirCache();
+		dc.write();
+		assertTrue(dc.commit());
+		assertEquals(2, readHeader(0));
+		assertEquals(paths.length + 3, db.readDirCache().getEntryCount());
+	}
+
+	@Test
+	public void testSplitIndex() throws Exception {
+		setSplitIndex(Boolean.TRUE);
+		writeFiles(0, 20);
+		File[] shared = sharedIndexes();
+		assertEquals(1, shared.length);
+		assertEquals(0, readHeader(1));
+		assertEntries(0, 20);
+
+		// Replace one entry, remove one and add one.
+		DirCache dc = db.lockDirCache();
+		DirCacheEditor ed = dc.editor();
+		ed.add(new DirCacheEditor.PathEdit(path(3)) {
+			@Override
+			public void apply(DirCacheEntry ent) {
+				ent.setObjectId(blob("changed"));
+			}
+		});
+		ed.add(new DirCacheEditor.DeletePath(path(7)));
+		ed.add(new DirCacheEditor.PathEdit("new") {
+			@Override
+			public void apply(DirCacheEntry ent) {
+				ent.setFileMode(FileMode.REGULAR_FILE);
+				ent.setObjectId(blob("new"));
+			}
+		});
+		ed.commit();
+
+		assertEquals(1, sharedIndexes().length);
+		assertEquals(shared[0], sharedIndexes()[0]);
+		assertEquals(2, readHeader(1));
+
+		dc = db.readDirCache();
+		assertEquals(20, dc.getEntryCount());
+		assertEquals(blob("changed"), dc.getEntry(path(3)).getObjectId());
+		assertNull(dc.getEntry(path(7)));
+		assertEquals(blob("new"), dc.getEntry("new").getObjectId());
+		assertEquals(blob(path(8)), dc.getEntry(path(8)).getObjectId());
+	}
+
+	@Test
+	public void testSplitIndexRewritesSharedIndex() throws Exception {
+		setSplitIndex(Boolean.TRUE);
+		writeFiles(0, 10);
+		File[] shared = sharedIndexes();
+		assertEquals(1, shared.length);
+
+		// More than splitIndex.maxPercentChange (20%) of the entries change.
+		writeFiles(0, 13);
+		File[] rewritten = sharedIndexes();
+		assertEquals(2, rewritten.length);
+		assertEquals(0, readHeader(1));
+		assertEntries(0, 13);
+
+		StoredConfig cfg = db.getConfig();
+		cfg.setInt(ConfigConstants.CONFIG_SPLIT_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_MAX_PERCENT_CHANGE, 50);
+		cfg.save();
+		writeFiles(0, 16);
+		assertEquals(2, sharedIndexes().length);
+		assertEquals(3, readHeader(1));
+		assertEntries(0, 16);
+	}
+
+	@Test
+	public void testSplitIndexKeptUntilDisabled() throws Exception {
+		setSplitIndex(Boolean.TRUE);
+		writeFiles(0, 10);
+		File shared = sharedIndexes()[0];
+
+		// Unset, the index stays split.
+		setSplitIndex(null);
+		writeFiles(0, 11);
+		assertEquals(1, readHeader(1));
+
+		setSplitIndex(Boolean.FALSE);
+		writeFiles(0, 11);
+		assertEquals(11, readHeader(1));
+		assertEntries(0, 11);
+		// The shared index is left to expire.
+		assertTrue(shared.exists());
+	}
+
+	private void setIndexVersion(int version) throws IOException {
+		StoredConfig cfg = db.getConfig();
+		if (version < 0)
+			cfg.unset(ConfigConstants.CONFIG_INDEX_SECTION, null,
+					ConfigConstants.CONFIG_KEY_VERSION);
+		else
+			cfg.setInt(ConfigConstants.CONFIG_INDEX_SECTION, null,
+					ConfigConstants.CONFIG_KEY_VERSION, version);
+		cfg.save();
+	}
+
+	private void setSplitIndex(Boolean split) throws IOException {
+		StoredConfig cfg = db.getConfig();
+		if (split == null)
+			cfg.unset(ConfigConstants.CONFIG_CORE_SECTION, null,
+					ConfigConstants.CONFIG_KEY_SPLIT_INDEX);
+		else
+			cfg.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+					ConfigConstants.CONFIG_KEY_SPLIT_INDEX,
+					split.booleanValue());
+		cfg.save();
+	}
+
+	private void writeFiles(int from, int to) throws IOException {
+		DirCache dc = db.lockDirCache();
+		DirCacheBuilder b = dc.builder();
+		for (int i = from; i < to; i++)
+			b.add(entry(path(i), 0));
+		b.commit();
+	}
+
+	private void assertEntries(int from, int to) throws IOException {
+		DirCache dc = db.readDirCache();
+		assertEquals(to - from, dc.getEntryCount());
+		for (int i = from; i < to; i++) {
+			DirCacheEntry e = dc.getEntry(i - from);
+			assertEquals(path(i), e.getPathString());
+			assertEquals(blob(path(i)), e.getObjectId());
+		}
+	}
+
+	private File[] sharedIndexes() {
+		File[] files = db.getDirectory().listFiles(
+				(d, n) -> n.startsWith("sharedindex."));
+		Arrays.sort(files);
+		return files;
+	}
+
+	private int readHeader(int field) throws IOException {
+		byte[] raw = Files.readAllBytes(db.getIndexFile().toPath());
+		return NB.decodeInt32(raw, 4 + 4 * field);
+	}
+
+	private static String path(int i) {
+		return String.format("dir/file%02d", Integer.valueOf(i));
+	}
+
+	private static String longName(int len) {
+		StringBuilder b = new StringBuilder(len);
+		for (int i = 0; i < len; i++)
+			b.append((char) ('a' + i % 26));
+		return b.toString();
+	}
+
+	private static DirCacheEntry entry(String path, int stage) {
+		DirCacheEntry e = new DirCacheEntry(path, stage);
+		e.setFileMode(FileMode.REGULAR_FILE);
+		e.setObjectId(blob(path));
+		return e;
+	}
+
+	private static ObjectId blob(String content) {
+		try (ObjectInserter.Formatter f = new ObjectInserter.Formatter()) {
+			return f.idFor(Constants.OBJ_BLOB,
+					Constants.encode(content));
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.eclipse.jgit.dircache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.SparseCheckout.Match;
+import org.eclipse.jgit.errors.CheckoutConflictException;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+public class SparseCheckoutTest extends RepositoryTestCase {
+	private static final String CONE = "/*\n!/*/\n/a/\n!/a/*/\n/a/b/\n";
+
+	@Test
+	public void testParse() {
+		SparseCheckout s = SparseCheckout.parse(CONE);
+		assertEquals(Collections.singleton("a/b"), s.getDirectories());
+		assertEquals(CONE, s.toString());
+		assertTrue(s.contains("top"));
+		assertTrue(s.contains("a/f"));
+		assertTrue(s.contains("a/b/g"));
+		assertTrue(s.contains("a/b/c/d/g"));
+		assertFalse(s.contains("a/c/g"));
+		assertFalse(s.contains("c/h"));
+		assertEquals(Match.PARENT, s.matchDirectory(""));
+		assertEquals(Match.PARENT, s.matchDirectory("a"));
+		assertEquals(Match.RECURSIVE, s.matchDirectory("a/b"));
+		assertEquals(Match.RECURSIVE, s.matchDirectory("a/b/c"));
+		assertEquals(Match.OUTSIDE, s.matchDirectory("a/c"));
+		assertEquals(Match.OUTSIDE, s.matchDirectory("c"));
+
+		assertNull(SparseCheckout.parse("*.txt\n"));
+		assertNull(SparseCheckout.parse("/a/\n"));
+		assertTrue(SparseCheckout.parse("/*\n").contains("c/h"));
+		assertEquals("/*\n!/*/\n/x\\*y/\n",
+				new SparseCheckout(Arrays.asList("x*y")).toString());
+		assertTrue(SparseCheckout.parse("/*\n!/*/\n/x\\*y/\n")
+				.contains("x*y/z"));
+	}
+
+	@Test
+	public void testCheckout() throws Exception {
+		RevCommit head = commitFiles();
+		new SparseCheckout(Arrays.asList("a/b")).write(db);
+		checkout(head);
+
+		assertTrue(new File(trash, "top").exists());
+		assertTrue(new File(trash, "a/f").exists());
+		assertTrue(new File(trash, "a/b/g").exists());
+		assertFalse(new File(trash, "c").exists());
+		assertFalse(new File(trash, "a/x").exists());
+		DirCache dc = db.readDirCache();
+		assertEquals(6, dc.getEntryCount());
+		assertTrue(dc.getEntry("c/h").isSkipWorkTree());
+		assertTrue(dc.getEntry("c/d/i").isSkipWorkTree());
+		assertTrue(dc.getEntry("a/x/y").isSkipWorkTree());
+		assertFalse(dc.getEntry("a/b/g").isSkipWorkTree());
+		try (Git git = new Git(db)) {
+			assertTrue(git.status().call().isClean());
+		}
+
+		// The cone grows; files directly in a parent of the cone are in.
+		new SparseCheckout(Arrays.asList("a")).write(db);
+		checkout(head);
+		assertTrue(new File(trash, "a/x/y").exists());
+		assertFalse(new File(trash, "c").exists());
+		new SparseCheckout(Arrays.asList("a", "c/d")).write(db);
+		checkout(head);
+		assertTrue(new File(trash, "c/d/i").exists());
+		assertTrue(new File(trash, "c/h").exists());
+		dc = db.readDirCache();
+		for (int i = 0; i < dc.getEntryCount(); i++)
+			assertFalse(dc.getEntry(i).isSkipWorkTree());
+	}
+
+	@Test
+	public void testModifiedFileLeavingConeIsKept() throws Exception {
+		RevCommit head = commitFiles();
+		writeTrashFile("c/h", "modified");
+		new SparseCheckout(Arrays.asList("a/b")).write(db);
+		checkout(head);
+
+		assertTrue(new File(trash, "c/h").exists());
+		assertFalse(new File(trash, "c/d/i").exists());
+		DirCache dc = db.readDirCache();
+		assertFalse(dc.getEntry("c/h").isSkipWorkTree());
+		assertTrue(dc.getEntry("c/d/i").isSkipWorkTree());
+	}
+
+	@Test
+	public void testFileCreatedOutsideOfConeIsKept() throws Exception {
+		RevCommit first = commitFiles();
+		RevCommit second;
+		writeTrashFile("c/h", "h2");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern("c/h").call();
+			second = git.commit().setMessage("change h").call();
+		}
+		new SparseCheckout(Arrays.asList("a/b")).write(db);
+		checkout(second);
+		assertFalse(new File(trash, "c/h").exists());
+
+		// The skip-worktree file is edited although it is outside the cone.
+		writeTrashFile("c/h", "edited");
+		DirCacheCheckout dco = new DirCacheCheckout(db, second.getTree(),
+				db.lockDirCache(), first.getTree());
+		try {
+			dco.checkout();
+			fail("expected CheckoutConflictException");
+		} catch (CheckoutConflictException e) {
+			assertEquals(Arrays.asList("c/h"), dco.getConflicts());
+		}
+		assertEquals("edited", read("c/h"));
+
+		// Checking out the same commit keeps the file and tracks it again.
+		checkout(second);
+		assertEquals("edited", read("c/h"));
+		DirCache dc = db.readDirCache();
+		assertFalse(dc.getEntry("c/h").isSkipWorkTree());
+		assertTrue(dc.getEntry("c/d/i").isSkipWorkTree());
+	}
+
+	@Test
+	public void testSparseIndex() throws Exception {
+		RevCommit head = commitFiles();
+		StoredConfig cfg = db.getConfig();
+		cfg.setBoolean(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPARSE, true);
+		cfg.save();
+		new SparseCheckout(Arrays.asList("a/b")).write(db);
+		checkout(head);
+
+		// On disk, directories outside of the cone are single entries.
+		DirCache sparse = DirCache.read(db.getIndexFile(), db.getFS());
+		assertEquals(5, sparse.getEntryCount());
+		assertEquals("a/b/g", sparse.getEntry(0).getPathString());
+		assertEquals("a/f", sparse.getEntry(1).getPathString());
+		DirCacheEntry x = sparse.getEntry(2);
+		assertEquals("a/x/", x.getPathString());
+		assertTrue(x.isSparseDirectory());
+		assertTrue(x.isSkipWorkTree());
+		assertEquals(FileMode.TREE, x.getFileMode());
+		assertEquals("c/", sparse.getEntry(3).getPathString());
+		assertEquals("top", sparse.getEntry(4).getPathString());
+
+		// Read through the repository, the index is complete.
+		DirCache dc = db.readDirCache();
+		assertEquals(6, dc.getEntryCount());
+		assertEquals("c/d/i", dc.getEntry(3).getPathString());
+		assertTrue(dc.getEntry(3).isSkipWorkTree());
+		assertEquals(head.getTree(), dc.writeTree(db.newObjectInserter()));
+		try (Git git = new Git(db)) {
+			assertTrue(git.status().call().isClean());
+		}
+
+		// Without index.sparse the index is written in full again.
+		cfg.setBoolean(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPARSE, false);
+		cfg.save();
+		dc = db.lockDirCache();
+		dc.write();
+		assertTrue(dc.commit());
+		assertEquals(6, DirCache.read(db.getIndexFile(), db.getFS())
+				.getEntryCount());
+	}
+
+	private RevCommit commitFiles() throws Exception {
+		writeTrashFile("top", "top");
+		writeTrashFile("a/f", "f");
+		writeTrashFile("a/b/g", "g");
+		writeTrashFile("a/x/y", "y");
+		writeTrashFile("c/h", "h");
+		writeTrashFile("c/d/i", "i");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".").call();
+			return git.commit().setMessage("files").call();
+		}
+	}
+
+	private void checkout(RevCommit head) throws Exception {
+		DirCacheCheckout dco = new DirCacheCheckout(db, head.getTree(),
+				db.lockDirCache(), head.getTree());
+		assertTrue(dco.checkout());
+	}
+}
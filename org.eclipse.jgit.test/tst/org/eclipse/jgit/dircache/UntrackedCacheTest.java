@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.dircache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.FS_POSIX;
+import org.junit.Test;
+
+public class UntrackedCacheTest extends IndexCacheTestCase {
+	@Override
+	protected String getConfigKey() {
+		return ConfigConstants.CONFIG_KEY_UNTRACKED_CACHE;
+	}
+
+	@Test
+	public void testReadWriteCGitExtension() throws Exception {
+		// Written by C Git 2.39 for a work tree with the tracked files
+		// .gitignore ("*.o") and a/f, the untracked files a/b/g and c/h,
+		// and the ignored file a/x.o.
+		byte[] raw = hex(
+				"1f4c6f636174696f6e202f746d702f75632c2073797374656d204c696e757800"
+				+ "6ad6592a1467b9586ad6592a1467b9580000fe0000b7c0800000000000000000"
+				+ "000000f000000000000000000000000000000000000000000000000000000000"
+				+ "000000000000000000000006cc30ca8b9b10bb92f8e5c96ee94348c6c4ac93e6"
+				+ "00000000000000000000000000000000000000002e67697469676e6f72650004"
+				+ "010200632f0001016100622f0001006200670001006300680000000004000000"
+				+ "020000000200000000000000000000000f000000000000000400000002000000"
+				+ "0200000000000000000000000c00000000000000010000000200000002000000"
+				+ "000000000000000001000000006ad6592a148d3dc96ad6592a148d3dc90000fe"
+				+ "0000b7c00d0000000000000000000010006ad6592a148d3dc96ad6592a148d3d"
+				+ "c90000fe0000b7c08f0000000000000000000010006ad6592a148d3dc96ad659"
+				+ "2a148d3dc90000fe0000b7c0900000000000000000000010006ad6592a148d3d"
+				+ "c96ad6592a148d3dc90000fe0000b7c0950000000000000000000010005761ab"
+				+ "cfdf0c26a75374c945dfe366eaeee0428500");
+		UntrackedCache cache = new UntrackedCache(raw);
+		assertArrayEquals(raw, cache.toByteArray());
+		assertFalse(cache.isModified());
+
+		UntrackedCache.Directory root = cache.getRoot();
+		assertTrue(root.isUntracked("c/"));
+		assertNotNull(root.getExcludeId());
+		UntrackedCache.Directory a = root.getDirectory("a");
+		assertTrue(a.isUntracked("b/"));
+		assertFalse(a.isUntracked("x.o"));
+		assertNull(a.getExcludeId());
+		assertTrue(a.getDirectory("b").isUntracked("g"));
+		assertNull(root.getDirectory("d"));
+	}
+
+	@Test
+	public void testReusesListingOfUnchangedDirectory() throws Exception {
+		setUpWorkTree();
+		IndexDiff diff = diff();
+		assertEquals(set("a/u", "a/b/g"), diff.getUntracked());
+		assertEquals(set("a/x.o"), diff.getIgnoredNotInIndex());
+		UntrackedCache cache = db.readDirCache().getUntrackedCache();
+		assertNotNull(cache);
+		assertFalse(cache.isModified());
+
+		// A file added behind the cache's back is not seen while the
+		// directory's modification time stays the same.
+		File a = new File(trash, "a");
+		writeTrashFile("a/new", "new");
+		assertTrue(a.setLastModified(old));
+		assertEquals(set("a/u", "a/b/g"), diff().getUntracked());
+
+		assertTrue(a.setLastModified(old + 1000));
+		assertEquals(set("a/u", "a/new", "a/b/g"), diff().getUntracked());
+	}
+
+	@Test
+	public void testDoesNotExamineUntrackedFilesOfUnchangedDirectory()
+			throws Exception {
+		setUpWorkTree();
+		assertEquals(set("a/u", "a/b/g"), diff().getUntracked());
+
+		RecordingFS fs = new RecordingFS();
+		try (Repository repo = new FileRepositoryBuilder()
+				.setGitDir(db.getDirectory()).setFS(fs).build()) {
+			IndexDiff diff = new IndexDiff(repo, repo.resolve("HEAD"),
+					new FileTreeIterator(repo));
+			diff.diff();
+			assertEquals(set("a/u", "a/b/g"), diff.getUntracked());
+			assertEquals(set("a/x.o"), diff.getIgnoredNotInIndex());
+		}
+		assertTrue(fs.examined.contains(new File(trash, "a/f")));
+		assertFalse(fs.examined.contains(new File(trash, "a/u")));
+		assertFalse(fs.examined.contains(new File(trash, "a/b/g")));
+	}
+
+	@Test
+	public void testChangedIgnoreRulesInvalidateSubdirectories()
+			throws Exception {
+		setUpWorkTree();
+		assertEquals(set("a/u", "a/b/g"), diff().getUntracked());
+
+		writeTrashFile(".gitignore", "*.o\nu\n");
+		assertTrue(trash.setLastModified(old));
+		IndexDiff diff = diff();
+		assertEquals(set("a/b/g"), diff.getUntracked());
+		assertEquals(set("a/u", "a/x.o"), diff.getIgnoredNotInIndex());
+	}
+
+	@Test
+	public void testAddingToIndexInvalidatesDirectory() throws Exception {
+		setUpWorkTree();
+		assertEquals(set("a/u", "a/b/g"), diff().getUntracked());
+
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern("a/u").call();
+		}
+		assertNotNull(db.readDirCache().getUntrackedCache());
+		IndexDiff diff = diff();
+		assertEquals(set("a/u"), diff.getAdded());
+		assertEquals(set("a/b/g"), diff.getUntracked());
+	}
+
+	@Test
+	public void testDisabledByDefault() throws Exception {
+		StoredConfig cfg = db.getConfig();
+		cfg.unset(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_UNTRACKED_CACHE);
+		cfg.save();
+		setUpWorkTree();
+		assertEquals(set("a/u", "a/b/g"), diff().getUntracked());
+		assertNull(db.readDirCache().getUntrackedCache());
+	}
+
+	private void setUpWorkTree() throws Exception {
+		writeTrashFile(".gitignore", "*.o\n");
+		writeTrashFile("a/f", "f");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".").call();
+			RevCommit c = git.commit().setMessage("initial").call();
+			assertNotNull(c);
+		}
+		writeTrashFile("a/u", "u");
+		writeTrashFile("a/x.o", "x");
+		writeTrashFile("a/b/g", "g");
+		for (String dir : Arrays.asList("", "a", "a/b")) {
+			assertTrue(new File(trash, dir).setLastModified(old));
+		}
+	}
+
+	private static class RecordingFS extends FS_POSIX {
+		final Set<File> examined = new HashSet<>();
+
+		@Override
+		public FS newInstance() {
+			return this;
+		}
+
+		@Override
+		public Attributes getAttributes(File path) {
+			examined.add(path);
+			return super.getAttributes(path);
+		}
+	}
+
+	private static Set<String> set(String... paths) {
+		return new HashSet<>(Arrays.asList(paths));
+	}
+
+	private static byte[] hex(String s) {
+		byte[] r = new byte[s.length() / 2];
+		for (int i = 0; i < r.length; i++) {
+			r[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2),
+					16);
+		}
+		return r;
+	}
+}
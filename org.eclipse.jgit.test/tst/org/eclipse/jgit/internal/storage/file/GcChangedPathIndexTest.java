@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.junit.TestRepository.BranchBuilder;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ChangedPathIndex;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.FollowFilter;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+public class GcChangedPathIndexTest extends GcTestCase {
+	private static final String[][] QUERIES = { { "a" }, { "dir" },
+			{ "dir/b" }, { "dir/sub/c" }, { "d" }, { "a", "dir/sub" },
+			{ "missing" } };
+
+	private int skipped;
+
+	@Test
+	public void indexNotWrittenByDefault() throws Exception {
+		createHistory();
+		gc.gc();
+		assertFalse(indexFile().exists());
+		assertNull(repo.getObjectDatabase().getChangedPathIndex());
+	}
+
+	@Test
+	public void indexWrittenWhenConfigured() throws Exception {
+		createHistory();
+		FileBasedConfig c = repo.getConfig();
+		c.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null,
+				ConfigConstants.CONFIG_KEY_WRITE_CHANGED_PATHS, true);
+		c.save();
+		gc.gc();
+		assertTrue(indexFile().exists());
+	}
+
+	@Test
+	public void indexAnswersForEachCommit() throws Exception {
+		BranchBuilder master = tr.branch("master");
+		RevCommit c1 = master.commit().add("a", "1").add("dir/sub/c", "1")
+				.create();
+		RevCommit c2 = master.commit().add("dir/sub/c", "2").create();
+		RevCommit c3 = master.commit().add("a", "2").create();
+		RevCommit c4 = master.commit().create();
+		writeIndex();
+
+		ChangedPathBloomIndex idx = repo.getObjectDatabase()
+				.getChangedPathIndex();
+		assertNotNull(idx);
+		assertEquals(4, idx.getCommitCount());
+		for (RevCommit c : new RevCommit[] { c1, c2, c3, c4 }) {
+			assertTrue(idx.contains(c));
+		}
+
+		assertTrue(idx.mayHaveChanged(c1, paths("a")));
+		assertTrue(idx.mayHaveChanged(c2, paths("dir")));
+		assertTrue(idx.mayHaveChanged(c2, paths("dir/sub")));
+		assertTrue(idx.mayHaveChanged(c2, paths("dir/sub/c")));
+		assertFalse(idx.mayHaveChanged(c2, paths("a")));
+		assertFalse(idx.mayHaveChanged(c3, paths("dir")));
+		assertFalse(idx.mayHaveChanged(c4, paths("a", "dir")));
+
+		RevCommit c5 = master.commit().add("a", "3").create();
+		assertFalse(idx.contains(c5));
+		assertTrue(idx.mayHaveChanged(c5, paths("missing")));
+	}
+
+	@Test
+	public void pathLimitedHistoryMatchesWithoutIndex() throws Exception {
+		createHistory();
+		List<List<RevCommit>> expected = logAll();
+		writeIndex();
+		assertNotNull(repo.getObjectDatabase().getChangedPathIndex());
+		assertEquals(expected, logAll());
+		assertTrue(skipped > 0);
+		assertEquals(follow("dir/b", false), follow("dir/b", true));
+	}
+
+	@Test
+	public void staleIndexStillCorrect() throws Exception {
+		BranchBuilder master = createHistory();
+		writeIndex();
+		master.commit().add("dir/b", "new").create();
+		master.commit().add("d", "new").create();
+		master.commit().add("e", "new").create();
+		List<List<RevCommit>> expected = logAll(false);
+		assertEquals(expected, logAll());
+
+		try (ObjectReader reader = repo.newObjectReader()) {
+			ChangedPathBloomIndexWriter w = new ChangedPathBloomIndexWriter(
+					reader);
+			w.addReachable(Collections.singleton(master.commit().create()),
+					repo.getObjectDatabase().getChangedPathIndex(),
+					NullProgressMonitor.INSTANCE);
+			assertEquals(8, w.getReusedCount());
+		}
+	}
+
+	@Test
+	public void corruptIndexIsIgnored() throws Exception {
+		createHistory();
+		List<List<RevCommit>> expected = logAll();
+		writeIndex();
+		byte[] content = Files.readAllBytes(indexFile().toPath());
+		content[content.length / 2] ^= 0x5a;
+		Files.write(indexFile().toPath(), content);
+		assertNull(repo.getObjectDatabase().getChangedPathIndex());
+		assertEquals(expected, logAll());
+
+		FileUtils.delete(indexFile());
+		assertNull(repo.getObjectDatabase().getChangedPathIndex());
+		assertEquals(expected, logAll());
+	}
+
+	private BranchBuilder createHistory() throws Exception {
+		BranchBuilder master = tr.branch("master");
+		master.commit().add("a", "1").add("dir/b", "1").create();
+		master.commit().add("dir/sub/c", "1").create();
+		RevCommit base = master.commit().add("a", "2").create();
+		master.commit().add("d", "1").create();
+		RevCommit side = tr.branch("side").commit().parent(base)
+				.add("dir/b", "side").create();
+		master.commit().parent(side).add("dir/b", "side").create();
+		master.commit().rm("dir/b").add("dir/e", "side").create();
+		master.commit().add("dir/b", "side").rm("dir/e").create();
+		return master;
+	}
+
+	private void writeIndex() throws Exception {
+		gc.setWriteChangedPaths(true);
+		gc.gc();
+		assertTrue(indexFile().exists());
+	}
+
+	private File indexFile() {
+		return repo.getObjectDatabase().getChangedPathIndexFile();
+	}
+
+	private List<List<RevCommit>> logAll() throws Exception {
+		return logAll(true);
+	}
+
+	private List<List<RevCommit>> logAll(boolean useIndex) throws Exception {
+		List<List<RevCommit>> r = new ArrayList<>();
+		for (String[] q : QUERIES) {
+			r.add(log(AndTreeFilter.create(PathFilterGroup.createFromStrings(q),
+					TreeFilter.ANY_DIFF), useIndex));
+		}
+		return r;
+	}
+
+	private List<RevCommit> follow(String path, boolean useIndex)
+			throws Exception {
+		return log(FollowFilter.create(path, repo.getConfig().get(
+				DiffConfig.KEY)), useIndex);
+	}
+
+	private List<RevCommit> log(TreeFilter filter, boolean useIndex)
+			throws Exception {
+		List<RevCommit> r = new ArrayList<>();
+		try (ObjectReader reader = new CountingReader(useIndex);
+				RevWalk rw = new RevWalk(reader)) {
+			rw.setTreeFilter(filter);
+			rw.markStart(rw.parseCommit(repo.resolve("refs/heads/master")));
+			for (RevCommit c : rw) {
+				r.add(c);
+			}
+		}
+		return r;
+	}
+
+	private static Set<byte[]> paths(String... p) {
+		Set<byte[]> r = new HashSet<>();
+		for (String s : p) {
+			r.add(Constants.encode(s));
+		}
+		return r;
+	}
+
+	private class CountingReader extends ObjectReader.Filter {
+		private final ObjectReader delegate = repo.newObjectReader();
+
+		private final boolean useIndex;
+
+		CountingReader(boolean useIndex) {
+			this.useIndex = useIndex;
+		}
+
+		@Override
+		protected ObjectReader delegate() {
+			return delegate;
+		}
+
+		@Override
+		public ChangedPathIndex getChangedPathIndex() throws IOException {
+			ChangedPathIndex idx = delegate.getChangedPathIndex();
+			if (!useIndex || idx == null) {
+				return null;
+			}
+			return new ChangedPathIndex() {
+				@Override
+				public boolean contains(AnyObjectId commit) {
+					return idx.contains(commit);
+				}
+
+				@Override
+				public boolean mayHaveChanged(AnyObjectId commit,
+						Set<byte[]> paths) {
+					boolean r = idx.mayHaveChanged(commit, paths);
+					if (!r) {
+						skipped++;
+					}
+					return r;
+				}
+			};
+		}
+	}
+}
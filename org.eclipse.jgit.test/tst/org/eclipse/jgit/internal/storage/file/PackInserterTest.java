@@ -65,12 +65,14 @@
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheBuilder;
@@ -490,6 +492,49 @@ public void readBackSmallObjectBeforeLargeObject() throws Exception {
 		}
 	}
 
+	@Test
+	public void insertDeflated() throws Exception {
+		byte[] blob = Constants.encode("deflated contents");
+		byte[] largeBlob = newLargeBlob();
+		ObjectId blobId;
+		ObjectId largeBlobId;
+		try (PackInserter ins = newInserter()) {
+			blobId = ins.idFor(OBJ_BLOB, blob);
+			byte[] deflated = deflate(blob);
+			assertEquals(blobId, ins.insertDeflated(blobId, OBJ_BLOB,
+					blob.length, deflated, 0, deflated.length));
+			assertEquals(blobId, ins.insertDeflated(blobId, OBJ_BLOB,
+					blob.length, deflated, 0, deflated.length));
+			largeBlobId = ins.idFor(OBJ_BLOB, largeBlob);
+			deflated = deflate(largeBlob);
+			ins.insertDeflated(largeBlobId, OBJ_BLOB, largeBlob.length,
+					deflated, 0, deflated.length);
+			ins.flush();
+		}
+
+		assertPacksOnly();
+		List<PackFile> packs = listPacks();
+		assertEquals(1, packs.size());
+		assertEquals(2, packs.get(0).getObjectCount());
+		try (ObjectReader reader = db.newObjectReader()) {
+			assertBlob(reader, blobId, blob);
+			assertBlob(reader, largeBlobId, largeBlob);
+		}
+	}
+
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] buf = new byte[data.length + 64];
+			int n = deflater.deflate(buf);
+			return Arrays.copyOf(buf, n);
+		} finally {
+			deflater.end();
+		}
+	}
+
 	private List<PackFile> listPacks() throws Exception {
 		List<PackFile> fromOpenDb = listPacks(db);
 		List<PackFile> reopened;
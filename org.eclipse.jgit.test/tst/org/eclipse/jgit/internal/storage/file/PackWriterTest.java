@@ -64,6 +64,7 @@
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.internal.storage.file.PackIndex.MutableEntry;
@@ -485,6 +486,85 @@ public void testDeltaStatistics() throws Exception {
 		}
 	}
 
+	@Test
+	public void testParallelCountingMatchesSequential() throws Exception {
+		FileRepository repo = createBareRepository();
+		TestRepository<FileRepository> testRepo = new TestRepository<>(repo);
+		BranchBuilder bb = testRepo.branch("refs/heads/master");
+		RevCommit tip = null;
+		for (int i = 0; i < 8; i++) {
+			TestRepository<FileRepository>.CommitBuilder cb = bb.commit();
+			for (int d = 0; d < 4; d++) {
+				cb.add("d" + d + "/e" + (i % 3) + "/f" + i, "c" + d + i);
+				cb.add("d" + d + "/g", "shared" + d);
+			}
+			tip = cb.create();
+		}
+
+		List<PackStatistics> stats = new ArrayList<>();
+		byte[] seq = writePack(repo, tip, pc -> pc.setCountingThreads(1),
+				stats);
+		byte[] par = writePack(repo, tip, pc -> pc.setCountingThreads(4),
+				stats);
+		PackStatistics seqStats = stats.get(0);
+		PackStatistics parStats = stats.get(1);
+
+		assertTrue(Arrays.equals(seq, par));
+		assertEquals(seqStats.getTotalObjects(), parStats.getTotalObjects());
+		for (int type = 1; type <= 4; type++)
+			assertEquals(seqStats.byObjectType(type).getObjects(),
+					parStats.byObjectType(type).getObjects());
+	}
+
+	@Test
+	public void testParallelDeflateMatchesSequential() throws Exception {
+		FileRepository repo = createBareRepository();
+		TestRepository<FileRepository> testRepo = new TestRepository<>(repo);
+		BranchBuilder bb = testRepo.branch("refs/heads/master");
+		RevCommit tip = null;
+		for (int i = 0; i < 6; i++) {
+			TestRepository<FileRepository>.CommitBuilder cb = bb.commit();
+			for (int f = 0; f < 5; f++)
+				cb.add("dir/f" + f, genDeltableData(2000 + 10 * f + i));
+			tip = cb.create();
+		}
+
+		List<PackStatistics> stats = new ArrayList<>();
+		byte[] seq = writePack(repo, tip, deflating(1), stats);
+		byte[] par = writePack(repo, tip, deflating(4), stats);
+
+		assertTrue(Arrays.equals(seq, par));
+		assertTrue(stats.get(1).getTotalDeltas() > 0);
+		assertEquals(stats.get(0).getTotalDeltas(),
+				stats.get(1).getTotalDeltas());
+
+		index(par).parse(NullProgressMonitor.INSTANCE);
+	}
+
+	private static Consumer<PackConfig> deflating(int deflateThreads) {
+		return pc -> {
+			pc.setDeflateThreads(deflateThreads);
+			pc.setDeltaCompress(true);
+			pc.setDeltaCacheSize(1);
+		};
+	}
+
+	private byte[] writePack(FileRepository repo, ObjectId tip,
+			Consumer<PackConfig> configure, List<PackStatistics> stats)
+			throws IOException {
+		PackConfig pc = new PackConfig(repo);
+		pc.setThreads(1);
+		configure.accept(pc);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (PackWriter pw = new PackWriter(pc, repo.newObjectReader())) {
+			NullProgressMonitor m = NullProgressMonitor.INSTANCE;
+			pw.preparePack(m, wants(tip), NONE);
+			pw.writePack(m, m, out);
+			stats.add(pw.getStatistics());
+		}
+		return out.toByteArray();
+	}
+
 	// Generate consistent junk data for building files that delta well
 	private String genDeltableData(int length) {
 		assertTrue("Generated data must have a length > 0", length > 0);
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.pack;
+
+import static org.eclipse.jgit.lib.Constants.OBJ_TREE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreePrefetchReaderTest {
+	private InMemoryRepository repo;
+
+	private TestRepository<InMemoryRepository> git;
+
+	private List<ObjectId> trees;
+
+	@Before
+	public void setUp() throws Exception {
+		repo = new InMemoryRepository(new DfsRepositoryDescription("test"));
+		git = new TestRepository<>(repo);
+		RevBlob blob = git.blob("content");
+		RevTree root = git.tree(git.file("a/b/c", blob),
+				git.file("a/d", blob), git.file("e/f", blob));
+		trees = Arrays.asList(root, git.get(root, "a"),
+				git.get(root, "a/b"), git.get(root, "e"));
+	}
+
+	@Test
+	public void testServesPrefetchedTrees() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try (ObjectReader reader = repo.newObjectReader();
+				TreePrefetchReader prefetch = new TreePrefetchReader(reader,
+						2)) {
+			prefetch.start(trees.subList(0, 1), executor);
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+			for (ObjectId id : trees)
+				assertArrayEquals(reader.open(id, OBJ_TREE).getCachedBytes(),
+						prefetch.open(id, OBJ_TREE).getCachedBytes());
+			assertEquals(trees.size(), prefetch.getHitCount());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testRejectedWorkers() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		executor.shutdown();
+		try (ObjectReader reader = repo.newObjectReader();
+				TreePrefetchReader prefetch = new TreePrefetchReader(reader,
+						2)) {
+			prefetch.start(trees.subList(0, 1), executor);
+
+			for (ObjectId id : trees)
+				assertArrayEquals(reader.open(id, OBJ_TREE).getCachedBytes(),
+						prefetch.open(id, OBJ_TREE).getCachedBytes());
+			assertEquals(0, prefetch.getHitCount());
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ThreadPoolsTest {
+	@Test
+	public void testShutdownCancelsQueuedTasks() throws Exception {
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		CountDownLatch started = new CountDownLatch(1);
+		Future<?> running = pool.submit(() -> {
+			started.countDown();
+			Thread.sleep(200);
+			return null;
+		});
+		Future<?> queued = pool.submit(() -> null);
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		ThreadPools.shutdown(pool, Arrays.asList(running, null, queued));
+		assertTrue(pool.isTerminated());
+		assertTrue(queued.isCancelled());
+	}
+
+	@Test
+	public void testShutdownKeepsInterrupt() throws Exception {
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		CountDownLatch started = new CountDownLatch(1);
+		pool.submit(() -> {
+			started.countDown();
+			Thread.sleep(200);
+			return null;
+		});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		Thread.currentThread().interrupt();
+		try {
+			ThreadPools.shutdown(pool);
+			assertTrue(pool.isTerminated());
+		} finally {
+			assertTrue(Thread.interrupted());
+		}
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+}
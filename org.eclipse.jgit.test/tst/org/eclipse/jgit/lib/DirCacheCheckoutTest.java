@@ -218,6 +218,71 @@ public void testResetHard() throws IOException, NoFilepatternException,
 		}
 	}
 
+	@Test
+	public void testResetHardWithParallelWorkers() throws Exception {
+		StoredConfig cfg = db.getConfig();
+		cfg.setInt(ConfigConstants.CONFIG_CHECKOUT_SECTION, null,
+				ConfigConstants.CONFIG_KEY_WORKERS, 4);
+		cfg.setInt(ConfigConstants.CONFIG_CHECKOUT_SECTION, null,
+				ConfigConstants.CONFIG_KEY_THRESHOLD_FOR_PARALLELISM, 2);
+		cfg.save();
+		ChangeRecorder recorder = new ChangeRecorder();
+		ListenerHandle handle = null;
+		try (Git git = new Git(db)) {
+			handle = db.getListenerList()
+					.addWorkingTreeModifiedListener(recorder);
+			HashMap<String, String> first = new HashMap<>();
+			HashMap<String, String> second = new HashMap<>();
+			for (int i = 0; i < 40; i++) {
+				String path = "D" + (i % 4) + "/f" + i;
+				first.put(path, "first " + i);
+				second.put(path, "second " + i);
+			}
+			first.put("DF/DF", "dir");
+			second.put("DF", "file");
+			for (Map.Entry<String, String> e : first.entrySet()) {
+				writeTrashFile(e.getKey(), e.getValue());
+			}
+			git.add().addFilepattern(".").call();
+			RevCommit c1 = git.commit().setMessage("first").call();
+			FileUtils.delete(new File(db.getWorkTree(), "DF"),
+					FileUtils.RECURSIVE);
+			for (Map.Entry<String, String> e : second.entrySet()) {
+				writeTrashFile(e.getKey(), e.getValue());
+			}
+			git.add().addFilepattern(".").setUpdate(true).call();
+			git.add().addFilepattern(".").call();
+			RevCommit c2 = git.commit().setMessage("second").call();
+			recorder.assertNoEvent();
+
+			DirCacheCheckout dco1 = new DirCacheCheckout(db, c2.getTree(),
+					db.lockDirCache(), c1.getTree());
+			assertTrue(dco1.checkout());
+			assertIndex(first);
+			assertWorkDir(first);
+			assertEquals(4, dco1.getStatistics().getWorkers());
+			assertEquals(41, dco1.getStatistics().getFilesWritten());
+			assertEquals(41, dco1.getUpdated().size());
+
+			DirCacheCheckout dco2 = new DirCacheCheckout(db, c1.getTree(),
+					db.lockDirCache(), c2.getTree());
+			assertTrue(dco2.checkout());
+			assertIndex(second);
+			assertWorkDir(second);
+			assertEquals(4, dco2.getStatistics().getWorkers());
+			assertEquals(41, dco2.getStatistics().getFilesWritten());
+			long bytes = 0;
+			for (String content : second.values()) {
+				bytes += content.length();
+			}
+			assertEquals(bytes, dco2.getStatistics().getBytesWritten());
+		} finally {
+			if (handle != null) {
+				handle.remove();
+			}
+		}
+	}
+
 	/**
 	 * Reset hard from unclean condition.
 	 * <p>
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSystemMonitorTest extends RepositoryTestCase {
+	private TestMonitor monitor;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		writeTrashFile("a.txt", "a");
+		writeTrashFile("sub/b.txt", "b");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".").call();
+			git.commit().setMessage("initial").call();
+		}
+		monitor = new TestMonitor();
+		FileSystemMonitorRegistry.register(db.getWorkTree(), monitor);
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		FileSystemMonitorRegistry.unregister(db.getWorkTree());
+		super.tearDown();
+	}
+
+	@Test
+	public void testStatusSkipsUnchangedFiles() throws Exception {
+		assertFalse(diff().diff());
+		DirCache dc = db.readDirCache();
+		assertEquals(monitor.token(), dc.getFileSystemMonitorToken());
+		assertTrue(dc.getEntry("a.txt").isFileSystemMonitorValid());
+		assertTrue(dc.getEntry("sub/b.txt").isFileSystemMonitorValid());
+
+		// Not reported by the monitor, so it isn't examined.
+		writeTrashFile("sub/b.txt", "modified");
+		assertFalse(diff().diff());
+
+		monitor.change("sub");
+		IndexDiff diff = diff();
+		assertTrue(diff.diff());
+		assertEquals(Collections.singleton("sub/b.txt"), diff.getModified());
+		dc = db.readDirCache();
+		assertTrue(dc.getEntry("a.txt").isFileSystemMonitorValid());
+		assertFalse(dc.getEntry("sub/b.txt").isFileSystemMonitorValid());
+	}
+
+	@Test
+	public void testStatusWithoutMonitor() throws Exception {
+		StoredConfig cfg = db.getConfig();
+		cfg.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_FSMONITOR, false);
+		cfg.save();
+		assertFalse(diff().diff());
+		assertNull(db.readDirCache().getFileSystemMonitorToken());
+		writeTrashFile("sub/b.txt", "modified");
+		assertEquals(Collections.singleton("sub/b.txt"),
+				diffed().getModified());
+	}
+
+	@Test
+	public void testAddSkipsUnchangedFiles() throws Exception {
+		assertFalse(diff().diff());
+		ObjectId a = db.readDirCache().getEntry("a.txt").getObjectId();
+		writeTrashFile("a.txt", "modified");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".").call();
+			assertEquals(a, db.readDirCache().getEntry("a.txt").getObjectId());
+
+			monitor.change("a.txt");
+			git.add().addFilepattern(".").call();
+			DirCache dc = db.readDirCache();
+			assertNotEquals(a, dc.getEntry("a.txt").getObjectId());
+			assertTrue(dc.getEntry("a.txt").isFileSystemMonitorValid());
+		}
+	}
+
+	@Test
+	public void testBulkAddMarksEntriesValid() throws Exception {
+		assertFalse(diff().diff());
+		writeTrashFile("a.txt", "modified");
+		writeTrashFile("sub/c.txt", "c");
+		monitor.change("a.txt");
+		monitor.change("sub");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".").setBulk(true).call();
+		}
+		DirCache dc = db.readDirCache();
+		assertTrue(dc.getEntry("a.txt").isFileSystemMonitorValid());
+		assertTrue(dc.getEntry("sub/b.txt").isFileSystemMonitorValid());
+		assertTrue(dc.getEntry("sub/c.txt").isFileSystemMonitorValid());
+	}
+
+	@Test
+	public void testEverythingChanged() throws Exception {
+		assertFalse(diff().diff());
+		writeTrashFile("a.txt", "modified");
+		monitor.forget();
+		assertEquals(Collections.singleton("a.txt"), diffed().getModified());
+	}
+
+	@Test
+	public void testApplyChanges() throws Exception {
+		writeTrashFile("sub.txt", "c");
+		writeTrashFile("sub/c/d.txt", "d");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".").call();
+		}
+		DirCache dc = db.lockDirCache();
+		for (int i = 0; i < dc.getEntryCount(); i++) {
+			dc.getEntry(i).setFileSystemMonitorValid(true);
+		}
+		dc.applyFileSystemMonitorChanges(new FileSystemMonitor.Changes("t1",
+				Collections.singleton("sub")));
+		dc.write();
+		dc.commit();
+
+		dc = db.readDirCache();
+		assertEquals("t1", dc.getFileSystemMonitorToken());
+		assertTrue(dc.getEntry("a.txt").isFileSystemMonitorValid());
+		assertTrue(dc.getEntry("sub.txt").isFileSystemMonitorValid());
+		assertFalse(dc.getEntry("sub/b.txt").isFileSystemMonitorValid());
+		assertFalse(dc.getEntry("sub/c/d.txt").isFileSystemMonitorValid());
+
+		dc.applyFileSystemMonitorChanges(
+				FileSystemMonitor.Changes.everything("t2"));
+		assertEquals("t2", dc.getFileSystemMonitorToken());
+		assertFalse(dc.getEntry("a.txt").isFileSystemMonitorValid());
+
+		dc.applyFileSystemMonitorChanges(null);
+		assertNull(dc.getFileSystemMonitorToken());
+	}
+
+	@Test
+	public void testWatchService() throws Exception {
+		try (WatchServiceFileSystemMonitor m = new WatchServiceFileSystemMonitor(
+				db)) {
+			FileSystemMonitor.Changes changes = m.getChanges(null);
+			assertTrue(changes.isEverything());
+			String token = changes.getToken();
+
+			changes = m.getChanges(token);
+			assertFalse(changes.isEverything());
+			assertTrue(changes.getPaths().isEmpty());
+			assertEquals(token, changes.getToken());
+
+			writeTrashFile("sub/x.txt", "x");
+			changes = m.getChanges(token);
+			assertTrue(changes.getPaths().contains("sub/x.txt"));
+			token = changes.getToken();
+
+			writeTrashFile("d/e/f.txt", "f");
+			changes = m.getChanges(token);
+			assertTrue(changes.getPaths().contains("d"));
+			assertFalse(changes.getPaths().contains("sub/x.txt"));
+			token = changes.getToken();
+
+			// Directories created later are watched, too.
+			writeTrashFile("d/e/f.txt", "g");
+			changes = m.getChanges(token);
+			assertTrue(changes.getPaths().contains("d/e/f.txt"));
+
+			assertTrue(m.getChanges("unknown").isEverything());
+		}
+	}
+
+	private IndexDiff diff() throws Exception {
+		return new IndexDiff(db, Constants.HEAD, new FileTreeIterator(db));
+	}
+
+	private IndexDiff diffed() throws Exception {
+		IndexDiff diff = diff();
+		diff.diff();
+		return diff;
+	}
+
+	private static class TestMonitor implements FileSystemMonitor {
+		private final List<String> changed = new ArrayList<>();
+
+		private int oldest;
+
+		synchronized void change(String path) {
+			changed.add(path);
+		}
+
+		synchronized void forget() {
+			changed.clear();
+			oldest++;
+		}
+
+		synchronized String token() {
+			return oldest + ":" + changed.size();
+		}
+
+		@Override
+		public synchronized Changes getChanges(String token) {
+			String[] t = token != null ? token.split(":")
+					: new String[] { "-1", "0" };
+			if (Integer.parseInt(t[0]) != oldest) {
+				return Changes.everything(token());
+			}
+			return new Changes(token(), new ArrayList<>(changed
+					.subList(Integer.parseInt(t[1]), changed.size())));
+		}
+	}
+}
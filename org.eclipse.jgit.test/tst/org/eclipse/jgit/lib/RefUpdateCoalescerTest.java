@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lib;
+
+import static org.eclipse.jgit.transport.ReceiveCommand.Result.OK;
+import static org.eclipse.jgit.transport.ReceiveCommand.Result.REJECTED_NONFASTFORWARD;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.junit.Test;
+
+public class RefUpdateCoalescerTest extends LocalDiskRepositoryTestCase {
+	private static final long TIMEOUT = 60;
+
+	@Test
+	public void singleBatch() throws Exception {
+		Repository db = createBareRepository();
+		RevCommit a = new TestRepository<>(db).commit().create();
+		ReceiveCommand cmd = create(a, "refs/heads/master");
+
+		BatchRefUpdate batch = db.getRefDatabase().newBatchUpdate();
+		batch.addCommand(cmd);
+		try (RevWalk rw = new RevWalk(db)) {
+			new RefUpdateCoalescer(db).execute(batch, rw,
+					NullProgressMonitor.INSTANCE);
+		}
+		assertEquals(OK, cmd.getResult());
+		assertEquals(a, db.exactRef("refs/heads/master").getObjectId());
+	}
+
+	@Test
+	public void concurrentBatchesAreMerged() throws Exception {
+		Repository db = createBareRepository();
+		RevCommit a = new TestRepository<>(db).commit().create();
+		RefUpdateCoalescer coalescer = new RefUpdateCoalescer(db);
+
+		List<ReceiveCommand> cmds = runBehindLeader(db, coalescer,
+				create(a, "refs/heads/one"), create(a, "refs/heads/two"));
+
+		assertEquals(OK, cmds.get(0).getResult());
+		assertEquals(OK, cmds.get(1).getResult());
+		// Written in one packed-refs transaction rather than as loose refs.
+		assertEquals(Ref.Storage.PACKED,
+				db.exactRef("refs/heads/one").getStorage());
+		assertEquals(Ref.Storage.PACKED,
+				db.exactRef("refs/heads/two").getStorage());
+		assertEquals("user0", db.getReflogReader("refs/heads/one")
+				.getLastEntry().getWho().getName());
+		assertEquals("user1", db.getReflogReader("refs/heads/two")
+				.getLastEntry().getWho().getName());
+	}
+
+	@Test
+	public void rejectedBatchDoesNotFailOthers() throws Exception {
+		Repository db = createBareRepository();
+		TestRepository<Repository> repo = new TestRepository<>(db);
+		RevCommit a = repo.commit().create();
+		RevCommit b = repo.commit().parent(a).create();
+		repo.update("refs/heads/master", b);
+		RefUpdateCoalescer coalescer = new RefUpdateCoalescer(db);
+
+		List<ReceiveCommand> cmds = runBehindLeader(db, coalescer,
+				create(a, "refs/heads/one"),
+				new ReceiveCommand(b, a, "refs/heads/master"));
+
+		assertEquals(OK, cmds.get(0).getResult());
+		assertEquals(REJECTED_NONFASTFORWARD, cmds.get(1).getResult());
+		assertNull(cmds.get(0).getMessage());
+		assertEquals(a, db.exactRef("refs/heads/one").getObjectId());
+		assertEquals(b, db.exactRef("refs/heads/master").getObjectId());
+	}
+
+	@Test
+	public void concurrentBatchesOnReftable() throws Exception {
+		InMemoryRepository db = new InMemoryRepository(
+				new DfsRepositoryDescription("test"));
+		RevCommit a = new TestRepository<>(db).commit().create();
+		RefUpdateCoalescer coalescer = new RefUpdateCoalescer(db);
+
+		List<ReceiveCommand> cmds = runBehindLeader(db, coalescer,
+				create(a, "refs/heads/one"), create(a, "refs/heads/two"),
+				create(a, "refs/heads/three"));
+
+		for (ReceiveCommand cmd : cmds) {
+			assertEquals(OK, cmd.getResult());
+			assertEquals(a, db.exactRef(cmd.getRefName()).getObjectId());
+		}
+	}
+
+	/**
+	 * Execute one batch per command, each in its own thread, while another
+	 * batch is being committed. This forces the batches to queue up behind
+	 * the first one, so they are committed as a single group.
+	 */
+	private static List<ReceiveCommand> runBehindLeader(Repository db,
+			RefUpdateCoalescer coalescer, ReceiveCommand... cmds)
+			throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		BatchRefUpdate lead = db.getRefDatabase().newBatchUpdate();
+		lead.addCommand(create(cmds[0].getNewId(), "refs/heads/lead"));
+		RevWalk blocking = new RevWalk(db) {
+			@Override
+			public RevObject parseAny(AnyObjectId id) throws IOException {
+				started.countDown();
+				try {
+					release.await(TIMEOUT, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new AssertionError(e);
+				}
+				return super.parseAny(id);
+			}
+		};
+		List<Worker> workers = new ArrayList<>();
+		try {
+			Worker leader = new Worker(coalescer, lead, blocking);
+			workers.add(leader);
+			leader.start();
+			assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+
+			for (int i = 0; i < cmds.length; i++) {
+				BatchRefUpdate batch = db.getRefDatabase().newBatchUpdate();
+				batch.setRefLogIdent(
+						new PersonIdent("user" + i, "u@example.com"));
+				batch.setRefLogMessage("push", true);
+				batch.setForceRefLog(true);
+				batch.addCommand(cmds[i]);
+				Worker w = new Worker(coalescer, batch, new RevWalk(db));
+				workers.add(w);
+				w.start();
+			}
+			for (Worker w : workers.subList(1, workers.size())) {
+				w.awaitQueued();
+			}
+		} finally {
+			release.countDown();
+			for (Worker w : workers) {
+				w.finish();
+			}
+		}
+		return Arrays.asList(cmds);
+	}
+
+	/** Executes a batch, recording what it throws. */
+	private static class Worker extends Thread {
+		private final RefUpdateCoalescer coalescer;
+
+		private final BatchRefUpdate batch;
+
+		private final RevWalk walk;
+
+		private volatile Throwable error;
+
+		Worker(RefUpdateCoalescer coalescer, BatchRefUpdate batch,
+				RevWalk walk) {
+			this.coalescer = coalescer;
+			this.batch = batch;
+			this.walk = walk;
+		}
+
+		@Override
+		public void run() {
+			try {
+				coalescer.execute(batch, walk, NullProgressMonitor.INSTANCE);
+			} catch (Throwable e) {
+				error = e;
+			} finally {
+				walk.close();
+			}
+		}
+
+		void awaitQueued() throws Exception {
+			long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+			while (getState() != Thread.State.WAITING) {
+				if (!isAlive()) {
+					finish();
+					fail("batch completed before the leader");
+				}
+				if (System.currentTimeMillis() > deadline) {
+					fail("batch was not queued");
+				}
+				Thread.sleep(1);
+			}
+		}
+
+		void finish() throws Exception {
+			join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+			if (isAlive()) {
+				fail("batch did not complete");
+			}
+			if (error instanceof Exception) {
+				throw (Exception) error;
+			} else if (error instanceof Error) {
+				throw (Error) error;
+			}
+		}
+	}
+
+	private static ReceiveCommand create(AnyObjectId id, String name) {
+		return new ReceiveCommand(ObjectId.zeroId(), id.copy(), name);
+	}
+}
@@ -81,6 +81,7 @@
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.ObjectStream;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.merge.ResolveMerger.MergeFailureReason;
 import org.eclipse.jgit.revwalk.RevCommit;
@@ -573,6 +574,62 @@ public void checkMergeEqualTreesInCore_noRepo(MergeStrategy strategy)
 		}
 	}
 
+	@Theory
+	public void checkInCoreMergeShortCircuitsSubtrees(MergeStrategy strategy)
+			throws Exception {
+		RevCommit[] commits = disjointSubtreeChanges();
+
+		ResolveMerger merger = (ResolveMerger) strategy.newMerger(db,
+				true);
+		assertTrue(merger.merge(commits[0], commits[1]));
+		assertEquals(commits[2].getTree().getId(),
+				merger.getResultTreeId());
+		// a, b, c and ours are taken whole; d diverged but d/e did not.
+		assertEquals(5, merger.getShortCircuitedSubtreeCount());
+	}
+
+	@Theory
+	public void checkInCoreMergeIntoDirCacheKeepsFileEntries(
+			MergeStrategy strategy) throws Exception {
+		RevCommit[] commits = disjointSubtreeChanges();
+
+		DirCache dc = DirCache.newInCore();
+		ResolveMerger merger = (ResolveMerger) strategy.newMerger(db,
+				true);
+		merger.setDirCache(dc);
+		assertTrue(merger.merge(commits[0], commits[1]));
+		assertEquals(commits[2].getTree().getId(),
+				merger.getResultTreeId());
+		assertEquals(0, merger.getShortCircuitedSubtreeCount());
+		assertEquals(7, dc.getEntryCount());
+		for (int i = 0; i < dc.getEntryCount(); i++)
+			assertFalse(dc.getEntry(i).isSparseDirectory());
+	}
+
+	/**
+	 * Create commits changing different directories on each side.
+	 *
+	 * @return ours, theirs and the expected merge result
+	 * @throws Exception
+	 */
+	private RevCommit[] disjointSubtreeChanges() throws Exception {
+		TestRepository<Repository> tr = new TestRepository<>(db);
+		RevCommit base = tr.commit().add("a/x", "a").add("b/y", "b")
+				.add("c/z", "c").add("d/e/f", "f").add("d/g", "g")
+				.add("d/h", "h").create();
+		RevCommit ours = tr.commit().parent(base).add("a/x", "a")
+				.add("b/y", "b").add("c/z", "c").add("d/e/f", "f")
+				.add("d/g", "g2").add("d/h", "h").add("ours/new", "n")
+				.create();
+		RevCommit theirs = tr.commit().parent(base).add("a/x", "a")
+				.add("b/y", "b2").add("c/z", "c").add("d/e/f", "f")
+				.add("d/g", "g").add("d/h", "h2").create();
+		RevCommit expected = tr.commit().add("a/x", "a").add("b/y", "b2")
+				.add("c/z", "c").add("d/e/f", "f").add("d/g", "g2")
+				.add("d/h", "h2").add("ours/new", "n").create();
+		return new RevCommit[] { ours, theirs, expected };
+	}
+
 	/**
 	 * Merging two equal subtrees when the index and HEAD does not contain any
 	 * file in that subtree should lead to a merged state.
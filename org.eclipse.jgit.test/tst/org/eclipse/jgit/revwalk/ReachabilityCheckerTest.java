@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.revwalk;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.junit.Test;
+
+public class ReachabilityCheckerTest extends RevWalkTestCase {
+	@Test
+	public void testFindRefsContaining() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit c = commit(b);
+		RevCommit d = commit(b);
+		RevCommit e = commit(c, d);
+		RevCommit x = commit();
+
+		Ref master = ref("master", c);
+		Ref side = ref("side", d);
+		Ref merged = ref("merged", e);
+		Ref other = ref("other", x);
+		List<Ref> refs = asList(master, side, merged, other);
+
+		Map<RevCommit, List<Ref>> found = new ReachabilityChecker(rw, null)
+				.findRefsContaining(asList(b, d, x, e), refs);
+		assertEquals(asList(master, side, merged), found.get(b));
+		assertEquals(asList(side, merged), found.get(d));
+		assertEquals(asList(other), found.get(x));
+		assertEquals(asList(merged), found.get(e));
+	}
+
+	@Test
+	public void testDuplicateCommits() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		Ref tip = ref("tip", b);
+
+		ReachabilityChecker checker = new ReachabilityChecker(rw, null);
+		Map<RevCommit, List<Ref>> found = checker
+				.findRefsContaining(asList(a, b, a), asList(tip));
+		assertEquals(asList(a, b), new ArrayList<>(found.keySet()));
+		assertEquals(asList(tip), found.get(a));
+		assertEquals(asList(tip), found.get(b));
+		assertNull(checker.findUnreachable(asList(a, a), asList(b)));
+	}
+
+	@Test
+	public void testClockSkew() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		// c claims to be far older than its parent.
+		RevCommit c = commit(-7 * 24 * 3600, b);
+		RevCommit d = commit(c);
+		Ref tip = ref("tip", d);
+
+		Map<RevCommit, List<Ref>> found = new ReachabilityChecker(rw, null)
+				.findRefsContaining(asList(a, b, c), asList(tip));
+		assertEquals(asList(tip), found.get(a));
+		assertEquals(asList(tip), found.get(b));
+		assertEquals(asList(tip), found.get(c));
+	}
+
+	@Test
+	public void testMatchesIsMergedInto() throws Exception {
+		List<RevCommit> all = new ArrayList<>();
+		RevCommit base = commit();
+		all.add(base);
+		for (int i = 1; i < 40; i++) {
+			RevCommit p1 = all.get((i * 7) % all.size());
+			RevCommit p2 = all.get((i * 13) % all.size());
+			all.add(i % 3 == 0 && p1 != p2 ? commit(p1, p2) : commit(p1));
+		}
+		List<Ref> refs = new ArrayList<>();
+		for (int i = 0; i < all.size(); i += 3)
+			refs.add(ref("r" + i, all.get(i)));
+		List<RevCommit> targets = asList(all.get(2), all.get(5),
+				all.get(11), all.get(30));
+
+		ReachabilityChecker checker = new ReachabilityChecker(rw, null);
+		// Query twice: the second run prunes by remembered generations.
+		for (int round = 0; round < 2; round++) {
+			Map<RevCommit, List<Ref>> found = checker
+					.findRefsContaining(targets, refs);
+			for (RevCommit t : targets) {
+				List<Ref> expected = new ArrayList<>();
+				for (Ref r : refs) {
+					RevCommit tip = rw.parseCommit(r.getObjectId());
+					if (rw.isMergedInto(t, tip))
+						expected.add(r);
+				}
+				assertEquals(expected, found.get(t));
+			}
+		}
+	}
+
+	@Test
+	public void testFindUnreachable() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit c = commit(b);
+		RevCommit x = commit(a);
+
+		ReachabilityChecker checker = new ReachabilityChecker(rw, null);
+		assertNull(checker.findUnreachable(asList(a, b), asList(c)));
+		assertSame(x, checker.findUnreachable(asList(b, x), asList(c)));
+		assertNull(checker.findUnreachable(Collections.<RevCommit> emptyList(),
+				asList(c)));
+	}
+
+	@Test
+	public void testWithBitmaps() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit c = commit(b);
+		RevCommit d = commit(b);
+		update("refs/heads/master", c);
+		update("refs/heads/side", d);
+		new GC(db).gc();
+
+		// Commits created after the repack have no bitmap.
+		RevCommit e = commit(c);
+		RevCommit f = commit(d);
+		try (RevWalk walk = new RevWalk(db)) {
+			assertNotNull(walk.getObjectReader().getBitmapIndex()
+					.getBitmap(c));
+			ReachabilityChecker checker = new ReachabilityChecker(walk);
+			Ref master = ref("master", walk.parseCommit(c));
+			Ref side = ref("side", walk.parseCommit(d));
+			Ref newer = ref("newer", walk.parseCommit(e));
+			Ref newest = ref("newest", walk.parseCommit(f));
+
+			Map<RevCommit, List<Ref>> found = checker.findRefsContaining(
+					asList(walk.parseCommit(a), walk.parseCommit(d),
+							walk.parseCommit(e)),
+					asList(master, side, newer, newest));
+			assertEquals(asList(master, side, newer, newest),
+					found.get(walk.parseCommit(a)));
+			assertEquals(asList(side, newest), found.get(walk.parseCommit(d)));
+			assertEquals(asList(newer), found.get(walk.parseCommit(e)));
+		}
+	}
+
+	private void update(String name, RevCommit c) throws Exception {
+		RefUpdate u = db.updateRef(name);
+		u.setNewObjectId(c);
+		u.forceUpdate();
+	}
+
+	private static Ref ref(String name, RevCommit c) {
+		return new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE,
+				"refs/heads/" + name, c);
+	}
+}
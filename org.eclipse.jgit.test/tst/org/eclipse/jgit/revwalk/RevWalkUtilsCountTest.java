@@ -45,6 +45,11 @@
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jgit.revwalk.RevWalkUtils.AheadBehind;
 import org.junit.Test;
 
 public class RevWalkUtilsCountTest extends RevWalkTestCase {
@@ -97,6 +102,66 @@ public void shouldWorkWithZeroAsEnd() throws Exception {
 		assertEquals(2, count(c, null));
 	}
 
+	@Test
+	public void aheadBehindMatchesCount() throws Exception {
+		final RevCommit a = commit();
+		final RevCommit b = commit(a);
+		final RevCommit c1 = commit(b);
+		final RevCommit c2 = commit(b);
+		final RevCommit m = commit(c1, c2);
+		final RevCommit main = commit(m);
+		final RevCommit side = commit(c2);
+		final RevCommit other = commit();
+		final RevCommit ahead = commit(commit(main));
+
+		assertAheadBehind(main, a, b, c1, c2, m, main, side, other, ahead);
+	}
+
+	@Test
+	public void aheadBehindWithClockSkew() throws Exception {
+		final RevCommit a = commit();
+		final RevCommit b = commit(a);
+		// Older than its parent, so it is popped after commits below it.
+		final RevCommit skewed = commit(-100, b);
+		final RevCommit c = commit(skewed);
+		final RevCommit main = commit(commit(b));
+
+		assertAheadBehind(main, c, skewed, b);
+		assertAheadBehind(c, main, a);
+
+		// y is queued with all flags after x was counted as behind only.
+		final RevCommit x = commit();
+		final RevCommit y = commit(-2000, x);
+		final RevCommit z = commit(3000, x);
+		final RevCommit m = commit(y, z);
+		final RevCommit t = commit(y);
+		assertAheadBehind(m, t);
+	}
+
+	@Test
+	public void aheadBehindManyTips() throws Exception {
+		List<RevCommit> tips = new ArrayList<>();
+		RevCommit main = commit();
+		for (int i = 0; i < 40; i++) {
+			RevCommit t = commit(main);
+			tips.add(i % 3 == 0 ? commit(t) : t);
+			main = commit(main);
+		}
+		assertAheadBehind(main, tips.toArray(new RevCommit[0]));
+	}
+
+	private void assertAheadBehind(RevCommit base, RevCommit... tips)
+			throws Exception {
+		List<AheadBehind> r = RevWalkUtils.countAheadBehind(rw, base,
+				Arrays.asList(tips));
+		assertEquals(tips.length, r.size());
+		for (int i = 0; i < tips.length; i++) {
+			assertEquals(tips[i], r.get(i).getCommit());
+			assertEquals(count(tips[i], base), r.get(i).getAheadCount());
+			assertEquals(count(base, tips[i]), r.get(i).getBehindCount());
+		}
+	}
+
 	private int count(RevCommit start, RevCommit end) throws Exception {
 		return RevWalkUtils.count(rw, start, end);
 	}
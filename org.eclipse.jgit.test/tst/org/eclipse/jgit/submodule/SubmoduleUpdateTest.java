@@ -45,14 +45,17 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.SubmoduleUpdateCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.SubmoduleFailedException;
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEditor;
 import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
@@ -127,6 +130,80 @@ public void apply(DirCacheEntry ent) {
 		}
 	}
 
+	@Test
+	public void repositoryWithSubmodulesClonedInParallel() throws Exception {
+		writeTrashFile("file.txt", "content");
+		Git git = Git.wrap(db);
+		git.add().addFilepattern("file.txt").call();
+		final RevCommit commit = git.commit().setMessage("create file").call();
+
+		String[] paths = { "sub1", "sub2", "sub3" };
+		addSubmodules(commit, db.getDirectory().toURI().toString(), paths);
+
+		SubmoduleUpdateCommand command = new SubmoduleUpdateCommand(db)
+				.setFetchJobs(2);
+		Collection<String> updated = command.call();
+		assertEquals(Arrays.asList(paths), updated);
+
+		for (String path : paths) {
+			try (Repository subRepo = SubmoduleWalk.getSubmoduleRepository(db,
+					path)) {
+				assertNotNull(subRepo);
+				assertEquals(commit, subRepo.resolve(Constants.HEAD));
+			}
+		}
+	}
+
+	@Test
+	public void failedParallelCloneNamesSubmodule() throws Exception {
+		writeTrashFile("file.txt", "content");
+		Git git = Git.wrap(db);
+		git.add().addFilepattern("file.txt").call();
+		RevCommit commit = git.commit().setMessage("create file").call();
+		addSubmodules(commit, db.getDirectory().toURI().toString(), "sub1");
+		addSubmodules(commit,
+				new File(trash, "missing").toURI().toString(), "sub2");
+
+		try {
+			new SubmoduleUpdateCommand(db).setFetchJobs(2).call();
+			fail("expected SubmoduleFailedException");
+		} catch (SubmoduleFailedException e) {
+			assertEquals("sub2", e.getPath());
+			assertEquals(0, e.getSuppressed().length);
+		}
+		try (Repository subRepo = SubmoduleWalk.getSubmoduleRepository(db,
+				"sub1")) {
+			assertNotNull(subRepo);
+		}
+	}
+
+	private void addSubmodules(RevCommit commit, String url, String... paths)
+			throws Exception {
+		DirCache cache = db.lockDirCache();
+		DirCacheEditor editor = cache.editor();
+		StoredConfig config = db.getConfig();
+		FileBasedConfig modulesConfig = new FileBasedConfig(new File(
+				db.getWorkTree(), Constants.DOT_GIT_MODULES), db.getFS());
+		modulesConfig.load();
+		for (String path : paths) {
+			editor.add(new PathEdit(path) {
+
+				@Override
+				public void apply(DirCacheEntry ent) {
+					ent.setFileMode(FileMode.GITLINK);
+					ent.setObjectId(commit);
+				}
+			});
+			config.setString(ConfigConstants.CONFIG_SUBMODULE_SECTION, path,
+					ConfigConstants.CONFIG_KEY_URL, url);
+			modulesConfig.setString(ConfigConstants.CONFIG_SUBMODULE_SECTION,
+					path, ConfigConstants.CONFIG_KEY_PATH, path);
+		}
+		editor.commit();
+		config.save();
+		modulesConfig.save();
+	}
+
 	@Test
 	public void repositoryWithUnconfiguredSubmodule() throws IOException,
 			GitAPIException {
@@ -50,10 +50,16 @@
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.transport.RefAdvertiser.PacketLineOutRefAdvertiser;
 import org.eclipse.jgit.util.NB;
 import org.junit.Test;
@@ -98,6 +104,49 @@ public void advertiser() throws IOException {
 		assertSame(PacketLineIn.END, s);
 	}
 
+	@Test
+	public void sendSortedAppliesFilter() throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		PacketLineOut pckOut = new PacketLineOut(buf);
+		PacketLineOutRefAdvertiser adv = new PacketLineOutRefAdvertiser(pckOut);
+
+		List<Ref> refs = Arrays.asList(
+				new ObjectIdRef.Unpeeled(Ref.Storage.LOOSE,
+						"refs/heads/master", id(1)),
+				new ObjectIdRef.Unpeeled(Ref.Storage.LOOSE,
+						"refs/hidden/x", id(2)),
+				new ObjectIdRef.Unpeeled(Ref.Storage.LOOSE,
+						"refs/tags/v1", id(3)));
+		RefFilter filter = new RefFilter() {
+			@Override
+			public Map<String, Ref> filter(Map<String, Ref> m) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public boolean isPerRef() {
+				return true;
+			}
+
+			@Override
+			public boolean accept(Ref ref) {
+				return !ref.getName().startsWith("refs/hidden/");
+			}
+		};
+		Set<ObjectId> sent = adv.sendSorted(refs, filter);
+		adv.end();
+
+		assertEquals(2, sent.size());
+		assertFalse(sent.contains(id(2)));
+
+		PacketLineIn pckIn = new PacketLineIn(
+				new ByteArrayInputStream(buf.toByteArray()));
+		assertEquals(id(1).name() + " refs/heads/master\n",
+				pckIn.readStringRaw());
+		assertEquals(id(3).name() + " refs/tags/v1\n", pckIn.readStringRaw());
+		assertSame(PacketLineIn.END, pckIn.readStringRaw());
+	}
+
 	private static ObjectId id(int i) {
 		try (ObjectInserter.Formatter f = new ObjectInserter.Formatter()) {
 			byte[] tmp = new byte[4];
@@ -728,6 +728,68 @@ public void testV2LsRefsRefPrefixNoSlash() throws Exception {
 		assertTrue(pckIn.readString() == PacketLineIn.END);
 	}
 
+	@Test
+	public void testV2LsRefsRefPrefixOverlapping() throws Exception {
+		RevCommit tip = remote.commit().message("message").create();
+		remote.update("master", tip);
+		remote.update("other", tip);
+		remote.update("refs/tags/v1", tip);
+
+		ByteArrayInputStream recvStream = uploadPackV2(
+			"command=ls-refs\n",
+			PacketLineIn.DELIM,
+			"ref-prefix refs/tags/",
+			"ref-prefix refs/heads/m",
+			"ref-prefix refs/heads/",
+			PacketLineIn.END);
+		PacketLineIn pckIn = new PacketLineIn(recvStream);
+
+		assertThat(pckIn.readString(), is(tip.toObjectId().getName() + " refs/heads/master"));
+		assertThat(pckIn.readString(), is(tip.toObjectId().getName() + " refs/heads/other"));
+		assertThat(pckIn.readString(), is(tip.toObjectId().getName() + " refs/tags/v1"));
+		assertTrue(pckIn.readString() == PacketLineIn.END);
+	}
+
+	@Test
+	public void testV2LsRefsHideRefs() throws Exception {
+		RevCommit tip = remote.commit().message("message").create();
+		remote.update("master", tip);
+		remote.update("refs/hidden/secret", tip);
+		server.getConfig().setString("uploadpack", null, "hideRefs",
+				"refs/hidden/");
+
+		ByteArrayInputStream recvStream = uploadPackV2(
+			"command=ls-refs\n",
+			PacketLineIn.DELIM,
+			"ref-prefix refs/",
+			PacketLineIn.END);
+		PacketLineIn pckIn = new PacketLineIn(recvStream);
+
+		assertThat(pckIn.readString(), is(tip.toObjectId().getName() + " refs/heads/master"));
+		assertTrue(pckIn.readString() == PacketLineIn.END);
+	}
+
+	@Test
+	public void testV2LsRefsRefPrefixFiltered() throws Exception {
+		RevCommit tip = remote.commit().message("message").create();
+		remote.update("master", tip);
+		remote.update("refs/hidden/secret", tip);
+
+		// Refs are streamed with a per-ref filter, and collected otherwise.
+		for (boolean perRef : new boolean[] { true, false }) {
+			ByteArrayInputStream recvStream = uploadPackV2(null,
+					new HideRefFilter("refs/hidden/", perRef), null,
+					"command=ls-refs\n",
+					PacketLineIn.DELIM,
+					"ref-prefix refs/",
+					PacketLineIn.END);
+			PacketLineIn pckIn = new PacketLineIn(recvStream);
+
+			assertThat(pckIn.readString(), is(tip.toObjectId().getName() + " refs/heads/master"));
+			assertTrue(pckIn.readString() == PacketLineIn.END);
+		}
+	}
+
 	@Test
 	public void testV2LsRefsUnrecognizedArgument() throws Exception {
 		thrown.expect(PackProtocolException.class);
@@ -1809,6 +1871,33 @@ public void testGetPeerAgentProtocolV2() throws Exception {
 		assertEquals(up.getPeerUserAgent(), "JGit-test/1.2.4");
 	}
 
+	private static class HideRefFilter implements RefFilter {
+		private final String prefix;
+
+		private final boolean perRef;
+
+		HideRefFilter(String prefix, boolean perRef) {
+			this.prefix = prefix;
+			this.perRef = perRef;
+		}
+
+		@Override
+		public Map<String, Ref> filter(Map<String, Ref> refs) {
+			Map<String, Ref> result = new HashMap<>();
+			for (Ref ref : refs.values()) {
+				if (!ref.getName().startsWith(prefix)) {
+					result.put(ref.getName(), ref);
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public boolean isPerRef() {
+			return perRef;
+		}
+	}
+
 	private static class RejectAllRefFilter implements RefFilter {
 		@Override
 		public Map<String, Ref> filter(Map<String, Ref> refs) {
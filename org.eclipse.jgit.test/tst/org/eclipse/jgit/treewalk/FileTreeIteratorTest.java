@@ -318,6 +318,49 @@ public void testTreewalkEnterSubtree() throws Exception {
 		}
 	}
 
+	@Test
+	public void testDirectoryPreloader() throws Exception {
+		writeTrashFile("b/c", "b/c");
+		writeTrashFile("b/d/e", "b/d/e");
+		writeTrashFile("b/d/f/g", "g");
+		writeTrashFile("b-c", "b-c");
+		writeTrashFile("h/i", "h/i");
+		writeTrashFile("z/.git", "gitdir: /tmp/somewhere");
+		String expected = walk(null);
+		try (DirectoryPreloader preloader = new DirectoryPreloader(4)) {
+			assertEquals(expected, walk(preloader));
+		}
+		// Listings of directories not entered are dropped on close.
+		try (DirectoryPreloader preloader = new DirectoryPreloader(4);
+				TreeWalk tw = new TreeWalk(db)) {
+			FileTreeIterator fti = new FileTreeIterator(db);
+			fti.setDirectoryPreloader(preloader);
+			tw.addTree(fti);
+			tw.setFilter(PathFilter.create("h"));
+			tw.setRecursive(true);
+			assertTrue(tw.next());
+			assertEquals("h/i", tw.getPathString());
+			assertFalse(tw.next());
+		}
+	}
+
+	private String walk(DirectoryPreloader preloader) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		try (TreeWalk tw = new TreeWalk(db)) {
+			FileTreeIterator fti = new FileTreeIterator(db);
+			fti.setDirectoryPreloader(preloader);
+			tw.addTree(fti);
+			tw.setRecursive(true);
+			while (tw.next()) {
+				fti = tw.getTree(0, FileTreeIterator.class);
+				sb.append('[').append(tw.getPathString()).append(", ")
+						.append(tw.getFileMode(0)).append(", ")
+						.append(fti.getEntryLength()).append(']');
+			}
+		}
+		return sb.toString();
+	}
+
 	@Test
 	public void testIsModifiedSymlinkAsFile() throws Exception {
 		writeTrashFile("symlink", "content");
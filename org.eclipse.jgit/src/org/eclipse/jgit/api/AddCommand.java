@@ -48,10 +48,22 @@
 import static org.eclipse.jgit.lib.FileMode.TYPE_GITLINK;
 import static org.eclipse.jgit.lib.FileMode.TYPE_TREE;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 
 import org.eclipse.jgit.api.errors.FilterFailedException;
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -63,15 +75,21 @@
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.dircache.DirCacheIterator;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackInserter;
+import org.eclipse.jgit.internal.util.ThreadPools;
+import org.eclipse.jgit.lib.CoreConfig.EolStreamType;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.NameConflictTreeWalk;
 import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
 import org.eclipse.jgit.treewalk.WorkingTreeIterator;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.util.IO;
 
 /**
  * A class used to execute a {@code Add} command. It has setters for all
@@ -90,6 +108,8 @@ public class AddCommand extends GitCommand<DirCache> {
 
 	private boolean update = false;
 
+	private boolean bulk = false;
+
 	/**
 	 * Constructor for AddCommand
 	 *
@@ -148,7 +168,11 @@ public DirCache call() throws GitAPIException, NoFilepatternException {
 		DirCache dc = null;
 		boolean addAll = filepatterns.contains("."); //$NON-NLS-1$
 
-		try (ObjectInserter inserter = repo.newObjectInserter();
+		PackConfig packConfig = new PackConfig(repo);
+		try (ObjectInserter inserter = newInserter(packConfig);
+				BulkInserter bulkInserter = inserter instanceof PackInserter
+						? new BulkInserter((PackInserter) inserter, packConfig)
+						: null;
 				NameConflictTreeWalk tw = new NameConflictTreeWalk(repo)) {
 			tw.setOperationType(OperationType.CHECKIN_OP);
 			dc = repo.lockDirCache();
@@ -159,6 +183,9 @@ public DirCache call() throws GitAPIException, NoFilepatternException {
 				workingTreeIterator = new FileTreeIterator(repo);
 			workingTreeIterator.setDirCacheIterator(tw, 0);
 			tw.addTree(workingTreeIterator);
+			boolean monitored = workingTreeIterator instanceof FileTreeIterator
+					&& ((FileTreeIterator) workingTreeIterator)
+							.setFileSystemMonitor(dc);
 			if (!addAll)
 				tw.setFilter(PathFilterGroup.createFromStrings(filepatterns));
 
@@ -208,6 +235,14 @@ public DirCache call() throws GitAPIException, NoFilepatternException {
 					continue;
 				}
 
+				if (monitored && entry != null && entry.getStage() == 0
+						&& entry.isFileSystemMonitorValid()) {
+					// The file didn't change since it was found to match
+					// the index entry, there is nothing to add.
+					builder.add(entry);
+					continue;
+				}
+
 				if ((f.getEntryRawMode() == TYPE_TREE
 						&& f.getIndexFileMode(c) != FileMode.GITLINK) ||
 						(f.getEntryRawMode() == TYPE_GITLINK
@@ -229,15 +264,21 @@ public DirCache call() throws GitAPIException, NoFilepatternException {
 				if (GITLINK != mode) {
 					entry.setLength(f.getEntryLength());
 					entry.setLastModified(f.getEntryLastModified());
-					long len = f.getEntryContentLength();
-					// We read and filter the content multiple times.
-					// f.getEntryContentLength() reads and filters the input and
-					// inserter.insert(...) does it again. That's because an
-					// ObjectInserter needs to know the length before it starts
-					// inserting. TODO: Fix this by using Buffers.
-					try (InputStream in = f.openEntryStream()) {
-						ObjectId id = inserter.insert(OBJ_BLOB, len, in);
-						entry.setObjectId(id);
+					if (bulkInserter == null || !bulkInserter.insert(entry, f,
+							mode, monitored)) {
+						long len = f.getEntryContentLength();
+						// We read and filter the content multiple times.
+						// f.getEntryContentLength() reads and filters the input
+						// and inserter.insert(...) does it again. That's
+						// because an ObjectInserter needs to know the length
+						// before it starts inserting. TODO: Fix this by using
+						// Buffers.
+						try (InputStream in = f.openEntryStream()) {
+							ObjectId id = inserter.insert(OBJ_BLOB, len, in);
+							entry.setObjectId(id);
+						}
+						// Later changes are reported by the monitor.
+						entry.setFileSystemMonitorValid(monitored);
 					}
 				} else {
 					entry.setLength(0);
@@ -247,6 +288,8 @@ public DirCache call() throws GitAPIException, NoFilepatternException {
 				builder.add(entry);
 				lastAdded = path;
 			}
+			if (bulkInserter != null)
+				bulkInserter.flush();
 			inserter.flush();
 			builder.commit();
 			setCallable(false);
@@ -264,6 +307,48 @@ public DirCache call() throws GitAPIException, NoFilepatternException {
 		return dc;
 	}
 
+	private ObjectInserter newInserter(PackConfig packConfig) {
+		if (bulk && repo.getObjectDatabase() instanceof ObjectDirectory) {
+			PackInserter inserter = ((ObjectDirectory) repo
+					.getObjectDatabase()).newPackInserter();
+			inserter.setCompressionLevel(packConfig.getCompressionLevel());
+			return inserter;
+		}
+		return repo.newObjectInserter();
+	}
+
+	/**
+	 * Set whether to write the added files into a single pack
+	 * <p>
+	 * By default each new file is stored as a loose object. Adding many files,
+	 * e.g. a vendored directory, then creates as many small files in the
+	 * object database, and the repository soon needs to be garbage collected.
+	 * In bulk mode, the files are hashed and compressed on multiple threads and
+	 * streamed into one pack. The pack and its index are written to temporary
+	 * files and only renamed into place once complete. Bulk mode has no effect
+	 * on repositories which do not store objects in files.
+	 *
+	 * @param bulk
+	 *            whether to write the added files into a single pack
+	 * @return {@code this}
+	 * @since 5.2
+	 */
+	public AddCommand setBulk(boolean bulk) {
+		checkCallable();
+		this.bulk = bulk;
+		return this;
+	}
+
+	/**
+	 * Whether the added files are written into a single pack
+	 *
+	 * @return whether the added files are written into a single pack
+	 * @since 5.2
+	 */
+	public boolean isBulk() {
+		return bulk;
+	}
+
 	/**
 	 * Set whether to only match against already tracked files
 	 *
@@ -292,4 +377,181 @@ public AddCommand setUpdate(boolean update) {
 	public boolean isUpdate() {
 		return update;
 	}
+
+	/**
+	 * Hashes and compresses files on worker threads for a pack inserter.
+	 * <p>
+	 * Only plain files that need no clean filter or line ending conversion
+	 * and are smaller than the big file threshold are handled here; their
+	 * content is read directly from the file. The compressed objects are
+	 * appended to the pack in the order the files were queued, on the thread
+	 * calling
+	 * {@link #insert(DirCacheEntry, WorkingTreeIterator, FileMode, boolean)}
+	 * and {@link #flush()}, as the inserter is not thread-safe. The ids of the
+	 * queued entries, which reset their file system monitor flag, are only set
+	 * once the object is in the pack.
+	 */
+	private static class BulkInserter implements AutoCloseable {
+		/** Limit for the content of queued files held in memory. */
+		private static final long MAX_QUEUED_BYTES = 64 << 20;
+
+		private final PackInserter inserter;
+
+		private final int compression;
+
+		private final long bigFileThreshold;
+
+		private final int maxQueued;
+
+		private final ExecutorService pool;
+
+		private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+		private final Deque<Queued> queue = new ArrayDeque<>();
+
+		private long queuedBytes;
+
+		BulkInserter(PackInserter inserter, PackConfig packConfig) {
+			this.inserter = inserter;
+			compression = packConfig.getCompressionLevel();
+			bigFileThreshold = packConfig.getBigFileThreshold();
+			int threads = Runtime.getRuntime().availableProcessors();
+			maxQueued = 16 * threads;
+			pool = Executors.newFixedThreadPool(threads);
+		}
+
+		/**
+		 * Queue a file for insertion.
+		 *
+		 * @param entry
+		 *            index entry of the file; its id is set once the file is
+		 *            inserted
+		 * @param f
+		 *            working tree iterator positioned on the file
+		 * @param mode
+		 *            mode of the file in the index
+		 * @param monitored
+		 *            whether the file system monitor reports later changes
+		 *            of the file
+		 * @return {@code false} if the file must be inserted by the caller
+		 * @throws IOException
+		 *             a previously queued file could not be inserted
+		 */
+		boolean insert(DirCacheEntry entry, WorkingTreeIterator f,
+				FileMode mode, boolean monitored) throws IOException {
+			long len = f.getEntryLength();
+			if (!(f instanceof FileTreeIterator)
+					|| (mode.getBits() & FileMode.TYPE_MASK) != FileMode.TYPE_FILE
+					|| len > bigFileThreshold
+					|| f.getCleanFilterCommand() != null
+					|| f.getEolStreamType() != EolStreamType.DIRECT)
+				return false;
+			while (!queue.isEmpty() && (queue.size() >= maxQueued
+					|| queuedBytes + len > MAX_QUEUED_BYTES))
+				insertNext();
+			File file = ((FileTreeIterator) f).getEntryFile();
+			queue.add(new Queued(entry, monitored, len,
+					pool.submit(() -> deflate(file))));
+			queuedBytes += len;
+			return true;
+		}
+
+		void flush() throws IOException {
+			while (!queue.isEmpty())
+				insertNext();
+		}
+
+		private void insertNext() throws IOException {
+			Queued q = queue.poll();
+			queuedBytes -= q.length;
+			Deflated d = waitFor(q.task);
+			q.entry.setObjectId(inserter.insertDeflated(d.id, OBJ_BLOB,
+					d.length, d.data, 0, d.data.length));
+			q.entry.setFileSystemMonitorValid(q.monitored);
+		}
+
+		private Deflated deflate(File file) throws IOException {
+			byte[] data = IO.readFully(file);
+			ObjectId id = new ObjectInserter.Formatter().idFor(OBJ_BLOB, data);
+			Deflater deflater = deflaters.poll();
+			if (deflater == null)
+				deflater = new Deflater(compression);
+			try {
+				deflater.setInput(data);
+				deflater.finish();
+				ByteArrayOutputStream out = new ByteArrayOutputStream(
+						data.length / 2 + 64);
+				byte[] buf = new byte[8192];
+				while (!deflater.finished()) {
+					int n = deflater.deflate(buf);
+					out.write(buf, 0, n);
+				}
+				return new Deflated(id, data.length, out.toByteArray());
+			} finally {
+				deflater.reset();
+				deflaters.add(deflater);
+			}
+		}
+
+		private static Deflated waitFor(Future<Deflated> task)
+				throws IOException {
+			try {
+				return task.get();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IOException(cause);
+			}
+		}
+
+		@Override
+		public void close() {
+			for (Queued q : queue)
+				q.task.cancel(true);
+			queue.clear();
+			ThreadPools.shutdown(pool);
+			Deflater deflater;
+			while ((deflater = deflaters.poll()) != null)
+				deflater.end();
+		}
+
+		private static class Queued {
+			final DirCacheEntry entry;
+
+			final boolean monitored;
+
+			final long length;
+
+			final Future<Deflated> task;
+
+			Queued(DirCacheEntry entry, boolean monitored, long length,
+					Future<Deflated> task) {
+				this.entry = entry;
+				this.monitored = monitored;
+				this.length = length;
+				this.task = task;
+			}
+		}
+
+		private static class Deflated {
+			final ObjectId id;
+
+			final long length;
+
+			final byte[] data;
+
+			Deflated(ObjectId id, long length, byte[] data) {
+				this.id = id;
+				this.length = length;
+				this.data = data;
+			}
+		}
+	}
 }
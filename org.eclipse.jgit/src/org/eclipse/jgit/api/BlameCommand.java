@@ -53,6 +53,7 @@
 
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.JGitInternalException;
+import org.eclipse.jgit.blame.BlameCache;
 import org.eclipse.jgit.blame.BlameGenerator;
 import org.eclipse.jgit.blame.BlameResult;
 import org.eclipse.jgit.diff.DiffAlgorithm;
@@ -86,6 +87,8 @@ public class BlameCommand extends GitCommand<BlameResult> {
 
 	private Boolean followFileRenames;
 
+	private BlameCache blameCache;
+
 	/**
 	 * Constructor for BlameCommand
 	 *
@@ -161,6 +164,20 @@ public BlameCommand setFollowFileRenames(boolean follow) {
 		return this;
 	}
 
+	/**
+	 * Set the cache used to reuse previously computed blame results.
+	 *
+	 * @param cache
+	 *            the cache to use, or null to disable caching.
+	 * @return {@code this}
+	 * @see BlameGenerator#setBlameCache(BlameCache)
+	 * @since 5.2
+	 */
+	public BlameCommand setBlameCache(BlameCache cache) {
+		blameCache = cache;
+		return this;
+	}
+
 	/**
 	 * Configure the command to compute reverse blame (history of deletes).
 	 *
@@ -215,6 +232,7 @@ public BlameResult call() throws GitAPIException {
 				gen.setTextComparator(textComparator);
 			if (followFileRenames != null)
 				gen.setFollowFileRenames(followFileRenames.booleanValue());
+			gen.setBlameCache(blameCache);
 
 			if (reverseEndCommits != null)
 				gen.reverse(startCommit, reverseEndCommits);
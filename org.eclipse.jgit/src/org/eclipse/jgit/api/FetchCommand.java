@@ -49,7 +49,9 @@
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -107,6 +109,8 @@ public class FetchCommand extends TransportCommand<FetchCommand, FetchResult> {
 
 	private boolean isForceUpdate;
 
+	private int fetchJobs = -1;
+
 	/**
 	 * Callback for status of fetch operation.
 	 *
@@ -164,6 +168,8 @@ private FetchRecurseSubmodulesMode getRecurseMode(String path) {
 	private void fetchSubmodules(FetchResult results)
 			throws org.eclipse.jgit.api.errors.TransportException,
 			GitAPIException, InvalidConfigurationException {
+		int jobs = SubmoduleJobs.getFetchJobs(repo, fetchJobs);
+		Map<String, SubmoduleJobs.Job<FetchResult>> pending = new LinkedHashMap<>();
 		try (SubmoduleWalk walk = new SubmoduleWalk(repo);
 				RevWalk revWalk = new RevWalk(repo)) {
 			// Walk over submodules in the parent repository's FETCH_HEAD.
@@ -195,20 +201,28 @@ private void fetchSubmodules(FetchResult results)
 					if ((recurseMode == FetchRecurseSubmodulesMode.ON_DEMAND
 							&& !submoduleRepo.hasObject(walk.getObjectId()))
 							|| recurseMode == FetchRecurseSubmodulesMode.YES) {
-						FetchCommand f = new FetchCommand(submoduleRepo)
-								.setProgressMonitor(monitor)
-								.setTagOpt(tagOption)
-								.setCheckFetchedObjects(checkFetchedObjects)
-								.setRemoveDeletedRefs(isRemoveDeletedRefs())
-								.setThin(thin)
-								.setRefSpecs(applyOptions(refSpecs))
-								.setDryRun(dryRun)
-								.setRecurseSubmodules(recurseMode);
-						configure(f);
+						String path = walk.getPath();
 						if (callback != null) {
-							callback.fetchingSubmodule(walk.getPath());
+							callback.fetchingSubmodule(path);
+						}
+						if (jobs == 1) {
+							results.addSubmodule(path,
+									newSubmoduleFetch(submoduleRepo,
+											recurseMode)
+											.setProgressMonitor(monitor)
+											.call());
+							continue;
 						}
-						results.addSubmodule(walk.getPath(), f.call());
+						// The submodule is reopened by the job, as this
+						// instance is closed when the walk moves on.
+						pending.put(path, m -> {
+							try (Repository r = SubmoduleWalk
+									.getSubmoduleRepository(repo, path)) {
+								return newSubmoduleFetch(r, recurseMode)
+										.setProgressMonitor(m)
+										.setFetchJobs(1).call();
+							}
+						});
 					}
 				}
 			}
@@ -217,6 +231,29 @@ private void fetchSubmodules(FetchResult results)
 		} catch (ConfigInvalidException e) {
 			throw new InvalidConfigurationException(e.getMessage(), e);
 		}
+
+		Map<String, FetchResult> fetched = new LinkedHashMap<>();
+		try {
+			SubmoduleJobs.run(jobs, monitor, pending, fetched);
+		} finally {
+			for (Map.Entry<String, FetchResult> e : fetched.entrySet()) {
+				results.addSubmodule(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	private FetchCommand newSubmoduleFetch(Repository submoduleRepo,
+			FetchRecurseSubmodulesMode recurseMode) {
+		FetchCommand f = new FetchCommand(submoduleRepo)
+				.setTagOpt(tagOption)
+				.setCheckFetchedObjects(checkFetchedObjects)
+				.setRemoveDeletedRefs(isRemoveDeletedRefs())
+				.setThin(thin)
+				.setRefSpecs(applyOptions(refSpecs))
+				.setDryRun(dryRun)
+				.setRecurseSubmodules(recurseMode);
+		configure(f);
+		return f;
 	}
 
 	/**
@@ -297,6 +334,28 @@ public FetchCommand setRecurseSubmodules(
 		return this;
 	}
 
+	/**
+	 * Set the number of submodules fetched in parallel.
+	 * <p>
+	 * With more than one job, submodules are fetched concurrently. The
+	 * progress monitor then only reports the number of fetched submodules,
+	 * and a failure of one submodule does not stop the fetch of the others.
+	 * The {@link Callback} is still invoked from the calling thread, when
+	 * the fetch of a submodule is scheduled.
+	 *
+	 * @param jobs
+	 *            corresponds to the --jobs option. 0 uses one job per
+	 *            available processor. If negative use the value of the
+	 *            {@code submodule.fetchJobs} option, which defaults to 1.
+	 * @return {@code this}
+	 * @since 5.2
+	 */
+	public FetchCommand setFetchJobs(int jobs) {
+		checkCallable();
+		fetchJobs = jobs;
+		return this;
+	}
+
 	/**
 	 * The remote (uri or name) used for the fetch operation. If no remote is
 	 * set, the default value of <code>Constants.DEFAULT_REMOTE_NAME</code> will
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.jgit.api.errors.SubmoduleFailedException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.EmptyProgressMonitor;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.ThreadSafeProgressMonitor;
+
+/**
+ * Runs the network part of submodule commands on a bounded number of threads.
+ * <p>
+ * The number of threads is configured by {@code submodule.fetchJobs}, as in
+ * C Git. A value of 0 selects one thread per available processor.
+ */
+class SubmoduleJobs {
+	/**
+	 * Work on one submodule.
+	 *
+	 * @param <T>
+	 *            type of the result.
+	 */
+	interface Job<T> {
+		/**
+		 * Run the job.
+		 *
+		 * @param monitor
+		 *            monitor to pass on to nested commands. It does not
+		 *            report progress, but reflects cancellation.
+		 * @return result of the job.
+		 * @throws Exception
+		 *             the job failed.
+		 */
+		T call(ProgressMonitor monitor) throws Exception;
+	}
+
+	/**
+	 * Determine the number of parallel jobs.
+	 *
+	 * @param repo
+	 *            the superproject.
+	 * @param jobs
+	 *            number of jobs requested by the caller; negative to use the
+	 *            {@code submodule.fetchJobs} configuration of {@code repo}.
+	 * @return number of jobs to run in parallel, at least 1.
+	 */
+	static int getFetchJobs(Repository repo, int jobs) {
+		if (jobs < 0) {
+			jobs = repo.getConfig().getInt(
+					ConfigConstants.CONFIG_SUBMODULE_SECTION,
+					ConfigConstants.CONFIG_KEY_FETCH_JOBS, 1);
+		}
+		if (jobs == 0) {
+			jobs = Runtime.getRuntime().availableProcessors();
+		}
+		return Math.max(jobs, 1);
+	}
+
+	/**
+	 * Run jobs in parallel and wait for all of them to finish.
+	 * <p>
+	 * Progress is reported to {@code monitor} as one unit of work per
+	 * completed job. A failing job does not stop the others. Once all jobs
+	 * are done the results of the successful jobs are put into
+	 * {@code results}, and then the failure of the first failed job is
+	 * thrown, with the failures of later jobs added as suppressed exceptions.
+	 *
+	 * @param threads
+	 *            maximum number of jobs to run at the same time.
+	 * @param monitor
+	 *            monitor to report progress to. Must only be used by the
+	 *            calling thread.
+	 * @param jobs
+	 *            jobs to run, by submodule path.
+	 * @param results
+	 *            receives the results of the successful jobs, in the order
+	 *            of {@code jobs}.
+	 * @throws SubmoduleFailedException
+	 *             a job failed; the exception names its submodule.
+	 */
+	static <T> void run(int threads, ProgressMonitor monitor,
+			Map<String, Job<T>> jobs, Map<String, T> results)
+			throws SubmoduleFailedException {
+		int n = jobs.size();
+		if (n == 0) {
+			return;
+		}
+		List<String> paths = new ArrayList<>(jobs.keySet());
+		Object[] done = new Object[n];
+		Exception[] errors = new Exception[n];
+
+		ThreadSafeProgressMonitor tpm = new ThreadSafeProgressMonitor(monitor);
+		ProgressMonitor cancelOnly = new EmptyProgressMonitor() {
+			@Override
+			public boolean isCancelled() {
+				return tpm.isCancelled();
+			}
+		};
+		ExecutorService executor = Executors
+				.newFixedThreadPool(Math.min(threads, n));
+		tpm.beginTask(JGitText.get().fetchingSubmodules, n);
+		tpm.startWorkers(n);
+		try {
+			for (int i = 0; i < n; i++) {
+				int idx = i;
+				Job<T> job = jobs.get(paths.get(i));
+				executor.execute(() -> {
+					try {
+						if (!cancelOnly.isCancelled()) {
+							T r = job.call(cancelOnly);
+							synchronized (done) {
+								done[idx] = r;
+							}
+						}
+					} catch (Exception e) {
+						synchronized (done) {
+							errors[idx] = e;
+						}
+					} finally {
+						tpm.update(1);
+						tpm.endWorker();
+					}
+				});
+			}
+			tpm.waitForCompletion();
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new JGitInternalException(e.getMessage(), e);
+		} finally {
+			executor.shutdown();
+		}
+		tpm.endTask();
+
+		synchronized (done) {
+			SubmoduleFailedException first = null;
+			for (int i = 0; i < n; i++) {
+				if (errors[i] == null) {
+					if (done[i] != null) {
+						@SuppressWarnings("unchecked")
+						T r = (T) done[i];
+						results.put(paths.get(i), r);
+					}
+					continue;
+				}
+				SubmoduleFailedException e = new SubmoduleFailedException(
+						paths.get(i), errors[i]);
+				if (first == null) {
+					first = e;
+				} else {
+					first.addSuppressed(e);
+				}
+			}
+			if (first != null) {
+				throw first;
+			}
+		}
+	}
+}
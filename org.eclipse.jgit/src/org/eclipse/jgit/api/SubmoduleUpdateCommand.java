@@ -47,7 +47,10 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jgit.api.errors.CheckoutConflictException;
 import org.eclipse.jgit.api.errors.ConcurrentRefUpdateException;
@@ -95,6 +98,8 @@ public class SubmoduleUpdateCommand extends
 
 	private boolean fetch = false;
 
+	private int fetchJobs = -1;
+
 	/**
 	 * <p>
 	 * Constructor for SubmoduleUpdateCommand.
@@ -137,6 +142,27 @@ public SubmoduleUpdateCommand setFetch(boolean fetch) {
 		return this;
 	}
 
+	/**
+	 * Set the number of submodules cloned or fetched in parallel.
+	 * <p>
+	 * With more than one job, all submodules are first cloned or fetched
+	 * concurrently, and then checked out one after another. A failure of one
+	 * submodule does not stop the clone or fetch of the others, but prevents
+	 * the checkout phase.
+	 *
+	 * @param jobs
+	 *            corresponds to the --jobs option. 0 uses one job per
+	 *            available processor. If negative use the value of the
+	 *            {@code submodule.fetchJobs} option, which defaults to 1.
+	 * @return this command
+	 * @since 5.2
+	 */
+	public SubmoduleUpdateCommand setFetchJobs(int jobs) {
+		checkCallable();
+		this.fetchJobs = jobs;
+		return this;
+	}
+
 	/**
 	 * Add repository-relative submodule path to initialize
 	 *
@@ -156,31 +182,103 @@ private Repository getOrCloneSubmodule(SubmoduleWalk generator, String url)
 			if (callback != null) {
 				callback.cloningSubmodule(generator.getPath());
 			}
-			CloneCommand clone = Git.cloneRepository();
-			configure(clone);
-			clone.setURI(url);
-			clone.setDirectory(generator.getDirectory());
-			clone.setGitDir(
-					new File(new File(repo.getDirectory(), Constants.MODULES),
-							generator.getPath()));
-			if (monitor != null) {
-				clone.setProgressMonitor(monitor);
-			}
-			repository = clone.call().getRepository();
+			repository = cloneSubmodule(generator.getPath(),
+					generator.getDirectory(), url, monitor);
 		} else if (this.fetch) {
 			if (fetchCallback != null) {
 				fetchCallback.fetchingSubmodule(generator.getPath());
 			}
-			FetchCommand fetchCommand = Git.wrap(repository).fetch();
-			if (monitor != null) {
-				fetchCommand.setProgressMonitor(monitor);
-			}
-			configure(fetchCommand);
-			fetchCommand.call();
+			fetchSubmodule(repository, monitor);
 		}
 		return repository;
 	}
 
+	private Repository cloneSubmodule(String path, File directory, String url,
+			ProgressMonitor pm) throws GitAPIException {
+		CloneCommand clone = Git.cloneRepository();
+		configure(clone);
+		clone.setURI(url);
+		clone.setDirectory(directory);
+		clone.setGitDir(new File(new File(repo.getDirectory(), Constants.MODULES),
+				path));
+		if (pm != null) {
+			clone.setProgressMonitor(pm);
+		}
+		return clone.call().getRepository();
+	}
+
+	private void fetchSubmodule(Repository repository, ProgressMonitor pm)
+			throws GitAPIException {
+		FetchCommand fetchCommand = Git.wrap(repository).fetch();
+		if (pm != null) {
+			fetchCommand.setProgressMonitor(pm);
+		}
+		configure(fetchCommand);
+		fetchCommand.call();
+	}
+
+	/**
+	 * Clone or fetch all submodules to update on {@code jobs} threads.
+	 *
+	 * @param jobs
+	 *            number of submodules to clone or fetch in parallel.
+	 * @throws IOException
+	 *             the submodules could not be read.
+	 * @throws GitAPIException
+	 *             cloning or fetching a submodule failed.
+	 */
+	private void prepareSubmodules(int jobs)
+			throws IOException, GitAPIException {
+		Map<String, SubmoduleJobs.Job<Void>> pending = new LinkedHashMap<>();
+		try (SubmoduleWalk generator = newSubmoduleWalk()) {
+			while (generator.next()) {
+				if (generator.getModulesPath() == null) {
+					continue;
+				}
+				String url = generator.getConfigUrl();
+				if (url == null) {
+					continue;
+				}
+				String path = generator.getPath();
+				File directory = generator.getDirectory();
+				try (Repository existing = generator.getRepository()) {
+					if (existing == null) {
+						if (callback != null) {
+							callback.cloningSubmodule(path);
+						}
+						pending.put(path, pm -> {
+							cloneSubmodule(path, directory, url, pm).close();
+							return null;
+						});
+					} else if (fetch) {
+						if (fetchCallback != null) {
+							fetchCallback.fetchingSubmodule(path);
+						}
+						pending.put(path, pm -> {
+							try (Repository r = SubmoduleWalk
+									.getSubmoduleRepository(repo, path)) {
+								fetchSubmodule(r, pm);
+							}
+							return null;
+						});
+					}
+				}
+			}
+		} catch (ConfigInvalidException e) {
+			throw new InvalidConfigurationException(e.getMessage(), e);
+		}
+		SubmoduleJobs.run(jobs,
+				monitor != null ? monitor : NullProgressMonitor.INSTANCE,
+				pending, new HashMap<String, Void>());
+	}
+
+	private SubmoduleWalk newSubmoduleWalk() throws IOException {
+		SubmoduleWalk generator = SubmoduleWalk.forIndex(repo);
+		if (!paths.isEmpty())
+			generator.setFilter(PathFilterGroup.createFromStrings(paths));
+		return generator;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 *
@@ -194,9 +292,11 @@ public Collection<String> call() throws InvalidConfigurationException,
 			RefNotFoundException, GitAPIException {
 		checkCallable();
 
-		try (SubmoduleWalk generator = SubmoduleWalk.forIndex(repo)) {
-			if (!paths.isEmpty())
-				generator.setFilter(PathFilterGroup.createFromStrings(paths));
+		int jobs = SubmoduleJobs.getFetchJobs(repo, fetchJobs);
+		try (SubmoduleWalk generator = newSubmoduleWalk()) {
+			if (jobs > 1) {
+				prepareSubmodules(jobs);
+			}
 			List<String> updated = new ArrayList<>();
 			while (generator.next()) {
 				// Skip submodules not registered in .gitmodules file
@@ -207,8 +307,10 @@ public Collection<String> call() throws InvalidConfigurationException,
 				if (url == null)
 					continue;
 
-				try (Repository submoduleRepo = getOrCloneSubmodule(generator,
-						url); RevWalk walk = new RevWalk(submoduleRepo)) {
+				try (Repository submoduleRepo = jobs > 1
+						? generator.getRepository()
+						: getOrCloneSubmodule(generator, url);
+						RevWalk walk = new RevWalk(submoduleRepo)) {
 					RevCommit commit = walk
 							.parseCommit(generator.getObjectId());
 
@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.eclipse.jgit.attributes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.errors.FilterFailedException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.PacketLineIn;
+import org.eclipse.jgit.transport.PacketLineOut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long-running filter process.
+ * <p>
+ * The command configured in {@code filter.<driver>.process} is started once
+ * and then asked to clean or smudge one file after the other, using Git's
+ * long-running filter protocol over its standard input and output. This
+ * avoids starting a new process for every file, as the {@code clean} and
+ * {@code smudge} commands of a filter driver require.
+ * <p>
+ * Instances are obtained from {@link Repository#getFilterProcess(String)}
+ * and are stopped when the repository is closed. All methods are
+ * synchronized, as a process handles one request at a time.
+ *
+ * @since 5.2
+ */
+public class FilterProcess implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(FilterProcess.class);
+
+	/** Maximum payload of a pkt-line. */
+	private static final int MAX_DATA = 65516;
+
+	private static final String CAPABILITY_DELAY = "delay"; //$NON-NLS-1$
+
+	private static final String STATUS_SUCCESS = "success"; //$NON-NLS-1$
+
+	private static final String STATUS_DELAYED = "delayed"; //$NON-NLS-1$
+
+	private static final String STATUS_ABORT = "abort"; //$NON-NLS-1$
+
+	private final Repository repo;
+
+	private final String command;
+
+	private final Set<String> capabilities = new HashSet<>();
+
+	private final Set<String> delayed = new HashSet<>();
+
+	private Process process;
+
+	private PacketLineIn in;
+
+	private PacketLineOut out;
+
+	/**
+	 * Create a filter process; it is started on first use.
+	 *
+	 * @param repo
+	 *            repository whose working tree is filtered
+	 * @param command
+	 *            the command to start the process with
+	 */
+	public FilterProcess(Repository repo, String command) {
+		this.repo = repo;
+		this.command = command;
+	}
+
+	/**
+	 * Get the name of the filter driver handled by a filter process.
+	 *
+	 * @param filterCommand
+	 *            a filter command as returned by
+	 *            {@link org.eclipse.jgit.treewalk.TreeWalk#getFilterCommand(String)}
+	 * @return the name of the filter driver, or {@code null} if the command is
+	 *         not handled by a long-running filter process
+	 */
+	public static String getDriverName(String filterCommand) {
+		if (filterCommand == null
+				|| !filterCommand.startsWith(Constants.PROCESS_FILTER_PREFIX))
+			return null;
+		return filterCommand.substring(
+				Constants.PROCESS_FILTER_PREFIX.length(),
+				filterCommand.lastIndexOf('/'));
+	}
+
+	/**
+	 * Get the command to run for a filter driver whose long-running process
+	 * is not configured, or no longer.
+	 *
+	 * @param repo
+	 *            the repository
+	 * @param filterCommand
+	 *            a filter command handled by a long-running filter process
+	 * @return the {@code clean} or {@code smudge} command of the filter
+	 *         driver, as {@code filterCommand} asks for, or {@code null} if
+	 *         there is none and the content is used unfiltered
+	 */
+	public static String getOneShotCommand(Repository repo,
+			String filterCommand) {
+		String driver = getDriverName(filterCommand);
+		if (driver == null)
+			return filterCommand;
+		return repo.getConfig().getString(
+				ConfigConstants.CONFIG_FILTER_SECTION, driver,
+				filterCommand.substring(filterCommand.lastIndexOf('/') + 1));
+	}
+
+	/**
+	 * Get the command
+	 *
+	 * @return the command the process is started with
+	 */
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * Clean a file.
+	 *
+	 * @param path
+	 *            path of the file in the working tree
+	 * @param content
+	 *            content of the file
+	 * @param result
+	 *            receives the cleaned content
+	 * @throws java.io.IOException
+	 *             the process failed to clean the file; the cause is a
+	 *             {@link org.eclipse.jgit.api.errors.FilterFailedException}
+	 */
+	public synchronized void clean(String path, InputStream content,
+			OutputStream result) throws IOException {
+		run(Constants.ATTR_FILTER_TYPE_CLEAN, path, null, content, result,
+				false);
+	}
+
+	/**
+	 * Smudge a file.
+	 * <p>
+	 * If {@code canDelay} is set, the process may postpone the file. Its
+	 * content is then not written to {@code result}; once
+	 * {@link #getAvailableBlobs()} reports the path as available, smudge it
+	 * again to receive the content. The content passed in the second request
+	 * is ignored.
+	 *
+	 * @param path
+	 *            path of the file in the working tree
+	 * @param blob
+	 *            id of the blob being smudged
+	 * @param content
+	 *            content of the blob
+	 * @param result
+	 *            receives the smudged content
+	 * @param canDelay
+	 *            whether the process may postpone the file
+	 * @return {@code false} if the file was postponed, {@code true} if its
+	 *         content was written to {@code result}
+	 * @throws java.io.IOException
+	 *             the process failed to smudge the file; the cause is a
+	 *             {@link org.eclipse.jgit.api.errors.FilterFailedException}
+	 */
+	public synchronized boolean smudge(String path, AnyObjectId blob,
+			InputStream content, OutputStream result, boolean canDelay)
+			throws IOException {
+		return run(Constants.ATTR_FILTER_TYPE_SMUDGE, path, blob, content,
+				result, canDelay);
+	}
+
+	/**
+	 * Wait for postponed files to become available.
+	 * <p>
+	 * Blocks until the process has at least one of the postponed files ready.
+	 *
+	 * @return paths of postponed files which can now be smudged; empty if the
+	 *         process has no more postponed files
+	 * @throws java.io.IOException
+	 *             the process could not be asked for the files
+	 */
+	public synchronized List<String> getAvailableBlobs() throws IOException {
+		if (delayed.isEmpty() || process == null)
+			return Collections.emptyList();
+		try {
+			out.writeString("command=list_available_blobs\n"); //$NON-NLS-1$
+			out.end();
+			List<String> paths = new ArrayList<>();
+			for (String line : readList()) {
+				if (!line.startsWith("pathname=")) //$NON-NLS-1$
+					throw invalidResponse(line);
+				paths.add(line.substring("pathname=".length())); //$NON-NLS-1$
+			}
+			String status = readStatus(null);
+			if (!STATUS_SUCCESS.equals(status))
+				throw invalidResponse("status=" + status); //$NON-NLS-1$
+			return paths;
+		} catch (IOException e) {
+			stop();
+			throw e;
+		}
+	}
+
+	/**
+	 * Stop the process.
+	 * <p>
+	 * The process is told to exit by closing its standard input. It is
+	 * started again if it is used after this.
+	 */
+	@Override
+	public synchronized void close() {
+		if (process == null)
+			return;
+		try {
+			process.getOutputStream().close();
+			if (!process.waitFor(5, TimeUnit.SECONDS))
+				process.destroy();
+		} catch (IOException e) {
+			process.destroy();
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+		}
+		reset();
+	}
+
+	private boolean run(String type, String path, AnyObjectId blob,
+			InputStream content, OutputStream result, boolean canDelay)
+			throws IOException {
+		boolean resume = delayed.remove(path);
+		String status;
+		try {
+			start();
+			if (!capabilities.contains(type)) {
+				// Like C Git, pass content through that the process does not
+				// want to filter
+				byte[] buf = new byte[MAX_DATA];
+				int n;
+				while ((n = content.read(buf)) >= 0)
+					result.write(buf, 0, n);
+				return true;
+			}
+			out.writeString("command=" + type + '\n'); //$NON-NLS-1$
+			out.writeString("pathname=" + path + '\n'); //$NON-NLS-1$
+			if (blob != null)
+				out.writeString("blob=" + blob.name() + '\n'); //$NON-NLS-1$
+			if (canDelay && capabilities.contains(CAPABILITY_DELAY))
+				out.writeString("can-delay=1\n"); //$NON-NLS-1$
+			out.end();
+			if (!resume)
+				writeContent(content);
+			out.end();
+
+			status = readStatus(null);
+			if (STATUS_DELAYED.equals(status) && canDelay && !resume) {
+				delayed.add(path);
+				return false;
+			}
+			if (STATUS_SUCCESS.equals(status)) {
+				readContent(result);
+				status = readStatus(status);
+			}
+		} catch (IOException e) {
+			stop();
+			throw new IOException(new FilterFailedException(e, command, path));
+		}
+		if (STATUS_SUCCESS.equals(status))
+			return true;
+		if (STATUS_ABORT.equals(status))
+			capabilities.remove(type);
+		throw new IOException(new FilterFailedException(
+				new IOException(MessageFormat.format(
+						JGitText.get().filterProcessStatus, command, status,
+						path)),
+				command, path));
+	}
+
+	private void start() throws IOException {
+		if (process != null)
+			return;
+		ProcessBuilder pb = repo.getFS().runInShell(command, new String[0]);
+		pb.directory(repo.getWorkTree());
+		pb.environment().put(Constants.GIT_DIR_KEY,
+				repo.getDirectory().getAbsolutePath());
+		pb.redirectError(Redirect.INHERIT);
+		process = pb.start();
+		in = new PacketLineIn(process.getInputStream());
+		out = new PacketLineOut(process.getOutputStream());
+
+		out.writeString("git-filter-client\n"); //$NON-NLS-1$
+		out.writeString("version=2\n"); //$NON-NLS-1$
+		out.end();
+		String welcome = in.readString();
+		if (!"git-filter-server".equals(welcome)) //$NON-NLS-1$
+			throw invalidResponse(welcome);
+		List<String> versions = readList();
+		if (!versions.contains("version=2")) //$NON-NLS-1$
+			throw invalidResponse(String.join(" ", versions)); //$NON-NLS-1$
+
+		out.writeString("capability=" + Constants.ATTR_FILTER_TYPE_CLEAN //$NON-NLS-1$
+				+ '\n');
+		out.writeString("capability=" + Constants.ATTR_FILTER_TYPE_SMUDGE //$NON-NLS-1$
+				+ '\n');
+		out.writeString("capability=" + CAPABILITY_DELAY + '\n'); //$NON-NLS-1$
+		out.end();
+		for (String line : readList()) {
+			if (line.startsWith("capability=")) //$NON-NLS-1$
+				capabilities.add(line.substring("capability=".length())); //$NON-NLS-1$
+		}
+		LOG.debug("Started filter process {} with capabilities {}", //$NON-NLS-1$
+				command, capabilities);
+	}
+
+	private void stop() {
+		if (process != null)
+			process.destroy();
+		reset();
+	}
+
+	private void reset() {
+		process = null;
+		in = null;
+		out = null;
+		capabilities.clear();
+		delayed.clear();
+	}
+
+	private void writeContent(InputStream content) throws IOException {
+		byte[] buf = new byte[MAX_DATA];
+		int n;
+		while ((n = content.read(buf)) >= 0) {
+			if (n > 0)
+				out.writePacket(buf, 0, n);
+		}
+	}
+
+	private void readContent(OutputStream result) throws IOException {
+		byte[] buf = new byte[MAX_DATA];
+		int n;
+		while ((n = in.readPacket(buf)) >= 0)
+			result.write(buf, 0, n);
+	}
+
+	private List<String> readList() throws IOException {
+		List<String> lines = new ArrayList<>();
+		String line;
+		while ((line = in.readString()) != PacketLineIn.END)
+			lines.add(line);
+		return lines;
+	}
+
+	private String readStatus(String status) throws IOException {
+		for (String line : readList()) {
+			if (line.startsWith("status=")) //$NON-NLS-1$
+				status = line.substring("status=".length()); //$NON-NLS-1$
+		}
+		return status;
+	}
+
+	private IOException invalidResponse(String response) {
+		return new IOException(MessageFormat.format(
+				JGitText.get().filterProcessInvalidResponse, command,
+				response));
+	}
+}
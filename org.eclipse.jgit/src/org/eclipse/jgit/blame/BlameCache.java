@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.blame;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.lib.AnyObjectId;
+
+/**
+ * Storage for completed blame results, reused by {@link BlameGenerator}.
+ * <p>
+ * Entries are keyed by the commit and path that were blamed and by a string
+ * describing the diff options in effect. When the generator reaches a commit
+ * and path with a cached entry, the remaining lines are resolved from the
+ * entry instead of walking further back in history.
+ * <p>
+ * Implementations must be safe for use by multiple threads.
+ *
+ * @since 5.2
+ */
+public interface BlameCache {
+	/**
+	 * Look up a cached blame.
+	 *
+	 * @param commit
+	 *            the commit the file was blamed at.
+	 * @param path
+	 *            path of the file within {@code commit}.
+	 * @param options
+	 *            description of the diff options in effect.
+	 * @return the cached blame, or null if there is none.
+	 * @throws IOException
+	 *             the cache could not be read.
+	 */
+	@Nullable
+	CachedBlame get(AnyObjectId commit, String path, String options)
+			throws IOException;
+
+	/**
+	 * Store a blame.
+	 *
+	 * @param commit
+	 *            the commit the file was blamed at.
+	 * @param path
+	 *            path of the file within {@code commit}.
+	 * @param options
+	 *            description of the diff options in effect.
+	 * @param blame
+	 *            the blame of every line of the file.
+	 * @throws IOException
+	 *             the cache could not be written.
+	 */
+	void put(AnyObjectId commit, String path, String options,
+			CachedBlame blame) throws IOException;
+}
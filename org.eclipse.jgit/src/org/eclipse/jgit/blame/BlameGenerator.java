@@ -63,6 +63,7 @@
 import org.eclipse.jgit.diff.RawText;
 import org.eclipse.jgit.diff.RawTextComparator;
 import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.MutableObjectId;
@@ -139,6 +140,16 @@ public class BlameGenerator implements AutoCloseable {
 
 	private RenameDetector renameDetector;
 
+	private BlameCache blameCache;
+
+	/** Description of the diff options, null if results cannot be cached. */
+	private String cacheOptions;
+
+	private boolean cacheOptionsReady;
+
+	/** Commit the result file was loaded from, if it may be stored. */
+	private RevCommit cacheCommit;
+
 	/** Potential candidates, sorted by commit time descending. */
 	private Candidate queue;
 
@@ -262,6 +273,42 @@ public RenameDetector getRenameDetector() {
 		return renameDetector;
 	}
 
+	/**
+	 * Set the cache used to reuse previously computed blame results.
+	 * <p>
+	 * When the traversal reaches a commit and path that has an entry in the
+	 * cache, the lines still being searched for are resolved from the entry
+	 * instead of walking further back through history. When the generator
+	 * was started from a single commit (no index or working tree revision was
+	 * pushed) and a {@link org.eclipse.jgit.blame.BlameResult} consumes the
+	 * complete result, that result is stored into the cache.
+	 * <p>
+	 * Regions resolved from the cache do not have
+	 * {@link #getSourceContents()} available. Caching is not used for
+	 * reverse blame, or when a text comparator other than the ones defined by
+	 * {@link org.eclipse.jgit.diff.RawTextComparator} is configured.
+	 *
+	 * @param cache
+	 *            the cache to use, or null to disable caching.
+	 * @return {@code this}
+	 * @since 5.2
+	 */
+	public BlameGenerator setBlameCache(@Nullable BlameCache cache) {
+		blameCache = cache;
+		return this;
+	}
+
+	/**
+	 * Get the cache used to reuse previously computed blame results.
+	 *
+	 * @return the blame cache, or null if caching is disabled.
+	 * @since 5.2
+	 */
+	@Nullable
+	public BlameCache getBlameCache() {
+		return blameCache;
+	}
+
 	/**
 	 * Push a candidate blob onto the generator's traversal stack.
 	 * <p>
@@ -308,6 +355,7 @@ public BlameGenerator push(String description, RawText contents)
 		c.sourceText = contents;
 		c.regionList = new Region(0, 0, contents.size());
 		remaining = contents.size();
+		cacheCommit = null;
 		push(c);
 		return this;
 	}
@@ -340,6 +388,7 @@ public BlameGenerator push(String description, AnyObjectId id)
 			c.sourceText = new RawText(ldr.getCachedBytes(Integer.MAX_VALUE));
 			c.regionList = new Region(0, 0, c.sourceText.size());
 			remaining = c.sourceText.size();
+			cacheCommit = null;
 			push(c);
 			return this;
 		}
@@ -353,6 +402,7 @@ public BlameGenerator push(String description, AnyObjectId id)
 		c.loadText(reader);
 		c.regionList = new Region(0, 0, c.sourceText.size());
 		remaining = c.sourceText.size();
+		cacheCommit = queue == null ? commit : null;
 		push(c);
 		return this;
 	}
@@ -419,6 +469,7 @@ public BlameGenerator reverse(AnyObjectId start, AnyObjectId end)
 	public BlameGenerator reverse(AnyObjectId start,
 			Collection<? extends ObjectId> end) throws IOException {
 		initRevPool(true);
+		cacheCommit = null;
 
 		ReverseCommit result = (ReverseCommit) revPool.parseCommit(start);
 		if (!find(result, resultPath))
@@ -509,6 +560,9 @@ public boolean next() throws IOException {
 			if (n == null)
 				return done();
 
+			if (blameCache != null && resultFromCache(n))
+				return true;
+
 			int pCnt = n.getParentCount();
 			if (pCnt == 1) {
 				if (processOne(n))
@@ -530,6 +584,129 @@ public boolean next() throws IOException {
 		}
 	}
 
+	private boolean resultFromCache(Candidate n) throws IOException {
+		if (n.sourceCommit == null || n.sourceText == null
+				|| n instanceof ReverseCandidate)
+			return false;
+		String options = getCacheOptions();
+		if (options == null)
+			return false;
+
+		CachedBlame cached = blameCache.get(n.sourceCommit,
+				n.sourcePath.getPath(), options);
+		if (cached == null || cached.getLineCount() != n.sourceText.size())
+			return false;
+
+		// Regroup the lines still owned by n by the source named in the
+		// cached entry, joining lines that are adjacent in both files.
+		Candidate[] bySource = new Candidate[cached.getSourceCount()];
+		Region[] tails = new Region[bySource.length];
+		Candidate head = null;
+		Candidate tail = null;
+		try {
+			for (Region r = n.regionList; r != null; r = r.next) {
+				for (int i = 0; i < r.length; i++) {
+					int resLine = r.resultStart + i;
+					int idx = r.sourceStart + i;
+					int src = cached.getSourceIndex(idx);
+					int srcLine = cached.getSourceLine(idx);
+
+					Candidate c = bySource[src];
+					if (c == null) {
+						c = new Candidate(getRepository(),
+								revPool.parseCommit(
+										cached.getSourceCommit(idx)),
+								PathFilter.create(cached.getSourcePath(idx)));
+						bySource[src] = c;
+						if (tail != null)
+							tail.queueNext = c;
+						else
+							head = c;
+						tail = c;
+					}
+
+					Region t = tails[src];
+					if (t != null && t.resultStart + t.length == resLine
+							&& t.sourceStart + t.length == srcLine) {
+						t.length++;
+					} else {
+						Region q = new Region(resLine, srcLine, 1);
+						if (t != null)
+							t.next = q;
+						else
+							c.regionList = q;
+						tails[src] = q;
+					}
+				}
+			}
+		} catch (MissingObjectException e) {
+			// The entry refers to a commit that is no longer available.
+			return false;
+		}
+		if (head == null)
+			return false;
+
+		if (n.sourceCommit == cacheCommit)
+			cacheCommit = null; // The complete result came from the cache.
+		return result(head);
+	}
+
+	@Nullable
+	private String getCacheOptions() {
+		if (!cacheOptionsReady) {
+			cacheOptions = describeOptions();
+			cacheOptionsReady = true;
+		}
+		return cacheOptions;
+	}
+
+	@Nullable
+	private String describeOptions() {
+		String cmp;
+		if (textComparator == RawTextComparator.DEFAULT)
+			cmp = "default"; //$NON-NLS-1$
+		else if (textComparator == RawTextComparator.WS_IGNORE_ALL)
+			cmp = "ws-ignore-all"; //$NON-NLS-1$
+		else if (textComparator == RawTextComparator.WS_IGNORE_LEADING)
+			cmp = "ws-ignore-leading"; //$NON-NLS-1$
+		else if (textComparator == RawTextComparator.WS_IGNORE_TRAILING)
+			cmp = "ws-ignore-trailing"; //$NON-NLS-1$
+		else if (textComparator == RawTextComparator.WS_IGNORE_CHANGE)
+			cmp = "ws-ignore-change"; //$NON-NLS-1$
+		else
+			return null;
+
+		StringBuilder b = new StringBuilder();
+		b.append(diffAlgorithm.getClass().getName());
+		b.append(' ').append(cmp);
+		if (renameDetector != null) {
+			b.append(" renames=").append(renameDetector.getRenameScore()); //$NON-NLS-1$
+			b.append(',').append(renameDetector.getBreakScore());
+			b.append(',').append(renameDetector.getRenameLimit());
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Store a completely computed result into the blame cache.
+	 *
+	 * @param r
+	 *            result computed by this generator.
+	 * @throws IOException
+	 *             the cache could not be written.
+	 */
+	void storeInCache(BlameResult r) throws IOException {
+		if (blameCache == null || cacheCommit == null)
+			return;
+		String options = getCacheOptions();
+		if (options == null)
+			return;
+		CachedBlame cached = r.toCachedBlame();
+		if (cached != null)
+			blameCache.put(cacheCommit, getResultPath(), options, cached);
+		cacheCommit = null;
+	}
+
 	private boolean done() {
 		close();
 		return false;
@@ -44,8 +44,13 @@
 package org.eclipse.jgit.blame;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.revwalk.RevCommit;
 
@@ -248,6 +253,7 @@ public void computeAll() throws IOException {
 		try {
 			while (gen.next())
 				loadFrom(gen);
+			gen.storeInCache(this);
 		} finally {
 			gen.close();
 			generator = null;
@@ -275,8 +281,12 @@ public int computeNext() throws IOException {
 			lastLength = gen.getRegionLength();
 			return gen.getResultStart();
 		} else {
-			gen.close();
-			generator = null;
+			try {
+				gen.storeInCache(this);
+			} finally {
+				gen.close();
+				generator = null;
+			}
 			return -1;
 		}
 	}
@@ -314,8 +324,12 @@ public void computeRange(int start, int end) throws IOException {
 				return;
 
 			if (!gen.next()) {
-				gen.close();
-				generator = null;
+				try {
+					gen.storeInCache(this);
+				} finally {
+					gen.close();
+					generator = null;
+				}
 				return;
 			}
 
@@ -345,6 +359,44 @@ public String toString() {
 		return r.toString();
 	}
 
+	/**
+	 * Convert the result into a form that can be stored in a
+	 * {@link BlameCache}.
+	 *
+	 * @return the cacheable blame, or null if some lines have not been
+	 *         annotated or were blamed on an uncommitted revision.
+	 */
+	CachedBlame toCachedBlame() {
+		int cnt = sourceLines.length;
+		Map<String, Integer> index = new HashMap<>();
+		List<ObjectId> commits = new ArrayList<>();
+		List<String> paths = new ArrayList<>();
+		int[] sources = new int[cnt];
+		int[] lines = new int[cnt];
+		for (int i = 0; i < cnt; i++) {
+			RevCommit c = sourceCommits[i];
+			if (sourceLines[i] == 0 || c == null)
+				return null;
+			if (0 < i && c == sourceCommits[i - 1]
+					&& sourcePaths[i].equals(sourcePaths[i - 1])) {
+				sources[i] = sources[i - 1];
+			} else {
+				String key = c.name() + '\0' + sourcePaths[i];
+				Integer src = index.get(key);
+				if (src == null) {
+					src = Integer.valueOf(commits.size());
+					index.put(key, src);
+					commits.add(c.copy());
+					paths.add(sourcePaths[i]);
+				}
+				sources[i] = src.intValue();
+			}
+			lines[i] = sourceLines[i] - 1;
+		}
+		return new CachedBlame(commits.toArray(new ObjectId[0]),
+				paths.toArray(new String[0]), sources, lines);
+	}
+
 	private void loadFrom(BlameGenerator gen) {
 		RevCommit srcCommit = gen.getSourceCommit();
 		PersonIdent srcAuthor = gen.getSourceAuthor();
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.blame;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * The blame of every line of a file, as stored in a {@link BlameCache}.
+ * <p>
+ * Only the source commit, path and line of each line are kept; authors and
+ * committers are read from the source commits when the entry is reused.
+ *
+ * @since 5.2
+ */
+public final class CachedBlame {
+	private static final int SIGNATURE = 0x4a424c31; // "JBL1"
+
+	/**
+	 * Read a blame previously written by {@link #writeTo(OutputStream)}.
+	 *
+	 * @param in
+	 *            stream to read from.
+	 * @return the blame.
+	 * @throws IOException
+	 *             the stream could not be read or does not contain a valid
+	 *             blame.
+	 */
+	public static CachedBlame read(InputStream in) throws IOException {
+		try {
+			DataInputStream d = new DataInputStream(in);
+			if (d.readInt() != SIGNATURE) {
+				throw corrupt();
+			}
+			int sourceCnt = d.readInt();
+			if (sourceCnt < 0) {
+				throw corrupt();
+			}
+			ObjectId[] commits = new ObjectId[sourceCnt];
+			String[] paths = new String[sourceCnt];
+			byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+			for (int i = 0; i < sourceCnt; i++) {
+				d.readFully(id);
+				commits[i] = ObjectId.fromRaw(id);
+				int len = d.readInt();
+				if (len <= 0) {
+					throw corrupt();
+				}
+				byte[] path = new byte[len];
+				d.readFully(path);
+				paths[i] = new String(path, UTF_8);
+			}
+			int lineCnt = d.readInt();
+			if (lineCnt < 0) {
+				throw corrupt();
+			}
+			int[] sources = new int[lineCnt];
+			int[] lines = new int[lineCnt];
+			for (int i = 0; i < lineCnt; i++) {
+				sources[i] = d.readInt();
+				lines[i] = d.readInt();
+				if (sources[i] < 0 || sources[i] >= sourceCnt
+						|| lines[i] < 0) {
+					throw corrupt();
+				}
+			}
+			return new CachedBlame(commits, paths, sources, lines);
+		} catch (EOFException e) {
+			throw corrupt();
+		}
+	}
+
+	private static IOException corrupt() {
+		return new IOException(JGitText.get().blameCacheEntryCorrupt);
+	}
+
+	private final ObjectId[] commits;
+
+	private final String[] paths;
+
+	private final int[] sources;
+
+	private final int[] lines;
+
+	CachedBlame(ObjectId[] commits, String[] paths, int[] sources,
+			int[] lines) {
+		this.commits = commits;
+		this.paths = paths;
+		this.sources = sources;
+		this.lines = lines;
+	}
+
+	/**
+	 * Get the number of lines in the blamed file.
+	 *
+	 * @return the number of lines in the blamed file.
+	 */
+	public int getLineCount() {
+		return lines.length;
+	}
+
+	/**
+	 * Get the commit that introduced a line.
+	 *
+	 * @param idx
+	 *            line of the blamed file.
+	 * @return the commit that introduced the line.
+	 */
+	public ObjectId getSourceCommit(int idx) {
+		return commits[sources[idx]];
+	}
+
+	/**
+	 * Get the path of a line in its source commit.
+	 *
+	 * @param idx
+	 *            line of the blamed file.
+	 * @return path of the file in {@link #getSourceCommit(int)}.
+	 */
+	public String getSourcePath(int idx) {
+		return paths[sources[idx]];
+	}
+
+	/**
+	 * Get the line number of a line in its source commit.
+	 *
+	 * @param idx
+	 *            line of the blamed file.
+	 * @return 0-based line number in the file at
+	 *         {@link #getSourceCommit(int)}.
+	 */
+	public int getSourceLine(int idx) {
+		return lines[idx];
+	}
+
+	int getSourceCount() {
+		return commits.length;
+	}
+
+	int getSourceIndex(int idx) {
+		return sources[idx];
+	}
+
+	/**
+	 * Write this blame to a stream.
+	 *
+	 * @param out
+	 *            stream to write to.
+	 * @throws IOException
+	 *             the stream could not be written.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		DataOutputStream d = new DataOutputStream(out);
+		d.writeInt(SIGNATURE);
+		d.writeInt(commits.length);
+		for (int i = 0; i < commits.length; i++) {
+			commits[i].copyRawTo(d);
+			byte[] path = paths[i].getBytes(UTF_8);
+			d.writeInt(path.length);
+			d.write(path);
+		}
+		d.writeInt(lines.length);
+		for (int i = 0; i < lines.length; i++) {
+			d.writeInt(sources[i]);
+			d.writeInt(lines[i]);
+		}
+		d.flush();
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.blame;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FileUtils;
+
+/**
+ * A {@link BlameCache} storing each entry as a file in a directory.
+ * <p>
+ * Entries are named by the SHA-1 of their key and fanned out by the first two
+ * hex digits, in the same way as loose objects. Files that cannot be read are
+ * treated as missing entries and are replaced by the next {@link #put}.
+ *
+ * @since 5.2
+ */
+public class FileBlameCache implements BlameCache {
+	private final File directory;
+
+	/**
+	 * Create a cache in {@code $GIT_DIR/blame-cache}.
+	 *
+	 * @param repo
+	 *            repository to store the cache in.
+	 */
+	public FileBlameCache(Repository repo) {
+		this(new File(repo.getDirectory(), "blame-cache")); //$NON-NLS-1$
+	}
+
+	/**
+	 * Create a cache in a directory.
+	 *
+	 * @param directory
+	 *            directory to store entries in. It is created when the first
+	 *            entry is written.
+	 */
+	public FileBlameCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Get the directory entries are stored in.
+	 *
+	 * @return the directory entries are stored in.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public CachedBlame get(AnyObjectId commit, String path, String options)
+			throws IOException {
+		File f = fileFor(commit, path, options);
+		try (InputStream in = new FileInputStream(f)) {
+			return CachedBlame.read(in);
+		} catch (IOException e) {
+			// A missing or damaged entry is a miss; put will replace it.
+			return null;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void put(AnyObjectId commit, String path, String options,
+			CachedBlame blame) throws IOException {
+		File f = fileFor(commit, path, options);
+		FileUtils.mkdirs(f.getParentFile(), true);
+		LockFile lck = new LockFile(f);
+		if (!lck.lock()) {
+			// Another writer is storing the same entry.
+			return;
+		}
+		try {
+			try (OutputStream out = lck.getOutputStream()) {
+				blame.writeTo(out);
+			}
+			lck.commit();
+		} finally {
+			lck.unlock();
+		}
+	}
+
+	private File fileFor(AnyObjectId commit, String path, String options) {
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(InMemoryBlameCache.key(commit, path, options)
+				.getBytes(UTF_8));
+		String name = ObjectId.fromRaw(md.digest()).name();
+		return new File(new File(directory, name.substring(0, 2)),
+				name.substring(2));
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.blame;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+
+/**
+ * A {@link BlameCache} holding the most recently used entries in memory.
+ *
+ * @since 5.2
+ */
+public class InMemoryBlameCache implements BlameCache {
+	private final Map<String, CachedBlame> entries;
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param maxEntries
+	 *            maximum number of blames to retain. The least recently used
+	 *            entry is discarded when the limit is exceeded.
+	 */
+	public InMemoryBlameCache(int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException();
+		}
+		entries = new LinkedHashMap<String, CachedBlame>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, CachedBlame> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public synchronized CachedBlame get(AnyObjectId commit, String path,
+			String options) {
+		return entries.get(key(commit, path, options));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public synchronized void put(AnyObjectId commit, String path,
+			String options, CachedBlame blame) {
+		entries.put(key(commit, path, options), blame);
+	}
+
+	/**
+	 * Get the number of blames currently held.
+	 *
+	 * @return number of blames currently held.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/** Discard all entries. */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	static String key(AnyObjectId commit, String path, String options) {
+		return commit.name() + '\0' + path + '\0' + options;
+	}
+}
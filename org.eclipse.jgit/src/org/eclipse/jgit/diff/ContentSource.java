@@ -124,11 +124,48 @@ public static ContentSource create(WorkingTreeIterator iterator) {
 	public abstract ObjectLoader open(String path, ObjectId id)
 			throws IOException;
 
+	/**
+	 * Create an independent source over the same content, which can be used
+	 * by another thread concurrently with this one.
+	 *
+	 * @return the new source, to be released with {@link #release()}; or null
+	 *         if this source cannot be shared across threads.
+	 */
+	ContentSource fork() {
+		return null;
+	}
+
+	/**
+	 * Release resources held by a source created by {@link #fork()}.
+	 */
+	void release() {
+		// Nothing to release by default.
+	}
+
 	private static class ObjectReaderSource extends ContentSource {
 		private final ObjectReader reader;
 
+		private final boolean owned;
+
 		ObjectReaderSource(ObjectReader reader) {
+			this(reader, false);
+		}
+
+		private ObjectReaderSource(ObjectReader reader, boolean owned) {
 			this.reader = reader;
+			this.owned = owned;
+		}
+
+		@Override
+		ContentSource fork() {
+			return new ObjectReaderSource(reader.newReader(), true);
+		}
+
+		@Override
+		void release() {
+			if (owned) {
+				reader.close();
+			}
 		}
 
 		@Override
@@ -284,5 +321,38 @@ public ObjectLoader open(DiffEntry.Side side, DiffEntry ent)
 				throw new IllegalArgumentException();
 			}
 		}
+
+		/**
+		 * Create a pair reading the same content, usable by another thread
+		 * concurrently with this pair.
+		 *
+		 * @return the new pair, to be released with {@link #release()}; or
+		 *         null if either source cannot be shared across threads.
+		 */
+		Pair fork() {
+			ContentSource o = oldSource.fork();
+			if (o == null) {
+				return null;
+			}
+			if (newSource == oldSource) {
+				return new Pair(o, o);
+			}
+			ContentSource n = newSource.fork();
+			if (n == null) {
+				o.release();
+				return null;
+			}
+			return new Pair(o, n);
+		}
+
+		/**
+		 * Release resources held by a pair created by {@link #fork()}.
+		 */
+		void release() {
+			oldSource.release();
+			if (newSource != oldSource) {
+				newSource.release();
+			}
+		}
 	}
 }
@@ -57,10 +57,19 @@
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.jgit.diff.DiffAlgorithm.SupportedAlgorithm;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
@@ -72,6 +81,7 @@
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.util.ThreadPools;
 import org.eclipse.jgit.lib.AbbreviatedObjectId;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Config;
@@ -131,6 +141,11 @@ public class DiffFormatter implements AutoCloseable {
 
 	private int binaryFileThreshold = DEFAULT_BINARY_FILE_THRESHOLD;
 
+	private boolean largeFileDiff;
+
+	/** Threads to load and diff content with; 0 for one per processor. */
+	private int threads = 1;
+
 	private String oldPrefix = "a/"; //$NON-NLS-1$
 
 	private String newPrefix = "b/"; //$NON-NLS-1$
@@ -285,6 +300,44 @@ public void setBinaryFileThreshold(int threshold) {
 		this.binaryFileThreshold = threshold;
 	}
 
+	/**
+	 * Enable (or disable) diffs of text files above the binary file threshold.
+	 * <p>
+	 * When enabled, text files larger than the threshold set by
+	 * {@link #setBinaryFileThreshold(int)} are no longer reported as binary.
+	 * Their content is spooled to a temporary file and memory-mapped, and
+	 * only line offsets and per-line hash codes are kept on the heap while
+	 * the edit list is computed. Files of 2 GiB or more are still reported
+	 * as binary. Disabled by default.
+	 *
+	 * @param enable
+	 *            true to diff large text files.
+	 * @since 5.2
+	 */
+	public void setLargeFileDiff(boolean enable) {
+		largeFileDiff = enable;
+	}
+
+	/**
+	 * Set the number of threads used by {@link #format(List)}.
+	 * <p>
+	 * With more than one thread, the content of upcoming entries is loaded
+	 * and diffed on a pool of this many threads while earlier entries are
+	 * written. Output is identical to, and in the same order as, formatting
+	 * on a single thread. At most twice this many entries have their content
+	 * held in memory at once. Entries are only processed concurrently when
+	 * both sides are read from the object database; other entries, and
+	 * subclasses' output methods, always run on the calling thread.
+	 *
+	 * @param threads
+	 *            number of threads; 0 to use one per available processor, 1
+	 *            (the default) to format on the calling thread only.
+	 * @since 5.2
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
 	/**
 	 * Set the prefix applied in front of old file paths.
 	 *
@@ -689,10 +742,91 @@ public void format(AbstractTreeIterator a, AbstractTreeIterator b)
 	 *             be written to.
 	 */
 	public void format(List<? extends DiffEntry> entries) throws IOException {
+		int n = threads <= 0 ? Runtime.getRuntime().availableProcessors()
+				: threads;
+		if (1 < n && 1 < entries.size() && source != null) {
+			ContentSource.Pair first = source.fork();
+			if (first != null) {
+				formatParallel(entries, n, first);
+				return;
+			}
+		}
 		for (DiffEntry ent : entries)
 			format(ent);
 	}
 
+	private void formatParallel(List<? extends DiffEntry> entries, int n,
+			ContentSource.Pair first) throws IOException {
+		// The calling thread keeps using source for entries it formats
+		// itself; each worker reads through its own fork.
+		Queue<ContentSource.Pair> forks = new ConcurrentLinkedQueue<>();
+		forks.add(first);
+		AtomicBoolean firstTaken = new AtomicBoolean();
+		ThreadLocal<ContentSource.Pair> sources = ThreadLocal
+				.withInitial(() -> {
+					if (firstTaken.compareAndSet(false, true)) {
+						return first;
+					}
+					ContentSource.Pair p = source.fork();
+					forks.add(p);
+					return p;
+				});
+
+		int size = entries.size();
+		int window = 2 * n;
+		List<Future<Content>> pending = new ArrayList<>(
+				Collections.nCopies(size, null));
+		ExecutorService pool = Executors.newFixedThreadPool(n);
+		try {
+			int next = 0;
+			for (int i = 0; i < size; i++) {
+				for (; next < size && next < i + window; next++) {
+					DiffEntry ent = entries.get(next);
+					if (isConcurrent(ent)) {
+						pending.set(next, pool.submit(
+								() -> loadContent(sources.get(), ent)));
+					}
+				}
+
+				DiffEntry ent = entries.get(i);
+				Future<Content> f = pending.set(i, null);
+				FormatResult res = f != null
+						? createFormatResult(ent, await(f))
+						: createFormatResult(ent);
+				format(res.header, res.a, res.b);
+			}
+		} finally {
+			ThreadPools.shutdown(pool, pending);
+			for (ContentSource.Pair p : forks) {
+				p.release();
+			}
+		}
+	}
+
+	private static boolean isConcurrent(DiffEntry ent) {
+		return ent.getOldId() != null && ent.getNewId() != null
+				&& ent.getOldId().isComplete() && ent.getNewId().isComplete();
+	}
+
+	private static Content await(Future<Content> f) throws IOException {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
 	/**
 	 * Format a patch script for one file entry.
 	 *
@@ -971,8 +1105,30 @@ private static class FormatResult {
 		RawText b;
 	}
 
+	private static class Content {
+		static final Content BINARY = new Content(null, null, null);
+
+		final RawText a;
+
+		final RawText b;
+
+		final EditList edits;
+
+		Content(RawText a, RawText b, EditList edits) {
+			this.a = a;
+			this.b = b;
+			this.edits = edits;
+		}
+	}
+
 	private FormatResult createFormatResult(DiffEntry ent) throws IOException,
 			CorruptObjectException, MissingObjectException {
+		return createFormatResult(ent, null);
+	}
+
+	private FormatResult createFormatResult(DiffEntry ent, Content loaded)
+			throws IOException, CorruptObjectException,
+			MissingObjectException {
 		final FormatResult res = new FormatResult();
 		ByteArrayOutputStream buf = new ByteArrayOutputStream();
 		final EditList editList;
@@ -990,29 +1146,19 @@ private FormatResult createFormatResult(DiffEntry ent) throws IOException,
 
 		assertHaveReader();
 
-		RawText aRaw = null;
-		RawText bRaw = null;
-		if (ent.getOldMode() == GITLINK || ent.getNewMode() == GITLINK) {
-			aRaw = new RawText(writeGitLinkText(ent.getOldId()));
-			bRaw = new RawText(writeGitLinkText(ent.getNewId()));
-		} else {
-			try {
-				aRaw = open(OLD, ent);
-				bRaw = open(NEW, ent);
-			} catch (BinaryBlobException e) {
-				// Do nothing; we check for null below.
-				formatOldNewPaths(buf, ent);
-				buf.write(encodeASCII("Binary files differ\n")); //$NON-NLS-1$
-				editList = new EditList();
-				type = PatchType.BINARY;
-				res.header = new FileHeader(buf.toByteArray(), editList, type);
-				return res;
-			}
+		Content c = loaded != null ? loaded : loadContent(source, ent);
+		if (c == Content.BINARY) {
+			formatOldNewPaths(buf, ent);
+			buf.write(encodeASCII("Binary files differ\n")); //$NON-NLS-1$
+			editList = new EditList();
+			type = PatchType.BINARY;
+			res.header = new FileHeader(buf.toByteArray(), editList, type);
+			return res;
 		}
 
-		res.a = aRaw;
-		res.b = bRaw;
-		editList = diff(res.a, res.b);
+		res.a = c.a;
+		res.b = c.b;
+		editList = c.edits;
 		type = PatchType.UNIFIED;
 
 		switch (ent.getChangeType()) {
@@ -1032,7 +1178,29 @@ private FormatResult createFormatResult(DiffEntry ent) throws IOException,
 		return res;
 	}
 
+	private Content loadContent(ContentSource.Pair src, DiffEntry ent)
+			throws IOException {
+		RawText aRaw;
+		RawText bRaw;
+		if (ent.getOldMode() == GITLINK || ent.getNewMode() == GITLINK) {
+			aRaw = new RawText(writeGitLinkText(ent.getOldId()));
+			bRaw = new RawText(writeGitLinkText(ent.getNewId()));
+		} else {
+			try {
+				aRaw = open(src, OLD, ent);
+				bRaw = open(src, NEW, ent);
+			} catch (BinaryBlobException e) {
+				return Content.BINARY;
+			}
+		}
+		return new Content(aRaw, bRaw, diff(aRaw, bRaw));
+	}
+
 	private EditList diff(RawText a, RawText b) {
+		if (a instanceof LargeText || b instanceof LargeText) {
+			return diffAlgorithm.diff(new LargeTextComparator(comparator),
+					a, b);
+		}
 		return diffAlgorithm.diff(comparator, a, b);
 	}
 
@@ -1042,8 +1210,8 @@ private void assertHaveReader() {
 		}
 	}
 
-	private RawText open(DiffEntry.Side side, DiffEntry entry)
-			throws IOException, BinaryBlobException {
+	private RawText open(ContentSource.Pair src, DiffEntry.Side side,
+			DiffEntry entry) throws IOException, BinaryBlobException {
 		if (entry.getMode(side) == FileMode.MISSING)
 			return RawText.EMPTY_TEXT;
 
@@ -1070,7 +1238,10 @@ private RawText open(DiffEntry.Side side, DiffEntry entry)
 		}
 
 		ObjectLoader ldr = LfsFactory.getInstance().applySmudgeFilter(repository,
-				source.open(side, entry), entry.getDiffAttribute());
+				src.open(side, entry), entry.getDiffAttribute());
+		if (largeFileDiff && ldr.getSize() > binaryFileThreshold) {
+			return LargeText.load(ldr, null);
+		}
 		return RawText.load(ldr, binaryFileThreshold);
 	}
 
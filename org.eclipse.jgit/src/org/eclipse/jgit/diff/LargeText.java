@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.diff;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+import org.eclipse.jgit.errors.BinaryBlobException;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.util.IntList;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * A {@link RawText} whose content is memory-mapped instead of held on the
+ * heap.
+ * <p>
+ * The content is spooled to a temporary file which is mapped read-only, so
+ * only the line map is kept on the heap. Instances cannot be compared with a
+ * {@link RawTextComparator} directly as those read {@link RawText#content};
+ * use {@link LargeTextComparator} instead.
+ */
+class LargeText extends RawText {
+	private static final byte[] NO_CONTENT = {};
+
+	/**
+	 * Load a blob into a LargeText.
+	 *
+	 * @param ldr
+	 *            the ObjectLoader for the blob.
+	 * @param tmpDir
+	 *            directory for the temporary file, null for the system
+	 *            default.
+	 * @return the text.
+	 * @throws BinaryBlobException
+	 *             the blob contains a NUL byte, or is too large to index.
+	 * @throws IOException
+	 *             the blob or the temporary file could not be read or
+	 *             written.
+	 */
+	static LargeText load(ObjectLoader ldr, File tmpDir)
+			throws IOException, BinaryBlobException {
+		long sz = ldr.getSize();
+		if (sz >= Integer.MAX_VALUE) {
+			throw new BinaryBlobException();
+		}
+
+		File tmp = File.createTempFile("jgit_", ".diff", tmpDir); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			IntList lines = new IntList((int) Math.min(sz / 36, 1 << 20));
+			lines.add(Integer.MIN_VALUE);
+			boolean foundLF = true;
+			int pos = 0;
+			try (InputStream in = ldr.openStream();
+					OutputStream out = new FileOutputStream(tmp)) {
+				byte[] buf = new byte[64 * 1024];
+				int n;
+				while ((n = in.read(buf)) > 0) {
+					if (sz < (long) pos + n) {
+						throw new BinaryBlobException();
+					}
+					for (int i = 0; i < n; i++) {
+						if (foundLF) {
+							lines.add(pos + i);
+						}
+						if (buf[i] == '\0') {
+							throw new BinaryBlobException();
+						}
+						foundLF = buf[i] == '\n';
+					}
+					out.write(buf, 0, n);
+					pos += n;
+				}
+			}
+			lines.add(pos);
+
+			ByteBuffer data;
+			try (FileChannel ch = FileChannel.open(tmp.toPath(),
+					StandardOpenOption.READ)) {
+				data = ch.map(MapMode.READ_ONLY, 0, pos);
+			}
+			return new LargeText(data, lines);
+		} finally {
+			// The mapping stays valid after the file is unlinked; platforms
+			// that refuse to delete a mapped file clean it up on exit.
+			if (!tmp.delete()) {
+				tmp.deleteOnExit();
+			}
+		}
+	}
+
+	private final ByteBuffer data;
+
+	private LargeText(ByteBuffer data, IntList lineMap) {
+		super(NO_CONTENT, lineMap);
+		this.data = data;
+	}
+
+	/**
+	 * Get the length of a line, including its trailing LF.
+	 *
+	 * @param i
+	 *            index of the line.
+	 * @return length of the line in bytes.
+	 */
+	int getLineLength(int i) {
+		return lines.get(i + 2) - lines.get(i + 1);
+	}
+
+	/**
+	 * Copy a line, including its trailing LF.
+	 *
+	 * @param i
+	 *            index of the line.
+	 * @param dst
+	 *            buffer to copy into, at least {@link #getLineLength(int)}
+	 *            bytes long.
+	 */
+	void copyLine(int i, byte[] dst) {
+		copy(lines.get(i + 1), dst, 0, getLineLength(i));
+	}
+
+	private void copy(int pos, byte[] dst, int off, int len) {
+		ByteBuffer b = data.duplicate();
+		b.position(pos);
+		b.get(dst, off, len);
+	}
+
+	private byte byteAt(int pos) {
+		return data.get(pos);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The content is copied onto the heap.
+	 */
+	@Override
+	public byte[] getRawContent() {
+		int len = data.limit();
+		byte[] r = new byte[len];
+		copy(0, r, 0, len);
+		return r;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public byte[] getContent() {
+		return getRawContent();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void writeLine(OutputStream out, int i) throws IOException {
+		int start = lines.get(i + 1);
+		int end = lines.get(i + 2);
+		if (start < end && byteAt(end - 1) == '\n')
+			end--;
+		byte[] buf = new byte[Math.min(end - start, 8192)];
+		while (start < end) {
+			int n = Math.min(end - start, buf.length);
+			copy(start, buf, 0, n);
+			out.write(buf, 0, n);
+			start += n;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isMissingNewlineAtEnd() {
+		int end = lines.get(lines.size() - 1);
+		if (end == 0)
+			return true;
+		return byteAt(end - 1) != '\n';
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getString(int begin, int end, boolean dropLF) {
+		if (begin == end)
+			return ""; //$NON-NLS-1$
+
+		int s = lines.get(begin + 1);
+		int e = lines.get(end + 1);
+		if (dropLF && byteAt(e - 1) == '\n')
+			e--;
+		return decode(s, e);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected String decode(int start, int end) {
+		byte[] buf = new byte[end - start];
+		copy(start, buf, 0, buf.length);
+		return RawParseUtils.decode(buf, 0, buf.length);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getLineDelimiter() {
+		if (size() == 0)
+			return null;
+		int e = lines.get(2);
+		if (byteAt(e - 1) != '\n')
+			return null;
+		if (e > 1 && byteAt(e - 2) == '\r')
+			return "\r\n"; //$NON-NLS-1$
+		return "\n"; //$NON-NLS-1$
+	}
+}
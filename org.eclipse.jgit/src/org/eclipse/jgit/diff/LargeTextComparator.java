@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.diff;
+
+import java.util.Arrays;
+
+/**
+ * Compares lines of {@link RawText}s that may be {@link LargeText}s.
+ * <p>
+ * Lines of a {@link LargeText} are copied into scratch buffers and hashed or
+ * compared with the same rules as the wrapped {@link RawTextComparator}, so
+ * edit lists are identical to those computed on in-memory texts. Instances
+ * hold scratch buffers and are not thread-safe.
+ */
+final class LargeTextComparator extends SequenceComparator<RawText> {
+	private final RawTextComparator cmp;
+
+	private byte[] bufA = new byte[256];
+
+	private byte[] bufB = new byte[256];
+
+	LargeTextComparator(RawTextComparator cmp) {
+		this.cmp = cmp;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(RawText a, int ai, RawText b, int bi) {
+		if (!(a instanceof LargeText) && !(b instanceof LargeText))
+			return cmp.equals(a, ai, b, bi);
+
+		int lenA = length(a, ai);
+		int lenB = length(b, bi);
+		if (cmp == RawTextComparator.DEFAULT && lenA != lenB)
+			return false;
+
+		bufA = load(a, ai, lenA, bufA);
+		bufB = load(b, bi, lenB, bufB);
+		if (cmp == RawTextComparator.DEFAULT) {
+			for (int i = 0; i < lenA; i++) {
+				if (bufA[i] != bufB[i])
+					return false;
+			}
+			return true;
+		}
+		return cmp.equals(new RawText(Arrays.copyOf(bufA, lenA)), 0,
+				new RawText(Arrays.copyOf(bufB, lenB)), 0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hash(RawText seq, int ptr) {
+		if (!(seq instanceof LargeText))
+			return cmp.hash(seq, ptr);
+
+		int len = length(seq, ptr);
+		bufA = load(seq, ptr, len, bufA);
+		return cmp.hashRegion(bufA, 0, len);
+	}
+
+	private static int length(RawText t, int i) {
+		if (t instanceof LargeText)
+			return ((LargeText) t).getLineLength(i);
+		return t.lines.get(i + 2) - t.lines.get(i + 1);
+	}
+
+	private static byte[] load(RawText t, int i, int len, byte[] buf) {
+		if (buf.length < len)
+			buf = new byte[Math.max(len, buf.length * 2)];
+		if (t instanceof LargeText)
+			((LargeText) t).copyLine(i, buf);
+		else
+			System.arraycopy(t.content, t.lines.get(i + 1), buf, 0, len);
+		return buf;
+	}
+}
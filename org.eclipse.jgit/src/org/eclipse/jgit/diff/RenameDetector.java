@@ -133,6 +133,12 @@ private int sortOf(ChangeType changeType) {
 	/** Set if the number of adds or deletes was over the limit. */
 	private boolean overRenameLimit;
 
+	/** Threads used to score content renames; 0 for one per processor. */
+	private int threads;
+
+	/** Heap budget for caching similarity indexes, in bytes. */
+	private long indexCacheLimit = SimilarityRenameDetector.DEFAULT_INDEX_CACHE_LIMIT;
+
 	/**
 	 * Create a new rename detector for the given repository
 	 *
@@ -241,6 +247,62 @@ public void setRenameLimit(int limit) {
 		renameLimit = limit;
 	}
 
+	/**
+	 * Get the number of threads used for inexact rename detection.
+	 *
+	 * @return number of threads used to score file pairs; 0 means one per
+	 *         available processor.
+	 * @since 5.2
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the number of threads used for inexact rename detection.
+	 * <p>
+	 * Hashing and scoring of file pairs is spread across a fork-join pool of
+	 * this many threads when there are enough pairs to be worth it and the
+	 * content can be read concurrently, which is the case for content read
+	 * from the object database. The detected renames do not depend on the
+	 * number of threads.
+	 *
+	 * @param threads
+	 *            number of threads; 0 to use one per available processor, 1
+	 *            to score all pairs on the calling thread.
+	 * @since 5.2
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Get the memory budget for caching similarity indexes.
+	 *
+	 * @return maximum number of bytes of heap used to keep similarity
+	 *         indexes of added files between comparisons.
+	 * @since 5.2
+	 */
+	public long getIndexCacheLimit() {
+		return indexCacheLimit;
+	}
+
+	/**
+	 * Set the memory budget for caching similarity indexes.
+	 * <p>
+	 * Each added file is compared against every deleted file. Keeping its
+	 * similarity index avoids reading and hashing the file again for every
+	 * comparison; indexes that do not fit within the budget are rebuilt as
+	 * needed.
+	 *
+	 * @param bytes
+	 *            maximum number of bytes of heap to use for cached indexes.
+	 * @since 5.2
+	 */
+	public void setIndexCacheLimit(long bytes) {
+		indexCacheLimit = bytes;
+	}
+
 	/**
 	 * Check if the detector is over the rename limit.
 	 * <p>
@@ -526,6 +588,8 @@ private void findContentRenames(ContentSource.Pair reader,
 
 			d = new SimilarityRenameDetector(reader, deleted, added);
 			d.setRenameScore(getRenameScore());
+			d.setThreads(threads);
+			d.setIndexCacheLimit(indexCacheLimit);
 			d.compute(pm);
 			overRenameLimit |= d.isTableOverflow();
 			deleted = d.getLeftOverSources();
@@ -230,6 +230,15 @@ void sort() {
 		Arrays.sort(idHash);
 	}
 
+	/**
+	 * Get the approximate amount of heap used by this index.
+	 *
+	 * @return approximate size of the hash table, in bytes.
+	 */
+	long getMemorySize() {
+		return 8L * idHash.length;
+	}
+
 	/**
 	 * Compute the similarity score between this index and another.
 	 * <p>
@@ -47,10 +47,20 @@
 import static org.eclipse.jgit.diff.DiffEntry.Side.OLD;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.SimilarityIndex.TableFullException;
@@ -59,6 +69,7 @@
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.ThreadSafeProgressMonitor;
 
 class SimilarityRenameDetector {
 	/**
@@ -75,6 +86,18 @@ class SimilarityRenameDetector {
 
 	private static final int SCORE_SHIFT = 2 * BITS_PER_INDEX;
 
+	/** Number of pairs below which scoring always runs on one thread. */
+	private static final long PARALLEL_THRESHOLD = 1024;
+
+	/** Number of pairs scored between checks for cancellation. */
+	private static final int CANCEL_CHECK_INTERVAL = 64;
+
+	/** Default heap budget for cached destination indexes. */
+	static final long DEFAULT_INDEX_CACHE_LIMIT = 64 * 1024 * 1024;
+
+	/** Placeholder for destinations whose index overflowed. */
+	private static final SimilarityIndex TOO_LARGE = new SimilarityIndex();
+
 	private ContentSource.Pair reader;
 
 	/**
@@ -114,7 +137,22 @@ class SimilarityRenameDetector {
 	private int renameScore = 60;
 
 	/** Set if any {@link SimilarityIndex.TableFullException} occurs. */
-	private boolean tableOverflow;
+	private volatile boolean tableOverflow;
+
+	/** Number of threads to score with; 0 for one per processor. */
+	private int threads = 1;
+
+	/** Heap budget for {@link #dstIndexes}, in bytes. */
+	private long indexCacheLimit = DEFAULT_INDEX_CACHE_LIMIT;
+
+	/** Size + 1 of each destination, or 0 if not yet known. */
+	private long[] dstSizes;
+
+	/** Cached index of each destination, or {@link #TOO_LARGE}. */
+	private AtomicReferenceArray<SimilarityIndex> dstIndexes;
+
+	/** Remaining budget for {@link #dstIndexes}, in bytes. */
+	private AtomicLong indexCacheFree;
 
 	private List<DiffEntry> out;
 
@@ -129,6 +167,14 @@ void setRenameScore(int score) {
 		renameScore = score;
 	}
 
+	void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	void setIndexCacheLimit(long limit) {
+		indexCacheLimit = limit;
+	}
+
 	void compute(ProgressMonitor pm) throws IOException, CancelledException {
 		if (pm == null)
 			pm = NullProgressMonitor.INSTANCE;
@@ -217,121 +263,302 @@ private static List<DiffEntry> compactDstList(List<DiffEntry> in) {
 
 	private int buildMatrix(ProgressMonitor pm)
 			throws IOException, CancelledException {
-		// Allocate for the worst-case scenario where every pair has a
-		// score that we need to consider. We might not need that many.
-		//
-		matrix = new long[srcs.size() * dsts.size()];
-
-		long[] srcSizes = new long[srcs.size()];
-		long[] dstSizes = new long[dsts.size()];
-		BitSet dstTooLarge = null;
+		dstSizes = new long[dsts.size()];
+		dstIndexes = new AtomicReferenceArray<>(dsts.size());
+		indexCacheFree = new AtomicLong(indexCacheLimit);
 
 		// Consider each pair of files, if the score is above the minimum
 		// threshold we need record that scoring in the matrix so we can
-		// later find the best matches.
+		// later find the best matches. Each row of the matrix belongs to
+		// one source, so rows can be scored independently.
 		//
+		long[][] rows = new long[srcs.size()][];
+		int n = threads <= 0 ? Runtime.getRuntime().availableProcessors()
+				: threads;
+		ContentSource.Pair fork = null;
+		if (n > 1 && srcs.size() > 1 && (long) srcs.size()
+				* dsts.size() >= PARALLEL_THRESHOLD) {
+			fork = reader.fork();
+		}
+		try {
+			if (fork != null) {
+				scoreRowsParallel(rows, Math.min(n, srcs.size()), fork, pm);
+			} else {
+				for (int srcIdx = 0; srcIdx < srcs.size(); srcIdx++) {
+					rows[srcIdx] = scoreRow(srcIdx, reader, pm);
+				}
+			}
+		} finally {
+			if (fork != null) {
+				fork.release();
+			}
+			dstSizes = null;
+			dstIndexes = null;
+		}
+
 		int mNext = 0;
-		SRC: for (int srcIdx = 0; srcIdx < srcs.size(); srcIdx++) {
-			DiffEntry srcEnt = srcs.get(srcIdx);
-			if (!isFile(srcEnt.oldMode)) {
-				pm.update(dsts.size());
-				continue;
+		for (long[] row : rows) {
+			if (row != null) {
+				mNext += row.length;
 			}
+		}
+		matrix = new long[mNext];
+		mNext = 0;
+		for (long[] row : rows) {
+			if (row != null) {
+				System.arraycopy(row, 0, matrix, mNext, row.length);
+				mNext += row.length;
+			}
+		}
 
-			SimilarityIndex s = null;
+		// Sort everything we populated. Every entry is unique, so the order
+		// does not depend on how the rows were computed.
+		//
+		Arrays.sort(matrix);
+		return mNext;
+	}
 
-			for (int dstIdx = 0; dstIdx < dsts.size(); dstIdx++) {
-				if (pm.isCancelled()) {
-					// TODO(ms): use
-					// org.eclipse.jgit.api.errors.CanceledException in next
-					// major version
-					throw new CancelledException(
-							JGitText.get().renameCancelled);
-				}
+	private long[] scoreRow(int srcIdx, ContentSource.Pair cs,
+			ProgressMonitor pm) throws IOException, CancelledException {
+		DiffEntry srcEnt = srcs.get(srcIdx);
+		if (!isFile(srcEnt.oldMode)) {
+			pm.update(dsts.size());
+			return null;
+		}
 
-				DiffEntry dstEnt = dsts.get(dstIdx);
+		long[] row = null;
+		int cnt = 0;
+		long srcSize = 0;
+		SimilarityIndex s = null;
+		int dstIdx = 0;
+		for (; dstIdx < dsts.size(); dstIdx++) {
+			if (dstIdx % CANCEL_CHECK_INTERVAL == 0 && pm.isCancelled()) {
+				// TODO(ms): use
+				// org.eclipse.jgit.api.errors.CanceledException in next
+				// major version
+				throw new CancelledException(JGitText.get().renameCancelled);
+			}
 
-				if (!isFile(dstEnt.newMode)) {
-					pm.update(1);
-					continue;
-				}
+			DiffEntry dstEnt = dsts.get(dstIdx);
 
-				if (!RenameDetector.sameType(srcEnt.oldMode, dstEnt.newMode)) {
-					pm.update(1);
-					continue;
-				}
+			if (!isFile(dstEnt.newMode)) {
+				continue;
+			}
 
-				if (dstTooLarge != null && dstTooLarge.get(dstIdx)) {
-					pm.update(1);
-					continue;
-				}
+			if (!RenameDetector.sameType(srcEnt.oldMode, dstEnt.newMode)) {
+				continue;
+			}
 
-				long srcSize = srcSizes[srcIdx];
-				if (srcSize == 0) {
-					srcSize = size(OLD, srcEnt) + 1;
-					srcSizes[srcIdx] = srcSize;
-				}
+			if (dstIndexes.get(dstIdx) == TOO_LARGE) {
+				continue;
+			}
 
-				long dstSize = dstSizes[dstIdx];
-				if (dstSize == 0) {
-					dstSize = size(NEW, dstEnt) + 1;
-					dstSizes[dstIdx] = dstSize;
-				}
+			if (srcSize == 0) {
+				srcSize = size(cs, OLD, srcEnt) + 1;
+			}
 
-				long max = Math.max(srcSize, dstSize);
-				long min = Math.min(srcSize, dstSize);
-				if (min * 100 / max < renameScore) {
-					// Cannot possibly match, as the file sizes are so different
-					pm.update(1);
-					continue;
-				}
+			long dstSize = dstSizes[dstIdx];
+			if (dstSize == 0) {
+				dstSize = size(cs, NEW, dstEnt) + 1;
+				dstSizes[dstIdx] = dstSize;
+			}
 
-				if (s == null) {
-					try {
-						s = hash(OLD, srcEnt);
-					} catch (TableFullException tableFull) {
-						tableOverflow = true;
-						continue SRC;
-					}
-				}
+			long max = Math.max(srcSize, dstSize);
+			long min = Math.min(srcSize, dstSize);
+			if (min * 100 / max < renameScore) {
+				// Cannot possibly match, as the file sizes are so different
+				continue;
+			}
 
-				SimilarityIndex d;
+			if (s == null) {
 				try {
-					d = hash(NEW, dstEnt);
+					s = hash(cs, OLD, srcEnt);
 				} catch (TableFullException tableFull) {
-					if (dstTooLarge == null)
-						dstTooLarge = new BitSet(dsts.size());
-					dstTooLarge.set(dstIdx);
 					tableOverflow = true;
-					pm.update(1);
-					continue;
+					break;
 				}
+			}
 
-				int contentScore = s.score(d, 10000);
+			SimilarityIndex d = dstIndex(cs, dstIdx);
+			if (d == TOO_LARGE) {
+				continue;
+			}
 
-				// nameScore returns a value between 0 and 100, but we want it
-				// to be in the same range as the content score. This allows it
-				// to be dropped into the pretty formula for the final score.
-				int nameScore = nameScore(srcEnt.oldPath, dstEnt.newPath) * 100;
+			int contentScore = s.score(d, 10000);
 
-				int score = (contentScore * 99 + nameScore * 1) / 10000;
+			// nameScore returns a value between 0 and 100, but we want it
+			// to be in the same range as the content score. This allows it
+			// to be dropped into the pretty formula for the final score.
+			int nameScore = nameScore(srcEnt.oldPath, dstEnt.newPath) * 100;
 
-				if (score < renameScore) {
-					pm.update(1);
-					continue;
-				}
+			int score = (contentScore * 99 + nameScore * 1) / 10000;
 
-				matrix[mNext++] = encode(score, srcIdx, dstIdx);
-				pm.update(1);
+			if (score < renameScore) {
+				continue;
 			}
+
+			if (row == null) {
+				row = new long[dsts.size() - dstIdx];
+			}
+			row[cnt++] = encode(score, srcIdx, dstIdx);
 		}
+		pm.update(dsts.size());
 
-		// Sort everything in the range we populated, which might be the
-		// entire matrix, or just a smaller slice if we had some bad low
-		// scoring pairs.
-		//
-		Arrays.sort(matrix, 0, mNext);
-		return mNext;
+		if (row != null && cnt < row.length) {
+			row = Arrays.copyOf(row, cnt);
+		}
+		return row;
+	}
+
+	/**
+	 * Get the index of a destination, hashing it if it is not cached.
+	 * <p>
+	 * Indexes are kept for reuse by later sources while their total size
+	 * stays within {@link #indexCacheLimit}; beyond that they are rebuilt for
+	 * every source they are compared against.
+	 *
+	 * @param cs
+	 *            source of the destination content.
+	 * @param dstIdx
+	 *            position of the destination in {@code dsts}.
+	 * @return the index of the destination, or {@code TOO_LARGE} if it
+	 *         cannot be hashed.
+	 * @throws IOException
+	 *             the destination content cannot be read.
+	 */
+	private SimilarityIndex dstIndex(ContentSource.Pair cs, int dstIdx)
+			throws IOException {
+		SimilarityIndex d = dstIndexes.get(dstIdx);
+		if (d != null) {
+			return d;
+		}
+		try {
+			d = hash(cs, NEW, dsts.get(dstIdx));
+		} catch (TableFullException tableFull) {
+			dstIndexes.set(dstIdx, TOO_LARGE);
+			tableOverflow = true;
+			return TOO_LARGE;
+		}
+		long sz = d.getMemorySize();
+		if (indexCacheFree.addAndGet(-sz) < 0
+				|| !dstIndexes.compareAndSet(dstIdx, null, d)) {
+			indexCacheFree.addAndGet(sz);
+		}
+		return d;
+	}
+
+	private void scoreRowsParallel(long[][] rows, int n,
+			ContentSource.Pair first, ProgressMonitor pm)
+			throws IOException, CancelledException {
+		// Destination sizes are shared by all rows; compute them up front
+		// so the rows only ever read them.
+		for (int dstIdx = 0; dstIdx < dsts.size(); dstIdx++) {
+			DiffEntry dstEnt = dsts.get(dstIdx);
+			if (isFile(dstEnt.newMode)) {
+				dstSizes[dstIdx] = size(first, NEW, dstEnt) + 1;
+			}
+		}
+
+		Queue<ContentSource.Pair> forks = new ConcurrentLinkedQueue<>();
+		forks.add(first);
+		AtomicBoolean firstTaken = new AtomicBoolean();
+		ThreadLocal<ContentSource.Pair> sources = ThreadLocal
+				.withInitial(() -> {
+					if (firstTaken.compareAndSet(false, true)) {
+						return first;
+					}
+					ContentSource.Pair p = reader.fork();
+					forks.add(p);
+					return p;
+				});
+		AtomicReference<IOException> error = new AtomicReference<>();
+		ThreadSafeProgressMonitor tpm = new ThreadSafeProgressMonitor(pm);
+		ForkJoinPool pool = new ForkJoinPool(n);
+		try {
+			tpm.startWorker();
+			ForkJoinTask<?> task = pool.submit(() -> {
+				try {
+					new ScoreRows(rows, 0, rows.length, sources, tpm, error)
+							.invoke();
+				} finally {
+					tpm.endWorker();
+				}
+			});
+			try {
+				tpm.waitForCompletion();
+				task.get();
+			} catch (InterruptedException e) {
+				error.compareAndSet(null, new InterruptedIOException());
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IOException(cause);
+			}
+		} finally {
+			pool.shutdown();
+			for (ContentSource.Pair p : forks) {
+				if (p != first) {
+					p.release();
+				}
+			}
+		}
+		IOException e = error.get();
+		if (e instanceof CancelledException) {
+			throw (CancelledException) e;
+		} else if (e != null) {
+			throw e;
+		}
+	}
+
+	private class ScoreRows extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final long[][] rows;
+
+		private final int begin;
+
+		private final int end;
+
+		private final ThreadLocal<ContentSource.Pair> sources;
+
+		private final ProgressMonitor pm;
+
+		private final AtomicReference<IOException> error;
+
+		ScoreRows(long[][] rows, int begin, int end,
+				ThreadLocal<ContentSource.Pair> sources, ProgressMonitor pm,
+				AtomicReference<IOException> error) {
+			this.rows = rows;
+			this.begin = begin;
+			this.end = end;
+			this.sources = sources;
+			this.pm = pm;
+			this.error = error;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - begin > 1) {
+				int mid = (begin + end) >>> 1;
+				invokeAll(
+						new ScoreRows(rows, begin, mid, sources, pm, error),
+						new ScoreRows(rows, mid, end, sources, pm, error));
+				return;
+			}
+			if (error.get() != null) {
+				return;
+			}
+			try {
+				rows[begin] = scoreRow(begin, sources.get(), pm);
+			} catch (IOException e) {
+				error.compareAndSet(null, e);
+			}
+		}
 	}
 
 	static int nameScore(String a, String b) {
@@ -381,16 +608,18 @@ static int nameScore(String a, String b) {
 		return (((dirScoreLtr + dirScoreRtl) * 25) + (fileScore * 50)) / 100;
 	}
 
-	private SimilarityIndex hash(DiffEntry.Side side, DiffEntry ent)
+	private static SimilarityIndex hash(ContentSource.Pair cs,
+			DiffEntry.Side side, DiffEntry ent)
 			throws IOException, TableFullException {
 		SimilarityIndex r = new SimilarityIndex();
-		r.hash(reader.open(side, ent));
+		r.hash(cs.open(side, ent));
 		r.sort();
 		return r;
 	}
 
-	private long size(DiffEntry.Side side, DiffEntry ent) throws IOException {
-		return reader.size(side, ent);
+	private static long size(ContentSource.Pair cs, DiffEntry.Side side,
+			DiffEntry ent) throws IOException {
+		return cs.size(side, ent);
 	}
 
 	private static int score(long value) {
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.dircache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * The content id cache ({@code JCID}) extension of the index.
+ * <p>
+ * The cache records the blob id computed for the content of a working tree
+ * file, together with the length, modification time and file key of the file
+ * and the filters applied to its content. As long as all of them are the
+ * same the file still has that content id, and hashing the file again can be
+ * skipped, also when its index entry is racily clean or only its
+ * modification time changed.
+ * <p>
+ * The file key, such as the device and inode number of the file, is recorded
+ * in its string form. On file systems which do not provide one a file
+ * replaced by another one with the same length and modification time is not
+ * detected.
+ * <p>
+ * Only the records of paths which are in the index are written. The
+ * extension is optional, C Git ignores and drops it.
+ *
+ * @since 5.2
+ */
+public class ContentIdCache {
+	private static final int VERSION = 1;
+
+	private final Map<String, Record> records = new HashMap<>();
+
+	private boolean modified;
+
+	/**
+	 * Create an empty content id cache.
+	 */
+	public ContentIdCache() {
+		modified = true;
+	}
+
+	ContentIdCache(byte[] raw) throws CorruptObjectException {
+		try {
+			if (NB.decodeInt32(raw, 0) != VERSION)
+				throw corrupt();
+			int cnt = NB.decodeInt32(raw, 4);
+			int[] ptr = { 8 };
+			for (int i = 0; i < cnt; i++) {
+				String path = readString(raw, ptr);
+				long length = NB.decodeInt64(raw, ptr[0]);
+				long lastModified = NB.decodeInt64(raw, ptr[0] + 8);
+				ptr[0] += 16;
+				String fileKey = readString(raw, ptr);
+				String filter = readString(raw, ptr);
+				ObjectId id = ObjectId.fromRaw(raw, ptr[0]);
+				ptr[0] += Constants.OBJECT_ID_LENGTH;
+				records.put(path, new Record(length, lastModified, fileKey,
+						filter, id));
+			}
+			if (ptr[0] != raw.length)
+				throw corrupt();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw corrupt();
+		}
+	}
+
+	private static String readString(byte[] raw, int[] ptr)
+			throws CorruptObjectException {
+		int end = RawParseUtils.next(raw, ptr[0], '\0');
+		if (end <= ptr[0] || raw[end - 1] != '\0')
+			throw corrupt();
+		String s = RawParseUtils.decode(raw, ptr[0], end - 1);
+		ptr[0] = end;
+		return s;
+	}
+
+	private static CorruptObjectException corrupt() {
+		return new CorruptObjectException(
+				JGitText.get().corruptContentIdCache);
+	}
+
+	/**
+	 * Get the recorded content id of a file.
+	 *
+	 * @param path
+	 *            path of the file in the working tree.
+	 * @param length
+	 *            current length of the file.
+	 * @param lastModified
+	 *            current modification time of the file.
+	 * @param fileKey
+	 *            current file key of the file, see
+	 *            {@link org.eclipse.jgit.util.FS.Attributes#getFileKey()};
+	 *            may be null.
+	 * @param filter
+	 *            description of the filters applied to the content of the
+	 *            file; may be null.
+	 * @return the content id recorded for the file; null if none was
+	 *         recorded for these attributes.
+	 */
+	public ObjectId get(String path, long length, long lastModified,
+			Object fileKey, String filter) {
+		Record r = records.get(path);
+		if (r == null || !r.matches(length, lastModified, str(fileKey),
+				str(filter))) {
+			return null;
+		}
+		return r.id;
+	}
+
+	/**
+	 * Record the content id of a file.
+	 * <p>
+	 * The caller must ensure that a later modification of the file changes
+	 * its modification time, that is the file was not modified within the
+	 * timestamp resolution of the file system before its content was read.
+	 *
+	 * @param path
+	 *            path of the file in the working tree.
+	 * @param length
+	 *            length of the file.
+	 * @param lastModified
+	 *            modification time of the file.
+	 * @param fileKey
+	 *            file key of the file; may be null.
+	 * @param filter
+	 *            description of the filters applied to the content of the
+	 *            file; may be null.
+	 * @param id
+	 *            the content id of the file.
+	 */
+	public void put(String path, long length, long lastModified,
+			Object fileKey, String filter, AnyObjectId id) {
+		Record r = new Record(length, lastModified, str(fileKey),
+				str(filter), id.copy());
+		Record old = records.put(path, r);
+		if (old == null || !old.matches(r.length, r.lastModified, r.fileKey,
+				r.filter) || !old.id.equals(r.id)) {
+			modified = true;
+		}
+	}
+
+	/**
+	 * Whether records were added or changed since the cache was created or
+	 * read.
+	 *
+	 * @return true if the cache should be written.
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	private static String str(Object o) {
+		// Written NUL terminated; null is recorded as the empty string.
+		return o != null ? o.toString().replace('\0', ' ') : ""; //$NON-NLS-1$
+	}
+
+	byte[] toByteArray(DirCache index) {
+		try {
+			Map<String, Record> sorted = new TreeMap<>();
+			for (Map.Entry<String, Record> e : records.entrySet()) {
+				if (index.findEntry(e.getKey()) >= 0)
+					sorted.put(e.getKey(), e.getValue());
+			}
+			ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(buf);
+			out.writeInt(VERSION);
+			out.writeInt(sorted.size());
+			for (Map.Entry<String, Record> e : sorted.entrySet()) {
+				Record r = e.getValue();
+				out.write(Constants.encode(e.getKey()));
+				out.write(0);
+				out.writeLong(r.length);
+				out.writeLong(r.lastModified);
+				out.write(Constants.encode(r.fileKey));
+				out.write(0);
+				out.write(Constants.encode(r.filter));
+				out.write(0);
+				r.id.copyRawTo(out);
+			}
+			out.flush();
+			return buf.toByteArray();
+		} catch (IOException e) {
+			// Cannot happen, the output is a byte array.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class Record {
+		final long length;
+
+		final long lastModified;
+
+		final String fileKey;
+
+		final String filter;
+
+		final ObjectId id;
+
+		Record(long length, long lastModified, String fileKey, String filter,
+				ObjectId id) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.fileKey = fileKey;
+			this.filter = filter;
+			this.id = id;
+		}
+
+		boolean matches(long len, long time, String key, String f) {
+			return length == len && lastModified == time
+					&& fileKey.equals(key) && filter.equals(f);
+		}
+	}
+}
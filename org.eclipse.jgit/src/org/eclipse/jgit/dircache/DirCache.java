@@ -54,17 +54,21 @@
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.internal.storage.file.FileSnapshot;
 import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.internal.util.ThreadPools;
 import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
 import org.eclipse.jgit.util.*;
+import org.eclipse.jgit.util.io.CountingOutputStream;
 import org.eclipse.jgit.util.io.SilentFileInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardCopyOption;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
@@ -72,6 +76,12 @@
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
 
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
@@ -96,6 +106,38 @@ public class DirCache {
 
 	private static final int EXT_TREE = 0x54524545 /* 'TREE' */;
 
+	private static final int EXT_UNTR = 0x554e5452 /* 'UNTR' */;
+
+	private static final int EXT_FSMN = 0x46534d4e /* 'FSMN' */;
+
+	private static final int EXT_JCID = 0x4a434944 /* 'JCID' */;
+
+	private static final int EXT_LINK = 0x6c696e6b /* 'link' */;
+
+	private static final int EXT_EOIE = 0x454f4945 /* 'EOIE' */;
+
+	private static final int EXT_SDIR = 0x73646972 /* 'sdir' */;
+
+	private static final int EXT_IEOT = 0x49454f54 /* 'IEOT' */;
+
+	private static final int IEOT_VERSION = 1;
+
+	/** Size of the EOIE extension, including its header. */
+	private static final int EOIE_LENGTH = 8 + 4 + Constants.OBJECT_ID_LENGTH;
+
+	/** Minimum number of entries of a block of the entry offset table. */
+	private static final int ENTRIES_PER_BLOCK = 10000;
+
+	private static final String SHARED_INDEX_PREFIX = "sharedindex."; //$NON-NLS-1$
+
+	/** Percentage of entries a split index may differ from its shared index. */
+	private static final int DEFAULT_MAX_PERCENT_CHANGE = 20;
+
+	/** Age after which unused shared indexes are deleted. */
+	private static final long SHARED_INDEX_EXPIRE = 14 * 24 * 3600 * 1000L;
+
+	private static final byte[] NO_PATH = {};
+
 	private static final DirCacheEntry[] NO_ENTRIES = {};
 
 	private static final byte[] NO_CHECKSUM = {};
@@ -180,8 +222,10 @@ public static DirCache read(ObjectReader reader, AnyObjectId treeId)
 	 */
 	public static DirCache read(Repository repository)
 			throws CorruptObjectException, IOException {
-		final DirCache c = read(repository.getIndexFile(), repository.getFS());
+		final DirCache c = new DirCache(repository.getIndexFile(),
+				repository.getFS());
 		c.repository = repository;
+		c.read();
 		return c;
 	}
 
@@ -236,9 +280,13 @@ public static DirCache read(File indexLocation, FS fs)
 	 */
 	public static DirCache lock(File indexLocation, FS fs)
 			throws CorruptObjectException, IOException {
-		final DirCache c = new DirCache(indexLocation, fs);
+		return lock(new DirCache(indexLocation, fs));
+	}
+
+	private static DirCache lock(DirCache c)
+			throws CorruptObjectException, IOException {
 		if (!c.lock())
-			throw new LockFailedException(indexLocation);
+			throw new LockFailedException(c.liveFile);
 
 		try {
 			c.read();
@@ -281,9 +329,11 @@ public static DirCache lock(File indexLocation, FS fs)
 	public static DirCache lock(final Repository repository,
 			final IndexChangedListener indexChangedListener)
 			throws CorruptObjectException, IOException {
-		DirCache c = lock(repository.getIndexFile(), repository.getFS(),
-				indexChangedListener);
+		DirCache c = new DirCache(repository.getIndexFile(),
+				repository.getFS());
 		c.repository = repository;
+		lock(c);
+		c.registerIndexChangedListener(indexChangedListener);
 		return c;
 	}
 
@@ -332,6 +382,24 @@ public static DirCache lock(final File indexLocation, final FS fs,
 	/** Cache tree for this index; null if the cache tree is not available. */
 	private DirCacheTree tree;
 
+	/** Untracked cache of this index; null if it is not available. */
+	private UntrackedCache untrackedCache;
+
+	/** Content id cache of this index; null if it is not available. */
+	private ContentIdCache contentIdCache;
+
+	/** Token of the file system monitor; null if no monitor is used. */
+	private String fileSystemMonitorToken;
+
+	/** Version of the index file read; 0 if it was not read. */
+	private int version;
+
+	/** Shared index of the split index read or written; null if none. */
+	private ObjectId splitBaseId;
+
+	/** Entries of {@link #splitBaseId}, as stored in it. */
+	private DirCacheEntry[] splitBase;
+
 	/** Our active lock (if we hold it); null if we don't have it locked. */
 	private LockFile myLock;
 
@@ -394,6 +462,8 @@ public DirCacheEditor editor() {
 	}
 
 	void replace(DirCacheEntry[] e, int cnt) {
+		if (untrackedCache != null)
+			invalidateUntrackedCache(e, cnt);
 		sortedEntries = e;
 		entryCnt = cnt;
 		tree = null;
@@ -459,12 +529,18 @@ public void clear() {
 		sortedEntries = NO_ENTRIES;
 		entryCnt = 0;
 		tree = null;
+		untrackedCache = null;
+		contentIdCache = null;
+		fileSystemMonitorToken = null;
+		version = 0;
+		splitBaseId = null;
+		splitBase = null;
 		readIndexChecksum = NO_CHECKSUM;
 	}
 
 	private void readFrom(InputStream inStream) throws IOException,
 			CorruptObjectException {
-		final BufferedInputStream in = new BufferedInputStream(inStream);
+		InputStream in = new BufferedInputStream(inStream);
 		final MessageDigest md = Constants.newMessageDigest();
 
 		// Read the index header and verify we understand it.
@@ -474,38 +550,43 @@ private void readFrom(InputStream inStream) throws IOException,
 		md.update(hdr, 0, 12);
 		if (!is_DIRC(hdr))
 			throw new CorruptObjectException(JGitText.get().notADIRCFile);
-		final int ver = NB.decodeInt32(hdr, 4);
-		boolean extended = false;
-		if (ver == 3)
-			extended = true;
-		else if (ver != 2)
-			throw new CorruptObjectException(MessageFormat.format(
-					JGitText.get().unknownDIRCVersion, Integer.valueOf(ver)));
-		entryCnt = NB.decodeInt32(hdr, 8);
-		if (entryCnt < 0)
-			throw new CorruptObjectException(JGitText.get().DIRCHasTooManyEntries);
+		version = NB.decodeInt32(hdr, 4);
+		final int storedEntryCnt = NB.decodeInt32(hdr, 8);
 
 		snapshot = FileSnapshot.save(liveFile);
-		int smudge_s = (int) (snapshot.lastModified() / 1000);
-		int smudge_ns = ((int) (snapshot.lastModified() % 1000)) * 1000000;
-
-		// Load the individual file entries.
-		//
-		final int infoLength = DirCacheEntry.getMaximumInfoLength(extended);
-		final byte[] infos = new byte[infoLength * entryCnt];
-		sortedEntries = new DirCacheEntry[entryCnt];
-
-		final MutableInteger infoAt = new MutableInteger();
-		for (int i = 0; i < entryCnt; i++) {
-		  try {
-		    sortedEntries[i] = new DirCacheEntry(infos, infoAt, in, md, smudge_s, smudge_ns);
-		  }
-		  catch (CorruptObjectException e) {
-		    LOG.error("Invalid entry", e);
-		    i--;
-		    entryCnt--;
-		  }
+		DirCacheEntry[] entries = null;
+		if (storedEntryCnt >= 2 * ENTRIES_PER_BLOCK) {
+			final int threads = getReadThreads();
+			if (threads > 1) {
+				// Decoding blocks of entries in parallel needs random access.
+				final ByteBuffer buf = IO.readWholeStream(in,
+						(int) Math.min(liveFile.length(), Integer.MAX_VALUE));
+				final byte[] raw = buf.array();
+				final int len = buf.limit();
+				final int end = findEndOfEntries(raw, len);
+				final int[] blocks = end < 0 ? null
+						: findOffsetTable(raw, end, storedEntryCnt);
+				if (blocks != null)
+					entries = readEntriesInParallel(raw, end, blocks, md,
+							version, storedEntryCnt, threads,
+							snapshot.lastModified());
+				if (entries != null) {
+					in = new ByteArrayInputStream(raw, end, len - end);
+				} else {
+					md.reset();
+					md.update(hdr, 0, 12);
+					in = new ByteArrayInputStream(raw, 0, len);
+				}
+			}
 		}
+		if (entries == null)
+			entries = readEntries(in, md, version, storedEntryCnt,
+					snapshot.lastModified());
+		sortedEntries = entries;
+		entryCnt = sortedEntries.length;
+		final boolean dropped = entryCnt != storedEntryCnt;
+		boolean linked = false;
+		boolean sparse = false;
 
 		// After the file entries are index extensions, and then a footer.
 		//
@@ -524,6 +605,25 @@ else if (ver != 2)
 
 			long sz = NB.decodeUInt32(hdr, 4);
 			switch (NB.decodeInt32(hdr, 0)) {
+			case EXT_LINK: {
+				if (Integer.MAX_VALUE < sz) {
+					throw new CorruptObjectException(MessageFormat.format(
+							JGitText.get().DIRCExtensionIsTooLargeAt,
+							formatExtensionName(hdr), Long.valueOf(sz)));
+				}
+				final byte[] raw = new byte[(int) sz];
+				IO.readFully(in, raw, 0, raw.length);
+				md.update(raw, 0, raw.length);
+				readLink(raw);
+				linked = true;
+				break;
+			}
+			case EXT_SDIR:
+				// Marks a sparse index, whose directories outside of the
+				// sparse checkout cone are single entries.
+				skipOptionalExtension(in, md, hdr, sz);
+				sparse = true;
+				break;
 			case EXT_TREE: {
 				if (Integer.MAX_VALUE < sz) {
 					throw new CorruptObjectException(MessageFormat.format(
@@ -536,6 +636,63 @@ else if (ver != 2)
 				tree = new DirCacheTree(raw, new MutableInteger(), null);
 				break;
 			}
+			case EXT_UNTR: {
+				if (Integer.MAX_VALUE < sz) {
+					throw new CorruptObjectException(MessageFormat.format(
+							JGitText.get().DIRCExtensionIsTooLargeAt,
+							formatExtensionName(hdr), Long.valueOf(sz)));
+				}
+				final byte[] raw = new byte[(int) sz];
+				IO.readFully(in, raw, 0, raw.length);
+				md.update(raw, 0, raw.length);
+				try {
+					untrackedCache = new UntrackedCache(raw);
+				} catch (CorruptObjectException e) {
+					// The extension is only an optimization; a damaged
+					// one is dropped and will be rebuilt when needed.
+					LOG.warn(e.getMessage(), e);
+					untrackedCache = null;
+				}
+				break;
+			}
+			case EXT_JCID: {
+				if (Integer.MAX_VALUE < sz) {
+					throw new CorruptObjectException(MessageFormat.format(
+							JGitText.get().DIRCExtensionIsTooLargeAt,
+							formatExtensionName(hdr), Long.valueOf(sz)));
+				}
+				final byte[] raw = new byte[(int) sz];
+				IO.readFully(in, raw, 0, raw.length);
+				md.update(raw, 0, raw.length);
+				try {
+					contentIdCache = new ContentIdCache(raw);
+				} catch (CorruptObjectException e) {
+					LOG.warn(e.getMessage(), e);
+					contentIdCache = null;
+				}
+				break;
+			}
+			case EXT_FSMN: {
+				if (Integer.MAX_VALUE < sz) {
+					throw new CorruptObjectException(MessageFormat.format(
+							JGitText.get().DIRCExtensionIsTooLargeAt,
+							formatExtensionName(hdr), Long.valueOf(sz)));
+				}
+				final byte[] raw = new byte[(int) sz];
+				IO.readFully(in, raw, 0, raw.length);
+				md.update(raw, 0, raw.length);
+				// Positions in the bitmap don't match if entries were dropped.
+				if (!dropped) {
+					try {
+						readFileSystemMonitor(raw);
+					} catch (IOException | RuntimeException e) {
+						LOG.warn(JGitText.get().corruptFileSystemMonitorExtension,
+								e);
+						resetFileSystemMonitor();
+					}
+				}
+				break;
+			}
 			default:
 				if (hdr[0] >= 'A' && hdr[0] <= 'Z') {
 					// The extension is optional and is here only as
@@ -559,6 +716,443 @@ else if (ver != 2)
 		if (!Arrays.equals(readIndexChecksum, hdr)) {
 			throw new CorruptObjectException(JGitText.get().DIRCChecksumMismatch);
 		}
+		if (!linked) {
+			for (int i = 0; i < entryCnt; i++) {
+				if (sortedEntries[i].path.length == 0) {
+					// Only entries of a split index may lack a path.
+					throw new CorruptObjectException(
+							JGitText.get().DIRCCorruptLinkExtension);
+				}
+			}
+		}
+		if (sparse && repository != null)
+			expandSparseDirectories();
+	}
+
+	/**
+	 * Replace the sparse directories of a sparse index by the entries of
+	 * their trees, marked skip-worktree.
+	 * <p>
+	 * Iterators over the DirCache expect an entry for every file, so like
+	 * most commands of C Git JGit works on the full index in memory. The
+	 * cache tree is dropped as it describes the sparse entries.
+	 *
+	 * @throws IOException
+	 *             the tree of a sparse directory cannot be read.
+	 */
+	private void expandSparseDirectories() throws IOException {
+		final List<DirCacheEntry> expanded = new ArrayList<>(entryCnt);
+		try (ObjectReader reader = repository.newObjectReader();
+				TreeWalk tw = new TreeWalk(reader)) {
+			tw.setRecursive(true);
+			for (int i = 0; i < entryCnt; i++) {
+				final DirCacheEntry e = sortedEntries[i];
+				if (!e.isSparseDirectory() || e.getStage() != 0) {
+					expanded.add(e);
+					continue;
+				}
+				tw.reset(e.getObjectId());
+				while (tw.next()) {
+					final byte[] name = tw.getRawPath();
+					final byte[] path = new byte[e.path.length + name.length];
+					System.arraycopy(e.path, 0, path, 0, e.path.length);
+					System.arraycopy(name, 0, path, e.path.length,
+							name.length);
+					final DirCacheEntry f = new DirCacheEntry(path);
+					f.setFileMode(tw.getFileMode(0));
+					f.setObjectId(tw.getObjectId(0));
+					f.setSkipWorkTree(true);
+					expanded.add(f);
+				}
+			}
+		}
+		sortedEntries = expanded.toArray(new DirCacheEntry[0]);
+		entryCnt = sortedEntries.length;
+		tree = null;
+	}
+
+	private void readLink(byte[] raw) throws IOException {
+		// The id of the shared index, optionally followed by bitmaps of its
+		// entries deleted and replaced by the entries of this file.
+		if (raw.length < Constants.OBJECT_ID_LENGTH)
+			throw new CorruptObjectException(
+					JGitText.get().DIRCCorruptLinkExtension);
+		ObjectId baseId = ObjectId.fromRaw(raw, 0);
+		int[] ptr = { Constants.OBJECT_ID_LENGTH };
+		EWAHCompressedBitmap deleted = new EWAHCompressedBitmap();
+		EWAHCompressedBitmap replaced = new EWAHCompressedBitmap();
+		if (ptr[0] < raw.length) {
+			deleted = readBitmap(raw, ptr);
+			replaced = readBitmap(raw, ptr);
+		}
+		if (ptr[0] != raw.length)
+			throw new CorruptObjectException(
+					JGitText.get().DIRCCorruptLinkExtension);
+		if (ObjectId.zeroId().equals(baseId))
+			return;
+
+		DirCacheEntry[] base = readSharedIndex(baseId);
+		if (deleted.sizeInBits() > base.length
+				|| replaced.sizeInBits() > base.length
+				|| deleted.and(replaced).cardinality() != 0
+				|| replaced.cardinality() > entryCnt)
+			throw new CorruptObjectException(
+					JGitText.get().DIRCCorruptLinkExtension);
+
+		// Replacements come first, in the order of the entries they replace.
+		DirCacheEntry[] kept = new DirCacheEntry[base.length];
+		int keptCnt = 0;
+		int r = 0;
+		for (int i = 0; i < base.length; i++) {
+			if (deleted.get(i))
+				continue;
+			DirCacheEntry src = base[i];
+			if (replaced.get(i)) {
+				src = sortedEntries[r++];
+				if (src.path.length != 0)
+					throw new CorruptObjectException(
+							JGitText.get().DIRCCorruptLinkExtension);
+			}
+			kept[keptCnt++] = new DirCacheEntry(base[i].path, src);
+		}
+
+		// The remaining entries are added, sorted like the shared entries.
+		DirCacheEntry[] merged = new DirCacheEntry[keptCnt + entryCnt - r];
+		int n = 0;
+		int k = 0;
+		while (k < keptCnt || r < entryCnt) {
+			if (r < entryCnt && sortedEntries[r].path.length == 0)
+				throw new CorruptObjectException(
+						JGitText.get().DIRCCorruptLinkExtension);
+			if (r == entryCnt || (k < keptCnt
+					&& ENT_CMP.compare(kept[k], sortedEntries[r]) <= 0))
+				merged[n++] = kept[k++];
+			else
+				merged[n++] = sortedEntries[r++];
+		}
+		sortedEntries = merged;
+		entryCnt = n;
+		splitBaseId = baseId;
+		splitBase = base;
+	}
+
+	private DirCacheEntry[] readSharedIndex(ObjectId id) throws IOException {
+		File file = new File(liveFile.getParentFile(),
+				SHARED_INDEX_PREFIX + id.name());
+		long lastModified = FileSnapshot.save(file).lastModified();
+		try (InputStream in = new BufferedInputStream(
+				new FileInputStream(file))) {
+			final MessageDigest md = Constants.newMessageDigest();
+			final byte[] hdr = new byte[20];
+			IO.readFully(in, hdr, 0, 12);
+			md.update(hdr, 0, 12);
+			if (!is_DIRC(hdr))
+				throw new CorruptObjectException(JGitText.get().notADIRCFile);
+			int cnt = NB.decodeInt32(hdr, 8);
+			DirCacheEntry[] entries = readEntries(in, md,
+					NB.decodeInt32(hdr, 4), cnt, lastModified);
+			if (entries.length != cnt) {
+				// Positions of the entries of the split index are off.
+				throw new CorruptObjectException(
+						JGitText.get().DIRCCorruptLinkExtension);
+			}
+			for (;;) {
+				in.mark(21);
+				IO.readFully(in, hdr, 0, 20);
+				if (in.read() < 0)
+					break;
+				in.reset();
+				md.update(hdr, 0, 8);
+				IO.skipFully(in, 8);
+				if (hdr[0] >= 'A' && hdr[0] <= 'Z')
+					skipOptionalExtension(in, md, hdr,
+							NB.decodeUInt32(hdr, 4));
+				else
+					throw new CorruptObjectException(MessageFormat.format(
+							JGitText.get().DIRCExtensionNotSupportedByThisVersion,
+							formatExtensionName(hdr)));
+			}
+			byte[] checksum = md.digest();
+			if (!Arrays.equals(checksum, hdr))
+				throw new CorruptObjectException(
+						JGitText.get().DIRCChecksumMismatch);
+			if (!id.equals(ObjectId.fromRaw(checksum)))
+				throw new CorruptObjectException(MessageFormat.format(
+						JGitText.get().DIRCSharedIndexMismatch, file,
+						ObjectId.fromRaw(checksum).name()));
+			return entries;
+		}
+	}
+
+	private static EWAHCompressedBitmap readBitmap(byte[] raw, int[] ptr)
+			throws IOException {
+		if (ptr[0] + 12 > raw.length)
+			throw new CorruptObjectException(
+					JGitText.get().DIRCCorruptLinkExtension);
+		int len = 12 + 8 * NB.decodeInt32(raw, ptr[0] + 4);
+		if (len < 12 || ptr[0] + len > raw.length)
+			throw new CorruptObjectException(
+					JGitText.get().DIRCCorruptLinkExtension);
+		EWAHCompressedBitmap b = new EWAHCompressedBitmap();
+		b.deserialize(new DataInputStream(
+				new ByteArrayInputStream(raw, ptr[0], len)));
+		ptr[0] += len;
+		return b;
+	}
+
+	private static boolean isExtended(int ver, int cnt)
+			throws CorruptObjectException {
+		boolean extended = false;
+		if (ver == 3 || ver == 4)
+			extended = true;
+		else if (ver != 2)
+			throw new CorruptObjectException(MessageFormat.format(
+					JGitText.get().unknownDIRCVersion, Integer.valueOf(ver)));
+		if (cnt < 0)
+			throw new CorruptObjectException(JGitText.get().DIRCHasTooManyEntries);
+		return extended;
+	}
+
+	private DirCacheEntry[] readEntries(InputStream in, MessageDigest md,
+			int ver, int cnt, long lastModified) throws IOException {
+		final boolean extended = isExtended(ver, cnt);
+
+		int smudge_s = (int) (lastModified / 1000);
+		int smudge_ns = ((int) (lastModified % 1000)) * 1000000;
+
+		// Load the individual file entries.
+		//
+		final int infoLength = DirCacheEntry.getMaximumInfoLength(extended);
+		final byte[] infos = new byte[infoLength * cnt];
+		DirCacheEntry[] entries = new DirCacheEntry[cnt];
+
+		final MutableInteger infoAt = new MutableInteger();
+		for (int i = 0; i < cnt; i++) {
+		  try {
+			// Version 4 compresses each path against the previous one.
+			byte[] previous = null;
+			if (ver == 4)
+				previous = i > 0 ? entries[i - 1].path : NO_PATH;
+		    entries[i] = new DirCacheEntry(infos, infoAt, in, md, smudge_s, smudge_ns, previous);
+		  }
+		  catch (CorruptObjectException e) {
+			if (ver == 4)
+				throw e;
+		    LOG.error("Invalid entry", e);
+		    i--;
+		    cnt--;
+		  }
+		}
+		return cnt == entries.length ? entries : Arrays.copyOf(entries, cnt);
+	}
+
+	/**
+	 * Decode the blocks of entries listed by the entry offset table on a
+	 * pool of threads, while the entries are hashed into {@code md}.
+	 * <p>
+	 * Each block starts with an entry whose path is not compressed against
+	 * the entry before it, so the blocks can be decoded independently.
+	 *
+	 * @param raw
+	 *            content of the index file following its header.
+	 * @param end
+	 *            offset within {@code raw} of the first extension.
+	 * @param blocks
+	 *            offset within {@code raw} of the first entry of each block,
+	 *            followed by the number of entries of the block.
+	 * @param md
+	 *            digest to hash the entries into.
+	 * @param ver
+	 *            version of the index file.
+	 * @param cnt
+	 *            number of entries of the index.
+	 * @param threads
+	 *            maximum number of threads to decode with.
+	 * @param lastModified
+	 *            last modified time of the index file, to smudge racily
+	 *            clean entries with.
+	 * @return the entries; null if a block could not be decoded, in which
+	 *         case {@code md} has to be reset.
+	 * @throws IOException
+	 *             the thread was interrupted while waiting for the blocks.
+	 */
+	private DirCacheEntry[] readEntriesInParallel(byte[] raw, int end,
+			int[] blocks, MessageDigest md, int ver, int cnt, int threads,
+			long lastModified) throws IOException {
+		final boolean extended = isExtended(ver, cnt);
+		final int smudge_s = (int) (lastModified / 1000);
+		final int smudge_ns = ((int) (lastModified % 1000)) * 1000000;
+		final int infoLength = DirCacheEntry.getMaximumInfoLength(extended);
+		final byte[] infos = new byte[infoLength * cnt];
+		final DirCacheEntry[] entries = new DirCacheEntry[cnt];
+
+		final ExecutorService pool = Executors
+				.newFixedThreadPool(Math.min(threads, blocks.length / 2 + 1));
+		final List<Future<?>> tasks = new ArrayList<>();
+		try {
+			tasks.add(pool.submit(() -> {
+				md.update(raw, 0, end);
+				return null;
+			}));
+			int first = 0;
+			for (int b = 0; b < blocks.length; b += 2) {
+				final int start = first;
+				final int n = blocks[b + 1];
+				final int off = blocks[b];
+				final int len = (b + 2 < blocks.length ? blocks[b + 2] : end)
+						- off;
+				tasks.add(pool.submit(() -> {
+					final InputStream in = new ByteArrayInputStream(raw, off,
+							len);
+					final MutableInteger infoAt = new MutableInteger();
+					infoAt.value = start * infoLength;
+					byte[] previous = ver == 4 ? NO_PATH : null;
+					for (int i = start; i < start + n; i++) {
+						entries[i] = new DirCacheEntry(infos, infoAt, in, null,
+								smudge_s, smudge_ns, previous);
+						if (previous != null)
+							previous = entries[i].path;
+					}
+					if (in.available() != 0)
+						throw new CorruptObjectException(
+								JGitText.get().DIRCCorruptEntryOffsetTable);
+					return null;
+				}));
+				first += n;
+			}
+			for (Future<?> task : tasks)
+				waitFor(task);
+			return entries;
+		} catch (InterruptedIOException e) {
+			throw e;
+		} catch (IOException e) {
+			// Let the sequential reader handle, or drop, invalid entries.
+			LOG.warn(e.getMessage(), e);
+			return null;
+		} finally {
+			ThreadPools.shutdown(pool, tasks);
+		}
+	}
+
+	private static void waitFor(Future<?> task) throws IOException {
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Locate the end of the entries using the EOIE extension.
+	 *
+	 * @param raw
+	 *            content of the index file following its header.
+	 * @param len
+	 *            number of bytes of {@code raw} that are valid.
+	 * @return offset within {@code raw} of the first extension; -1 if there
+	 *         is no valid EOIE extension.
+	 */
+	private static int findEndOfEntries(byte[] raw, int len) {
+		final int eoie = len - Constants.OBJECT_ID_LENGTH - EOIE_LENGTH;
+		if (eoie < 0 || NB.decodeInt32(raw, eoie) != EXT_EOIE
+				|| NB.decodeInt32(raw, eoie + 4) != EOIE_LENGTH - 8)
+			return -1;
+		final long end = NB.decodeUInt32(raw, eoie + 8) - 12;
+		if (end < 0 || end > eoie)
+			return -1;
+
+		// The extension hashes the headers of all extensions before it.
+		final MessageDigest md = Constants.newMessageDigest();
+		int ptr = (int) end;
+		while (ptr < eoie) {
+			if (eoie - ptr < 8)
+				return -1;
+			md.update(raw, ptr, 8);
+			final long sz = NB.decodeUInt32(raw, ptr + 4);
+			if (sz > eoie - ptr - 8)
+				return -1;
+			ptr += 8 + (int) sz;
+		}
+		final byte[] hash = md.digest();
+		for (int i = 0; i < hash.length; i++) {
+			if (hash[i] != raw[eoie + 12 + i])
+				return -1;
+		}
+		return (int) end;
+	}
+
+	/**
+	 * Read the IEOT extension, if present among the extensions.
+	 *
+	 * @param raw
+	 *            content of the index file following its header.
+	 * @param end
+	 *            offset within {@code raw} of the first extension.
+	 * @param cnt
+	 *            number of entries of the index.
+	 * @return offset within {@code raw} of the first entry of each block,
+	 *         followed by the number of entries of the block; null if there
+	 *         is no valid entry offset table.
+	 */
+	private static int[] findOffsetTable(byte[] raw, int end, int cnt) {
+		int ptr = end;
+		for (;;) {
+			final int sig = NB.decodeInt32(raw, ptr);
+			final int sz = (int) NB.decodeUInt32(raw, ptr + 4);
+			if (sig == EXT_EOIE)
+				return null;
+			if (sig == EXT_IEOT)
+				break;
+			// findEndOfEntries() checked the extensions can be walked.
+			ptr += 8 + sz;
+		}
+		final int sz = NB.decodeInt32(raw, ptr + 4);
+		ptr += 8;
+		if (sz < 4 || (sz - 4) % 8 != 0
+				|| NB.decodeInt32(raw, ptr) != IEOT_VERSION)
+			return null;
+		final int[] blocks = new int[(sz - 4) / 4];
+		int total = 0;
+		for (int i = 0; i < blocks.length; i += 2) {
+			final long off = NB.decodeUInt32(raw, ptr + 4 + 4 * i) - 12;
+			final int n = NB.decodeInt32(raw, ptr + 8 + 4 * i);
+			if (off >= end || (i == 0 ? off != 0 : off <= blocks[i - 2])
+					|| n <= 0 || n > cnt - total)
+				return null;
+			blocks[i] = (int) off;
+			blocks[i + 1] = n;
+			total += n;
+		}
+		return total == cnt && blocks.length > 0 ? blocks : null;
+	}
+
+	private int getReadThreads() {
+		int threads = 0;
+		if (repository != null)
+			threads = getIndexThreads(repository.getConfig());
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		return threads;
+	}
+
+	private static int getIndexThreads(Config cfg) {
+		// Like C Git, index.threads may also be a boolean.
+		try {
+			return cfg.getInt(ConfigConstants.CONFIG_INDEX_SECTION,
+					ConfigConstants.CONFIG_KEY_THREADS, 0);
+		} catch (IllegalArgumentException e) {
+			return cfg.getBoolean(ConfigConstants.CONFIG_INDEX_SECTION,
+					ConfigConstants.CONFIG_KEY_THREADS, true) ? 0 : 1;
+		}
 	}
 
 	private void skipOptionalExtension(final InputStream in,
@@ -646,8 +1240,21 @@ public void write() throws IOException {
 	}
 
 	void writeTo(File dir, OutputStream os) throws IOException {
+		final DirCacheEntry[] fullEntries = sortedEntries;
+		final int fullCnt = entryCnt;
+		try {
+			writeIndexTo(dir, os);
+		} finally {
+			// A sparse index is only collapsed while it is written.
+			sortedEntries = fullEntries;
+			entryCnt = fullCnt;
+		}
+	}
+
+	private void writeIndexTo(File dir, OutputStream os) throws IOException {
 		final MessageDigest foot = Constants.newMessageDigest();
-		final DigestOutputStream dos = new DigestOutputStream(os, foot);
+		final CountingOutputStream cos = new CountingOutputStream(os);
+		final DigestOutputStream dos = new DigestOutputStream(cos, foot);
 
 		boolean extended = false;
 		for (int i = 0; i < entryCnt; i++) {
@@ -657,15 +1264,7 @@ void writeTo(File dir, OutputStream os) throws IOException {
 			}
 		}
 
-		// Write the header.
-		//
-		final byte[] tmp = new byte[128];
-		System.arraycopy(SIG_DIRC, 0, tmp, 0, SIG_DIRC.length);
-		NB.encodeInt32(tmp, 4, extended ? 3 : 2);
-		NB.encodeInt32(tmp, 8, entryCnt);
-		dos.write(tmp, 0, 12);
-
-		// Write the individual file entries.
+		final int ver = getVersionToWrite(extended);
 
 		final int smudge_s;
 		final int smudge_ns;
@@ -695,10 +1294,93 @@ void writeTo(File dir, OutputStream os) throws IOException {
 			final DirCacheEntry e = sortedEntries[i];
 			if (e.mightBeRacilyClean(smudge_s, smudge_ns))
 				e.smudgeRacilyClean();
-			e.write(dos);
 		}
 
-		if (writeTree) {
+		final boolean sparse = collapseSparseDirectories();
+
+		// A split index only stores how it differs from its shared index.
+		final boolean split = isSplitIndex(dir);
+		final EWAHCompressedBitmap deleted = new EWAHCompressedBitmap();
+		final EWAHCompressedBitmap replaced = new EWAHCompressedBitmap();
+		final List<DirCacheEntry> replacements = new ArrayList<>();
+		final List<DirCacheEntry> additions = new ArrayList<>();
+		if (split) {
+			if (!diffSharedIndex(dir, deleted, replaced, replacements,
+					additions)) {
+				writeSharedIndex(dir, ver);
+				deleted.clear();
+				replaced.clear();
+				replacements.clear();
+				additions.clear();
+			}
+		} else {
+			splitBaseId = null;
+			splitBase = null;
+		}
+
+		// Write the header.
+		//
+		final int cnt = split ? replacements.size() + additions.size()
+				: entryCnt;
+		final byte[] tmp = new byte[128];
+		System.arraycopy(SIG_DIRC, 0, tmp, 0, SIG_DIRC.length);
+		NB.encodeInt32(tmp, 4, ver);
+		NB.encodeInt32(tmp, 8, cnt);
+		dos.write(tmp, 0, 12);
+		version = ver;
+
+		// Write the individual file entries, in blocks listed by the entry
+		// offset table if the index is large enough to be read in parallel.
+		final int blockSize = getOffsetTableBlockSize(cnt);
+		final ByteArrayOutputStream ieot = new ByteArrayOutputStream();
+		byte[] previous = ver == 4 ? NO_PATH : null;
+		for (int i = 0; i < cnt; i++) {
+			final DirCacheEntry e;
+			final boolean strip;
+			if (!split) {
+				e = sortedEntries[i];
+				strip = false;
+			} else if (i < replacements.size()) {
+				e = replacements.get(i);
+				strip = true;
+			} else {
+				e = additions.get(i - replacements.size());
+				strip = false;
+			}
+			if (blockSize > 0 && i % blockSize == 0) {
+				NB.encodeInt32(tmp, 0, (int) cos.getCount());
+				NB.encodeInt32(tmp, 4, Math.min(blockSize, cnt - i));
+				ieot.write(tmp, 0, 8);
+				// Like C Git, start a block with a path that shares no
+				// prefix with the previous one.
+				if (previous != null)
+					previous = new byte[previous.length];
+			}
+			previous = writeEntry(dos, e, previous, strip);
+		}
+
+		final long endOfEntries = cos.getCount();
+		final MessageDigest eoie = blockSize > 0
+				? Constants.newMessageDigest()
+				: null;
+		if (blockSize > 0) {
+			writeExtensionHeader(dos, tmp, EXT_IEOT, 4 + ieot.size(), eoie);
+			NB.encodeInt32(tmp, 0, IEOT_VERSION);
+			dos.write(tmp, 0, 4);
+			ieot.writeTo(dos);
+		}
+		if (split) {
+			ByteArrayOutputStream link = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(link);
+			splitBaseId.copyRawTo(out);
+			deleted.serialize(out);
+			replaced.serialize(out);
+			out.flush();
+			writeExtensionHeader(dos, tmp, EXT_LINK, link.size(), eoie);
+			link.writeTo(dos);
+		}
+
+		if (writeTree && !sparse) {
 			@SuppressWarnings("resource") // Explicitly closed in try block, and
 											// destroyed in finally
 			TemporaryBuffer bb = new TemporaryBuffer.LocalFile(dir, 5 << 20);
@@ -706,19 +1388,275 @@ void writeTo(File dir, OutputStream os) throws IOException {
 				tree.write(tmp, bb);
 				bb.close();
 
-				NB.encodeInt32(tmp, 0, EXT_TREE);
-				NB.encodeInt32(tmp, 4, (int) bb.length());
-				dos.write(tmp, 0, 8);
+				writeExtensionHeader(dos, tmp, EXT_TREE, (int) bb.length(),
+						eoie);
 				bb.writeTo(dos, null);
 			} finally {
 				bb.destroy();
 			}
 		}
+		if (untrackedCache != null) {
+			byte[] raw = untrackedCache.toByteArray();
+			writeExtensionHeader(dos, tmp, EXT_UNTR, raw.length, eoie);
+			dos.write(raw);
+		}
+		if (contentIdCache != null) {
+			byte[] raw = contentIdCache.toByteArray(this);
+			writeExtensionHeader(dos, tmp, EXT_JCID, raw.length, eoie);
+			dos.write(raw);
+		}
+		if (fileSystemMonitorToken != null) {
+			byte[] raw = fileSystemMonitorToByteArray();
+			writeExtensionHeader(dos, tmp, EXT_FSMN, raw.length, eoie);
+			dos.write(raw);
+		}
+		if (sparse)
+			writeExtensionHeader(dos, tmp, EXT_SDIR, 0, eoie);
+		if (eoie != null) {
+			// Lets readers find the entry offset table without reading
+			// the entries first.
+			writeExtensionHeader(dos, tmp, EXT_EOIE, EOIE_LENGTH - 8, null);
+			NB.encodeInt32(tmp, 0, (int) endOfEntries);
+			dos.write(tmp, 0, 4);
+			dos.write(eoie.digest());
+		}
 		writeIndexChecksum = foot.digest();
 		os.write(writeIndexChecksum);
 		os.close();
 	}
 
+	/**
+	 * Collapse the directories outside of the sparse checkout cone into
+	 * sparse directory entries, if {@code index.sparse} is set.
+	 * <p>
+	 * Only directories whose entries are all merged and skip-worktree are
+	 * collapsed. The trees of the index are written to the repository to
+	 * obtain their ids.
+	 *
+	 * @return whether the entries to write hold sparse directories.
+	 * @throws IOException
+	 *             the sparse-checkout patterns cannot be read, or the trees
+	 *             of the index cannot be written.
+	 */
+	private boolean collapseSparseDirectories() throws IOException {
+		SparseCheckout cone = null;
+		if (repository != null && entryCnt > 0
+				&& repository.getConfig().getBoolean(
+						ConfigConstants.CONFIG_INDEX_SECTION,
+						ConfigConstants.CONFIG_KEY_SPARSE, false)
+				&& !hasUnmergedPaths())
+			cone = SparseCheckout.read(repository);
+		if (cone == null) {
+			for (int i = 0; i < entryCnt; i++) {
+				if (sortedEntries[i].isSparseDirectory())
+					return true;
+			}
+			return false;
+		}
+
+		try (ObjectInserter ins = repository.newObjectInserter()) {
+			writeTree(ins);
+			ins.flush();
+		}
+		final List<DirCacheEntry> collapsed = new ArrayList<>();
+		collapseSparseDirectories(getCacheTree(false), 0, 0, cone, collapsed);
+		if (collapsed.size() == entryCnt)
+			return false;
+		sortedEntries = collapsed.toArray(new DirCacheEntry[0]);
+		entryCnt = sortedEntries.length;
+		return true;
+	}
+
+	private void collapseSparseDirectories(DirCacheTree t, int first,
+			int pathOff, SparseCheckout cone, List<DirCacheEntry> collapsed) {
+		final int end = first + t.getEntrySpan();
+		int c = 0;
+		int i = first;
+		while (i < end) {
+			final DirCacheEntry e = sortedEntries[i];
+			final DirCacheTree st = c < t.getChildCount() ? t.getChild(c)
+					: null;
+			if (st == null || !st.contains(e.path, pathOff, e.path.length)) {
+				collapsed.add(e);
+				i++;
+				continue;
+			}
+			final int stPathOff = pathOff + st.nameLength() + 1;
+			final int stEnd = i + st.getEntrySpan();
+			if (cone.matchDirectory(RawParseUtils.decode(e.path, 0,
+					stPathOff - 1)) == SparseCheckout.Match.OUTSIDE
+					&& allSkipWorkTree(i, stEnd)) {
+				final DirCacheEntry dir = DirCacheEntry.newSparseDirectory(
+						Arrays.copyOf(e.path, stPathOff - 1),
+						st.getObjectId());
+				dir.setSkipWorkTree(true);
+				collapsed.add(dir);
+			} else
+				collapseSparseDirectories(st, i, stPathOff, cone, collapsed);
+			i = stEnd;
+			c++;
+		}
+	}
+
+	private boolean allSkipWorkTree(int first, int end) {
+		for (int i = first; i < end; i++) {
+			if (!sortedEntries[i].isSkipWorkTree())
+				return false;
+		}
+		return true;
+	}
+
+	private static void writeExtensionHeader(OutputStream os, byte[] tmp,
+			int sig, int size, MessageDigest eoie) throws IOException {
+		NB.encodeInt32(tmp, 0, sig);
+		NB.encodeInt32(tmp, 4, size);
+		os.write(tmp, 0, 8);
+		if (eoie != null)
+			eoie.update(tmp, 0, 8);
+	}
+
+	private int getOffsetTableBlockSize(int cnt) {
+		final int blocks = cnt / ENTRIES_PER_BLOCK;
+		if (blocks < 2)
+			return 0;
+		if (repository != null) {
+			final Config cfg = repository.getConfig();
+			if (!cfg.getBoolean(ConfigConstants.CONFIG_INDEX_SECTION,
+					ConfigConstants.CONFIG_KEY_RECORD_OFFSET_TABLE,
+					getIndexThreads(cfg) != 1))
+				return 0;
+		}
+		return (cnt + blocks - 1) / blocks;
+	}
+
+	private static byte[] writeEntry(OutputStream os, DirCacheEntry e,
+			byte[] previous, boolean stripPath) throws IOException {
+		e.write(os, previous, stripPath);
+		if (previous == null)
+			return null;
+		return stripPath ? NO_PATH : e.path;
+	}
+
+	private int getVersionToWrite(boolean extended) {
+		int ver = version;
+		if (repository != null)
+			ver = repository.getConfig().getInt(
+					ConfigConstants.CONFIG_INDEX_SECTION,
+					ConfigConstants.CONFIG_KEY_VERSION, ver);
+		if (ver == 4)
+			return 4;
+		return extended ? 3 : 2;
+	}
+
+	private boolean isSplitIndex(File dir) {
+		if (dir == null || liveFile == null)
+			return false;
+		Boolean split = null;
+		if (repository != null)
+			split = StringUtils.toBooleanOrNull(repository.getConfig()
+					.getString(ConfigConstants.CONFIG_CORE_SECTION, null,
+							ConfigConstants.CONFIG_KEY_SPLIT_INDEX));
+		if (split == null)
+			return splitBaseId != null;
+		return split.booleanValue();
+	}
+
+	private boolean diffSharedIndex(File dir, EWAHCompressedBitmap deleted,
+			EWAHCompressedBitmap replaced, List<DirCacheEntry> replacements,
+			List<DirCacheEntry> additions) {
+		if (splitBaseId == null)
+			return false;
+		int i = 0;
+		int j = 0;
+		while (i < entryCnt || j < splitBase.length) {
+			int cr;
+			if (i == entryCnt)
+				cr = 1;
+			else if (j == splitBase.length)
+				cr = -1;
+			else
+				cr = ENT_CMP.compare(sortedEntries[i], splitBase[j]);
+			if (cr < 0) {
+				additions.add(sortedEntries[i++]);
+			} else if (cr > 0) {
+				deleted.set(j++);
+			} else {
+				if (!sortedEntries[i].isSameAs(splitBase[j])) {
+					replaced.set(j);
+					replacements.add(sortedEntries[i]);
+				}
+				i++;
+				j++;
+			}
+		}
+		int maxPercentChange = DEFAULT_MAX_PERCENT_CHANGE;
+		if (repository != null)
+			maxPercentChange = repository.getConfig().getInt(
+					ConfigConstants.CONFIG_SPLIT_INDEX_SECTION,
+					ConfigConstants.CONFIG_KEY_MAX_PERCENT_CHANGE,
+					maxPercentChange);
+		long changes = additions.size() + replacements.size()
+				+ deleted.cardinality();
+		if (changes * 100 > (long) maxPercentChange * splitBase.length) {
+			return false;
+		}
+		// Keep the shared index from being deleted as expired.
+		return new File(dir, SHARED_INDEX_PREFIX + splitBaseId.name())
+				.setLastModified(System.currentTimeMillis());
+	}
+
+	private void writeSharedIndex(File dir, int ver) throws IOException {
+		final File tmpFile = File.createTempFile("sharedindex_", null, dir); //$NON-NLS-1$
+		try {
+			final MessageDigest md = Constants.newMessageDigest();
+			final byte[] checksum;
+			try (OutputStream out = new BufferedOutputStream(
+					new FileOutputStream(tmpFile))) {
+				final DigestOutputStream dos = new DigestOutputStream(out, md);
+				final byte[] hdr = new byte[12];
+				System.arraycopy(SIG_DIRC, 0, hdr, 0, SIG_DIRC.length);
+				NB.encodeInt32(hdr, 4, ver);
+				NB.encodeInt32(hdr, 8, entryCnt);
+				dos.write(hdr);
+				byte[] previous = ver == 4 ? NO_PATH : null;
+				for (int i = 0; i < entryCnt; i++)
+					previous = writeEntry(dos, sortedEntries[i], previous,
+							false);
+				checksum = md.digest();
+				out.write(checksum);
+			}
+			final ObjectId id = ObjectId.fromRaw(checksum);
+			final File file = new File(dir, SHARED_INDEX_PREFIX + id.name());
+			FileUtils.rename(tmpFile, file, StandardCopyOption.ATOMIC_MOVE);
+			final DirCacheEntry[] base = new DirCacheEntry[entryCnt];
+			for (int i = 0; i < entryCnt; i++)
+				base[i] = new DirCacheEntry(sortedEntries[i].path,
+						sortedEntries[i]);
+			splitBaseId = id;
+			splitBase = base;
+			deleteExpiredSharedIndexes(dir, file);
+		} finally {
+			FileUtils.delete(tmpFile, FileUtils.SKIP_MISSING);
+		}
+	}
+
+	private static void deleteExpiredSharedIndexes(File dir, File keep) {
+		final File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		final long expired = System.currentTimeMillis() - SHARED_INDEX_EXPIRE;
+		for (File f : files) {
+			if (f.getName().startsWith(SHARED_INDEX_PREFIX) && !f.equals(keep)
+					&& f.lastModified() < expired) {
+				try {
+					FileUtils.delete(f, FileUtils.SKIP_MISSING);
+				} catch (IOException e) {
+					// Deleted when the next shared index is written.
+				}
+			}
+		}
+	}
+
 	/**
 	 * Commit this change and release the lock.
 	 * <p>
@@ -927,6 +1865,216 @@ void toArray(final int i, final DirCacheEntry[] dst, final int off,
 		System.arraycopy(sortedEntries, i, dst, off, cnt);
 	}
 
+	/**
+	 * Get the untracked cache of this index.
+	 *
+	 * @return the untracked cache; null if the index has none.
+	 * @since 5.2
+	 */
+	public UntrackedCache getUntrackedCache() {
+		return untrackedCache;
+	}
+
+	/**
+	 * Set the untracked cache of this index.
+	 * <p>
+	 * The cache is written as an extension of the index when the index is
+	 * written, and invalidated as entries are added or removed.
+	 *
+	 * @param cache
+	 *            the untracked cache; null to remove the extension.
+	 * @since 5.2
+	 */
+	public void setUntrackedCache(UntrackedCache cache) {
+		untrackedCache = cache;
+	}
+
+	/**
+	 * Get the content id cache of this index.
+	 *
+	 * @return the content id cache; null if the index has none.
+	 * @since 5.2
+	 */
+	public ContentIdCache getContentIdCache() {
+		return contentIdCache;
+	}
+
+	/**
+	 * Set the content id cache of this index.
+	 * <p>
+	 * The cache is written as an extension of the index when the index is
+	 * written.
+	 *
+	 * @param cache
+	 *            the content id cache; null to remove the extension.
+	 * @since 5.2
+	 */
+	public void setContentIdCache(ContentIdCache cache) {
+		contentIdCache = cache;
+	}
+
+	/**
+	 * Get the token of the file system monitor recorded in this index.
+	 *
+	 * @return the token to query the
+	 *         {@link org.eclipse.jgit.lib.FileSystemMonitor} for changes since
+	 *         the entries were marked
+	 *         {@link DirCacheEntry#isFileSystemMonitorValid() valid}; null if
+	 *         the index doesn't use a monitor.
+	 * @since 5.2
+	 */
+	public String getFileSystemMonitorToken() {
+		return fileSystemMonitorToken;
+	}
+
+	/**
+	 * Apply changes reported by a file system monitor.
+	 * <p>
+	 * Entries of changed paths are no longer
+	 * {@link DirCacheEntry#isFileSystemMonitorValid() valid}, and the token
+	 * of the changes is recorded in the index. The token and the valid
+	 * entries are written as the {@code FSMN} extension of the index.
+	 *
+	 * @param changes
+	 *            changes since {@link #getFileSystemMonitorToken()}; null to
+	 *            stop using a monitor and drop the extension.
+	 * @since 5.2
+	 */
+	public void applyFileSystemMonitorChanges(
+			FileSystemMonitor.Changes changes) {
+		if (changes == null) {
+			resetFileSystemMonitor();
+			return;
+		}
+		if (changes.isEverything()) {
+			resetFileSystemMonitor();
+		} else {
+			for (String path : changes.getPaths()) {
+				invalidateFileSystemMonitor(path);
+			}
+		}
+		fileSystemMonitorToken = changes.getToken();
+	}
+
+	private void invalidateFileSystemMonitor(String path) {
+		byte[] p = Constants.encode(path);
+		int i = findEntry(p, p.length);
+		if (i < 0) {
+			i = -(i + 1);
+		}
+		while (i > 0 && sortedEntries[i - 1].getPathString().equals(path)) {
+			i--;
+		}
+		for (; i < entryCnt && sortedEntries[i].getPathString().equals(path); i++) {
+			sortedEntries[i].setFileSystemMonitorValid(false);
+		}
+		// A changed directory covers everything below it.
+		p = Constants.encode(path + '/');
+		i = findEntry(p, p.length);
+		if (i < 0) {
+			i = -(i + 1);
+		}
+		int end = nextEntry(p, p.length, i);
+		for (; i < end; i++) {
+			sortedEntries[i].setFileSystemMonitorValid(false);
+		}
+	}
+
+	private void resetFileSystemMonitor() {
+		fileSystemMonitorToken = null;
+		for (int i = 0; i < entryCnt; i++) {
+			sortedEntries[i].setFileSystemMonitorValid(false);
+		}
+	}
+
+	private void readFileSystemMonitor(byte[] raw) throws IOException {
+		// version 1: 64 bit timestamp, version 2: NUL terminated token; both
+		// followed by the EWAH bitmap of entries not known to be unmodified.
+		int version = NB.decodeInt32(raw, 0);
+		String token;
+		int ptr;
+		if (version == 1) {
+			token = Long.toString(NB.decodeInt64(raw, 4));
+			ptr = 12;
+		} else if (version == 2) {
+			int end = 4;
+			while (raw[end] != 0) {
+				end++;
+			}
+			token = RawParseUtils.decode(raw, 4, end);
+			ptr = end + 1;
+		} else {
+			throw new CorruptObjectException(
+					JGitText.get().corruptFileSystemMonitorExtension);
+		}
+		int len = NB.decodeInt32(raw, ptr);
+		EWAHCompressedBitmap dirty = new EWAHCompressedBitmap();
+		dirty.deserialize(new DataInputStream(
+				new ByteArrayInputStream(raw, ptr + 4, len)));
+		if (dirty.sizeInBits() > entryCnt) {
+			throw new CorruptObjectException(
+					JGitText.get().corruptFileSystemMonitorExtension);
+		}
+		for (int i = 0; i < entryCnt; i++) {
+			sortedEntries[i].setFileSystemMonitorValid(!dirty.get(i));
+		}
+		fileSystemMonitorToken = token;
+	}
+
+	private byte[] fileSystemMonitorToByteArray() throws IOException {
+		EWAHCompressedBitmap dirty = new EWAHCompressedBitmap();
+		for (int i = 0; i < entryCnt; i++) {
+			if (!sortedEntries[i].isFileSystemMonitorValid()) {
+				dirty.set(i);
+			}
+		}
+		ByteArrayOutputStream bitmap = new ByteArrayOutputStream();
+		dirty.serialize(new DataOutputStream(bitmap));
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buf);
+		out.writeInt(2);
+		out.write(Constants.encode(fileSystemMonitorToken));
+		out.write(0);
+		out.writeInt(bitmap.size());
+		bitmap.writeTo(out);
+		out.flush();
+		return buf.toByteArray();
+	}
+
+	private void invalidateUntrackedCache(DirCacheEntry[] e, int cnt) {
+		// Adding or removing a path changes whether it is untracked, without
+		// touching the directory it lives in. Invalidate those directories.
+		int i = 0;
+		int j = 0;
+		while (i < entryCnt || j < cnt) {
+			int cr;
+			if (i == entryCnt)
+				cr = 1;
+			else if (j == cnt)
+				cr = -1;
+			else
+				cr = cmp(sortedEntries[i], e[j]);
+			if (cr < 0) {
+				untrackedCache.invalidate(sortedEntries[i].getPathString());
+				i = skipStages(sortedEntries, entryCnt, i);
+			} else if (cr > 0) {
+				untrackedCache.invalidate(e[j].getPathString());
+				j = skipStages(e, cnt, j);
+			} else {
+				i = skipStages(sortedEntries, entryCnt, i);
+				j = skipStages(e, cnt, j);
+			}
+		}
+	}
+
+	private static int skipStages(DirCacheEntry[] e, int cnt, int i) {
+		DirCacheEntry first = e[i];
+		do {
+			i++;
+		} while (i < cnt && cmp(first, e[i]) == 0);
+		return i;
+	}
+
 	/**
 	 * Obtain (or build) the current cache tree structure.
 	 * <p>
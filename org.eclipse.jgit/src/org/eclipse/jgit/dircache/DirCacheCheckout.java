@@ -47,19 +47,32 @@
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.jgit.api.errors.CanceledException;
 import org.eclipse.jgit.api.errors.FilterFailedException;
 import org.eclipse.jgit.attributes.FilterCommand;
 import org.eclipse.jgit.attributes.FilterCommandRegistry;
+import org.eclipse.jgit.attributes.FilterProcess;
 import org.eclipse.jgit.errors.CheckoutConflictException;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
@@ -67,6 +80,8 @@
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.events.WorkingTreeModifiedEvent;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.util.ThreadPools;
+import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.CoreConfig.AutoCRLF;
@@ -133,6 +148,74 @@ public CheckoutMetadata(EolStreamType eolStreamType,
 				EolStreamType.DIRECT, null);
 	}
 
+	/**
+	 * Statistics about the files written into the working tree by a checkout.
+	 *
+	 * @since 5.2
+	 */
+	public static class CheckoutStatistics {
+		int workers = 1;
+
+		long filesWritten;
+
+		long bytesWritten;
+
+		long timeWriting;
+
+		/**
+		 * Get number of threads used to write files.
+		 *
+		 * @return number of threads used to write files; 1 if the files were
+		 *         written sequentially.
+		 */
+		public int getWorkers() {
+			return workers;
+		}
+
+		/**
+		 * Get number of files and symbolic links written.
+		 *
+		 * @return number of files and symbolic links written.
+		 */
+		public long getFilesWritten() {
+			return filesWritten;
+		}
+
+		/**
+		 * Get number of bytes written.
+		 *
+		 * @return total length of the files written, as recorded in the index.
+		 */
+		public long getBytesWritten() {
+			return bytesWritten;
+		}
+
+		/**
+		 * Get time in milliseconds spent writing updated files.
+		 *
+		 * @return time in milliseconds spent writing updated files.
+		 */
+		public long getTimeWriting() {
+			return timeWriting;
+		}
+
+		/**
+		 * Get write throughput.
+		 *
+		 * @return files written per second, or 0 if nothing was written.
+		 */
+		public double getFilesPerSecond() {
+			if (filesWritten == 0)
+				return 0;
+			return filesWritten * 1000.0 / Math.max(1, timeWriting);
+		}
+
+		void add(DirCacheEntry entry) {
+			filesWritten++;
+			bytesWritten += entry.getLength();
+		}
+	}
+
 	private Repository repo;
 
 	private HashMap<String, CheckoutMetadata> updated = new HashMap<>();
@@ -141,6 +224,9 @@ public CheckoutMetadata(EolStreamType eolStreamType,
 
 	private ArrayList<String> removed = new ArrayList<>();
 
+	/** Updated paths whose smudge filter process postponed them. */
+	private final Map<String, CheckoutMetadata> delayed = new LinkedHashMap<>();
+
 	private ObjectId mergeCommitTree;
 
 	private DirCache dc;
@@ -161,8 +247,13 @@ public CheckoutMetadata(EolStreamType eolStreamType,
 
 	private boolean performingCheckout;
 
+	/** Cone of the sparse checkout; null if all files are checked out. */
+	private SparseCheckout sparseCheckout;
+
 	private ProgressMonitor monitor = NullProgressMonitor.INSTANCE;
 
+	private final CheckoutStatistics statistics = new CheckoutStatistics();
+
 	/**
 	 * Get list of updated paths and smudgeFilterCommands
 	 *
@@ -304,6 +395,17 @@ public void setProgressMonitor(ProgressMonitor monitor) {
 		this.monitor = monitor != null ? monitor : NullProgressMonitor.INSTANCE;
 	}
 
+	/**
+	 * Get statistics about the files written by the last {@link #checkout()}.
+	 *
+	 * @return statistics about the files written by the last
+	 *         {@link #checkout()}.
+	 * @since 5.2
+	 */
+	public CheckoutStatistics getStatistics() {
+		return statistics;
+	}
+
 	/**
 	 * Scan head, index and merge tree. Used during normal checkout or merge
 	 * operations.
@@ -315,6 +417,8 @@ public void preScanTwoTrees() throws CorruptObjectException, IOException {
 		removed.clear();
 		updated.clear();
 		conflicts.clear();
+		sparseCheckout = SparseCheckout.read(repo);
+		clearSkipWorkTreeOfPresentFiles();
 		walk = new NameConflictTreeWalk(repo);
 		builder = dc.builder();
 
@@ -323,6 +427,7 @@ public void preScanTwoTrees() throws CorruptObjectException, IOException {
 		int dciPos = walk.addTree(new DirCacheBuildIterator(builder));
 		walk.addTree(workingTree);
 		workingTree.setDirCacheIterator(walk, dciPos);
+		useFileSystemMonitor();
 
 		while (walk.next()) {
 			processEntry(walk.getTree(0, CanonicalTreeParser.class),
@@ -334,6 +439,14 @@ public void preScanTwoTrees() throws CorruptObjectException, IOException {
 		}
 	}
 
+	private void useFileSystemMonitor() throws IOException {
+		// Skip examining files that didn't change since they were found to
+		// match the index.
+		if (workingTree instanceof FileTreeIterator) {
+			((FileTreeIterator) workingTree).setFileSystemMonitor(dc);
+		}
+	}
+
 	private void addTree(TreeWalk tw, ObjectId id) throws MissingObjectException, IncorrectObjectTypeException, IOException {
 		if (id == null)
 			tw.addTree(new EmptyTreeIterator());
@@ -356,6 +469,8 @@ public void prescanOneTree()
 		removed.clear();
 		updated.clear();
 		conflicts.clear();
+		sparseCheckout = SparseCheckout.read(repo);
+		clearSkipWorkTreeOfPresentFiles();
 
 		builder = dc.builder();
 
@@ -364,6 +479,7 @@ public void prescanOneTree()
 		int dciPos = walk.addTree(new DirCacheBuildIterator(builder));
 		walk.addTree(workingTree);
 		workingTree.setDirCacheIterator(walk, dciPos);
+		useFileSystemMonitor();
 
 		while (walk.next()) {
 			processEntry(walk.getTree(0, CanonicalTreeParser.class),
@@ -562,40 +678,19 @@ private boolean doCheckout() throws CorruptObjectException, IOException,
 			}
 			removed = filterOut(removed, nonDeleted);
 			nonDeleted = null;
-			Iterator<Map.Entry<String, CheckoutMetadata>> toUpdate = updated
-					.entrySet().iterator();
-			Map.Entry<String, CheckoutMetadata> e = null;
+			long writeStart = System.currentTimeMillis();
+			statistics.filesWritten = 0;
+			statistics.bytesWritten = 0;
+			statistics.workers = getWorkers();
 			try {
-				while (toUpdate.hasNext()) {
-					e = toUpdate.next();
-					String path = e.getKey();
-					CheckoutMetadata meta = e.getValue();
-					DirCacheEntry entry = dc.getEntry(path);
-					if (FileMode.GITLINK.equals(entry.getRawMode())) {
-						checkoutGitlink(path, entry);
-					} else {
-						checkoutEntry(repo, entry, objectReader, false, meta);
-					}
-					e = null;
-
-					monitor.update(1);
-					if (monitor.isCancelled()) {
-						throw new CanceledException(MessageFormat.format(
-								JGitText.get().operationCanceled,
-								JGitText.get().checkingOutFiles));
-					}
-				}
-			} catch (Exception ex) {
-				// We didn't actually modify the current entry nor any that
-				// might follow.
-				if (e != null) {
-					toUpdate.remove();
-				}
-				while (toUpdate.hasNext()) {
-					e = toUpdate.next();
-					toUpdate.remove();
+				if (statistics.workers > 1) {
+					checkoutUpdatedInParallel(objectReader, statistics.workers);
+				} else {
+					checkoutUpdated(objectReader);
 				}
-				throw ex;
+			} finally {
+				statistics.timeWriting = System.currentTimeMillis()
+						- writeStart;
 			}
 			for (String conflict : conflicts) {
 				// the conflicts are likely to have multiple entries in the
@@ -633,6 +728,241 @@ private boolean doCheckout() throws CorruptObjectException, IOException,
 		return toBeDeleted.size() == 0;
 	}
 
+	private int getWorkers() {
+		int n = updated.size();
+		Config cfg = repo.getConfig();
+		int workers = cfg.getInt(ConfigConstants.CONFIG_CHECKOUT_SECTION,
+				ConfigConstants.CONFIG_KEY_WORKERS, 1);
+		if (workers <= 0) {
+			workers = Runtime.getRuntime().availableProcessors();
+		}
+		int threshold = cfg.getInt(ConfigConstants.CONFIG_CHECKOUT_SECTION,
+				ConfigConstants.CONFIG_KEY_THRESHOLD_FOR_PARALLELISM, 100);
+		if (workers <= 1 || n < Math.max(2, threshold)) {
+			return 1;
+		}
+		return Math.min(workers, n);
+	}
+
+	private void checkoutUpdated(ObjectReader objectReader)
+			throws IOException, CanceledException {
+		Iterator<Map.Entry<String, CheckoutMetadata>> toUpdate = updated
+				.entrySet().iterator();
+		Map.Entry<String, CheckoutMetadata> e = null;
+		try {
+			while (toUpdate.hasNext()) {
+				e = toUpdate.next();
+				String path = e.getKey();
+				CheckoutMetadata meta = e.getValue();
+				DirCacheEntry entry = dc.getEntry(path);
+				if (FileMode.GITLINK.equals(entry.getRawMode())) {
+					checkoutGitlink(path, entry);
+				} else if (checkoutEntry(repo, entry, objectReader, false, meta,
+						true)) {
+					statistics.add(entry);
+				} else {
+					delayed.put(path, meta);
+				}
+				e = null;
+
+				monitor.update(1);
+				checkCancelled();
+			}
+			checkoutDelayed(objectReader);
+		} catch (Exception ex) {
+			// We didn't actually modify the current entry nor any that
+			// might follow.
+			if (e != null) {
+				toUpdate.remove();
+			}
+			while (toUpdate.hasNext()) {
+				e = toUpdate.next();
+				toUpdate.remove();
+			}
+			updated.keySet().removeAll(delayed.keySet());
+			throw ex;
+		}
+	}
+
+	/**
+	 * Write the updated entries using a pool of worker threads.
+	 * <p>
+	 * All removals have already been applied, and the index never holds a
+	 * path that is also the parent directory of another path. The files can
+	 * therefore be written in any order; parent directories may be created
+	 * concurrently, which {@link FileUtils#mkdirs(File, boolean)} tolerates.
+	 * Each worker reads blobs through its own reader. Gitlinks and entries
+	 * needing a smudge filter are still handled on the calling thread, as
+	 * filters are not required to be thread-safe.
+	 *
+	 * @param objectReader
+	 *            reader of the calling thread.
+	 * @param workers
+	 *            number of worker threads.
+	 * @throws IOException
+	 *             a file cannot be written.
+	 * @throws CanceledException
+	 *             the checkout was cancelled through the progress monitor.
+	 */
+	private void checkoutUpdatedInParallel(ObjectReader objectReader,
+			int workers) throws IOException, CanceledException {
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		ThreadLocal<ObjectReader> reader = new ThreadLocal<>();
+		Queue<ObjectReader> readers = new ConcurrentLinkedQueue<>();
+		List<DirCacheEntry> entries = new ArrayList<>();
+		List<Future<?>> tasks = new ArrayList<>();
+		Set<String> written = new HashSet<>();
+		try {
+			for (Map.Entry<String, CheckoutMetadata> e : updated.entrySet()) {
+				String path = e.getKey();
+				CheckoutMetadata meta = e.getValue();
+				DirCacheEntry entry = dc.getEntry(path);
+				if (FileMode.GITLINK.equals(entry.getRawMode())) {
+					checkoutGitlink(path, entry);
+					written.add(path);
+					monitor.update(1);
+				} else if (meta != null && meta.smudgeFilterCommand != null) {
+					if (checkoutEntry(repo, entry, objectReader, false, meta,
+							true)) {
+						statistics.add(entry);
+					} else {
+						delayed.put(path, meta);
+					}
+					written.add(path);
+					monitor.update(1);
+				} else {
+					entries.add(entry);
+					tasks.add(pool.submit(() -> {
+						ObjectReader or = reader.get();
+						if (or == null) {
+							or = objectReader.newReader();
+							reader.set(or);
+							readers.add(or);
+						}
+						checkoutEntry(repo, entry, or, false, meta);
+						return null;
+					}));
+				}
+				checkCancelled();
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				DirCacheEntry entry = entries.get(i);
+				waitFor(tasks.get(i));
+				written.add(entry.getPathString());
+				statistics.add(entry);
+				monitor.update(1);
+				checkCancelled();
+			}
+			checkoutDelayed(objectReader);
+		} finally {
+			ThreadPools.shutdown(pool, tasks);
+			ObjectReader or;
+			while ((or = readers.poll()) != null) {
+				or.close();
+			}
+			written.removeAll(delayed.keySet());
+			if (written.size() < updated.size()) {
+				// Only report the entries whose files were fully written.
+				updated.keySet().retainAll(written);
+			}
+		}
+	}
+
+	/**
+	 * Write the files whose smudge filter process postponed them.
+	 * <p>
+	 * Like C Git, this is done once all other files are written: each process
+	 * is asked for the postponed files it has ready, until none are left. If
+	 * the process of a filter driver is no longer configured, its postponed
+	 * files are written with the driver's one-shot smudge command.
+	 *
+	 * @param objectReader
+	 *            reader to load the blobs with.
+	 * @throws IOException
+	 *             a file cannot be written, or a process does not provide
+	 *             the files it postponed.
+	 * @throws CanceledException
+	 *             the checkout was cancelled through the progress monitor.
+	 */
+	private void checkoutDelayed(ObjectReader objectReader)
+			throws IOException, CanceledException {
+		while (!delayed.isEmpty()) {
+			Map.Entry<String, CheckoutMetadata> first = delayed.entrySet()
+					.iterator().next();
+			String driver = FilterProcess
+					.getDriverName(first.getValue().smudgeFilterCommand);
+			FilterProcess process = driver != null
+					? repo.getFilterProcess(driver)
+					: null;
+			if (process == null) {
+				checkoutDelayed(objectReader, first.getKey(),
+						first.getValue());
+				continue;
+			}
+			List<String> available = process.getAvailableBlobs();
+			if (available.isEmpty()) {
+				throw filterProcessFailed(process, first.getKey(),
+						JGitText.get().filterProcessDelayedNotAvailable);
+			}
+			for (String path : available) {
+				CheckoutMetadata meta = delayed.get(path);
+				if (meta == null || !Objects.equals(driver, FilterProcess
+						.getDriverName(meta.smudgeFilterCommand))) {
+					throw filterProcessFailed(process, path,
+							JGitText.get().filterProcessNotDelayed);
+				}
+				checkoutDelayed(objectReader, path, meta);
+			}
+		}
+	}
+
+	private void checkoutDelayed(ObjectReader objectReader, String path,
+			CheckoutMetadata meta) throws IOException, CanceledException {
+		DirCacheEntry entry = dc.getEntry(path);
+		checkoutEntry(repo, entry, objectReader, false, meta, false);
+		delayed.remove(path);
+		statistics.add(entry);
+		checkCancelled();
+	}
+
+	private static IOException filterProcessFailed(FilterProcess process,
+			String path, String pattern) {
+		return new IOException(new FilterFailedException(
+				new IOException(MessageFormat.format(pattern,
+						process.getCommand(), path)),
+				process.getCommand(), path));
+	}
+
+	private static void waitFor(Future<?> task) throws IOException {
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException(MessageFormat.format(
+					JGitText.get().operationCanceled,
+					JGitText.get().checkingOutFiles));
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private void checkCancelled() throws CanceledException {
+		if (monitor.isCancelled()) {
+			throw new CanceledException(MessageFormat.format(
+					JGitText.get().operationCanceled,
+					JGitText.get().checkingOutFiles));
+		}
+	}
+
 	private void checkoutGitlink(String path, DirCacheEntry entry)
 			throws IOException {
 		File gitlinkDir = new File(repo.getWorkTree(), path);
@@ -1225,9 +1555,81 @@ private void conflict(String path, DirCacheEntry e, AbstractTreeIterator h, Abst
 		}
 	}
 
-	private void keep(DirCacheEntry e) {
-		if (e != null && !FileMode.TREE.equals(e.getFileMode()))
+	private void keep(DirCacheEntry e) throws IOException {
+		if (e != null && !FileMode.TREE.equals(e.getFileMode())) {
+			if (sparseCheckout != null && e.getStage() == DirCacheEntry.STAGE_0)
+				updateSkipWorkTree(e);
 			builder.add(e);
+		}
+	}
+
+	/**
+	 * Clear the skip-worktree flag of entries whose file is present.
+	 * <p>
+	 * Skip-worktree entries are considered unchanged without looking at the
+	 * working tree. Like C Git, files that were nonetheless created at such
+	 * paths are looked at again, so that the checkout neither overwrites nor
+	 * removes them if they were modified. The files of a directory missing
+	 * from the working tree, as most directories outside of the cone are,
+	 * cost a single check of the directory.
+	 */
+	private void clearSkipWorkTreeOfPresentFiles() {
+		if (sparseCheckout == null)
+			return;
+		File workTree = repo.getWorkTree();
+		FS fs = repo.getFS();
+		String dir = null;
+		boolean dirExists = false;
+		for (int i = 0; i < dc.getEntryCount(); i++) {
+			DirCacheEntry e = dc.getEntry(i);
+			if (!e.isSkipWorkTree())
+				continue;
+			String path = e.getPathString();
+			String parent = path.substring(0, path.lastIndexOf('/') + 1);
+			if (!parent.equals(dir)) {
+				dir = parent;
+				dirExists = dir.isEmpty()
+						|| fs.isDirectory(new File(workTree, dir));
+			}
+			if (dirExists && fs.exists(new File(workTree, path))) {
+				e.setSkipWorkTree(false);
+				e.setFileSystemMonitorValid(false);
+			}
+		}
+	}
+
+	/**
+	 * Bring an unchanged entry in line with the cone of the sparse checkout.
+	 * <p>
+	 * Entries that entered the cone are checked out. Files that left it are
+	 * removed from the working tree, unless they were modified; like C Git,
+	 * such files are kept and their entries are not marked skip-worktree.
+	 *
+	 * @param e
+	 *            the entry kept in the index.
+	 * @throws IOException
+	 *             the file of the entry cannot be compared with the index.
+	 */
+	private void updateSkipWorkTree(DirCacheEntry e) throws IOException {
+		String path = e.getPathString();
+		boolean inCone = sparseCheckout.contains(path);
+		if (inCone && e.isSkipWorkTree()) {
+			e.setSkipWorkTree(false);
+			updated.put(path, new CheckoutMetadata(
+					walk.getEolStreamType(CHECKOUT_OP),
+					walk.getFilterCommand(Constants.ATTR_FILTER_TYPE_SMUDGE)));
+		} else if (!inCone && !e.isSkipWorkTree()) {
+			// Both prescans add the working tree as the last tree of the walk
+			WorkingTreeIterator f = walk.getTree(walk.getTreeCount() - 1,
+					WorkingTreeIterator.class);
+			if (f == null) {
+				e.setSkipWorkTree(true);
+			} else if (!FileMode.TREE.equals(f.getEntryFileMode())
+					&& !f.isModified(e, true, walk.getObjectReader())) {
+				e.setSkipWorkTree(true);
+				removed.add(path);
+			}
+		}
 	}
 
 	private void remove(String path) {
@@ -1237,13 +1639,21 @@ private void remove(String path) {
 	private void update(String path, ObjectId mId, FileMode mode)
 			throws IOException {
 		if (!FileMode.TREE.equals(mode)) {
-			updated.put(path, new CheckoutMetadata(
-					walk.getEolStreamType(CHECKOUT_OP),
-					walk.getFilterCommand(Constants.ATTR_FILTER_TYPE_SMUDGE)));
-
 			DirCacheEntry entry = new DirCacheEntry(path, DirCacheEntry.STAGE_0);
 			entry.setObjectId(mId);
 			entry.setFileMode(mode);
+			if (sparseCheckout != null && !sparseCheckout.contains(path)) {
+				// Outside of the cone the file isn't written, and an older
+				// version of it is removed.
+				entry.setSkipWorkTree(true);
+				if (repo.getFS().exists(new File(repo.getWorkTree(), path)))
+					removed.add(path);
+			} else {
+				updated.put(path, new CheckoutMetadata(
+						walk.getEolStreamType(CHECKOUT_OP),
+						walk.getFilterCommand(
+								Constants.ATTR_FILTER_TYPE_SMUDGE)));
+			}
 			builder.add(entry);
 		}
 	}
@@ -1443,6 +1853,38 @@ public static void checkoutEntry(Repository repo, DirCacheEntry entry,
 	public static void checkoutEntry(Repository repo, DirCacheEntry entry,
 			ObjectReader or, boolean deleteRecursive,
 			CheckoutMetadata checkoutMetadata) throws IOException {
+		checkoutEntry(repo, entry, or, deleteRecursive, checkoutMetadata,
+				false);
+	}
+
+	/**
+	 * Updates the file in the working tree with content and mode from an entry
+	 * in the index.
+	 *
+	 * @param repo
+	 *            repository managing the destination work tree.
+	 * @param entry
+	 *            the entry containing new mode and content
+	 * @param or
+	 *            object reader to use for checkout
+	 * @param deleteRecursive
+	 *            true to recursively delete final path if it exists on the file
+	 *            system
+	 * @param checkoutMetadata
+	 *            filter command and end of line conversion of the entry
+	 * @param canDelay
+	 *            whether a long-running smudge filter process may postpone
+	 *            the file
+	 * @return {@code false} if a long-running smudge filter process postponed
+	 *         the file; it must then be checked out again once the process
+	 *         reports it as available. {@code true} if the file was written.
+	 * @throws IOException
+	 *             the file cannot be written or filtered.
+	 */
+	private static boolean checkoutEntry(Repository repo, DirCacheEntry entry,
+			ObjectReader or, boolean deleteRecursive,
+			CheckoutMetadata checkoutMetadata, boolean canDelay)
+			throws IOException {
 		if (checkoutMetadata == null)
 			checkoutMetadata = CheckoutMetadata.EMPTY;
 		ObjectLoader ol = or.open(entry.getObjectId());
@@ -1461,7 +1903,7 @@ public static void checkoutEntry(Repository repo, DirCacheEntry entry,
 			fs.createSymLink(f, target);
 			entry.setLength(bytes.length);
 			entry.setLastModified(fs.lastModified(f));
-			return;
+			return true;
 		}
 
 		String name = f.getName();
@@ -1479,9 +1921,27 @@ public static void checkoutEntry(Repository repo, DirCacheEntry entry,
 		} else {
 			nonNullEolStreamType = EolStreamType.DIRECT;
 		}
+		FilterProcess process = null;
+		String driver = FilterProcess
+				.getDriverName(checkoutMetadata.smudgeFilterCommand);
+		if (driver != null) {
+			process = repo.getFilterProcess(driver);
+			if (process == null) {
+				checkoutMetadata = new CheckoutMetadata(
+						checkoutMetadata.eolStreamType,
+						FilterProcess.getOneShotCommand(repo,
+								checkoutMetadata.smudgeFilterCommand));
+			}
+		}
+		boolean delayed = false;
 		try (OutputStream channel = EolStreamTypeUtil.wrapOutputStream(
 				new FileOutputStream(tmpFile), nonNullEolStreamType)) {
-			if (checkoutMetadata.smudgeFilterCommand != null) {
+			if (process != null) {
+				try (InputStream content = ol.openStream()) {
+					delayed = !process.smudge(entry.getPathString(),
+							entry.getObjectId(), content, channel, canDelay);
+				}
+			} else if (checkoutMetadata.smudgeFilterCommand != null) {
 				if (FilterCommandRegistry
 						.isRegistered(checkoutMetadata.smudgeFilterCommand)) {
 					runBuiltinFilterCommand(repo, checkoutMetadata, ol,
@@ -1494,6 +1954,10 @@ public static void checkoutEntry(Repository repo, DirCacheEntry entry,
 				ol.copyTo(channel);
 			}
 		}
+		if (delayed) {
+			FileUtils.delete(tmpFile);
+			return false;
+		}
 		// The entry needs to correspond to the on-disk filesize. If the content
 		// was filtered (either by autocrlf handling or smudge filters) ask the
 		// filesystem again for the length. Otherwise the objectloader knows the
@@ -1530,6 +1994,7 @@ public static void checkoutEntry(Repository repo, DirCacheEntry entry,
 			}
 		}
 		entry.setLastModified(fs.lastModified(f));
+		return true;
 	}
 
 	// Run an external filter command
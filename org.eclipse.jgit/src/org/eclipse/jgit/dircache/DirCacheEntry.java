@@ -79,6 +79,8 @@
 public class DirCacheEntry {
 	private static final byte[] nullpad = new byte[8];
 
+	private static final byte[] NO_PATH = {};
+
 	/** The standard (fully merged) stage for an entry. */
 	public static final int STAGE_0 = 0;
 
@@ -132,11 +134,17 @@ public class DirCacheEntry {
 	/** In-core flag signaling that the entry should be considered as modified. */
 	private static final int UPDATE_NEEDED = 0x1;
 
+	/**
+	 * In-core flag signaling that a file system monitor reported no change
+	 * since the entry was last found to match the working tree.
+	 */
+	private static final int FSMONITOR_VALID = 0x2;
+
 	/** (Possibly shared) header information storage. */
-	private final byte[] info;
+	private byte[] info;
 
 	/** First location within {@link #info} where our header starts. */
-	private final int infoOffset;
+	private int infoOffset;
 
 	/** Our encoded path name, from the root of the repository. */
 	final byte[] path;
@@ -147,6 +155,35 @@ public class DirCacheEntry {
 	DirCacheEntry(final byte[] sharedInfo, final MutableInteger infoAt,
 			final InputStream in, final MessageDigest md, final int smudge_s,
 			final int smudge_ns) throws IOException {
+		this(sharedInfo, infoAt, in, md, smudge_s, smudge_ns, null);
+	}
+
+	/**
+	 * Read an entry from an index file.
+	 *
+	 * @param sharedInfo
+	 *            buffer holding the fixed size part of the entries.
+	 * @param infoAt
+	 *            offset of this entry in {@code sharedInfo}; advanced past
+	 *            the entry.
+	 * @param in
+	 *            stream positioned at the start of the entry.
+	 * @param md
+	 *            digest updated with the bytes read; null if the caller
+	 *            verifies the checksum of the index otherwise.
+	 * @param smudge_s
+	 *            seconds component of the index's last modified time.
+	 * @param smudge_ns
+	 *            nanoseconds component of the index's last modified time.
+	 * @param previousPath
+	 *            path of the previous entry of an index of version 4, whose
+	 *            paths are prefix compressed; null for older versions.
+	 * @throws IOException
+	 *             the entry cannot be read or is malformed.
+	 */
+	DirCacheEntry(final byte[] sharedInfo, final MutableInteger infoAt,
+			final InputStream in, final MessageDigest md, final int smudge_s,
+			final int smudge_ns, byte[] previousPath) throws IOException {
 		info = sharedInfo;
 		infoOffset = infoAt.value;
 
@@ -164,14 +201,19 @@ public class DirCacheEntry {
 			len = INFO_LEN;
 
 		infoAt.value += len;
-		md.update(info, infoOffset, len);
+		if (md != null)
+			md.update(info, infoOffset, len);
 
 		int pathLen = NB.decodeUInt16(info, infoOffset + P_FLAGS) & NAME_MASK;
 		int skipped = 0;
-		if (pathLen < NAME_MASK) {
+		if (previousPath != null) {
+			path = readCompressedPath(in, md, previousPath);
+			pathLen = path.length;
+		} else if (pathLen < NAME_MASK) {
 			path = new byte[pathLen];
 			IO.readFully(in, path, 0, pathLen);
-			md.update(path, 0, pathLen);
+			if (md != null)
+				md.update(path, 0, pathLen);
 		} else {
 			final ByteArrayOutputStream tmp = new ByteArrayOutputStream();
 			{
@@ -190,12 +232,19 @@ public class DirCacheEntry {
 			path = tmp.toByteArray();
 			pathLen = path.length;
 			skipped = 1; // we already skipped 1 '\0' above to break the loop.
-			md.update(path, 0, pathLen);
-			md.update((byte) 0);
+			if (md != null) {
+				md.update(path, 0, pathLen);
+				md.update((byte) 0);
+			}
 		}
 
 		try {
-			checkPath(path);
+			// Entries of a split index replacing an entry of the shared
+			// index have no path, they take that of the replaced entry.
+			if (pathLen > 0)
+				checkPath(isSparseDirectory() && path[pathLen - 1] == '/'
+						? Arrays.copyOf(path, pathLen - 1)
+						: path);
 		} catch (InvalidPathException e) {
 			CorruptObjectException p =
 				new CorruptObjectException(e.getMessage());
@@ -210,9 +259,10 @@ public class DirCacheEntry {
 		final int actLen = len + pathLen;
 		final int expLen = (actLen + 8) & ~7;
 		final int padLen = expLen - actLen - skipped;
-		if (padLen > 0) {
+		if (previousPath == null && padLen > 0) {
 			IO.skipFully(in, padLen);
-			md.update(nullpad, 0, padLen);
+			if (md != null)
+				md.update(nullpad, 0, padLen);
 		}
 
 		if (mightBeRacilyClean(smudge_s, smudge_ns))
@@ -277,9 +327,14 @@ public DirCacheEntry(byte[] newPath) {
 	 *             or DirCache file.  Or if {@code stage} is outside of the
 	 *             range 0..3, inclusive.
 	 */
-	@SuppressWarnings("boxing")
 	public DirCacheEntry(byte[] path, int stage) {
-		checkPath(path);
+		this(path, stage, true);
+	}
+
+	@SuppressWarnings("boxing")
+	private DirCacheEntry(byte[] path, int stage, boolean check) {
+		if (check)
+			checkPath(path);
 		if (stage < 0 || 3 < stage)
 			throw new IllegalArgumentException(MessageFormat.format(
 					JGitText.get().invalidStageForPath,
@@ -297,6 +352,37 @@ public DirCacheEntry(byte[] path, int stage) {
 		NB.encodeInt16(info, infoOffset + P_FLAGS, flags);
 	}
 
+	/**
+	 * Create a sparse directory entry standing for a complete tree.
+	 * <p>
+	 * The entry's path is {@code path} followed by '/' and its mode is
+	 * {@link org.eclipse.jgit.lib.FileMode#TREE}. When the DirCache is written
+	 * as a tree the entry becomes a single subtree entry naming
+	 * {@code treeId}, without the tree's contents ever being listed. Such
+	 * entries are meant for DirCaches only used to build trees, like the one
+	 * of an in-core merge.
+	 *
+	 * @param path
+	 *            path of the directory, in the standard encoding, without a
+	 *            trailing '/'.
+	 * @param treeId
+	 *            id of the tree the directory holds.
+	 * @return the new entry, at stage 0.
+	 * @throws java.lang.IllegalArgumentException
+	 *             If the path is not permitted in a git tree object.
+	 * @since 5.2
+	 */
+	public static DirCacheEntry newSparseDirectory(byte[] path,
+			AnyObjectId treeId) {
+		checkPath(path);
+		byte[] dirPath = Arrays.copyOf(path, path.length + 1);
+		dirPath[path.length] = '/';
+		DirCacheEntry e = new DirCacheEntry(dirPath, STAGE_0, false);
+		e.setFileMode(FileMode.TREE.getBits());
+		e.setObjectId(treeId);
+		return e;
+	}
+
 	/**
 	 * Duplicate DirCacheEntry with same path and copied info.
 	 * <p>
@@ -309,16 +395,91 @@ public DirCacheEntry(byte[] path, int stage) {
 	 */
 	public DirCacheEntry(DirCacheEntry src) {
 		path = src.path;
-		info = new byte[INFO_LEN];
+		final int len = src.isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
+		info = new byte[len];
 		infoOffset = 0;
-		System.arraycopy(src.info, src.infoOffset, info, 0, INFO_LEN);
+		System.arraycopy(src.info, src.infoOffset, info, 0, len);
+	}
+
+	/**
+	 * Create an entry with the data of another entry at a different path.
+	 *
+	 * @param path
+	 *            path of the new entry.
+	 * @param src
+	 *            entry to copy the data from.
+	 */
+	DirCacheEntry(byte[] path, DirCacheEntry src) {
+		this.path = path;
+		final int len = src.isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
+		info = new byte[len];
+		infoOffset = 0;
+		System.arraycopy(src.info, src.infoOffset, info, 0, len);
+		setPathLength(path.length);
+		inCoreFlags = src.inCoreFlags;
+	}
+
+	private void setPathLength(int pathLen) {
+		final int flags = NB.decodeUInt16(info, infoOffset + P_FLAGS);
+		NB.encodeInt16(info, infoOffset + P_FLAGS,
+				(flags & ~NAME_MASK) | Math.min(pathLen, NAME_MASK));
+	}
+
+	/**
+	 * Whether another entry has the same path and data as this entry.
+	 *
+	 * @param e
+	 *            the other entry.
+	 * @return true if both entries are written the same way to an index.
+	 */
+	boolean isSameAs(DirCacheEntry e) {
+		final int len = isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
+		if (e.isExtended() != isExtended() || !Arrays.equals(path, e.path))
+			return false;
+		for (int i = 0; i < len; i++) {
+			if (info[infoOffset + i] != e.info[e.infoOffset + i])
+				return false;
+		}
+		return true;
 	}
 
 	void write(OutputStream os) throws IOException {
+		write(os, null, false);
+	}
+
+	/**
+	 * Write this entry to an index file.
+	 *
+	 * @param os
+	 *            stream to write to.
+	 * @param previousPath
+	 *            path written for the previous entry of an index of version
+	 *            4, whose paths are prefix compressed; null for older
+	 *            versions.
+	 * @param stripPath
+	 *            write the entry without path, as replacement of an entry of
+	 *            the shared index of a split index.
+	 * @throws IOException
+	 *             the entry could not be written.
+	 */
+	void write(OutputStream os, byte[] previousPath, boolean stripPath)
+			throws IOException {
 		final int len = isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
-		final int pathLen = path.length;
-		os.write(info, infoOffset, len);
-		os.write(path, 0, pathLen);
+		final byte[] p = stripPath ? NO_PATH : path;
+		final int pathLen = p.length;
+		if (stripPath) {
+			final byte[] stripped = new byte[len];
+			System.arraycopy(info, infoOffset, stripped, 0, len);
+			NB.encodeInt16(stripped, P_FLAGS,
+					NB.decodeUInt16(stripped, P_FLAGS) & ~NAME_MASK);
+			os.write(stripped, 0, len);
+		} else
+			os.write(info, infoOffset, len);
+		if (previousPath != null) {
+			writeCompressedPath(os, previousPath, p);
+			return;
+		}
+		os.write(p, 0, pathLen);
 
 		// Index records are padded out to the next 8 byte alignment
 		// for historical reasons related to how C Git read the files.
@@ -451,6 +612,38 @@ public void setUpdateNeeded(boolean updateNeeded) {
 			inCoreFlags &= ~UPDATE_NEEDED;
 	}
 
+	/**
+	 * Whether the working tree file of this entry is known to be unmodified.
+	 * <p>
+	 * The flag is maintained with the help of a
+	 * {@link org.eclipse.jgit.lib.FileSystemMonitor}: it is set when the file
+	 * was found to match this entry, and cleared when the monitor reports a
+	 * change of the file. It is stored in the index as the {@code FSMN}
+	 * extension.
+	 *
+	 * @return {@code true} if the file does not need to be examined.
+	 * @since 5.2
+	 */
+	public boolean isFileSystemMonitorValid() {
+		return (inCoreFlags & FSMONITOR_VALID) != 0;
+	}
+
+	/**
+	 * Set whether the working tree file of this entry is known to be
+	 * unmodified.
+	 *
+	 * @param valid
+	 *            {@code true} if the file matched this entry and no change was
+	 *            reported for it since.
+	 * @since 5.2
+	 */
+	public void setFileSystemMonitorValid(boolean valid) {
+		if (valid)
+			inCoreFlags |= FSMONITOR_VALID;
+		else
+			inCoreFlags &= ~FSMONITOR_VALID;
+	}
+
 	/**
 	 * Get the stage of this entry.
 	 * <p>
@@ -471,6 +664,26 @@ public boolean isSkipWorkTree() {
 		return (getExtendedFlags() & SKIP_WORKTREE) != 0;
 	}
 
+	/**
+	 * Set whether this entry should be skipped from the working tree.
+	 * <p>
+	 * A sparse checkout sets this flag on the entries outside of its cone,
+	 * whose files are not expected in the working tree. An index holding
+	 * such entries is written in version 3 or later.
+	 *
+	 * @param skip
+	 *            true if the entry's file is not in the working tree.
+	 * @since 5.2
+	 */
+	public void setSkipWorkTree(boolean skip) {
+		int flags = getExtendedFlags();
+		if (skip)
+			flags |= SKIP_WORKTREE;
+		else
+			flags &= ~SKIP_WORKTREE;
+		setExtendedFlags(flags);
+	}
+
 	/**
 	 * Returns whether this entry is intent to be added to the Index.
 	 *
@@ -490,6 +703,17 @@ public boolean isMerged() {
 		return getStage() == STAGE_0;
 	}
 
+	/**
+	 * Whether this entry is a sparse directory standing for a complete tree.
+	 *
+	 * @return true if the entry was created by
+	 *         {@link #newSparseDirectory(byte[], AnyObjectId)}.
+	 * @since 5.2
+	 */
+	public boolean isSparseDirectory() {
+		return (getRawMode() & FileMode.TYPE_MASK) == FileMode.TYPE_TREE;
+	}
+
 	/**
 	 * Obtain the raw {@link org.eclipse.jgit.lib.FileMode} bits for this entry.
 	 *
@@ -528,10 +752,12 @@ public void setFileMode(FileMode mode) {
 					JGitText.get().invalidModeForPath, mode, getPathString()));
 		}
 		NB.encodeInt32(info, infoOffset + P_MODE, mode.getBits());
+		inCoreFlags &= ~FSMONITOR_VALID;
 	}
 
 	void setFileMode(int mode) {
 		NB.encodeInt32(info, infoOffset + P_MODE, mode);
+		inCoreFlags &= ~FSMONITOR_VALID;
 	}
 
 	/**
@@ -642,6 +868,7 @@ public ObjectId getObjectId() {
 	 */
 	public void setObjectId(AnyObjectId id) {
 		id.copyRawTo(idBuffer(), idOffset());
+		inCoreFlags &= ~FSMONITOR_VALID;
 	}
 
 	/**
@@ -656,6 +883,7 @@ public void setObjectId(AnyObjectId id) {
 	public void setObjectIdFromRaw(byte[] bs, int p) {
 		final int n = Constants.OBJECT_ID_LENGTH;
 		System.arraycopy(bs, p, idBuffer(), idOffset(), n);
+		inCoreFlags &= ~FSMONITOR_VALID;
 	}
 
 	/**
@@ -733,7 +961,8 @@ void copyMetaData(DirCacheEntry src, boolean keepStage) {
 		else
 			pStageShifted = newflags & SHIFTED_STAGE_MASK;
 		NB.encodeInt16(info, infoOffset + P_FLAGS, pStageShifted | pLen
-				| (newflags & ~NAME_MASK & ~SHIFTED_STAGE_MASK));
+				| (newflags & ~NAME_MASK & ~SHIFTED_STAGE_MASK & ~(EXTENDED << 8)));
+		setExtendedFlags(src.getExtendedFlags());
 	}
 
 	/**
@@ -763,6 +992,23 @@ private int getExtendedFlags() {
 			return 0;
 	}
 
+	private void setExtendedFlags(int flags) {
+		if (flags == 0) {
+			info[infoOffset + P_FLAGS] &= ~EXTENDED;
+			return;
+		}
+		if (!isExtended()) {
+			// The info of an entry read from an index may be followed by
+			// the next entry's; extend a copy of it.
+			final byte[] extended = new byte[INFO_LEN_EXTENDED];
+			System.arraycopy(info, infoOffset, extended, 0, INFO_LEN);
+			info = extended;
+			infoOffset = 0;
+			info[P_FLAGS] |= EXTENDED;
+		}
+		NB.encodeInt16(info, infoOffset + P_FLAGS2, flags >>> 16);
+	}
+
 	private static void checkPath(byte[] path) {
 		try {
 			SystemReader.getInstance().checkPath(path);
@@ -773,6 +1019,59 @@ private static void checkPath(byte[] path) {
 		}
 	}
 
+	private static byte[] readCompressedPath(InputStream in,
+			MessageDigest md, byte[] previousPath) throws IOException {
+		// Number of bytes to remove from the end of the previous path,
+		// followed by the NUL terminated bytes to append.
+		int c = readByte(in, md);
+		long strip = c & 127;
+		while ((c & 128) != 0) {
+			strip += 1;
+			c = readByte(in, md);
+			strip = (strip << 7) + (c & 127);
+		}
+		if (previousPath.length == 0) {
+			// The first entry of a block of the entry offset table does
+			// not depend on the entry before it.
+			strip = 0;
+		} else if (strip > previousPath.length)
+			throw new CorruptObjectException(MessageFormat.format(
+					JGitText.get().DIRCCorruptPathCompression,
+					Long.valueOf(strip)));
+		final ByteArrayOutputStream tmp = new ByteArrayOutputStream();
+		tmp.write(previousPath, 0, previousPath.length - (int) strip);
+		while ((c = readByte(in, md)) != 0)
+			tmp.write(c);
+		return tmp.toByteArray();
+	}
+
+	private static int readByte(InputStream in, MessageDigest md)
+			throws IOException {
+		final int c = in.read();
+		if (c < 0)
+			throw new EOFException(JGitText.get().shortReadOfBlock);
+		if (md != null)
+			md.update((byte) c);
+		return c;
+	}
+
+	private static void writeCompressedPath(OutputStream os,
+			byte[] previousPath, byte[] p) throws IOException {
+		int common = 0;
+		final int max = Math.min(previousPath.length, p.length);
+		while (common < max && previousPath[common] == p[common])
+			common++;
+		long strip = previousPath.length - common;
+		final byte[] buf = new byte[16];
+		int pos = buf.length - 1;
+		buf[pos] = (byte) (strip & 127);
+		while ((strip >>>= 7) != 0)
+			buf[--pos] = (byte) (128 | (--strip & 127));
+		os.write(buf, pos, buf.length - pos);
+		os.write(p, common, p.length - common);
+		os.write(0);
+	}
+
 	static String toString(byte[] path) {
 		return UTF_8.decode(ByteBuffer.wrap(path)).toString();
 	}
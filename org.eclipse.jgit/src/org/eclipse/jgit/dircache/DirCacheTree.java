@@ -345,7 +345,7 @@ ObjectId writeTree(final DirCacheEntry[] cache, int cIdx,
 					}
 				}
 
-				fmt.append(ep, pathOffset, ep.length - pathOffset, e
+				fmt.append(ep, pathOffset, entryNameLength(e, pathOffset), e
 						.getFileMode(), e.idBuffer(), e.idOffset());
 				entryIdx++;
 			}
@@ -383,13 +383,19 @@ private int computeSize(final DirCacheEntry[] cache, int cIdx,
 				}
 			}
 
-			size += entrySize(e.getFileMode(), ep.length - pathOffset);
+			size += entrySize(e.getFileMode(), entryNameLength(e, pathOffset));
 			entryIdx++;
 		}
 
 		return size;
 	}
 
+	private static int entryNameLength(DirCacheEntry e, int pathOffset) {
+		int len = e.path.length - pathOffset;
+		// A sparse directory's path carries a trailing '/'.
+		return e.isSparseDirectory() ? len - 1 : len;
+	}
+
 	private void appendName(StringBuilder r) {
 		if (parent != null) {
 			parent.appendName(r);
@@ -464,6 +470,13 @@ void validate(final DirCacheEntry[] cache, final int cCnt, int cIdx,
 
 			DirCacheTree st = stIdx < childCnt ? children[stIdx] : null;
 			final int cc = namecmp(currPath, pathOff, st);
+			if (cc == 0 && cache[cIdx].isSparseDirectory()
+					&& slash(currPath, pathOff) == currPath.length - 1) {
+				// A sparse directory replaces any tree cached for it.
+				//
+				removeChild(stIdx);
+				continue;
+			}
 			if (cc > 0) {
 				// This subtree is now empty.
 				//
@@ -473,7 +486,8 @@ void validate(final DirCacheEntry[] cache, final int cCnt, int cIdx,
 
 			if (cc < 0) {
 				final int p = slash(currPath, pathOff);
-				if (p < 0) {
+				if (p < 0 || (p == currPath.length - 1
+						&& cache[cIdx].isSparseDirectory())) {
 					// The entry has no '/' and thus is directly in this
 					// tree. Count it as one of our own.
 					//
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.eclipse.jgit.dircache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.RawParseUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cone mode sparse-checkout patterns.
+ * <p>
+ * The cone is made of directories whose contents are checked out
+ * completely. Files directly in the root directory or in a parent of one of
+ * these directories are checked out as well. All other files are left out of
+ * the working tree, and their index entries are marked skip-worktree.
+ * <p>
+ * The patterns are kept in {@code $GIT_DIR/info/sparse-checkout}, in the
+ * format C Git uses in cone mode, and apply if {@code core.sparseCheckout} is
+ * set. For the cone made of {@code a/b} the file reads:
+ *
+ * <pre>
+ * /*
+ * !/*&#47;
+ * /a/
+ * !/a/*&#47;
+ * /a/b/
+ * </pre>
+ *
+ * @since 5.2
+ */
+public class SparseCheckout {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(SparseCheckout.class);
+
+	/** How a directory relates to the cone. */
+	public enum Match {
+		/** None of the directory's files are checked out. */
+		OUTSIDE,
+
+		/**
+		 * Only the files directly in the directory are checked out; it is
+		 * the parent of a directory of the cone.
+		 */
+		PARENT,
+
+		/** All files below the directory are checked out. */
+		RECURSIVE
+	}
+
+	/**
+	 * Read the sparse-checkout patterns of a repository.
+	 *
+	 * @param repo
+	 *            the repository.
+	 * @return the patterns; null if the repository has no working tree,
+	 *         {@code core.sparseCheckout} is not set, or there are no
+	 *         patterns in cone mode.
+	 * @throws java.io.IOException
+	 *             the patterns could not be read.
+	 */
+	public static SparseCheckout read(Repository repo) throws IOException {
+		if (repo.isBare() || !repo.getConfig().getBoolean(
+				ConfigConstants.CONFIG_CORE_SECTION,
+				ConfigConstants.CONFIG_KEY_SPARSE_CHECKOUT, false))
+			return null;
+		File file = new File(repo.getDirectory(),
+				Constants.INFO_SPARSE_CHECKOUT);
+		if (!file.exists())
+			return null;
+		SparseCheckout s = parse(RawParseUtils.decode(IO.readFully(file)));
+		if (s == null)
+			LOG.warn(MessageFormat.format(
+					JGitText.get().sparseCheckoutNotConeMode, file));
+		return s;
+	}
+
+	/**
+	 * Parse cone mode sparse-checkout patterns.
+	 *
+	 * @param patterns
+	 *            content of a sparse-checkout file.
+	 * @return the patterns; null if they are not in cone mode.
+	 */
+	public static SparseCheckout parse(String patterns) {
+		boolean all = false;
+		boolean onlyRoot = false;
+		Set<String> dirs = new HashSet<>();
+		Set<String> parents = new HashSet<>();
+		for (String line : patterns.split("\n")) { //$NON-NLS-1$
+			line = line.trim();
+			if (line.isEmpty() || line.charAt(0) == '#')
+				continue;
+			if (line.equals("/*")) //$NON-NLS-1$
+				all = true;
+			else if (line.equals("!/*/")) //$NON-NLS-1$
+				onlyRoot = true;
+			else if (line.startsWith("!/") && line.endsWith("/*/") //$NON-NLS-1$ //$NON-NLS-2$
+					&& line.length() > 5)
+				parents.add(unescape(line.substring(2, line.length() - 3)));
+			else if (line.startsWith("/") && line.endsWith("/") //$NON-NLS-1$ //$NON-NLS-2$
+					&& line.length() > 2)
+				dirs.add(unescape(line.substring(1, line.length() - 1)));
+			else
+				return null;
+		}
+		if (!all)
+			return null;
+		if (!onlyRoot)
+			return new SparseCheckout(Collections.singleton("")); //$NON-NLS-1$
+		dirs.removeAll(parents);
+		SparseCheckout s = new SparseCheckout(dirs);
+		s.parents.addAll(parents);
+		return s;
+	}
+
+	private static String unescape(String p) {
+		StringBuilder r = new StringBuilder(p.length());
+		for (int i = 0; i < p.length(); i++) {
+			char c = p.charAt(i);
+			if (c == '\\' && i + 1 < p.length())
+				c = p.charAt(++i);
+			else if (c == '*' || c == '?' || c == '[')
+				return null;
+			r.append(c);
+		}
+		return r.toString();
+	}
+
+	private final Set<String> recursive;
+
+	private final Set<String> parents = new HashSet<>();
+
+	/**
+	 * Create a cone made of directories.
+	 *
+	 * @param directories
+	 *            paths of the directories whose files are all checked out,
+	 *            relative to the root of the working tree and without leading
+	 *            or trailing '/'. The empty path stands for the whole tree.
+	 */
+	public SparseCheckout(Collection<String> directories) {
+		recursive = new HashSet<>(directories);
+		for (String dir : directories) {
+			for (int s = dir.lastIndexOf('/'); s > 0; s = dir.lastIndexOf('/',
+					s - 1))
+				parents.add(dir.substring(0, s));
+		}
+		parents.removeAll(recursive);
+	}
+
+	/**
+	 * Get the directories whose files are all checked out.
+	 *
+	 * @return the directories of the cone, excluding those below another one.
+	 */
+	public Set<String> getDirectories() {
+		Set<String> r = new TreeSet<>();
+		for (String dir : recursive) {
+			if (dir.isEmpty() || !isRecursive(parentOf(dir)))
+				r.add(dir);
+		}
+		return r;
+	}
+
+	/**
+	 * Whether a file is checked out.
+	 *
+	 * @param path
+	 *            path of the file, relative to the root of the working tree.
+	 * @return true if the file is inside of the cone.
+	 */
+	public boolean contains(String path) {
+		int s = path.lastIndexOf('/');
+		if (s < 0)
+			return true;
+		String dir = path.substring(0, s);
+		return parents.contains(dir) || isRecursive(dir);
+	}
+
+	/**
+	 * Determine how a directory relates to the cone.
+	 *
+	 * @param dir
+	 *            path of the directory, relative to the root of the working
+	 *            tree and without trailing '/'; the empty path for the root.
+	 * @return which of the directory's files are checked out.
+	 */
+	public Match matchDirectory(String dir) {
+		if (isRecursive(dir))
+			return Match.RECURSIVE;
+		if (dir.isEmpty() || parents.contains(dir))
+			return Match.PARENT;
+		return Match.OUTSIDE;
+	}
+
+	private boolean isRecursive(String dir) {
+		if (recursive.isEmpty())
+			return false;
+		for (;;) {
+			if (recursive.contains(dir))
+				return true;
+			if (dir.isEmpty())
+				return false;
+			dir = parentOf(dir);
+		}
+	}
+
+	private static String parentOf(String dir) {
+		int s = dir.lastIndexOf('/');
+		return s < 0 ? "" : dir.substring(0, s); //$NON-NLS-1$
+	}
+
+	/**
+	 * Write these patterns to a repository and enable sparse checkout in cone
+	 * mode.
+	 * <p>
+	 * The working tree is only updated to the new cone by the next checkout.
+	 *
+	 * @param repo
+	 *            the repository.
+	 * @throws java.io.IOException
+	 *             the patterns or the configuration could not be written.
+	 */
+	public void write(Repository repo) throws IOException {
+		File file = new File(repo.getDirectory(),
+				Constants.INFO_SPARSE_CHECKOUT);
+		FileUtils.mkdirs(file.getParentFile(), true);
+		LockFile lock = new LockFile(file);
+		if (!lock.lock())
+			throw new IOException(MessageFormat.format(
+					JGitText.get().cannotLock, file));
+		try {
+			lock.write(toString().getBytes(UTF_8));
+			if (!lock.commit())
+				throw new IOException(MessageFormat.format(
+						JGitText.get().cannotCommitWriteTo, file));
+		} finally {
+			lock.unlock();
+		}
+
+		StoredConfig cfg = repo.getConfig();
+		cfg.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPARSE_CHECKOUT, true);
+		cfg.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPARSE_CHECKOUT_CONE, true);
+		cfg.save();
+	}
+
+	/**
+	 * Format these patterns like C Git writes them in cone mode.
+	 *
+	 * @return content of the sparse-checkout file.
+	 */
+	@SuppressWarnings("nls")
+	@Override
+	public String toString() {
+		StringBuilder r = new StringBuilder();
+		r.append("/*\n");
+		if (recursive.contains(""))
+			return r.toString();
+		r.append("!/*/\n");
+		for (String dir : new TreeSet<>(parents))
+			r.append('/').append(escape(dir)).append("/\n!/")
+					.append(escape(dir)).append("/*/\n");
+		for (String dir : getDirectories())
+			r.append('/').append(escape(dir)).append("/\n");
+		return r.toString();
+	}
+
+	private static String escape(String p) {
+		StringBuilder r = new StringBuilder(p.length());
+		for (int i = 0; i < p.length(); i++) {
+			char c = p.charAt(i);
+			if (c == '*' || c == '?' || c == '[' || c == '\\')
+				r.append('\\');
+			r.append(c);
+		}
+		return r.toString();
+	}
+}
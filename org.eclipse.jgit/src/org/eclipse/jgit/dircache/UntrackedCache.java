@@ -0,0 +1,595 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.dircache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+
+/**
+ * The untracked cache ({@code UNTR}) extension of the index.
+ * <p>
+ * For each directory of the working tree the cache records the names of the
+ * entries which are neither tracked nor ignored, the subdirectories which are
+ * not ignored, the modification time of the directory and the id of its
+ * {@code .gitignore} file. As long as a directory's modification time and
+ * ignore rules did not change its entries are still the same, and the
+ * recorded listing can be used instead of evaluating the ignore rules for
+ * every entry again.
+ * <p>
+ * The extension is read and written in the format used by C Git.
+ *
+ * @since 5.2
+ */
+public class UntrackedCache {
+	private static final int STAT_DATA_SIZE = 36;
+
+	private static final Comparator<Directory> NAME_CMP = new Comparator<Directory>() {
+		@Override
+		public int compare(Directory a, Directory b) {
+			return compareNames(a.name, b.name);
+		}
+	};
+
+	private final byte[] ident;
+
+	private final byte[] infoExcludeStat;
+
+	private final byte[] excludesFileStat;
+
+	private final int dirFlags;
+
+	private final ObjectId infoExcludeId;
+
+	private final ObjectId excludesFileId;
+
+	private final String excludePerDir;
+
+	private Directory root;
+
+	private boolean modified;
+
+	/**
+	 * Create an empty untracked cache.
+	 *
+	 * @param ident
+	 *            identification of the working tree and system the cache is
+	 *            valid for.
+	 * @param dirFlags
+	 *            flags describing how directories were scanned.
+	 * @param infoExcludeId
+	 *            blob id of {@code $GIT_DIR/info/exclude}; null if the file
+	 *            does not exist.
+	 * @param excludesFileId
+	 *            blob id of the file configured as {@code core.excludesFile};
+	 *            null if there is none.
+	 */
+	public UntrackedCache(String ident, int dirFlags,
+			AnyObjectId infoExcludeId, AnyObjectId excludesFileId) {
+		this.ident = Constants.encode(ident + '\0');
+		this.infoExcludeStat = new byte[STAT_DATA_SIZE];
+		this.excludesFileStat = new byte[STAT_DATA_SIZE];
+		this.dirFlags = dirFlags;
+		this.infoExcludeId = toId(infoExcludeId);
+		this.excludesFileId = toId(excludesFileId);
+		this.excludePerDir = Constants.DOT_GIT_IGNORE;
+		this.modified = true;
+	}
+
+	UntrackedCache(byte[] raw) throws CorruptObjectException {
+		try {
+			int[] ptr = { 0 };
+			int len = (int) decodeVarint(raw, ptr);
+			ident = Arrays.copyOfRange(raw, ptr[0], ptr[0] + len);
+			ptr[0] += len;
+			infoExcludeStat = Arrays.copyOfRange(raw, ptr[0],
+					ptr[0] + STAT_DATA_SIZE);
+			ptr[0] += STAT_DATA_SIZE;
+			excludesFileStat = Arrays.copyOfRange(raw, ptr[0],
+					ptr[0] + STAT_DATA_SIZE);
+			ptr[0] += STAT_DATA_SIZE;
+			dirFlags = NB.decodeInt32(raw, ptr[0]);
+			ptr[0] += 4;
+			infoExcludeId = toId(ObjectId.fromRaw(raw, ptr[0]));
+			ptr[0] += Constants.OBJECT_ID_LENGTH;
+			excludesFileId = toId(ObjectId.fromRaw(raw, ptr[0]));
+			ptr[0] += Constants.OBJECT_ID_LENGTH;
+			excludePerDir = readString(raw, ptr);
+
+			int dirCnt = (int) decodeVarint(raw, ptr);
+			if (dirCnt == 0)
+				return;
+			List<Directory> all = new ArrayList<>(dirCnt);
+			root = readDirectory(raw, ptr, all);
+			if (all.size() != dirCnt)
+				throw corrupt();
+
+			EWAHCompressedBitmap valid = readBitmap(raw, ptr);
+			EWAHCompressedBitmap checkOnly = readBitmap(raw, ptr);
+			EWAHCompressedBitmap hasExcludeId = readBitmap(raw, ptr);
+			for (int i : checkOnly.toArray())
+				all.get(i).checkOnly = true;
+			for (int i : valid.toArray()) {
+				Directory d = all.get(i);
+				d.valid = true;
+				d.stat = Arrays.copyOfRange(raw, ptr[0],
+						ptr[0] + STAT_DATA_SIZE);
+				ptr[0] += STAT_DATA_SIZE;
+			}
+			for (int i : hasExcludeId.toArray()) {
+				all.get(i).excludeId = ObjectId.fromRaw(raw, ptr[0]);
+				ptr[0] += Constants.OBJECT_ID_LENGTH;
+			}
+			if (ptr[0] > raw.length)
+				throw corrupt();
+		} catch (ArrayIndexOutOfBoundsException | IOException e) {
+			CorruptObjectException c = corrupt();
+			c.initCause(e);
+			throw c;
+		}
+	}
+
+	private Directory readDirectory(byte[] raw, int[] ptr,
+			List<Directory> all) {
+		int untrackedCnt = (int) decodeVarint(raw, ptr);
+		int dirCnt = (int) decodeVarint(raw, ptr);
+		Directory d = new Directory(this, readString(raw, ptr));
+		all.add(d);
+		for (int i = 0; i < untrackedCnt; i++)
+			d.untracked.add(readString(raw, ptr));
+		for (int i = 0; i < dirCnt; i++) {
+			Directory c = readDirectory(raw, ptr, all);
+			d.dirs.put(c.name, c);
+		}
+		return d;
+	}
+
+	private static EWAHCompressedBitmap readBitmap(byte[] raw, int[] ptr)
+			throws IOException {
+		int len = 12 + 8 * NB.decodeInt32(raw, ptr[0] + 4);
+		EWAHCompressedBitmap b = new EWAHCompressedBitmap();
+		b.deserialize(new DataInputStream(
+				new ByteArrayInputStream(raw, ptr[0], len)));
+		ptr[0] += len;
+		return b;
+	}
+
+	private static String readString(byte[] raw, int[] ptr) {
+		int start = ptr[0];
+		int end = start;
+		while (raw[end] != 0)
+			end++;
+		ptr[0] = end + 1;
+		return RawParseUtils.decode(raw, start, end);
+	}
+
+	private static CorruptObjectException corrupt() {
+		return new CorruptObjectException(
+				JGitText.get().corruptUntrackedCache);
+	}
+
+	/**
+	 * Check whether this cache was recorded for the given environment.
+	 *
+	 * @param expectedIdent
+	 *            identification of the working tree and system.
+	 * @param expectedDirFlags
+	 *            flags describing how directories are scanned.
+	 * @param expectedInfoExcludeId
+	 *            current blob id of {@code $GIT_DIR/info/exclude}; null if
+	 *            the file does not exist.
+	 * @param expectedExcludesFileId
+	 *            current blob id of the file configured as
+	 *            {@code core.excludesFile}; null if there is none.
+	 * @return true if the recorded listings can be used in this environment.
+	 */
+	public boolean isValidFor(String expectedIdent, int expectedDirFlags,
+			AnyObjectId expectedInfoExcludeId,
+			AnyObjectId expectedExcludesFileId) {
+		return Arrays.equals(ident, Constants.encode(expectedIdent + '\0'))
+				&& dirFlags == expectedDirFlags
+				&& Constants.DOT_GIT_IGNORE.equals(excludePerDir)
+				&& Objects.equals(toId(expectedInfoExcludeId),
+						infoExcludeId)
+				&& Objects.equals(toId(expectedExcludesFileId),
+						excludesFileId);
+	}
+
+	/**
+	 * Get the entry of the top level directory of the working tree.
+	 *
+	 * @return the entry of the top level directory, created if it did not
+	 *         exist yet.
+	 */
+	public Directory getRoot() {
+		if (root == null) {
+			root = new Directory(this, ""); //$NON-NLS-1$
+			modified = true;
+		}
+		return root;
+	}
+
+	/**
+	 * Whether this cache was changed since it was read from the index.
+	 *
+	 * @return true if this cache was changed since it was read from the
+	 *         index.
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	/**
+	 * Invalidate the directories leading to a path.
+	 * <p>
+	 * Must be called when a path is added to or removed from the index, as
+	 * that changes whether the path is untracked without changing the
+	 * modification time of its directory.
+	 *
+	 * @param path
+	 *            path of an entry, relative to the top of the working tree.
+	 */
+	public void invalidate(String path) {
+		Directory d = root;
+		int s = 0;
+		while (d != null) {
+			if (d.valid || !d.untracked.isEmpty()) {
+				d.invalidate();
+				modified = true;
+			}
+			int e = path.indexOf('/', s);
+			if (e < 0)
+				break;
+			d = d.dirs.get(path.substring(s, e));
+			s = e + 1;
+		}
+	}
+
+	/**
+	 * Write this cache in the format of the index extension.
+	 *
+	 * @return the content of the index extension.
+	 */
+	public byte[] toByteArray() {
+		try {
+			ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(buf);
+			encodeVarint(out, ident.length);
+			out.write(ident);
+			out.write(infoExcludeStat);
+			out.write(excludesFileStat);
+			out.writeInt(dirFlags);
+			writeId(out, infoExcludeId);
+			writeId(out, excludesFileId);
+			out.write(Constants.encode(excludePerDir));
+			out.write(0);
+			if (root == null) {
+				encodeVarint(out, 0);
+				return buf.toByteArray();
+			}
+
+			List<Directory> all = new ArrayList<>();
+			ByteArrayOutputStream dirs = new ByteArrayOutputStream();
+			writeDirectory(new DataOutputStream(dirs), root, all);
+			encodeVarint(out, all.size());
+			dirs.writeTo(out);
+
+			EWAHCompressedBitmap valid = new EWAHCompressedBitmap();
+			EWAHCompressedBitmap checkOnly = new EWAHCompressedBitmap();
+			EWAHCompressedBitmap hasExcludeId = new EWAHCompressedBitmap();
+			for (int i = 0; i < all.size(); i++) {
+				Directory d = all.get(i);
+				if (d.valid)
+					valid.set(i);
+				if (d.valid && d.checkOnly)
+					checkOnly.set(i);
+				if (d.excludeId != null)
+					hasExcludeId.set(i);
+			}
+			valid.serialize(out);
+			checkOnly.serialize(out);
+			hasExcludeId.serialize(out);
+			for (Directory d : all) {
+				if (d.valid)
+					out.write(d.stat);
+			}
+			for (Directory d : all) {
+				if (d.excludeId != null)
+					d.excludeId.copyRawTo(out);
+			}
+			out.write(0);
+			out.flush();
+			return buf.toByteArray();
+		} catch (IOException e) {
+			// Cannot happen, the output is a byte array.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeDirectory(DataOutputStream out, Directory d,
+			List<Directory> all) throws IOException {
+		all.add(d);
+		Collection<String> untracked = d.valid ? d.untracked
+				: Collections.<String> emptySet();
+		encodeVarint(out, untracked.size());
+		encodeVarint(out, d.dirs.size());
+		out.write(Constants.encode(d.name));
+		out.write(0);
+		for (String name : untracked) {
+			out.write(Constants.encode(name));
+			out.write(0);
+		}
+		List<Directory> children = new ArrayList<>(d.dirs.values());
+		Collections.sort(children, NAME_CMP);
+		for (Directory c : children)
+			writeDirectory(out, c, all);
+	}
+
+	private static void writeId(DataOutputStream out, ObjectId id)
+			throws IOException {
+		(id != null ? id : ObjectId.zeroId()).copyRawTo(out);
+	}
+
+	private static ObjectId toId(AnyObjectId id) {
+		if (id == null || ObjectId.zeroId().equals(id))
+			return null;
+		return id.copy();
+	}
+
+	static long decodeVarint(byte[] raw, int[] ptr) {
+		int c = raw[ptr[0]++] & 0xff;
+		long val = c & 127;
+		while ((c & 128) != 0) {
+			val += 1;
+			c = raw[ptr[0]++] & 0xff;
+			val = (val << 7) + (c & 127);
+		}
+		return val;
+	}
+
+	static void encodeVarint(DataOutputStream out, long value)
+			throws IOException {
+		byte[] buf = new byte[16];
+		int pos = buf.length - 1;
+		buf[pos] = (byte) (value & 127);
+		while ((value >>>= 7) != 0)
+			buf[--pos] = (byte) (128 | (--value & 127));
+		out.write(buf, pos, buf.length - pos);
+	}
+
+	/**
+	 * Compare names in the byte order of their UTF-8 encoding.
+	 *
+	 * @param a
+	 *            first name.
+	 * @param b
+	 *            second name.
+	 * @return negative, zero or positive if {@code a} sorts before, equal to
+	 *         or after {@code b}.
+	 */
+	static int compareNames(String a, String b) {
+		int i = 0;
+		int j = 0;
+		while (i < a.length() && j < b.length()) {
+			int ca = a.codePointAt(i);
+			int cb = b.codePointAt(j);
+			if (ca != cb)
+				return ca < cb ? -1 : 1;
+			i += Character.charCount(ca);
+			j += Character.charCount(cb);
+		}
+		return (a.length() - i) - (b.length() - j);
+	}
+
+	/** Recorded state of one directory of the working tree. */
+	public static class Directory {
+		private final UntrackedCache cache;
+
+		final String name;
+
+		final Set<String> untracked = new HashSet<>();
+
+		final Map<String, Directory> dirs = new LinkedHashMap<>();
+
+		boolean valid;
+
+		boolean checkOnly;
+
+		byte[] stat;
+
+		ObjectId excludeId;
+
+		Directory(UntrackedCache cache, String name) {
+			this.cache = cache;
+			this.name = name;
+		}
+
+		/**
+		 * Get the name of this directory.
+		 *
+		 * @return name of this directory within its parent; the empty string
+		 *         for the top level directory.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Get the recorded id of this directory's {@code .gitignore}.
+		 *
+		 * @return blob id of the {@code .gitignore} file of this directory
+		 *         when the listing was recorded; null if there was none.
+		 */
+		public ObjectId getExcludeId() {
+			return excludeId;
+		}
+
+		/**
+		 * Check whether the recorded listing matches the directory.
+		 *
+		 * @param lastModified
+		 *            current modification time of the directory, in
+		 *            milliseconds.
+		 * @return true if a listing is recorded and the directory was not
+		 *         modified since.
+		 */
+		public boolean isUpToDate(long lastModified) {
+			if (!valid || stat == null)
+				return false;
+			long sec = NB.decodeUInt32(stat, 8);
+			long nsec = NB.decodeUInt32(stat, 12);
+			return sec * 1000 + nsec / 1000000 == lastModified;
+		}
+
+		/**
+		 * Whether a name is recorded as an untracked entry.
+		 *
+		 * @param entryName
+		 *            name of a file within this directory; a nested
+		 *            repository has a trailing '/'.
+		 * @return true if the entry is untracked and not ignored.
+		 */
+		public boolean isUntracked(String entryName) {
+			return untracked.contains(entryName);
+		}
+
+		/**
+		 * Get a recorded subdirectory.
+		 *
+		 * @param dirName
+		 *            name of a subdirectory.
+		 * @return the entry of the subdirectory, or null if the subdirectory
+		 *         is ignored or unknown.
+		 */
+		public Directory getDirectory(String dirName) {
+			return dirs.get(dirName);
+		}
+
+		/**
+		 * Record a new listing of this directory.
+		 *
+		 * @param lastModified
+		 *            modification time of the directory in milliseconds,
+		 *            observed before it was listed.
+		 * @param trusted
+		 *            whether the listing may be reused while the modification
+		 *            time stays the same. Should be false if the directory
+		 *            could have been modified again within the resolution of
+		 *            the file system's timestamps.
+		 * @param gitignoreId
+		 *            blob id of the directory's {@code .gitignore}; null if
+		 *            there is none.
+		 * @param untrackedNames
+		 *            names of entries that are neither tracked nor ignored.
+		 *            Nested repositories have a trailing '/'.
+		 * @param dirNames
+		 *            names of subdirectories that are tracked or not ignored.
+		 * @param rulesChanged
+		 *            whether ignore rules applying to this directory changed;
+		 *            if so the listings of all subdirectories are discarded.
+		 */
+		public void update(long lastModified, boolean trusted,
+				AnyObjectId gitignoreId, Collection<String> untrackedNames,
+				Collection<String> dirNames, boolean rulesChanged) {
+			untracked.clear();
+			untracked.addAll(untrackedNames);
+			Map<String, Directory> old = new LinkedHashMap<>(dirs);
+			dirs.clear();
+			for (String n : dirNames) {
+				Directory d = old.get(n);
+				if (d == null)
+					d = new Directory(cache, n);
+				else if (rulesChanged)
+					d.invalidateAll();
+				dirs.put(n, d);
+			}
+			valid = trusted;
+			checkOnly = false;
+			stat = new byte[STAT_DATA_SIZE];
+			NB.encodeInt32(stat, 8, (int) (lastModified / 1000));
+			NB.encodeInt32(stat, 12, (int) (lastModified % 1000) * 1000000);
+			excludeId = toId(gitignoreId);
+			// Untrusted listings are rebuilt next time anyway; writing
+			// them is not worth rewriting the index for.
+			if (trusted)
+				cache.modified = true;
+		}
+
+		void invalidate() {
+			valid = false;
+			checkOnly = false;
+			stat = null;
+			untracked.clear();
+		}
+
+		private void invalidateAll() {
+			invalidate();
+			for (Directory d : dirs.values())
+				d.invalidateAll();
+		}
+	}
+}
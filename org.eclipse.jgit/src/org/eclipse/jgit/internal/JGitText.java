@@ -99,6 +99,7 @@ public static JGitText get() {
 	/***/ public String baseLengthIncorrect;
 	/***/ public String bitmapMissingObject;
 	/***/ public String bitmapsMustBePrepared;
+	/***/ public String blameCacheEntryCorrupt;
 	/***/ public String blameNotCommittedYet;
 	/***/ public String blobNotFound;
 	/***/ public String blobNotFoundForPath;
@@ -203,6 +204,9 @@ public static JGitText get() {
 	/***/ public String connectionFailed;
 	/***/ public String connectionTimeOut;
 	/***/ public String contextMustBeNonNegative;
+	/***/ public String corruptChangedPathIndex;
+	/***/ public String corruptContentIdCache;
+	/***/ public String corruptFileSystemMonitorExtension;
 	/***/ public String corruptionDetectedReReadingAt;
 	/***/ public String corruptObjectBadDate;
 	/***/ public String corruptObjectBadEmail;
@@ -263,6 +267,7 @@ public static JGitText get() {
 	/***/ public String corruptObjectTruncatedInObjectId;
 	/***/ public String corruptObjectZeroId;
 	/***/ public String corruptPack;
+	/***/ public String corruptUntrackedCache;
 	/***/ public String corruptUseCnt;
 	/***/ public String couldNotCheckOutBecauseOfConflicts;
 	/***/ public String couldNotDeleteLockFileShouldNotHappen;
@@ -300,9 +305,13 @@ public static JGitText get() {
 	/***/ public String dirCacheFileIsNotLocked;
 	/***/ public String dirCacheIsNotLocked;
 	/***/ public String DIRCChecksumMismatch;
+	/***/ public String DIRCCorruptEntryOffsetTable;
+	/***/ public String DIRCCorruptLinkExtension;
+	/***/ public String DIRCCorruptPathCompression;
 	/***/ public String DIRCExtensionIsTooLargeAt;
 	/***/ public String DIRCExtensionNotSupportedByThisVersion;
 	/***/ public String DIRCHasTooManyEntries;
+	/***/ public String DIRCSharedIndexMismatch;
 	/***/ public String DIRCUnrecognizedExtendedFlags;
 	/***/ public String dirtyFilesExist;
 	/***/ public String doesNotHandleMode;
@@ -368,12 +377,17 @@ public static JGitText get() {
 	/***/ public String failureDueToOneOfTheFollowing;
 	/***/ public String failureUpdatingFETCH_HEAD;
 	/***/ public String failureUpdatingTrackingRef;
+	/***/ public String fetchingSubmodules;
 	/***/ public String fileCannotBeDeleted;
 	/***/ public String fileIsTooBigForThisConvenienceMethod;
 	/***/ public String fileIsTooLarge;
 	/***/ public String fileModeNotSetForPath;
 	/***/ public String filterExecutionFailed;
 	/***/ public String filterExecutionFailedRc;
+	/***/ public String filterProcessDelayedNotAvailable;
+	/***/ public String filterProcessInvalidResponse;
+	/***/ public String filterProcessNotDelayed;
+	/***/ public String filterProcessStatus;
 	/***/ public String filterRequiresCapability;
 	/***/ public String findingGarbage;
 	/***/ public String flagIsDisposed;
@@ -696,6 +710,7 @@ public static JGitText get() {
 	/***/ public String sourceIsNotAWildcard;
 	/***/ public String sourceRefDoesntResolveToAnyObject;
 	/***/ public String sourceRefNotSpecifiedForRefspec;
+	/***/ public String sparseCheckoutNotConeMode;
 	/***/ public String squashCommitNotUpdatingHEAD;
 	/***/ public String sshCommandFailed;
 	/***/ public String sshUserNameError;
@@ -726,6 +741,7 @@ public static JGitText get() {
 	/***/ public String storePushCertOneRef;
 	/***/ public String storePushCertReflog;
 	/***/ public String submoduleExists;
+	/***/ public String submoduleJobFailed;
 	/***/ public String submoduleNameInvalid;
 	/***/ public String submoduleParentRemoteUrlInvalid;
 	/***/ public String submodulePathInvalid;
@@ -839,6 +855,7 @@ public static JGitText get() {
 	/***/ public String windowSizeMustBePowerOf2;
 	/***/ public String writerAlreadyInitialized;
 	/***/ public String writeTimedOut;
+	/***/ public String writingChangedPathIndex;
 	/***/ public String writingNotPermitted;
 	/***/ public String writingNotSupported;
 	/***/ public String writingObjects;
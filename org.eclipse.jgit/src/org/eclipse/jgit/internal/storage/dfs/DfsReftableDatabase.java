@@ -281,6 +281,14 @@ public List<Ref> getRefsByPrefix(String prefix) throws IOException {
 		return Collections.unmodifiableList(all);
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Iterable<Ref> getSortedRefsByPrefix(String prefix)
+			throws IOException {
+		// Reftable cursors return refs in name order.
+		return getRefsByPrefix(prefix);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public Ref peel(Ref ref) throws IOException {
@@ -317,15 +317,19 @@ private void writeLog(ReftableWriter writer, long updateIndex,
 		}
 		Collections.sort(byName);
 
-		PersonIdent ident = getRefLogIdent();
-		if (ident == null) {
-			ident = new PersonIdent(refdb.getRepository());
-		}
+		PersonIdent defaultIdent = null;
 		for (String name : byName) {
 			ReceiveCommand cmd = cmds.get(name);
 			if (isRefLogDisabled(cmd)) {
 				continue;
 			}
+			PersonIdent ident = getRefLogIdent(cmd);
+			if (ident == null) {
+				if (defaultIdent == null) {
+					defaultIdent = new PersonIdent(refdb.getRepository());
+				}
+				ident = defaultIdent;
+			}
 			String msg = getRefLogMessage(cmd);
 			if (isRefLogIncludingResult(cmd)) {
 				String strResult = toResultString(cmd);
@@ -287,6 +287,11 @@ Collection<PackFile> getPacks() {
 		return wrapped.getPacks();
 	}
 
+	@Override
+	ChangedPathBloomIndex getChangedPathIndex() {
+		return wrapped.getChangedPathIndex();
+	}
+
 	private static class UnpackedObjectId extends ObjectIdOwnerMap.Entry {
 		UnpackedObjectId(AnyObjectId id) {
 			super(id);
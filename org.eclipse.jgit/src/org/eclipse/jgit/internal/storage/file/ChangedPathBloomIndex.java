@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ChangedPathIndex;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Reader for the {@code objects/info/changed-paths} file.
+ * <p>
+ * The file holds one Bloom filter per commit, built over the paths the commit
+ * changed relative to its first parent and every leading directory of those
+ * paths. All integers are in network byte order:
+ *
+ * <pre>
+ * 'CPBF'               4 byte signature
+ * version              4 bytes, currently 1
+ * hash count           4 bytes
+ * N                    4 bytes, number of commits
+ * commit ids           N * 20 bytes, sorted
+ * filter end offsets   N * 4 bytes, cumulative from the start of filter data
+ * filter data          all filters, in commit id order
+ * checksum             20 byte SHA-1 of all preceding bytes
+ * </pre>
+ *
+ * A single zero byte filter records a commit without changes; a single 0xff
+ * byte filter records a commit with too many changes to be worth indexing.
+ */
+class ChangedPathBloomIndex implements ChangedPathIndex {
+	static final byte[] SIGNATURE = { 'C', 'P', 'B', 'F' };
+
+	static final int VERSION = 1;
+
+	static final int HASH_COUNT = 7;
+
+	static final int BITS_PER_ENTRY = 10;
+
+	static final int MAX_CHANGED_PATHS = 512;
+
+	static final int HEADER_LENGTH = 16;
+
+	private static final int SEED_0 = 0x293ae76f;
+
+	private static final int SEED_1 = 0x7e646e2c;
+
+	/**
+	 * Read a changed path index from disk.
+	 *
+	 * @param file
+	 *            the index file.
+	 * @return the index.
+	 * @throws java.io.FileNotFoundException
+	 *             the file does not exist.
+	 * @throws IOException
+	 *             the file cannot be read or is corrupt.
+	 */
+	static ChangedPathBloomIndex read(File file) throws IOException {
+		byte[] buf = IO.readFully(file);
+		if (!isValid(buf)) {
+			throw new IOException(MessageFormat.format(
+					JGitText.get().corruptChangedPathIndex,
+					file.getAbsolutePath()));
+		}
+		return new ChangedPathBloomIndex(buf);
+	}
+
+	private static boolean isValid(byte[] buf) {
+		int idLen = Constants.OBJECT_ID_LENGTH;
+		if (buf.length < HEADER_LENGTH + idLen
+				|| !Arrays.equals(SIGNATURE, Arrays.copyOf(buf, 4))
+				|| NB.decodeInt32(buf, 4) != VERSION
+				|| NB.decodeInt32(buf, 8) <= 0) {
+			return false;
+		}
+		long n = NB.decodeUInt32(buf, 12);
+		long dataOff = HEADER_LENGTH + n * (idLen + 4);
+		if (dataOff > buf.length - idLen) {
+			return false;
+		}
+		long prev = 0;
+		for (int i = 0; i < n; i++) {
+			long end = NB.decodeUInt32(buf, HEADER_LENGTH + (int) n * idLen
+					+ i * 4);
+			if (end <= prev) {
+				return false;
+			}
+			prev = end;
+		}
+		if (dataOff + prev != buf.length - idLen) {
+			return false;
+		}
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(buf, 0, buf.length - idLen);
+		byte[] sum = md.digest();
+		for (int i = 0; i < idLen; i++) {
+			if (sum[i] != buf[buf.length - idLen + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private final byte[] buf;
+
+	private final int hashCount;
+
+	private final int count;
+
+	private final int offsetsOff;
+
+	private final int dataOff;
+
+	private volatile PathHashes lastPaths;
+
+	private ChangedPathBloomIndex(byte[] buf) {
+		this.buf = buf;
+		hashCount = NB.decodeInt32(buf, 8);
+		count = NB.decodeInt32(buf, 12);
+		offsetsOff = HEADER_LENGTH + count * Constants.OBJECT_ID_LENGTH;
+		dataOff = offsetsOff + count * 4;
+	}
+
+	/**
+	 * Get the number of commits covered by this index.
+	 *
+	 * @return the number of commits covered by this index.
+	 */
+	int getCommitCount() {
+		return count;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean contains(AnyObjectId commit) {
+		return find(commit) >= 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean mayHaveChanged(AnyObjectId commit, Set<byte[]> paths) {
+		int i = find(commit);
+		if (i < 0) {
+			return true;
+		}
+		int start = dataOff + filterStart(i);
+		int len = dataOff + filterEnd(i) - start;
+		PathHashes h = lastPaths;
+		if (h == null || h.paths != paths) {
+			h = new PathHashes(paths);
+			lastPaths = h;
+		}
+		for (int p = 0; p < h.hashes.length; p += 2) {
+			if (contains(buf, start, len, hashCount, h.hashes[p],
+					h.hashes[p + 1])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get a copy of the filter stored for a commit.
+	 *
+	 * @param commit
+	 *            the commit to look up.
+	 * @return the filter, or null if {@code commit} is not covered or the
+	 *         index uses a different number of hash functions.
+	 */
+	byte[] getFilter(AnyObjectId commit) {
+		int i = find(commit);
+		if (i < 0 || hashCount != HASH_COUNT) {
+			return null;
+		}
+		return Arrays.copyOfRange(buf, dataOff + filterStart(i),
+				dataOff + filterEnd(i));
+	}
+
+	private int find(AnyObjectId commit) {
+		int idLen = Constants.OBJECT_ID_LENGTH;
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = commit.compareTo(buf, HEADER_LENGTH + mid * idLen);
+			if (cmp < 0) {
+				high = mid;
+			} else if (cmp == 0) {
+				return mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return -1;
+	}
+
+	private int filterStart(int i) {
+		return i == 0 ? 0 : NB.decodeInt32(buf, offsetsOff + (i - 1) * 4);
+	}
+
+	private int filterEnd(int i) {
+		return NB.decodeInt32(buf, offsetsOff + i * 4);
+	}
+
+	/**
+	 * Compute the size in bytes of a filter holding {@code entries} paths.
+	 *
+	 * @param entries
+	 *            number of distinct paths to add.
+	 * @return size of the filter in bytes.
+	 */
+	static int filterSize(int entries) {
+		if (entries == 0 || entries > MAX_CHANGED_PATHS) {
+			return 1;
+		}
+		int bytes = (entries * BITS_PER_ENTRY + 7) / 8;
+		return (bytes + 7) & ~7;
+	}
+
+	/**
+	 * Add a path to a filter.
+	 *
+	 * @param filter
+	 *            the filter to update.
+	 * @param path
+	 *            the path to add.
+	 */
+	static void add(byte[] filter, byte[] path) {
+		int h0 = murmur3(SEED_0, path);
+		int h1 = murmur3(SEED_1, path);
+		long bits = filter.length * 8L;
+		for (int i = 0; i < HASH_COUNT; i++) {
+			long pos = Integer.toUnsignedLong(h0 + i * h1) % bits;
+			filter[(int) (pos >>> 3)] |= 1 << (pos & 7);
+		}
+	}
+
+	private static boolean contains(byte[] filter, int off, int len, int k,
+			int h0, int h1) {
+		long bits = len * 8L;
+		for (int i = 0; i < k; i++) {
+			long pos = Integer.toUnsignedLong(h0 + i * h1) % bits;
+			if ((filter[off + (int) (pos >>> 3)] & (1 << (pos & 7))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compute the 32 bit MurmurHash3 of a byte array.
+	 *
+	 * @param seed
+	 *            initial hash value.
+	 * @param data
+	 *            bytes to hash.
+	 * @return the hash.
+	 */
+	static int murmur3(int seed, byte[] data) {
+		final int c1 = 0xcc9e2d51;
+		final int c2 = 0x1b873593;
+		int len = data.length;
+		int tail = len & ~3;
+		int h = seed;
+		for (int i = 0; i < tail; i += 4) {
+			int k = (data[i] & 0xff) | (data[i + 1] & 0xff) << 8
+					| (data[i + 2] & 0xff) << 16 | data[i + 3] << 24;
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		int k = 0;
+		int rem = len & 3;
+		if (rem == 3) {
+			k ^= (data[tail + 2] & 0xff) << 16;
+		}
+		if (rem >= 2) {
+			k ^= (data[tail + 1] & 0xff) << 8;
+		}
+		if (rem >= 1) {
+			k ^= data[tail] & 0xff;
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+		}
+		h ^= len;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static class PathHashes {
+		final Set<byte[]> paths;
+
+		final int[] hashes;
+
+		PathHashes(Set<byte[]> paths) {
+			this.paths = paths;
+			hashes = new int[paths.size() * 2];
+			int i = 0;
+			for (byte[] p : paths) {
+				hashes[i++] = murmur3(SEED_0, p);
+				hashes[i++] = murmur3(SEED_1, p);
+			}
+		}
+	}
+}
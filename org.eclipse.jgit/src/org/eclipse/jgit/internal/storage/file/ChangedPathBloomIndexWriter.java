@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.errors.LockFailedException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Writes the {@code objects/info/changed-paths} file read by
+ * {@link ChangedPathBloomIndex}.
+ * <p>
+ * Filters already present in a previous index are reused, so only commits
+ * added since the last run need a tree diff.
+ */
+class ChangedPathBloomIndexWriter {
+	private final ObjectReader reader;
+
+	private final List<Entry> entries = new ArrayList<>();
+
+	private int reused;
+
+	/**
+	 * Create a writer.
+	 *
+	 * @param reader
+	 *            reader used to parse commits and trees.
+	 */
+	ChangedPathBloomIndexWriter(ObjectReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Compute filters for every commit reachable from {@code tips}.
+	 *
+	 * @param tips
+	 *            starting points; objects which do not peel to a commit are
+	 *            skipped.
+	 * @param old
+	 *            previous index to reuse filters from, or null.
+	 * @param pm
+	 *            progress monitor, updated once per commit.
+	 * @throws IOException
+	 *             commits or trees could not be read.
+	 */
+	void addReachable(Collection<? extends AnyObjectId> tips,
+			@Nullable ChangedPathBloomIndex old, ProgressMonitor pm)
+			throws IOException {
+		try (RevWalk rw = new RevWalk(reader);
+				TreeWalk tw = new TreeWalk(reader)) {
+			rw.setRetainBody(false);
+			tw.setRecursive(true);
+			tw.setFilter(TreeFilter.ANY_DIFF);
+			for (AnyObjectId tip : tips) {
+				RevObject o = rw.peel(rw.parseAny(tip));
+				if (o instanceof RevCommit) {
+					rw.markStart((RevCommit) o);
+				}
+			}
+			RevCommit c;
+			while ((c = rw.next()) != null) {
+				byte[] filter = old != null ? old.getFilter(c) : null;
+				if (filter != null) {
+					reused++;
+				} else {
+					filter = computeFilter(rw, tw, c);
+				}
+				entries.add(new Entry(c, filter));
+				pm.update(1);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of commits whose filter came from a previous index.
+	 *
+	 * @return the number of reused filters.
+	 */
+	int getReusedCount() {
+		return reused;
+	}
+
+	/**
+	 * Write the index, replacing {@code file} atomically.
+	 *
+	 * @param file
+	 *            destination of the index.
+	 * @throws IOException
+	 *             the file could not be written.
+	 */
+	void write(File file) throws IOException {
+		byte[] content = format();
+		LockFile lock = new LockFile(file);
+		if (!lock.lock()) {
+			throw new LockFailedException(file);
+		}
+		try {
+			lock.write(content);
+			if (!lock.commit()) {
+				throw new LockFailedException(file);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private byte[] format() {
+		int idLen = Constants.OBJECT_ID_LENGTH;
+		entries.sort(null);
+		int n = entries.size();
+		int dataLen = 0;
+		for (Entry e : entries) {
+			dataLen += e.filter.length;
+		}
+		int offsetsOff = ChangedPathBloomIndex.HEADER_LENGTH + n * idLen;
+		int dataOff = offsetsOff + n * 4;
+		byte[] buf = new byte[dataOff + dataLen + idLen];
+		System.arraycopy(ChangedPathBloomIndex.SIGNATURE, 0, buf, 0, 4);
+		NB.encodeInt32(buf, 4, ChangedPathBloomIndex.VERSION);
+		NB.encodeInt32(buf, 8, ChangedPathBloomIndex.HASH_COUNT);
+		NB.encodeInt32(buf, 12, n);
+		int end = 0;
+		for (int i = 0; i < n; i++) {
+			Entry e = entries.get(i);
+			e.copyRawTo(buf, ChangedPathBloomIndex.HEADER_LENGTH + i * idLen);
+			System.arraycopy(e.filter, 0, buf, dataOff + end, e.filter.length);
+			end += e.filter.length;
+			NB.encodeInt32(buf, offsetsOff + i * 4, end);
+		}
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(buf, 0, dataOff + dataLen);
+		System.arraycopy(md.digest(), 0, buf, dataOff + dataLen, idLen);
+		return buf;
+	}
+
+	private static byte[] computeFilter(RevWalk rw, TreeWalk tw, RevCommit c)
+			throws IOException {
+		if (c.getParentCount() > 0) {
+			RevCommit p = c.getParent(0);
+			rw.parseHeaders(p);
+			tw.reset(p.getTree(), c.getTree());
+		} else {
+			tw.reset();
+			tw.addTree(new EmptyTreeIterator());
+			tw.addTree(c.getTree());
+		}
+
+		Set<ByteBuffer> paths = new HashSet<>();
+		while (tw.next()) {
+			byte[] path = tw.getRawPath();
+			for (int i = 0; i < path.length; i++) {
+				if (path[i] == '/') {
+					paths.add(ByteBuffer.wrap(Arrays.copyOf(path, i)));
+				}
+			}
+			paths.add(ByteBuffer.wrap(path));
+			if (paths.size() > ChangedPathBloomIndex.MAX_CHANGED_PATHS) {
+				return new byte[] { (byte) 0xff };
+			}
+		}
+
+		byte[] filter = new byte[ChangedPathBloomIndex
+				.filterSize(paths.size())];
+		for (ByteBuffer p : paths) {
+			ChangedPathBloomIndex.add(filter, p.array());
+		}
+		return filter;
+	}
+
+	private static class Entry extends ObjectId {
+		final byte[] filter;
+
+		Entry(AnyObjectId id, byte[] filter) {
+			super(id);
+			this.filter = filter;
+		}
+	}
+}
@@ -107,4 +107,6 @@ abstract InsertLooseObjectResult insertUnpackedObject(File tmp,
 	abstract PackFile openPack(File pack) throws IOException;
 
 	abstract Collection<PackFile> getPacks();
+
+	abstract ChangedPathBloomIndex getChangedPathIndex();
 }
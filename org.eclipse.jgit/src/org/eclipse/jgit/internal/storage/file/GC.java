@@ -205,6 +205,12 @@ public static void setExecutor(ExecutorService e) {
 	 */
 	private boolean background;
 
+	/**
+	 * Whether gc writes the changed path index; null to read
+	 * {@code gc.writeChangedPaths}
+	 */
+	private Boolean writeChangedPaths;
+
 	/**
 	 * Creates a new garbage collector with default values. An expirationTime of
 	 * two weeks and <code>null</code> as progress monitor will be used.
@@ -294,11 +300,14 @@ private Collection<PackFile> doGc() throws IOException, ParseException {
 		if (automatic && !needGc()) {
 			return Collections.emptyList();
 		}
-		pm.start(6 /* tasks */);
+		pm.start(7 /* tasks */);
 		packRefs();
 		// TODO: implement reflog_expire(pm, repo);
 		Collection<PackFile> newPacks = repack();
 		prune(Collections.emptySet());
+		if (shouldWriteChangedPaths()) {
+			writeChangedPathIndex();
+		}
 		// TODO: implement rerere_gc(pm);
 		return newPacks;
 	}
@@ -1505,6 +1514,61 @@ public void setAuto(boolean auto) {
 		this.automatic = auto;
 	}
 
+	/**
+	 * Set whether {@link #gc()} writes the changed path index.
+	 * <p>
+	 * The index lets path-limited revision walks skip the tree diff of
+	 * commits which certainly did not touch the filtered paths. If not set,
+	 * the {@code gc.writeChangedPaths} option is used, which defaults to
+	 * {@code false}.
+	 *
+	 * @param write
+	 *            whether to write the changed path index.
+	 * @since 5.2
+	 */
+	public void setWriteChangedPaths(boolean write) {
+		this.writeChangedPaths = Boolean.valueOf(write);
+	}
+
+	private boolean shouldWriteChangedPaths() {
+		if (writeChangedPaths != null) {
+			return writeChangedPaths.booleanValue();
+		}
+		return repo.getConfig().getBoolean(ConfigConstants.CONFIG_GC_SECTION,
+				ConfigConstants.CONFIG_KEY_WRITE_CHANGED_PATHS, false);
+	}
+
+	/**
+	 * Write the changed path index for all commits reachable from refs.
+	 * <p>
+	 * Filters of commits already covered by the current index are reused, so
+	 * running this repeatedly only diffs commits created since the last run.
+	 *
+	 * @throws java.io.IOException
+	 *             the index could not be computed or written.
+	 * @since 5.2
+	 */
+	public void writeChangedPathIndex() throws IOException {
+		ObjectDirectory odb = repo.getObjectDatabase();
+		List<ObjectId> tips = new ArrayList<>();
+		for (Ref ref : getAllRefs()) {
+			if (!ref.isSymbolic() && ref.getObjectId() != null) {
+				tips.add(ref.getObjectId());
+			}
+		}
+		pm.beginTask(JGitText.get().writingChangedPathIndex,
+				ProgressMonitor.UNKNOWN);
+		try (ObjectReader reader = odb.newReader()) {
+			ChangedPathBloomIndexWriter w = new ChangedPathBloomIndexWriter(
+					reader);
+			w.addReachable(tips, odb.getChangedPathIndex(), pm);
+			checkCancelled();
+			w.write(odb.getChangedPathIndexFile());
+		} finally {
+			pm.endTask();
+		}
+	}
+
 	/**
 	 * @param background
 	 *            whether to run the gc in a background thread.
@@ -146,6 +146,12 @@ public class ObjectDirectory extends FileObjectDatabase {
 
 	private Set<ObjectId> shallowCommitsIds;
 
+	private final File changedPathsFile;
+
+	private FileSnapshot changedPathsSnapshot = FileSnapshot.DIRTY;
+
+	private ChangedPathBloomIndex changedPathIndex;
+
 	/**
 	 * Initialize a reference to an on-disk object directory.
 	 *
@@ -172,6 +178,7 @@ public ObjectDirectory(final Config cfg, final File dir,
 		packDirectory = new File(objects, "pack"); //$NON-NLS-1$
 		preservedDirectory = new File(packDirectory, "preserved"); //$NON-NLS-1$
 		alternatesFile = new File(infoDirectory, "alternates"); //$NON-NLS-1$
+		changedPathsFile = new File(infoDirectory, "changed-paths"); //$NON-NLS-1$
 		packList = new AtomicReference<>(NO_PACKS);
 		unpackedObjectCache = new UnpackedObjectCache();
 		this.fs = fs;
@@ -814,6 +821,32 @@ Set<ObjectId> getShallowCommits() throws IOException {
 		return shallowCommitsIds;
 	}
 
+	/**
+	 * Get the location of the changed path index.
+	 *
+	 * @return the location of the {@code info/changed-paths} file.
+	 */
+	File getChangedPathIndexFile() {
+		return changedPathsFile;
+	}
+
+	@Override
+	synchronized ChangedPathBloomIndex getChangedPathIndex() {
+		if (changedPathsSnapshot.isModified(changedPathsFile)) {
+			changedPathsSnapshot = FileSnapshot.save(changedPathsFile);
+			changedPathIndex = null;
+			try {
+				changedPathIndex = ChangedPathBloomIndex
+						.read(changedPathsFile);
+			} catch (FileNotFoundException e) {
+				// No index; path-limited walks diff every commit.
+			} catch (IOException e) {
+				LOG.warn(e.getMessage(), e);
+			}
+		}
+		return changedPathIndex;
+	}
+
 	private void insertPack(PackFile pf) {
 		PackList o, n;
 		do {
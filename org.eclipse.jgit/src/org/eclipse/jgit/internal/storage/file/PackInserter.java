@@ -194,6 +194,43 @@ public ObjectId insert(int type, long len, InputStream in)
 		return endObject(md.toObjectId(), offset);
 	}
 
+	/**
+	 * Insert an object whose content was already compressed.
+	 * <p>
+	 * The inserter is not thread-safe. This allows callers to hash and deflate
+	 * objects on other threads, and only append the result to the pack here.
+	 *
+	 * @param id
+	 *            id of the object.
+	 * @param type
+	 *            type code of the object.
+	 * @param len
+	 *            inflated length of the object.
+	 * @param data
+	 *            the object content, compressed by a
+	 *            {@link java.util.zip.Deflater} into a complete zlib stream.
+	 * @param off
+	 *            first position within {@code data}.
+	 * @param cnt
+	 *            number of compressed bytes.
+	 * @return {@code id}.
+	 * @throws java.io.IOException
+	 *             the object could not be written to the pack.
+	 */
+	public ObjectId insertDeflated(ObjectId id, int type, long len,
+			byte[] data, int off, int cnt) throws IOException {
+		if (objectMap != null && objectMap.contains(id)) {
+			return id;
+		}
+		if (checkExisting && db.hasPackedObject(id)) {
+			return id;
+		}
+
+		long offset = beginObject(type, len);
+		packOut.write(data, off, cnt);
+		return endObject(id, offset);
+	}
+
 	private long beginObject(int type, long len) throws IOException {
 		if (packOut == null) {
 			beginPack();
@@ -270,7 +307,7 @@ public void flush() throws IOException {
 
 		Collections.sort(objectList);
 		File tmpIdx = idxFor(tmpPack);
-		writePackIndex(tmpIdx, packHash, objectList);
+		writePackIndex(tmpIdx, packHash, objectList, fsync());
 
 		File realPack = new File(db.getPackDirectory(),
 				"pack-" + computeName(objectList).name() + ".pack"); //$NON-NLS-1$ //$NON-NLS-2$
@@ -302,13 +339,20 @@ public void flush() throws IOException {
 	}
 
 	private static void writePackIndex(File idx, byte[] packHash,
-			List<PackedObjectInfo> list) throws IOException {
-		try (OutputStream os = new FileOutputStream(idx)) {
+			List<PackedObjectInfo> list, boolean fsync) throws IOException {
+		try (FileOutputStream os = new FileOutputStream(idx)) {
 			PackIndexWriter w = PackIndexWriter.createVersion(os, INDEX_VERSION);
 			w.write(list, packHash);
+			if (fsync) {
+				os.getChannel().force(true);
+			}
 		}
 	}
 
+	private boolean fsync() {
+		return db.getConfig().get(WriteConfig.KEY).getFSyncObjectFiles();
+	}
+
 	private ObjectId computeName(List<PackedObjectInfo> list) {
 		SHA1 md = digest().reset();
 		byte[] buf = buffer();
@@ -475,6 +519,9 @@ byte[] finishPack() throws IOException {
 				}
 				byte[] packHash = md.digest();
 				out.write(packHash, 0, packHash.length);
+				if (fsync()) {
+					file.getChannel().force(true);
+				}
 				return packHash;
 			} finally {
 				close();
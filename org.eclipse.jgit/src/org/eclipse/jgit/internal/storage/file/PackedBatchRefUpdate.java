@@ -427,10 +427,7 @@ private static RefList<Ref> applyUpdates(RevWalk walk, RefList<Ref> refs,
 	}
 
 	private void writeReflog(List<ReceiveCommand> commands) {
-		PersonIdent ident = getRefLogIdent();
-		if (ident == null) {
-			ident = new PersonIdent(refdb.getRepository());
-		}
+		PersonIdent defaultIdent = null;
 		for (ReceiveCommand cmd : commands) {
 			// Assume any pending commands have already been executed atomically.
 			if (cmd.getResult() != ReceiveCommand.Result.OK) {
@@ -459,6 +456,13 @@ private void writeReflog(List<ReceiveCommand> commands) {
 							? strResult : msg + ": " + strResult; //$NON-NLS-1$
 				}
 			}
+			PersonIdent ident = getRefLogIdent(cmd);
+			if (ident == null) {
+				if (defaultIdent == null) {
+					defaultIdent = new PersonIdent(refdb.getRepository());
+				}
+				ident = defaultIdent;
+			}
 			try {
 				new ReflogWriter(refdb, isForceRefLog(cmd))
 						.log(name, cmd.getOldId(), cmd.getNewId(), ident, msg);
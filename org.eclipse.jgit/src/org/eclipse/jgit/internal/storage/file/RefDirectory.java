@@ -409,6 +409,18 @@ public Map<String, Ref> getRefs(String prefix) throws IOException {
 		return new RefMap(prefix, packed, upcast(loose), symbolic.toRefList());
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Iterable<Ref> getSortedRefsByPrefix(String prefix)
+			throws IOException {
+		if (prefix.isEmpty() || prefix.endsWith("/")) { //$NON-NLS-1$
+			// RefMap merges the sorted packed, loose and symbolic lists
+			// while it is iterated, so this is already in name order.
+			return Collections.unmodifiableCollection(getRefs(prefix).values());
+		}
+		return super.getSortedRefsByPrefix(prefix);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public List<Ref> getAdditionalRefs() throws IOException {
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.pack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.util.TemporaryBuffer;
+
+/**
+ * Deflates objects ahead of {@link PackWriter} on worker threads.
+ * <p>
+ * The writing thread announces each list it is about to write. The pipeline
+ * submits the next objects of that list which cannot be reused as-is, up to
+ * a fixed window, and each worker loads the object (or computes its delta)
+ * and deflates it into a private buffer. The writing thread takes the
+ * compressed data when it reaches the object and copies it into the pack
+ * itself, so offsets and CRCs are computed exactly as in a sequential write.
+ * <p>
+ * Objects larger than {@link #MAX_OBJECT_SIZE} and objects whose worker
+ * failed are left to the writing thread, which also reports any error.
+ */
+final class DeflatePipeline implements AutoCloseable {
+	/** Largest inflated object deflated by a worker. */
+	static final int MAX_OBJECT_SIZE = 8 * 1024 * 1024;
+
+	/** Compressed form of one object, as produced by a worker. */
+	static final class Result {
+		final ObjectId base;
+
+		final long inflatedSize;
+
+		final byte[] data;
+
+		Result(ObjectId base, long inflatedSize, byte[] data) {
+			this.base = base;
+			this.inflatedSize = inflatedSize;
+			this.data = data;
+		}
+	}
+
+	private static final class Worker {
+		final ObjectReader reader;
+
+		final Deflater deflater;
+
+		Worker(ObjectReader reader, Deflater deflater) {
+			this.reader = reader;
+			this.deflater = deflater;
+		}
+	}
+
+	private final PackConfig config;
+
+	private final ObjectReader reader;
+
+	private final int window;
+
+	private final ExecutorService executor;
+
+	private final ExecutorService pool;
+
+	private final ThreadLocal<Worker> worker = new ThreadLocal<>();
+
+	private final ConcurrentLinkedQueue<Worker> workers = new ConcurrentLinkedQueue<>();
+
+	private final Map<ObjectToPack, Future<Result>> pending = new IdentityHashMap<>();
+
+	private final List<Future<Result>> abandoned = new ArrayList<>();
+
+	private List<ObjectToPack> list;
+
+	private int next;
+
+	/**
+	 * Create a pipeline.
+	 *
+	 * @param config
+	 *            configuration supplying the compression level.
+	 * @param reader
+	 *            reader of the writer; workers use their own readers created
+	 *            from it.
+	 * @param threads
+	 *            number of worker threads.
+	 * @param executor
+	 *            service to run workers on; null to use a temporary pool.
+	 */
+	DeflatePipeline(PackConfig config, ObjectReader reader, int threads,
+			ExecutorService executor) {
+		this.config = config;
+		this.reader = reader;
+		this.window = 2 * threads;
+		if (executor == null) {
+			pool = Executors.newFixedThreadPool(threads);
+			this.executor = pool;
+		} else {
+			pool = null;
+			this.executor = executor;
+		}
+	}
+
+	/**
+	 * Start deflating the objects of a list about to be written.
+	 *
+	 * @param objects
+	 *            the objects, in the order they will be written.
+	 */
+	void begin(List<ObjectToPack> objects) {
+		list = objects;
+		next = 0;
+		fill();
+	}
+
+	/**
+	 * Obtain the compressed form of an object, if a worker produced one.
+	 *
+	 * @param otp
+	 *            the object about to be written.
+	 * @return the worker's result; null if the object must be deflated by
+	 *         the caller.
+	 * @throws IOException
+	 *             the writing thread was interrupted while waiting.
+	 */
+	Result take(ObjectToPack otp) throws IOException {
+		Future<Result> f = pending.remove(otp);
+		Result r = f != null ? await(f) : null;
+		fill();
+		return r;
+	}
+
+	private void fill() {
+		for (Iterator<ObjectToPack> i = pending.keySet().iterator(); i
+				.hasNext();) {
+			// Delta bases written early were deflated by the writing thread.
+			ObjectToPack otp = i.next();
+			if (otp.isWritten()) {
+				Future<Result> f = pending.get(otp);
+				if (!f.cancel(false) && !f.isDone())
+					abandoned.add(f);
+				i.remove();
+			}
+		}
+		while (pending.size() < window && list != null
+				&& next < list.size()) {
+			ObjectToPack otp = list.get(next++);
+			if (otp.isWritten() || otp.isEdge() || otp.isReuseAsIs())
+				continue;
+			if (otp.isDeltaRepresentation() && otp.hasCachedDelta())
+				continue;
+
+			ObjectId id = otp.copy();
+			int type = otp.getType();
+			ObjectId base = otp.isDeltaRepresentation()
+					? otp.getDeltaBaseId().copy()
+					: null;
+			pending.put(otp, executor.submit(new Callable<Result>() {
+				@Override
+				public Result call() {
+					try {
+						return deflate(id, type, base);
+					} catch (IOException | RuntimeException e) {
+						// The writing thread retries and reports the error.
+						return null;
+					}
+				}
+			}));
+		}
+	}
+
+	private Result deflate(ObjectId id, int type, ObjectId base)
+			throws IOException {
+		Worker w = worker();
+		if (base == null) {
+			ObjectLoader ldr = w.reader.open(id, type);
+			if (ldr.isLarge() || ldr.getSize() > MAX_OBJECT_SIZE)
+				return null;
+			byte[] raw = ldr.getCachedBytes();
+			return new Result(null, raw.length, compress(w.deflater, raw));
+		}
+
+		byte[] res = PackWriter.buffer(config, w.reader, id);
+		if (res.length > MAX_OBJECT_SIZE)
+			return null;
+		DeltaIndex index = new DeltaIndex(
+				PackWriter.buffer(config, w.reader, base));
+		try (TemporaryBuffer.Heap delta = new TemporaryBuffer.Heap(
+				res.length)) {
+			index.encode(delta, res);
+			byte[] raw = delta.toByteArray();
+			return new Result(base, raw.length, compress(w.deflater, raw));
+		}
+	}
+
+	private static byte[] compress(Deflater deflater, byte[] raw)
+			throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream(
+				Math.max(raw.length / 2, 64));
+		deflater.reset();
+		DeflaterOutputStream dst = new DeflaterOutputStream(buf, deflater);
+		dst.write(raw);
+		dst.finish();
+		return buf.toByteArray();
+	}
+
+	private Worker worker() {
+		Worker w = worker.get();
+		if (w == null) {
+			w = new Worker(reader.newReader(),
+					new Deflater(config.getCompressionLevel()));
+			workers.add(w);
+			worker.set(w);
+		}
+		return w;
+	}
+
+	private static Result await(Future<Result> f) throws IOException {
+		try {
+			return f.get();
+		} catch (ExecutionException e) {
+			return null;
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException(
+					JGitText.get().packingCancelledDuringObjectsWriting);
+		}
+	}
+
+	/**
+	 * Cancel outstanding work and release the workers' resources.
+	 */
+	@Override
+	public void close() {
+		list = null;
+		abandoned.addAll(pending.values());
+		pending.clear();
+		boolean interrupted = false;
+		for (Future<Result> f : abandoned) {
+			if (f.cancel(false))
+				continue;
+			for (;;) {
+				try {
+					f.get();
+					break;
+				} catch (ExecutionException e) {
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		abandoned.clear();
+		if (pool != null)
+			pool.shutdown();
+		Worker w;
+		while ((w = workers.poll()) != null) {
+			w.reader.close();
+			w.deflater.end();
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
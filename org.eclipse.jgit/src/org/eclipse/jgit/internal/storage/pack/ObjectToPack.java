@@ -153,6 +153,10 @@ final void setCachedDelta(DeltaCache.Ref data) {
 		cachedDelta = data;
 	}
 
+	final boolean hasCachedDelta() {
+		return cachedDelta != null;
+	}
+
 	final DeltaCache.Ref popCachedDelta() {
 		DeltaCache.Ref r = cachedDelta;
 		if (r != null)
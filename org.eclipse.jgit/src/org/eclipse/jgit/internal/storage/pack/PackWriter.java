@@ -250,6 +250,8 @@ public static Iterable<PackWriter> getInstances() {
 
 	private Deflater myDeflater;
 
+	private DeflatePipeline deflatePipeline;
+
 	private final ObjectReader reader;
 
 	/** {@link #reader} recast to the reuse interface, if it supports it. */
@@ -859,15 +861,29 @@ public void preparePack(ProgressMonitor countingMonitor,
 			@NonNull Set<? extends ObjectId> have,
 			@NonNull Set<? extends ObjectId> shallow,
 			@NonNull Set<? extends ObjectId> noBitmaps) throws IOException {
-		try (ObjectWalk ow = getObjectWalk()) {
+		TreePrefetchReader prefetch = newTreePrefetch();
+		try (ObjectWalk ow = getObjectWalk(
+				prefetch != null ? prefetch : reader)) {
 			ow.assumeShallow(shallow);
 			preparePack(countingMonitor, ow, want, have, noBitmaps);
+		} finally {
+			if (prefetch != null)
+				prefetch.close();
 		}
 	}
 
-	private ObjectWalk getObjectWalk() {
-		return shallowPack ? new DepthWalk.ObjectWalk(reader, depth - 1)
-				: new ObjectWalk(reader);
+	private TreePrefetchReader newTreePrefetch() {
+		int threads = config.getCountingThreads();
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		if (shallowPack || threads <= 1)
+			return null;
+		return new TreePrefetchReader(reader, threads);
+	}
+
+	private ObjectWalk getObjectWalk(ObjectReader walkReader) {
+		return shallowPack ? new DepthWalk.ObjectWalk(walkReader, depth - 1)
+				: new ObjectWalk(walkReader);
 	}
 
 	/**
@@ -1151,6 +1167,7 @@ public void writePack(ProgressMonitor compressMonitor,
 			out.writeFileHeader(PACK_VERSION_GENERATED, objCnt);
 			out.flush();
 
+			deflatePipeline = newDeflatePipeline(objCnt);
 			writeObjects(out);
 			if (!edgeObjects.isEmpty() || !cachedPacks.isEmpty()) {
 				for (PackStatistics.ObjectType.Accumulator typeStat : stats.objectTypes) {
@@ -1171,6 +1188,10 @@ public void writePack(ProgressMonitor compressMonitor,
 			writeChecksum(out);
 			out.flush();
 		} finally {
+			if (deflatePipeline != null) {
+				deflatePipeline.close();
+				deflatePipeline = null;
+			}
 			stats.timeWriting = System.currentTimeMillis() - writeStart;
 			stats.depth = depth;
 
@@ -1604,6 +1625,8 @@ private void writeObjects(PackOutputStream out, List<ObjectToPack> list)
 
 		typeStats = stats.objectTypes[list.get(0).getType()];
 		long beginOffset = out.length();
+		if (deflatePipeline != null)
+			deflatePipeline.begin(list);
 
 		if (reuseSupport != null) {
 			reuseSupport.writeObjects(out, list);
@@ -1686,8 +1709,45 @@ private void writeBase(PackOutputStream out, ObjectToPack base)
 			writeObjectImpl(out, base);
 	}
 
+	private DeflatePipeline newDeflatePipeline(long objCnt) {
+		int threads = config.getDeflateThreads();
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		if (threads <= 1 || objCnt <= 1)
+			return null;
+		Executor executor = config.getExecutor();
+		return new DeflatePipeline(config, reader, threads,
+				executor instanceof ExecutorService
+						? (ExecutorService) executor
+						: null);
+	}
+
+	private DeflatePipeline.Result takeDeflated(ObjectToPack otp)
+			throws IOException {
+		if (deflatePipeline == null)
+			return null;
+		DeflatePipeline.Result r = deflatePipeline.take(otp);
+		if (r == null)
+			return null;
+		// The representation may have changed since the object was queued.
+		ObjectId base = otp.isDeltaRepresentation() ? otp.getDeltaBaseId()
+				: null;
+		if (base == null ? r.base != null : !base.equals(r.base))
+			return null;
+		return r;
+	}
+
 	private void writeWholeObjectDeflate(PackOutputStream out,
 			final ObjectToPack otp) throws IOException {
+		DeflatePipeline.Result r = takeDeflated(otp);
+		if (r != null) {
+			crc32.reset();
+			otp.setOffset(out.length());
+			out.writeHeader(otp, r.inflatedSize);
+			out.write(r.data);
+			return;
+		}
+
 		final Deflater deflater = deflater();
 		final ObjectLoader ldr = reader.open(otp, otp.getType());
 
@@ -1720,6 +1780,15 @@ private void writeDeltaObjectDeflate(PackOutputStream out,
 			}
 		}
 
+		DeflatePipeline.Result r = takeDeflated(otp);
+		if (r != null) {
+			out.writeHeader(otp, r.inflatedSize);
+			out.write(r.data);
+			typeStats.cntDeltas++;
+			typeStats.deltaBytes += out.length() - otp.getOffset();
+			return;
+		}
+
 		try (TemporaryBuffer.Heap delta = delta(otp)) {
 			out.writeHeader(otp, delta.length());
 
@@ -1915,6 +1984,11 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 		}
 		stats.rootCommits = Collections.unmodifiableSet(roots);
 
+		if (have.isEmpty()
+				&& walker.getObjectReader() instanceof TreePrefetchReader)
+			startTreePrefetch((TreePrefetchReader) walker.getObjectReader(),
+					commits);
+
 		if (shallowPack) {
 			for (RevCommit cmit : commits) {
 				addObject(cmit, 0);
@@ -1992,6 +2066,16 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 		stats.bitmapIndexMisses = -1;
 	}
 
+	private void startTreePrefetch(TreePrefetchReader prefetch,
+			List<RevCommit> commits) {
+		List<ObjectId> trees = new ArrayList<>(commits.size());
+		for (RevCommit cmit : commits)
+			trees.add(cmit.getTree());
+		Executor executor = config.getExecutor();
+		prefetch.start(trees, executor instanceof ExecutorService
+				? (ExecutorService) executor : null);
+	}
+
 	private void findObjectsToPackUsingBitmaps(
 			BitmapWalker bitmapWalker, Set<? extends ObjectId> want,
 			Set<? extends ObjectId> have)
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.pack;
+
+import static org.eclipse.jgit.lib.Constants.OBJ_TREE;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+
+/**
+ * Reader that loads trees ahead of an ObjectWalk on worker threads.
+ * <p>
+ * Counting objects for a pack is dominated by inflating and scanning trees.
+ * The walk itself must stay on one thread to keep the object order and flag
+ * state deterministic, so instead the workers traverse the trees of the
+ * selected commits concurrently, sharing one concurrent seen-set so each tree
+ * is loaded only once. Loaded trees are held until the walk asks for them,
+ * bounded by a fixed memory budget.
+ * <p>
+ * The walk never waits on a worker. A tree not yet available is claimed and
+ * loaded by the walk itself, and any worker copy is discarded. Worker errors
+ * are ignored; the walk reports them when it reads the object on its own.
+ */
+final class TreePrefetchReader extends ObjectReader.Filter {
+	private static final int MAX_BUFFERED = 32 * 1024 * 1024;
+
+	/** Marks a tree a worker is currently loading. */
+	private static final Object LOADING = new Object();
+
+	/** Marks a tree that was handed to (or read by) the walk. */
+	private static final Object CLAIMED = new Object();
+
+	private final ObjectReader reader;
+
+	private final int threads;
+
+	private final ConcurrentHashMap<ObjectId, Object> trees = new ConcurrentHashMap<>();
+
+	private final Object lock = new Object();
+
+	private long buffered;
+
+	private volatile boolean stopped;
+
+	private List<ObjectId> roots;
+
+	private AtomicInteger nextRoot;
+
+	private ExecutorService pool;
+
+	private CountDownLatch running;
+
+	private int hits;
+
+	/**
+	 * Create a prefetching reader.
+	 *
+	 * @param reader
+	 *            reader the walk would otherwise use. It is not closed by
+	 *            this instance.
+	 * @param threads
+	 *            number of worker threads to load trees with.
+	 */
+	TreePrefetchReader(ObjectReader reader, int threads) {
+		this.reader = reader;
+		this.threads = threads;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected ObjectReader delegate() {
+		return reader;
+	}
+
+	/**
+	 * Start loading the trees reachable from {@code rootTrees}.
+	 * <p>
+	 * Roots are handed to workers in list order, which should match the order
+	 * the walk will visit them in. Workers {@code executor} rejects are not
+	 * started; the walk reads their trees itself.
+	 *
+	 * @param rootTrees
+	 *            root trees of the commits being counted.
+	 * @param executor
+	 *            service to run workers on; null to use a temporary pool.
+	 */
+	void start(List<ObjectId> rootTrees, ExecutorService executor) {
+		if (running != null || rootTrees.isEmpty())
+			return;
+		roots = rootTrees;
+		nextRoot = new AtomicInteger();
+		int n = Math.min(threads, rootTrees.size());
+		running = new CountDownLatch(n);
+		if (executor == null) {
+			pool = Executors.newFixedThreadPool(n);
+			executor = pool;
+		}
+		for (int i = 0; i < n; i++) {
+			ObjectReader r = reader.newReader();
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							work(r);
+						} finally {
+							r.close();
+							running.countDown();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				r.close();
+				for (; i < n; i++)
+					running.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Get the number of trees the walk read from prefetched content
+	 *
+	 * @return the number of trees the walk read from prefetched content
+	 */
+	int getHitCount() {
+		return hits;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public ObjectLoader open(AnyObjectId objectId, int typeHint)
+			throws MissingObjectException, IncorrectObjectTypeException,
+			IOException {
+		if (typeHint == OBJ_TREE && running != null) {
+			byte[] raw = take(objectId);
+			if (raw != null) {
+				hits++;
+				return new ObjectLoader.SmallObject(OBJ_TREE, raw);
+			}
+		}
+		return reader.open(objectId, typeHint);
+	}
+
+	private byte[] take(AnyObjectId id) {
+		ObjectId key = id.copy();
+		for (;;) {
+			Object v = trees.get(key);
+			if (v == null) {
+				if (trees.putIfAbsent(key, CLAIMED) == null)
+					return null;
+			} else if (v == CLAIMED) {
+				return null;
+			} else if (trees.replace(key, v, CLAIMED)) {
+				if (v == LOADING)
+					return null;
+				byte[] raw = (byte[]) v;
+				release(raw.length);
+				return raw;
+			}
+		}
+	}
+
+	private void work(ObjectReader r) {
+		List<ObjectId> stack = new ArrayList<>();
+		int i;
+		while (!stopped && (i = nextRoot.getAndIncrement()) < roots.size()) {
+			stack.add(roots.get(i));
+			while (!stopped && !stack.isEmpty()) {
+				ObjectId id = stack.remove(stack.size() - 1);
+				if (trees.putIfAbsent(id, LOADING) != null)
+					continue;
+
+				byte[] raw;
+				try {
+					raw = r.open(id, OBJ_TREE).getCachedBytes();
+				} catch (IOException | RuntimeException e) {
+					trees.replace(id, LOADING, CLAIMED);
+					continue;
+				}
+
+				int top = stack.size();
+				if (!pushSubtrees(raw, stack)) {
+					trees.replace(id, LOADING, CLAIMED);
+					continue;
+				}
+				reverse(stack, top);
+
+				if (reserve(raw.length) && !trees.replace(id, LOADING, raw))
+					release(raw.length);
+			}
+			stack.clear();
+		}
+	}
+
+	/**
+	 * Push the subtree ids of a canonical tree onto a stack.
+	 *
+	 * @param raw
+	 *            canonical content of the tree.
+	 * @param stack
+	 *            stack receiving the subtree ids.
+	 * @return false if the tree is malformed.
+	 */
+	private static boolean pushSubtrees(byte[] raw, List<ObjectId> stack) {
+		int ptr = 0;
+		while (ptr < raw.length) {
+			boolean tree = raw[ptr] == '4';
+			while (ptr < raw.length && raw[ptr] != 0)
+				ptr++;
+			ptr++;
+			if (ptr + 20 > raw.length)
+				return false;
+			if (tree)
+				stack.add(ObjectId.fromRaw(raw, ptr));
+			ptr += 20;
+		}
+		return true;
+	}
+
+	private static void reverse(List<ObjectId> stack, int from) {
+		for (int j = stack.size() - 1; from < j; from++, j--) {
+			ObjectId t = stack.get(from);
+			stack.set(from, stack.get(j));
+			stack.set(j, t);
+		}
+	}
+
+	private boolean reserve(int size) {
+		synchronized (lock) {
+			while (!stopped && buffered > 0
+					&& buffered + size > MAX_BUFFERED) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			if (stopped)
+				return false;
+			buffered += size;
+			return true;
+		}
+	}
+
+	private void release(int size) {
+		synchronized (lock) {
+			buffered -= size;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Stop the workers and discard any trees not yet read.
+	 * <p>
+	 * The wrapped reader is left open.
+	 */
+	@Override
+	public void close() {
+		stopped = true;
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+		if (running != null) {
+			boolean interrupted = false;
+			for (;;) {
+				try {
+					running.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (pool != null)
+				pool.shutdown();
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		trees.clear();
+	}
+}
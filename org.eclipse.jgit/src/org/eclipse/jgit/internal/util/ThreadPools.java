@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utilities for the thread pools JGit creates to parallelize an operation.
+ */
+public final class ThreadPools {
+	/**
+	 * Cancel the tasks of an operation and shut its thread pool down.
+	 * <p>
+	 * Tasks already running are not interrupted.
+	 *
+	 * @param pool
+	 *            pool running the tasks.
+	 * @param tasks
+	 *            tasks submitted to the pool; null elements are skipped.
+	 * @see #shutdown(ExecutorService)
+	 */
+	public static void shutdown(ExecutorService pool,
+			Iterable<? extends Future<?>> tasks) {
+		for (Future<?> task : tasks) {
+			if (task != null) {
+				task.cancel(false);
+			}
+		}
+		shutdown(pool);
+	}
+
+	/**
+	 * Shut a thread pool down and wait for its threads to finish.
+	 * <p>
+	 * The caller must not return before the threads are done with the
+	 * resources it shares with them, so an interrupt does not end the wait.
+	 * It is remembered instead, and the interrupt status of the thread is set
+	 * again before returning.
+	 *
+	 * @param pool
+	 *            pool to shut down.
+	 */
+	public static void shutdown(ExecutorService pool) {
+		pool.shutdown();
+		boolean interrupted = false;
+		for (;;) {
+			try {
+				if (pool.awaitTermination(1, TimeUnit.SECONDS)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private ThreadPools() {
+		// Do not create instances
+	}
+}
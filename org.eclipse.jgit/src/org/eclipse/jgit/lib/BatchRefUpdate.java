@@ -56,7 +56,9 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 import org.eclipse.jgit.annotations.Nullable;
@@ -123,6 +125,12 @@ public class BatchRefUpdate {
 	/** Associated timestamps that should be blocked on before update. */
 	private List<ProposedTimestamp> timestamps;
 
+	/**
+	 * Batch each command was originally added to, if commands were merged in
+	 * from other batches by {@link RefUpdateCoalescer}.
+	 */
+	private Map<ReceiveCommand, BatchRefUpdate> origins;
+
 	/**
 	 * Initialize a new batch update.
 	 *
@@ -395,6 +403,38 @@ public BatchRefUpdate addCommand(Collection<ReceiveCommand> cmd) {
 		return this;
 	}
 
+	/**
+	 * Add all pending commands of another batch to this batch.
+	 * <p>
+	 * The reflog settings of {@code other} continue to apply to its commands.
+	 *
+	 * @param other
+	 *            batch whose commands should be added.
+	 */
+	void addCommandsFrom(BatchRefUpdate other) {
+		if (origins == null) {
+			origins = new IdentityHashMap<>();
+		}
+		for (ReceiveCommand cmd : other.commands) {
+			if (cmd.getResult() == NOT_ATTEMPTED) {
+				commands.add(cmd);
+				origins.put(cmd, other);
+			}
+		}
+		for (ProposedTimestamp ts : other.getProposedTimestamps()) {
+			addProposedTimestamp(ts);
+		}
+	}
+
+	/**
+	 * Get the reference database this batch updates.
+	 *
+	 * @return the reference database this batch updates.
+	 */
+	RefDatabase getRefDatabase() {
+		return refdb;
+	}
+
 	/**
 	 * Gets the list of option strings associated with this update.
 	 *
@@ -691,7 +731,7 @@ protected RefUpdate newUpdate(ReceiveCommand cmd) throws IOException {
 		if (isRefLogDisabled(cmd)) {
 			ru.disableRefLog();
 		} else {
-			ru.setRefLogIdent(refLogIdent);
+			ru.setRefLogIdent(getRefLogIdent(cmd));
 			ru.setRefLogMessage(getRefLogMessage(cmd), isRefLogIncludingResult(cmd));
 			ru.setForceRefLog(isForceRefLog(cmd));
 		}
@@ -714,6 +754,19 @@ protected RefUpdate newUpdate(ReceiveCommand cmd) throws IOException {
 		}
 	}
 
+	/**
+	 * Get the identity recorded in the reflog for a command.
+	 *
+	 * @param cmd
+	 *            specific command.
+	 * @return identity of the user making the change; null if the identity
+	 *         should be determined from the repository configuration.
+	 * @since 5.2
+	 */
+	protected PersonIdent getRefLogIdent(ReceiveCommand cmd) {
+		return origin(cmd).getRefLogIdent();
+	}
+
 	/**
 	 * Check whether reflog is disabled for a command.
 	 *
@@ -724,7 +777,8 @@ protected RefUpdate newUpdate(ReceiveCommand cmd) throws IOException {
 	 * @since 4.9
 	 */
 	protected boolean isRefLogDisabled(ReceiveCommand cmd) {
-		return cmd.hasCustomRefLog() ? cmd.isRefLogDisabled() : isRefLogDisabled();
+		return cmd.hasCustomRefLog() ? cmd.isRefLogDisabled()
+				: origin(cmd).isRefLogDisabled();
 	}
 
 	/**
@@ -737,7 +791,8 @@ protected boolean isRefLogDisabled(ReceiveCommand cmd) {
 	 * @since 4.9
 	 */
 	protected String getRefLogMessage(ReceiveCommand cmd) {
-		return cmd.hasCustomRefLog() ? cmd.getRefLogMessage() : getRefLogMessage();
+		return cmd.hasCustomRefLog() ? cmd.getRefLogMessage()
+				: origin(cmd).getRefLogMessage();
 	}
 
 	/**
@@ -751,8 +806,8 @@ protected String getRefLogMessage(ReceiveCommand cmd) {
 	 * @since 4.9
 	 */
 	protected boolean isRefLogIncludingResult(ReceiveCommand cmd) {
-		return cmd.hasCustomRefLog()
-				? cmd.isRefLogIncludingResult() : isRefLogIncludingResult();
+		return cmd.hasCustomRefLog() ? cmd.isRefLogIncludingResult()
+				: origin(cmd).isRefLogIncludingResult();
 	}
 
 	/**
@@ -767,7 +822,17 @@ protected boolean isRefLogIncludingResult(ReceiveCommand cmd) {
 	protected boolean isForceRefLog(ReceiveCommand cmd) {
 		Boolean isForceRefLog = cmd.isForceRefLog();
 		return isForceRefLog != null ? isForceRefLog.booleanValue()
-				: isForceRefLog();
+				: origin(cmd).isForceRefLog();
+	}
+
+	private BatchRefUpdate origin(ReceiveCommand cmd) {
+		if (origins != null) {
+			BatchRefUpdate b = origins.get(cmd);
+			if (b != null) {
+				return b;
+			}
+		}
+		return this;
 	}
 
 	/** {@inheritDoc} */
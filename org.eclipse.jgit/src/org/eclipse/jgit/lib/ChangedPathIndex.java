@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lib;
+
+import java.util.Set;
+
+/**
+ * An index of the paths changed by each commit, used to speed up path-limited
+ * revision walks.
+ * <p>
+ * Answers are approximate in one direction only: if the index reports that a
+ * commit did not change any of the given paths relative to its first parent,
+ * the commit definitely did not change them. A {@code true} result may be a
+ * false positive, and is always returned for commits the index does not know
+ * about.
+ *
+ * @since 5.2
+ */
+public interface ChangedPathIndex {
+	/**
+	 * Check whether a commit is covered by this index.
+	 *
+	 * @param commit
+	 *            the commit to look up.
+	 * @return true if the index holds an entry for {@code commit}.
+	 */
+	boolean contains(AnyObjectId commit);
+
+	/**
+	 * Check whether a commit may have changed any of the given paths.
+	 *
+	 * @param commit
+	 *            the commit to test, compared against its first parent.
+	 * @param paths
+	 *            paths (encoded as UTF-8, without trailing '/') to test. A
+	 *            path matches a change to itself or to anything below it.
+	 * @return false if the commit certainly did not change any of
+	 *         {@code paths}; true if it may have, or if the commit is not
+	 *         covered by this index.
+	 */
+	boolean mayHaveChanged(AnyObjectId commit, Set<byte[]> paths);
+}
@@ -427,6 +427,12 @@ public final class ConfigConstants {
 	 */
 	public static final String CONFIG_KEY_REQUIRED = "required";
 
+	/**
+	 * The "process" key
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_PROCESS = "process";
+
 	/**
 	 * The "lfs" section
 	 * @since 4.11
@@ -446,4 +452,137 @@ public final class ConfigConstants {
 	 * @since 5.2
 	 */
 	public static final String CONFIG_KEY_LOG_OUTPUT_ENCODING = "logOutputEncoding";
+
+	/**
+	 * The "fetchJobs" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_FETCH_JOBS = "fetchJobs";
+
+	/**
+	 * The "writeChangedPaths" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_WRITE_CHANGED_PATHS = "writeChangedPaths";
+
+	/**
+	 * The "checkout" section
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_CHECKOUT_SECTION = "checkout";
+
+	/**
+	 * The "workers" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_WORKERS = "workers";
+
+	/**
+	 * The "thresholdForParallelism" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_THRESHOLD_FOR_PARALLELISM = "thresholdForParallelism";
+
+	/**
+	 * The "untrackedCache" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_UNTRACKED_CACHE = "untrackedCache";
+
+	/**
+	 * The "fsmonitor" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_FSMONITOR = "fsmonitor";
+
+	/**
+	 * The "preloadIndex" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_PRELOAD_INDEX = "preloadIndex";
+
+	/**
+	 * The "contentIdCache" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_CONTENT_ID_CACHE = "contentIdCache";
+
+	/**
+	 * The "index" section
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_INDEX_SECTION = "index";
+
+	/**
+	 * The "version" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_VERSION = "version";
+
+	/**
+	 * The "splitIndex" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_SPLIT_INDEX = "splitIndex";
+
+	/**
+	 * The "splitIndex" section
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_SPLIT_INDEX_SECTION = "splitIndex";
+
+	/**
+	 * The "maxPercentChange" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_MAX_PERCENT_CHANGE = "maxPercentChange";
+
+	/**
+	 * The "threads" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_THREADS = "threads";
+
+	/**
+	 * The "recordOffsetTable" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_RECORD_OFFSET_TABLE = "recordOffsetTable";
+
+	/**
+	 * The "sparseCheckout" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_SPARSE_CHECKOUT = "sparseCheckout";
+
+	/**
+	 * The "sparseCheckoutCone" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_SPARSE_CHECKOUT_CONE = "sparseCheckoutCone";
+
+	/**
+	 * The "sparse" key
+	 *
+	 * @since 5.2
+	 */
+	public static final String CONFIG_KEY_SPARSE = "sparse";
 }
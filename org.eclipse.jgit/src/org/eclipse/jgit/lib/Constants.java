@@ -295,6 +295,13 @@ public final class Constants {
 	 */
 	public static final String INFO_ATTRIBUTES = "info/attributes";
 
+	/**
+	 * Sparse-checkout patterns file
+	 *
+	 * @since 5.2
+	 */
+	public static final String INFO_SPARSE_CHECKOUT = "info/sparse-checkout";
+
 	/**
 	 * The system property that contains the system user name
 	 *
@@ -414,6 +421,13 @@ public final class Constants {
 	 */
 	public static final String BUILTIN_FILTER_PREFIX = "jgit://builtin/";
 
+	/**
+	 * Filters handled by a long-running filter process start with this prefix
+	 *
+	 * @since 5.2
+	 */
+	public static final String PROCESS_FILTER_PREFIX = "jgit://process/";
+
 	/** Name of the ignore file */
 	public static final String DOT_GIT_IGNORE = ".gitignore";
 
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lib;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Source of the paths changed in a working tree.
+ * <p>
+ * A monitor watches a working tree and answers which paths may have changed
+ * since an earlier point in time, identified by an opaque token it handed out
+ * before. Commands comparing the working tree with the index use it to skip
+ * examining files that were found unmodified before and did not change since.
+ * <p>
+ * Implementations must be safe for use by multiple threads.
+ *
+ * @since 5.2
+ */
+public interface FileSystemMonitor {
+	/**
+	 * Query the paths changed since a token.
+	 * <p>
+	 * A path must be reported if the file, symbolic link or directory at that
+	 * path in the working tree was created, deleted or modified after the
+	 * token was returned. Reporting a directory covers all paths below it.
+	 * The answer has to include all changes done before this method was
+	 * called.
+	 *
+	 * @param token
+	 *            a token returned by an earlier query; null if the caller has
+	 *            none.
+	 * @return the changes. If the monitor can't tell which paths changed
+	 *         since {@code token}, e.g. because it doesn't know the token,
+	 *         everything must be reported as changed.
+	 * @throws java.io.IOException
+	 *             the monitor could not be queried.
+	 */
+	Changes getChanges(String token) throws IOException;
+
+	/** Paths changed in a working tree since a token. */
+	public static class Changes {
+		private final String token;
+
+		private final Collection<String> paths;
+
+		/**
+		 * Create a result reporting some paths as changed.
+		 *
+		 * @param token
+		 *            the token to pass to the next query.
+		 * @param paths
+		 *            paths relative to the root of the working tree, using
+		 *            '/' as separator.
+		 */
+		public Changes(String token, Collection<String> paths) {
+			this.token = token;
+			this.paths = paths;
+		}
+
+		/**
+		 * Create a result reporting everything as changed.
+		 *
+		 * @param token
+		 *            the token to pass to the next query.
+		 * @return the result.
+		 */
+		public static Changes everything(String token) {
+			return new Changes(token, null);
+		}
+
+		/**
+		 * Get the token to pass to the next query.
+		 *
+		 * @return the token
+		 */
+		public String getToken() {
+			return token;
+		}
+
+		/**
+		 * Whether everything in the working tree may have changed.
+		 *
+		 * @return true if all paths must be examined.
+		 */
+		public boolean isEverything() {
+			return paths == null;
+		}
+
+		/**
+		 * Get the changed paths.
+		 *
+		 * @return paths relative to the root of the working tree; empty if
+		 *         {@link #isEverything()} is true.
+		 */
+		public Collection<String> getPaths() {
+			if (paths == null) {
+				return Collections.emptySet();
+			}
+			return paths;
+		}
+	}
+}
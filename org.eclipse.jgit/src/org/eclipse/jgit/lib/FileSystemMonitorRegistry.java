@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jgit.util.StringUtils;
+
+/**
+ * Registry of the {@link org.eclipse.jgit.lib.FileSystemMonitor}s used for
+ * working trees.
+ * <p>
+ * A monitor registered for a working tree is used unless
+ * {@code core.fsmonitor} is set to false for the repository. If no monitor is
+ * registered and {@code core.fsmonitor} is true, a
+ * {@link org.eclipse.jgit.lib.WatchServiceFileSystemMonitor} is started and
+ * registered when the monitor of the working tree is first asked for, and
+ * keeps watching the working tree until it is unregistered and closed.
+ *
+ * @since 5.2
+ */
+public class FileSystemMonitorRegistry {
+	private static final ConcurrentHashMap<File, FileSystemMonitor> monitors = new ConcurrentHashMap<>();
+
+	/**
+	 * Register the monitor of a working tree.
+	 *
+	 * @param workTree
+	 *            the working tree watched by the monitor.
+	 * @param monitor
+	 *            the monitor.
+	 * @return the monitor previously registered for the working tree, or
+	 *         null. The caller is responsible for closing it.
+	 */
+	public static FileSystemMonitor register(File workTree,
+			FileSystemMonitor monitor) {
+		return monitors.put(key(workTree), monitor);
+	}
+
+	/**
+	 * Unregister the monitor of a working tree.
+	 *
+	 * @param workTree
+	 *            the working tree watched by the monitor.
+	 * @return the monitor registered for the working tree, or null. The
+	 *         caller is responsible for closing it.
+	 */
+	public static FileSystemMonitor unregister(File workTree) {
+		return monitors.remove(key(workTree));
+	}
+
+	/**
+	 * Get the monitor to use for the working tree of a repository.
+	 *
+	 * @param repo
+	 *            the repository.
+	 * @return the monitor; null if the repository is bare or no monitor shall
+	 *         be used for it.
+	 * @throws java.io.IOException
+	 *             the built-in monitor could not be started.
+	 */
+	public static FileSystemMonitor get(Repository repo) throws IOException {
+		if (repo.isBare()) {
+			return null;
+		}
+		Boolean enabled = StringUtils.toBooleanOrNull(
+				repo.getConfig().getString(ConfigConstants.CONFIG_CORE_SECTION,
+						null, ConfigConstants.CONFIG_KEY_FSMONITOR));
+		if (Boolean.FALSE.equals(enabled)) {
+			return null;
+		}
+		File key = key(repo.getWorkTree());
+		FileSystemMonitor monitor = monitors.get(key);
+		if (monitor != null || !Boolean.TRUE.equals(enabled)) {
+			return monitor;
+		}
+		synchronized (monitors) {
+			monitor = monitors.get(key);
+			if (monitor == null) {
+				monitor = new WatchServiceFileSystemMonitor(repo);
+				monitors.put(key, monitor);
+			}
+			return monitor;
+		}
+	}
+
+	private static File key(File workTree) {
+		return workTree.toPath().toAbsolutePath().normalize().toFile();
+	}
+}
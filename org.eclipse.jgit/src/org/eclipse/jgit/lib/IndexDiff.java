@@ -55,11 +55,14 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
+import org.eclipse.jgit.dircache.ContentIdCache;
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.dircache.UntrackedCache;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -70,6 +73,7 @@
 import org.eclipse.jgit.submodule.SubmoduleWalk.IgnoreSubmoduleMode;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.DirectoryPreloader;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
@@ -273,6 +277,16 @@ public TreeFilter clone() {
 
 	private DirCache dirCache;
 
+	private boolean useUntrackedCache;
+
+	private boolean useFileSystemMonitor;
+
+	private boolean useContentIdCache;
+
+	private String fileSystemMonitorToken;
+
+	private int fileSystemMonitorValid;
+
 	private IndexDiffFilter indexDiffFilter;
 
 	private Map<String, IndexDiff> submoduleIndexDiffs = new HashMap<>();
@@ -395,6 +409,12 @@ public boolean diff() throws IOException {
 	 * progress monitor is not needed, callers should use {@link #diff()}
 	 * instead. Progress reporting is crude and approximate and only intended
 	 * for informing the user.
+	 * <p>
+	 * If {@code core.untrackedCache} or {@code core.contentIdCache} is set, or
+	 * a {@link FileSystemMonitor} is registered for the repository, the
+	 * index extensions updated while walking the working tree are written
+	 * back to the index file. This is skipped if the index cannot be locked,
+	 * or if its paths changed since it was read.
 	 *
 	 * @param monitor
 	 *            for reporting progress, may be null
@@ -411,7 +431,8 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 			throws IOException {
 		dirCache = repository.readDirCache();
 
-		try (TreeWalk treeWalk = new TreeWalk(repository)) {
+		try (TreeWalk treeWalk = new TreeWalk(repository);
+				DirectoryPreloader preloader = newDirectoryPreloader()) {
 			treeWalk.setOperationType(OperationType.CHECKIN_OP);
 			treeWalk.setRecursive(true);
 			// add the trees (tree, dirchache, workdir)
@@ -422,6 +443,13 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 			treeWalk.addTree(new DirCacheIterator(dirCache));
 			treeWalk.addTree(initialWorkingTreeIterator);
 			initialWorkingTreeIterator.setDirCacheIterator(treeWalk, 1);
+			useUntrackedCache = useUntrackedCache();
+			useFileSystemMonitor = useFileSystemMonitor();
+			useContentIdCache = useContentIdCache();
+			if (preloader != null && !useFileSystemMonitor) {
+				((FileTreeIterator) initialWorkingTreeIterator)
+						.setDirectoryPreloader(preloader);
+			}
 			Collection<TreeFilter> filters = new ArrayList<>(4);
 
 			if (monitor != null) {
@@ -527,6 +555,10 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 			}
 		}
 
+		if (useUntrackedCache || useFileSystemMonitor || useContentIdCache) {
+			writeIndexExtensions();
+		}
+
 		if (ignoreSubmoduleMode != IgnoreSubmoduleMode.ALL) {
 			IgnoreSubmoduleMode localIgnoreSubmoduleMode = ignoreSubmoduleMode;
 			SubmoduleWalk smw = SubmoduleWalk.forIndex(repository);
@@ -592,6 +624,130 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 			return true;
 	}
 
+	private boolean useUntrackedCache() throws IOException {
+		if (!(initialWorkingTreeIterator instanceof FileTreeIterator)
+				|| !repository.getConfig().getBoolean(
+						ConfigConstants.CONFIG_CORE_SECTION, null,
+						ConfigConstants.CONFIG_KEY_UNTRACKED_CACHE, false)) {
+			return false;
+		}
+		((FileTreeIterator) initialWorkingTreeIterator)
+				.setUntrackedCache(dirCache);
+		return true;
+	}
+
+	private DirectoryPreloader newDirectoryPreloader() {
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (!(initialWorkingTreeIterator instanceof FileTreeIterator)
+				|| threads < 2
+				|| !repository.getConfig().getBoolean(
+						ConfigConstants.CONFIG_CORE_SECTION, null,
+						ConfigConstants.CONFIG_KEY_PRELOAD_INDEX, false)) {
+			return null;
+		}
+		return new DirectoryPreloader(threads);
+	}
+
+	private boolean useContentIdCache() {
+		if (!(initialWorkingTreeIterator instanceof FileTreeIterator)
+				|| !repository.getConfig().getBoolean(
+						ConfigConstants.CONFIG_CORE_SECTION, null,
+						ConfigConstants.CONFIG_KEY_CONTENT_ID_CACHE, false)) {
+			return false;
+		}
+		((FileTreeIterator) initialWorkingTreeIterator)
+				.setContentIdCache(dirCache);
+		return true;
+	}
+
+	private boolean useFileSystemMonitor() throws IOException {
+		if (!(initialWorkingTreeIterator instanceof FileTreeIterator)) {
+			return false;
+		}
+		fileSystemMonitorToken = dirCache.getFileSystemMonitorToken();
+		fileSystemMonitorValid = countFileSystemMonitorValid(dirCache);
+		return ((FileTreeIterator) initialWorkingTreeIterator)
+				.setFileSystemMonitor(dirCache);
+	}
+
+	private static int countFileSystemMonitorValid(DirCache index) {
+		int n = 0;
+		for (int i = 0; i < index.getEntryCount(); i++) {
+			if (index.getEntry(i).isFileSystemMonitorValid()) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	private void writeIndexExtensions() {
+		UntrackedCache cache = dirCache.getUntrackedCache();
+		boolean writeCache = useUntrackedCache && cache != null
+				&& cache.isModified();
+		boolean writeMonitor = useFileSystemMonitor
+				&& (!Objects.equals(fileSystemMonitorToken,
+						dirCache.getFileSystemMonitorToken())
+						|| fileSystemMonitorValid != countFileSystemMonitorValid(
+								dirCache));
+		ContentIdCache contentIds = dirCache.getContentIdCache();
+		boolean writeContentIds = useContentIdCache && contentIds != null
+				&& contentIds.isModified();
+		if (!writeCache && !writeMonitor && !writeContentIds) {
+			return;
+		}
+		try {
+			DirCache locked = repository.lockDirCache();
+			try {
+				// The extensions are only valid for the paths they were
+				// built against; don't store them if someone changed those.
+				if (hasSamePaths(locked, dirCache)) {
+					if (writeCache) {
+						locked.setUntrackedCache(cache);
+					}
+					if (writeMonitor) {
+						copyFileSystemMonitor(dirCache, locked);
+					}
+					if (writeContentIds) {
+						locked.setContentIdCache(contentIds);
+					}
+					locked.write();
+					locked.commit();
+				}
+			} finally {
+				locked.unlock();
+			}
+		} catch (IOException e) {
+			// The extensions are only an optimization, the next diff
+			// records them again.
+		}
+	}
+
+	private static void copyFileSystemMonitor(DirCache from, DirCache to) {
+		to.applyFileSystemMonitorChanges(FileSystemMonitor.Changes
+				.everything(from.getFileSystemMonitorToken()));
+		for (int i = 0; i < from.getEntryCount(); i++) {
+			DirCacheEntry a = from.getEntry(i);
+			DirCacheEntry b = to.getEntry(i);
+			b.setFileSystemMonitorValid(a.isFileSystemMonitorValid()
+					&& a.getRawMode() == b.getRawMode()
+					&& a.getObjectId().equals(b.getObjectId()));
+		}
+	}
+
+	private static boolean hasSamePaths(DirCache a, DirCache b) {
+		int n = a.getEntryCount();
+		if (n != b.getEntryCount()) {
+			return false;
+		}
+		for (int i = 0; i < n; i++) {
+			if (!a.getEntry(i).getPathString()
+					.equals(b.getEntry(i).getPathString())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private void recordFileMode(String path, FileMode mode) {
 		Set<String> values = fileModes.get(mode);
 		if (path != null) {
@@ -442,6 +442,19 @@ public BitmapIndex getBitmapIndex() throws IOException {
 		return null;
 	}
 
+	/**
+	 * An index of the paths changed by each commit, used to speed up
+	 * path-limited RevWalks.
+	 *
+	 * @return the index or null if one does not exist.
+	 * @throws java.io.IOException
+	 *             when the index fails to load
+	 * @since 5.2
+	 */
+	public ChangedPathIndex getChangedPathIndex() throws IOException {
+		return null;
+	}
+
 	/**
 	 * Get the {@link org.eclipse.jgit.lib.ObjectInserter} from which this
 	 * reader was created using {@code inserter.newReader()}
@@ -584,6 +597,11 @@ public BitmapIndex getBitmapIndex() throws IOException {
 			return delegate().getBitmapIndex();
 		}
 
+		@Override
+		public ChangedPathIndex getChangedPathIndex() throws IOException {
+			return delegate().getChangedPathIndex();
+		}
+
 		@Override
 		@Nullable
 		public ObjectInserter getCreatedFromInserter() {
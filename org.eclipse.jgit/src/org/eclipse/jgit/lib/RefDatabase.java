@@ -414,6 +414,33 @@ public List<Ref> getRefsByPrefix(String prefix) throws IOException {
 		return Collections.unmodifiableList(result);
 	}
 
+	/**
+	 * Returns refs whose names start with a given prefix, sorted by name.
+	 * <p>
+	 * Unlike {@link #getRefsByPrefix(String)} the result may be a view backed
+	 * by the database's own sorted storage. Callers that process refs one at a
+	 * time, such as a ref advertisement written to the network, avoid copying
+	 * and sorting the complete namespace before the first ref is available.
+	 * <p>
+	 * The default implementation sorts the result of
+	 * {@link #getRefsByPrefix(String)}. Implementors of {@link RefDatabase}
+	 * that already keep their refs in name order should override it.
+	 *
+	 * @param prefix
+	 *            string that names of refs should start with; may be empty (to
+	 *            return all refs).
+	 * @return refs whose names start with {@code prefix}, in ascending name
+	 *         order. The result must not be modified.
+	 * @throws java.io.IOException
+	 *             the reference space cannot be accessed.
+	 * @since 5.2
+	 */
+	@NonNull
+	public Iterable<Ref> getSortedRefsByPrefix(String prefix)
+			throws IOException {
+		return RefComparator.sort(getRefsByPrefix(prefix));
+	}
+
 	/**
 	 * Returns refs whose names start with one of the given prefixes.
 	 * <p>
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lib;
+
+import static org.eclipse.jgit.transport.ReceiveCommand.Result.NOT_ATTEMPTED;
+import static org.eclipse.jgit.transport.ReceiveCommand.Result.OK;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+/**
+ * Merges concurrently executed {@link BatchRefUpdate}s of one repository into
+ * a single atomic ref transaction.
+ * <p>
+ * While one transaction is being committed, batches submitted by other threads
+ * are queued. When the transaction completes the oldest waiting thread commits
+ * all queued batches at once, so a burst of concurrent pushes rewrites
+ * {@code packed-refs} (or appends a reftable) once instead of once per push.
+ * <p>
+ * Each command still receives its own result. If the merged transaction fails
+ * for any reason, for example because one of the commands is rejected as a
+ * non-fast-forward, every batch of the group is retried on its own with its
+ * original settings, so callers observe the same results as if they had
+ * called {@link BatchRefUpdate#execute(RevWalk, ProgressMonitor)} directly.
+ * <p>
+ * Batches are only merged if the reference database performs atomic
+ * transactions and the batch carries no push certificate and no symbolic
+ * reference commands; other batches are executed directly. A single instance
+ * should be shared by all callers updating the same repository.
+ *
+ * @since 5.2
+ */
+public class RefUpdateCoalescer {
+	private final Repository db;
+
+	/** Batches waiting to be committed, in arrival order. */
+	private final List<Pending> queue = new ArrayList<>();
+
+	/** Whether a thread is currently committing queued batches. */
+	private boolean running;
+
+	/**
+	 * Create a coalescer for a repository.
+	 *
+	 * @param db
+	 *            repository whose references are updated.
+	 */
+	public RefUpdateCoalescer(Repository db) {
+		this.db = db;
+	}
+
+	/**
+	 * Execute a batch update, possibly together with concurrently submitted
+	 * batches.
+	 * <p>
+	 * The method returns once all commands of {@code batch} have a result.
+	 *
+	 * @param batch
+	 *            the batch to execute.
+	 * @param walk
+	 *            a RevWalk to parse tags in case the storage system wants to
+	 *            store them pre-peeled.
+	 * @param monitor
+	 *            progress monitor to receive update status on.
+	 * @throws java.io.IOException
+	 *             the database is unable to accept the update. Individual
+	 *             command status must be tested to determine if there is a
+	 *             partial failure, or a total failure.
+	 */
+	public void execute(BatchRefUpdate batch, RevWalk walk,
+			ProgressMonitor monitor) throws IOException {
+		if (!canCoalesce(batch)) {
+			batch.execute(walk, monitor);
+			return;
+		}
+
+		Pending p = new Pending(batch, walk, monitor);
+		boolean interrupted = false;
+		boolean leader;
+		synchronized (queue) {
+			queue.add(p);
+			while (running && !p.done) {
+				try {
+					queue.wait();
+				} catch (InterruptedException e) {
+					// The batch may already be committed by another thread;
+					// keep waiting for its result.
+					interrupted = true;
+				}
+			}
+			leader = !p.done;
+			running |= leader;
+		}
+		try {
+			if (leader) {
+				try {
+					while (!p.done) {
+						List<Pending> group;
+						synchronized (queue) {
+							group = takeGroup();
+						}
+						try {
+							commit(group);
+						} finally {
+							synchronized (queue) {
+								for (Pending g : group) {
+									g.done = true;
+								}
+								queue.notifyAll();
+							}
+						}
+					}
+				} finally {
+					synchronized (queue) {
+						running = false;
+						queue.notifyAll();
+					}
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (p.error != null) {
+			throw p.error;
+		}
+	}
+
+	private boolean canCoalesce(BatchRefUpdate batch) {
+		RefDatabase refdb = batch.getRefDatabase();
+		if (refdb != db.getRefDatabase() || !refdb.performsAtomicTransactions()
+				|| batch.getPushCertificate() != null) {
+			return false;
+		}
+		for (ReceiveCommand cmd : batch.getCommands()) {
+			if (cmd.getOldSymref() != null || cmd.getNewSymref() != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the next group of batches from the queue. Batches in one group
+	 * agree on non-fast-forward handling and update disjoint references, so
+	 * that merging them cannot change the outcome of any command.
+	 *
+	 * @return the batches of the group, in queue order.
+	 */
+	private List<Pending> takeGroup() {
+		List<Pending> group = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+		boolean allowNonFastForwards = queue.get(0).batch
+				.isAllowNonFastForwards();
+		for (Iterator<Pending> i = queue.iterator(); i.hasNext();) {
+			Pending p = i.next();
+			if (p.batch.isAllowNonFastForwards() != allowNonFastForwards
+					|| !disjoint(p.batch, names)) {
+				continue;
+			}
+			for (ReceiveCommand cmd : p.batch.getCommands()) {
+				names.add(cmd.getRefName());
+			}
+			group.add(p);
+			i.remove();
+		}
+		return group;
+	}
+
+	private static boolean disjoint(BatchRefUpdate batch, Set<String> names) {
+		for (ReceiveCommand cmd : batch.getCommands()) {
+			if (names.contains(cmd.getRefName())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void commit(List<Pending> group) {
+		if (group.size() > 1 && commitMerged(group)) {
+			return;
+		}
+		for (Pending p : group) {
+			try {
+				p.batch.execute(p.walk, p.monitor);
+			} catch (IOException | RuntimeException e) {
+				p.error = e instanceof IOException ? (IOException) e
+						: new IOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Commit all batches of a group as one transaction.
+	 *
+	 * @param group
+	 *            batches to commit.
+	 * @return true if the transaction was committed; false if the commands
+	 *         were reset and the batches should be retried individually.
+	 */
+	private boolean commitMerged(List<Pending> group) {
+		BatchRefUpdate merged = db.getRefDatabase().newBatchUpdate();
+		merged.setAtomic(true);
+		merged.setAllowNonFastForwards(
+				group.get(0).batch.isAllowNonFastForwards());
+		for (Pending p : group) {
+			merged.addCommandsFrom(p.batch);
+		}
+		List<ReceiveCommand> cmds = merged.getCommands();
+		try (RevWalk rw = new RevWalk(db)) {
+			// The walks of the individual callers may predate objects
+			// received by the other batches of this group.
+			merged.execute(rw, NullProgressMonitor.INSTANCE);
+		} catch (IOException | RuntimeException e) {
+			// Fall through and retry each batch on its own.
+		}
+		for (ReceiveCommand cmd : cmds) {
+			if (cmd.getResult() == OK) {
+				// The transaction was committed. Any other result can only
+				// come from a storage error after the commit and is final.
+				return true;
+			}
+		}
+		for (ReceiveCommand cmd : cmds) {
+			cmd.setResult(NOT_ATTEMPTED);
+		}
+		return false;
+	}
+
+	private static class Pending {
+		final BatchRefUpdate batch;
+
+		final RevWalk walk;
+
+		final ProgressMonitor monitor;
+
+		/** Set under the queue lock once the batch has been committed. */
+		boolean done;
+
+		IOException error;
+
+		Pending(BatchRefUpdate batch, RevWalk walk, ProgressMonitor monitor) {
+			this.batch = batch;
+			this.walk = walk;
+			this.monitor = monitor;
+		}
+	}
+}
@@ -74,6 +74,7 @@
 import org.eclipse.jgit.annotations.NonNull;
 import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.attributes.AttributesNodeProvider;
+import org.eclipse.jgit.attributes.FilterProcess;
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.errors.AmbiguousObjectException;
 import org.eclipse.jgit.errors.CorruptObjectException;
@@ -159,6 +160,9 @@ public static ListenerList getGlobalListenerList() {
 	/** If not bare, the index file caching the working file states. */
 	private final File indexFile;
 
+	/** Long-running filter processes started for this repository. */
+	private final Map<String, FilterProcess> filterProcesses = new HashMap<>();
+
 	/**
 	 * Initialize a new repository instance.
 	 *
@@ -968,11 +972,17 @@ public void close() {
 	/**
 	 * Invoked when the use count drops to zero during {@link #close()}.
 	 * <p>
-	 * The default implementation closes the object and ref databases.
+	 * The default implementation closes the object and ref databases and stops
+	 * the long-running filter processes.
 	 */
 	protected void doClose() {
 		getObjectDatabase().close();
 		getRefDatabase().close();
+		synchronized (filterProcesses) {
+			for (FilterProcess p : filterProcesses.values())
+				p.close();
+			filterProcesses.clear();
+		}
 	}
 
 	/** {@inheritDoc} */
@@ -1282,6 +1292,35 @@ public void onIndexChanged(IndexChangedEvent event) {
 		return DirCache.lock(this, l);
 	}
 
+	/**
+	 * Get the long-running filter process of a filter driver.
+	 * <p>
+	 * The process is started on first use and stopped when this repository is
+	 * closed.
+	 *
+	 * @param driver
+	 *            name of the filter driver
+	 * @return the filter process, or {@code null} if no
+	 *         {@code filter.<driver>.process} command is configured
+	 * @since 5.2
+	 */
+	@Nullable
+	public FilterProcess getFilterProcess(String driver) {
+		synchronized (filterProcesses) {
+			FilterProcess p = filterProcesses.get(driver);
+			if (p == null) {
+				String command = getConfig().getString(
+						ConfigConstants.CONFIG_FILTER_SECTION, driver,
+						ConfigConstants.CONFIG_KEY_PROCESS);
+				if (command == null)
+					return null;
+				p = new FilterProcess(this, command);
+				filterProcesses.put(driver, p);
+			}
+			return p;
+		}
+	}
+
 	/**
 	 * Get the repository state
 	 *
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.lib;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link org.eclipse.jgit.lib.FileSystemMonitor} based on a
+ * {@link java.nio.file.WatchService}.
+ * <p>
+ * The monitor registers every directory of the working tree with the watch
+ * service and records the changes it reports on a daemon thread, so it is
+ * meant to live as long as the process working with the repository. Nested
+ * repositories and the repository's own git directory are not watched.
+ * <p>
+ * Before answering a query the monitor creates a cookie file in the git
+ * directory and waits until the watch service reported it, to make sure all
+ * changes done before the query were seen. If that takes too long, or the
+ * watch service lost events, everything is reported as changed.
+ *
+ * @since 5.2
+ */
+public class WatchServiceFileSystemMonitor
+		implements FileSystemMonitor, AutoCloseable {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(WatchServiceFileSystemMonitor.class);
+
+	private static final String COOKIE_PREFIX = "jgit-fsmonitor-cookie-"; //$NON-NLS-1$
+
+	/** Number of changed paths remembered before starting over. */
+	private static final int MAX_CHANGED_PATHS = 100000;
+
+	/** Milliseconds to wait for the watch service to report a cookie. */
+	private static final long COOKIE_TIMEOUT = 1000;
+
+	private final Path workTree;
+
+	private final Path gitDir;
+
+	private final WatchService watcher;
+
+	private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+	private final String instance;
+
+	/** Number of the last recorded change; guarded by this. */
+	private long sequence;
+
+	/** Oldest sequence number changes are known since; guarded by this. */
+	private long oldest;
+
+	/** Sequence number of the last change of each path; guarded by this. */
+	private final Map<String, Long> changed = new HashMap<>();
+
+	/** Cookies queries wait for; guarded by this. */
+	private final Set<String> pendingCookies = new HashSet<>();
+
+	/** Cookies reported by the watch service; guarded by this. */
+	private final Set<String> seenCookies = new HashSet<>();
+
+	private int cookies;
+
+	private boolean closed;
+
+	/**
+	 * Start monitoring the working tree of a repository.
+	 *
+	 * @param repo
+	 *            a repository with a working tree.
+	 * @throws java.io.IOException
+	 *             the working tree could not be registered with the watch
+	 *             service.
+	 */
+	public WatchServiceFileSystemMonitor(Repository repo) throws IOException {
+		this(repo.getWorkTree(), repo.getDirectory());
+	}
+
+	/**
+	 * Start monitoring a working tree.
+	 *
+	 * @param workTree
+	 *            the working tree to monitor.
+	 * @param gitDir
+	 *            the git directory of the repository; it is not monitored
+	 *            except for the cookie files the monitor creates in it.
+	 * @throws java.io.IOException
+	 *             the working tree could not be registered with the watch
+	 *             service.
+	 */
+	public WatchServiceFileSystemMonitor(File workTree, File gitDir)
+			throws IOException {
+		this.workTree = workTree.toPath().toAbsolutePath().normalize();
+		this.gitDir = gitDir.toPath().toAbsolutePath().normalize();
+		instance = Long.toHexString(System.currentTimeMillis()) + '-'
+				+ Integer.toHexString(System.identityHashCode(this));
+		watcher = this.workTree.getFileSystem().newWatchService();
+		try {
+			directories.put(this.gitDir.register(watcher, ENTRY_CREATE),
+					this.gitDir);
+			registerAll(this.workTree);
+		} catch (IOException e) {
+			watcher.close();
+			throw e;
+		}
+		Thread thread = new Thread(this::watch,
+				"JGit-FileSystemMonitor-" + this.workTree); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Changes getChanges(String token) throws IOException {
+		boolean synced = sync();
+		synchronized (this) {
+			String next = instance + ':' + sequence;
+			long since = parseToken(token);
+			if (!synced || since < oldest) {
+				return Changes.everything(next);
+			}
+			List<String> paths = new ArrayList<>();
+			for (Map.Entry<String, Long> e : changed.entrySet()) {
+				if (e.getValue().longValue() > since) {
+					paths.add(e.getKey());
+				}
+			}
+			return new Changes(next, paths);
+		}
+	}
+
+	/**
+	 * Stop monitoring the working tree.
+	 */
+	@Override
+	public void close() {
+		try {
+			watcher.close();
+		} catch (IOException e) {
+			LOG.warn(e.getMessage(), e);
+		}
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+	}
+
+	private long parseToken(String token) {
+		if (token == null || !token.startsWith(instance + ':')) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(token.substring(instance.length() + 1));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private boolean sync() throws IOException {
+		String name;
+		synchronized (this) {
+			if (closed) {
+				return false;
+			}
+			name = COOKIE_PREFIX + instance + '-' + (++cookies);
+			pendingCookies.add(name);
+		}
+		Path cookie = gitDir.resolve(name);
+		try {
+			Files.createFile(cookie);
+			long deadline = System.currentTimeMillis() + COOKIE_TIMEOUT;
+			synchronized (this) {
+				while (!seenCookies.remove(name)) {
+					long wait = deadline - System.currentTimeMillis();
+					if (closed || wait <= 0) {
+						return false;
+					}
+					try {
+						wait(wait);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+				return true;
+			}
+		} finally {
+			synchronized (this) {
+				pendingCookies.remove(name);
+			}
+			Files.deleteIfExists(cookie);
+		}
+	}
+
+	private void watch() {
+		try {
+			for (;;) {
+				Set<String> arrived = new HashSet<>();
+				process(watcher.take(), arrived);
+				// Changes done before a cookie was created may have been
+				// queued behind it; take them all before answering queries.
+				WatchKey key;
+				while ((key = watcher.poll()) != null) {
+					process(key, arrived);
+				}
+				if (!arrived.isEmpty()) {
+					synchronized (this) {
+						arrived.retainAll(pendingCookies);
+						seenCookies.addAll(arrived);
+						notifyAll();
+					}
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Closed.
+		} finally {
+			synchronized (this) {
+				closed = true;
+				notifyAll();
+			}
+		}
+	}
+
+	private void process(WatchKey key, Set<String> arrived) {
+		Path dir = directories.get(key);
+		if (dir == null) {
+			key.cancel();
+			return;
+		}
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				forget();
+				continue;
+			}
+			Path name = (Path) event.context();
+			if (dir.equals(gitDir)) {
+				arrived.add(name.toString());
+				continue;
+			}
+			Path path = dir.resolve(name);
+			if (path.startsWith(gitDir)) {
+				continue;
+			}
+			if (event.kind() == ENTRY_CREATE && Files.isDirectory(path,
+					LinkOption.NOFOLLOW_LINKS)) {
+				try {
+					registerAll(path);
+				} catch (IOException e) {
+					// Changes below it may be missed.
+					forget();
+				}
+			}
+			record(path);
+		}
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+	}
+
+	private synchronized void record(Path path) {
+		String p = workTree.relativize(path).toString();
+		if (File.separatorChar != '/') {
+			p = p.replace(File.separatorChar, '/');
+		}
+		changed.put(p, Long.valueOf(++sequence));
+		if (changed.size() > MAX_CHANGED_PATHS) {
+			forget();
+		}
+	}
+
+	private synchronized void forget() {
+		changed.clear();
+		oldest = ++sequence;
+	}
+
+	private void registerAll(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir,
+					BasicFileAttributes attrs) throws IOException {
+				if (dir.equals(gitDir) || (!dir.equals(workTree)
+						&& Files.exists(dir.resolve(Constants.DOT_GIT),
+								LinkOption.NOFOLLOW_LINKS))) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				directories.put(dir.register(watcher, ENTRY_CREATE,
+						ENTRY_DELETE, ENTRY_MODIFY), dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
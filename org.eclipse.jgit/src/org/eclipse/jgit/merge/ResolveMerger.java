@@ -265,6 +265,12 @@ public enum MergeFailureReason {
 	 */
 	protected boolean implicitDirCache;
 
+	/**
+	 * Whether {@link #dircache} is the in-core DirCache created by this
+	 * merger, which nobody else reads entries from.
+	 */
+	private boolean ownInCoreDirCache;
+
 	/**
 	 * Directory cache
 	 * @since 3.0
@@ -298,6 +304,8 @@ public enum MergeFailureReason {
 	 */
 	private int inCoreLimit;
 
+	private int shortCircuitedSubtrees;
+
 	/**
 	 * Keeps {@link CheckoutMetadata} for {@link #checkout()} and
 	 * {@link #cleanUp()}.
@@ -340,6 +348,7 @@ protected ResolveMerger(Repository local, boolean inCore) {
 
 		if (inCore) {
 			implicitDirCache = false;
+			ownInCoreDirCache = true;
 			dircache = DirCache.newInCore();
 		} else {
 			implicitDirCache = true;
@@ -372,6 +381,7 @@ protected ResolveMerger(ObjectInserter inserter, Config config) {
 		commitNames = defaultCommitNames();
 		inCore = true;
 		implicitDirCache = false;
+		ownInCoreDirCache = true;
 		dircache = DirCache.newInCore();
 	}
 
@@ -627,6 +637,9 @@ protected boolean processEntry(CanonicalTreeParser base,
 		if (isIndexDirty())
 			return false;
 
+		if (tw.isSubtree() && shortCircuitSubtree(modeB, modeO, modeT))
+			return true;
+
 		DirCacheEntry ourDce = null;
 
 		if (index == null || index.getDirCacheEntry() == null) {
@@ -1086,6 +1099,47 @@ private RawText getRawText(ObjectId id,
 		return RawText.load(loader, threshold);
 	}
 
+	/**
+	 * Take a subtree wholesale if two of the three sides agree on it.
+	 * <p>
+	 * Only done for in-core merges into the merger's own DirCache, without an
+	 * index entry at the path: the resulting tree is then recorded as a
+	 * sparse directory entry, and its contents are never walked. A DirCache
+	 * passed to {@link #setDirCache(DirCache)} keeps one entry per file.
+	 *
+	 * @param modeB
+	 *            raw mode of the path in the base tree.
+	 * @param modeO
+	 *            raw mode of the path in our tree.
+	 * @param modeT
+	 *            raw mode of the path in their tree.
+	 * @return true if the subtree was taken and must not be entered.
+	 */
+	private boolean shortCircuitSubtree(int modeB, int modeO, int modeT) {
+		if (!ownInCoreDirCache || tw.getTreeCount() > T_FILE
+				|| tw.getRawMode(T_INDEX) != 0)
+			return false;
+		if (nonTree(modeB) || nonTree(modeO) || nonTree(modeT))
+			return false;
+
+		int take;
+		if (modeO == modeT && tw.idEqual(T_OURS, T_THEIRS))
+			take = T_OURS;
+		else if (modeB == modeT && tw.idEqual(T_BASE, T_THEIRS))
+			take = T_OURS;
+		else if (modeB == modeO && tw.idEqual(T_BASE, T_OURS))
+			take = T_THEIRS;
+		else
+			return false;
+
+		if (tw.getRawMode(take) != 0)
+			builder.add(DirCacheEntry.newSparseDirectory(tw.getRawPath(),
+					tw.getObjectId(take)));
+		enterSubtree = false;
+		shortCircuitedSubtrees++;
+		return true;
+	}
+
 	private static boolean nonTree(int mode) {
 		return mode != 0 && !FileMode.TREE.equals(mode);
 	}
@@ -1144,6 +1198,20 @@ public List<String> getModifiedFiles() {
 		return modifiedFiles;
 	}
 
+	/**
+	 * Get the number of subtrees taken as a whole by in-core merges.
+	 * <p>
+	 * When two of base, ours and theirs have the same subtree at a path, an
+	 * in-core merge into its own DirCache takes the remaining side's tree id
+	 * without walking its contents.
+	 *
+	 * @return number of subtrees merged without descending into them.
+	 * @since 5.2
+	 */
+	public int getShortCircuitedSubtreeCount() {
+		return shortCircuitedSubtrees;
+	}
+
 	/**
 	 * Get a map which maps the paths of files which have to be checked out
 	 * because the merge created new fully-merged content for this file into the
@@ -1210,6 +1278,7 @@ public boolean failed() {
 	public void setDirCache(DirCache dc) {
 		this.dircache = dc;
 		implicitDirCache = false;
+		ownInCoreDirCache = false;
 	}
 
 	/**
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.revwalk;
+
+import static org.eclipse.jgit.lib.Constants.OBJ_COMMIT;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.Bitmap;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
+import org.eclipse.jgit.lib.Ref;
+
+/**
+ * Answers which of many commits are reachable from which of many tips.
+ * <p>
+ * Testing each tip with {@link RevWalk#isMergedInto(RevCommit, RevCommit)}
+ * walks the history once per tip. This checker instead answers a whole
+ * commits-by-tips query at once:
+ * <ul>
+ * <li>A tip that has a bitmap in the repository's
+ * {@link org.eclipse.jgit.lib.BitmapIndex} is answered from its bitmap,
+ * without walking.</li>
+ * <li>Any other tip is walked, and the set of target commits every visited
+ * commit reaches is memoized, so history shared by several tips is walked
+ * only once per query. The walk stops at commits that have a bitmap.</li>
+ * <li>Generation numbers of fully walked commits are kept across queries. A
+ * commit whose generation is not greater than that of every target cannot
+ * reach any of them and is not walked again.</li>
+ * </ul>
+ * <p>
+ * Results are exact regardless of commit timestamps. A checker is bound to a
+ * {@link RevWalk} and, like the walk, is not thread-safe.
+ *
+ * @since 5.2
+ */
+public class ReachabilityChecker {
+	private static final BitSet NONE = new BitSet();
+
+	private final RevWalk walk;
+
+	private final BitmapIndex bitmapIndex;
+
+	private final Map<RevCommit, Integer> generations = new HashMap<>();
+
+	/**
+	 * Create a checker using the walk's bitmap index, if it has one.
+	 *
+	 * @param walk
+	 *            walk to parse commits with. Commits passed to the checker
+	 *            must have been obtained from this walk.
+	 * @throws java.io.IOException
+	 *             the bitmap index could not be read.
+	 */
+	public ReachabilityChecker(RevWalk walk) throws IOException {
+		this(walk, walk.getObjectReader().getBitmapIndex());
+	}
+
+	/**
+	 * Create a checker.
+	 *
+	 * @param walk
+	 *            walk to parse commits with. Commits passed to the checker
+	 *            must have been obtained from this walk.
+	 * @param bitmapIndex
+	 *            bitmaps to answer from; null to always walk.
+	 */
+	public ReachabilityChecker(RevWalk walk, BitmapIndex bitmapIndex) {
+		this.walk = walk;
+		this.bitmapIndex = bitmapIndex;
+	}
+
+	/**
+	 * Find the refs each commit is reachable from.
+	 * <p>
+	 * Annotated tags are peeled; refs not leading to a commit are ignored.
+	 *
+	 * @param commits
+	 *            commits to look for. A commit given more than once is
+	 *            looked for, and appears in the result, only once.
+	 * @param refs
+	 *            refs to test, for example all branches.
+	 * @return for each distinct commit of {@code commits}, in the order of
+	 *         their first occurrence, the refs it is reachable from, in the
+	 *         order of {@code refs}.
+	 * @throws org.eclipse.jgit.errors.MissingObjectException
+	 * @throws org.eclipse.jgit.errors.IncorrectObjectTypeException
+	 * @throws java.io.IOException
+	 */
+	public Map<RevCommit, List<Ref>> findRefsContaining(
+			Collection<RevCommit> commits, Collection<Ref> refs)
+			throws MissingObjectException, IncorrectObjectTypeException,
+			IOException {
+		List<RevCommit> targets = distinct(commits);
+		Map<RevCommit, List<Ref>> result = new LinkedHashMap<>();
+		for (RevCommit c : targets)
+			result.put(c, new ArrayList<Ref>());
+
+		Query q = new Query(targets);
+		for (Ref ref : refs) {
+			RevCommit tip = peelToCommit(ref.getObjectId());
+			if (tip == null)
+				continue;
+			BitSet reached = q.reach(tip);
+			for (int i = reached.nextSetBit(0); i >= 0; i = reached
+					.nextSetBit(i + 1))
+				result.get(targets.get(i)).add(ref);
+		}
+		return result;
+	}
+
+	/**
+	 * Find a commit not reachable from any of the given tips.
+	 *
+	 * @param targets
+	 *            commits that must be reachable.
+	 * @param starters
+	 *            tips the targets must be reachable from.
+	 * @return one of {@code targets} not reachable from any starter; null if
+	 *         all of them are reachable.
+	 * @throws org.eclipse.jgit.errors.MissingObjectException
+	 * @throws org.eclipse.jgit.errors.IncorrectObjectTypeException
+	 * @throws java.io.IOException
+	 */
+	public RevCommit findUnreachable(Collection<RevCommit> targets,
+			Collection<RevCommit> starters) throws MissingObjectException,
+			IncorrectObjectTypeException, IOException {
+		List<RevCommit> t = distinct(targets);
+		BitSet missing = new BitSet();
+		missing.set(0, t.size());
+		Query q = new Query(t);
+		for (RevCommit tip : starters) {
+			if (missing.isEmpty())
+				break;
+			missing.andNot(q.reach(tip));
+		}
+		return missing.isEmpty() ? null : t.get(missing.nextSetBit(0));
+	}
+
+	private static List<RevCommit> distinct(Collection<RevCommit> commits) {
+		// Query assigns one index to each commit.
+		return new ArrayList<>(new LinkedHashSet<>(commits));
+	}
+
+	private RevCommit peelToCommit(AnyObjectId id)
+			throws MissingObjectException, IOException {
+		if (id == null)
+			return null;
+		RevObject o = walk.peel(walk.parseAny(id));
+		return o instanceof RevCommit ? (RevCommit) o : null;
+	}
+
+	/** Memoized reachability of one set of targets. */
+	private class Query {
+		private final List<RevCommit> targets;
+
+		private final Map<RevCommit, Integer> targetIndex = new HashMap<>();
+
+		private final Map<RevCommit, BitSet> memo = new HashMap<>();
+
+		private final Set<RevCommit> expanded = new HashSet<>();
+
+		private final int minGeneration;
+
+		private BitmapBuilder targetBitmap;
+
+		Query(List<RevCommit> targets) {
+			this.targets = targets;
+			int min = Integer.MAX_VALUE;
+			for (int i = 0; i < targets.size(); i++) {
+				RevCommit t = targets.get(i);
+				targetIndex.put(t, Integer.valueOf(i));
+				Integer g = generations.get(t);
+				min = Math.min(min, g != null ? g.intValue() : 0);
+			}
+			minGeneration = min;
+		}
+
+		/**
+		 * Find the targets reachable from a tip.
+		 *
+		 * @param tip
+		 *            commit to start from.
+		 * @return indexes of the targets reachable from {@code tip}.
+		 * @throws MissingObjectException
+		 *             a commit is missing from the repository.
+		 * @throws IncorrectObjectTypeException
+		 *             a parent is not a commit.
+		 * @throws IOException
+		 *             a commit cannot be read.
+		 */
+		BitSet reach(RevCommit tip) throws MissingObjectException,
+				IncorrectObjectTypeException, IOException {
+			Deque<RevCommit> stack = new ArrayDeque<>();
+			stack.push(tip);
+			while (!stack.isEmpty()) {
+				RevCommit c = stack.peek();
+				if (memo.containsKey(c)) {
+					stack.pop();
+					continue;
+				}
+
+				BitSet known = known(c);
+				if (known != null) {
+					memo.put(c, known);
+					stack.pop();
+					continue;
+				}
+
+				if (expanded.add(c)) {
+					walk.parseHeaders(c);
+					for (RevCommit p : c.getParents())
+						if (!memo.containsKey(p))
+							stack.push(p);
+					continue;
+				}
+
+				stack.pop();
+				memo.put(c, combine(c));
+			}
+			return memo.get(tip);
+		}
+
+		/**
+		 * Answer without walking below {@code c}, if possible.
+		 *
+		 * @param c
+		 *            commit to answer for.
+		 * @return the reached targets; null if {@code c} must be walked.
+		 */
+		private BitSet known(RevCommit c) {
+			if (targetIndex.containsKey(c))
+				return null;
+			Integer g = generations.get(c);
+			if (g != null && g.intValue() <= minGeneration)
+				return NONE;
+			if (bitmapIndex == null)
+				return null;
+			Bitmap bitmap = bitmapIndex.getBitmap(c);
+			if (bitmap == null)
+				return null;
+
+			// Removing the tip's objects leaves the targets it cannot reach.
+			BitmapBuilder left = targets().andNot(bitmap);
+			BitSet reached = new BitSet();
+			for (int i = 0; i < targets.size(); i++)
+				if (!left.contains(targets.get(i)))
+					reached.set(i);
+			return reached.isEmpty() ? NONE : reached;
+		}
+
+		private BitmapBuilder targets() {
+			if (targetBitmap == null) {
+				targetBitmap = bitmapIndex.newBitmapBuilder();
+				for (RevCommit t : targets)
+					targetBitmap.addObject(t, OBJ_COMMIT);
+			}
+			return bitmapIndex.newBitmapBuilder().or(targetBitmap);
+		}
+
+		private BitSet combine(RevCommit c) {
+			BitSet result = NONE;
+			boolean shared = true;
+			int generation = 1;
+			for (RevCommit p : c.getParents()) {
+				BitSet r = memo.get(p);
+				if (r != result && !r.isEmpty()) {
+					if (result.isEmpty()) {
+						result = r;
+					} else {
+						if (shared) {
+							result = (BitSet) result.clone();
+							shared = false;
+						}
+						result.or(r);
+					}
+				}
+				Integer g = generations.get(p);
+				if (generation > 0 && g != null)
+					generation = Math.max(generation, g.intValue() + 1);
+				else
+					generation = 0;
+			}
+			if (generation > 0)
+				generations.put(c, Integer.valueOf(generation));
+
+			Integer self = targetIndex.get(c);
+			if (self != null) {
+				if (shared)
+					result = (BitSet) result.clone();
+				result.set(self.intValue());
+			}
+			return result;
+		}
+	}
+}
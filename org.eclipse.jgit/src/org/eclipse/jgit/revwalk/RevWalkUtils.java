@@ -128,6 +128,273 @@ public static List<RevCommit> find(final RevWalk walk,
 		return commits;
 	}
 
+	/**
+	 * Count how far each of several commits is ahead of and behind a base.
+	 * <p>
+	 * For each commit in <code>tips</code> this computes the same numbers as
+	 * {@code git rev-list --left-right --count tip...base}: the number of
+	 * commits reachable from the tip but not from <code>base</code> (ahead),
+	 * and the number reachable from <code>base</code> but not from the tip
+	 * (behind). All tips share one traversal that stops as soon as every
+	 * remaining commit is reachable from the base and from all tips, instead
+	 * of a merge base search and two counting walks per tip.
+	 * <p>
+	 * Each tip needs one {@link org.eclipse.jgit.revwalk.RevFlag}; when there
+	 * are more tips than free flags on the walk they are counted in several
+	 * traversals of as many tips as there are flags.
+	 * <p>
+	 * In order to improve performance this method assumes clock skew among
+	 * committers is never larger than 24 hours.
+	 * <p>
+	 * Note that this method calls
+	 * {@link org.eclipse.jgit.revwalk.RevWalk#reset()} at the beginning. The
+	 * rev filter of the walk is not used.
+	 *
+	 * @param walk
+	 *            the rev walk to use
+	 * @param base
+	 *            the commit to compare each tip against, for example the
+	 *            default branch
+	 * @param tips
+	 *            the commits to count, for example branch heads. The tips
+	 *            and the base must have been obtained from <code>walk</code>.
+	 * @return the counts for each tip, in the order of <code>tips</code>
+	 * @throws org.eclipse.jgit.errors.MissingObjectException
+	 * @throws org.eclipse.jgit.errors.IncorrectObjectTypeException
+	 * @throws java.io.IOException
+	 * @since 5.2
+	 */
+	public static List<AheadBehind> countAheadBehind(RevWalk walk,
+			RevCommit base, List<RevCommit> tips)
+			throws MissingObjectException, IncorrectObjectTypeException,
+			IOException {
+		walk.reset();
+		List<AheadBehind> result = new ArrayList<>(tips.size());
+		int reserved = walk.allocFlag() | walk.allocFlag() | walk.allocFlag();
+		try {
+			int batch = Math.max(1, Integer.bitCount(walk.freeFlags));
+			for (int off = 0; off < tips.size(); off += batch) {
+				List<RevCommit> part = tips.subList(off,
+						Math.min(tips.size(), off + batch));
+				new AheadBehindCounter(walk, reserved, part).count(base,
+						result);
+			}
+		} finally {
+			walk.freeFlag(reserved);
+		}
+		return result;
+	}
+
+	/**
+	 * Number of commits a commit is ahead of and behind a base.
+	 *
+	 * @see RevWalkUtils#countAheadBehind(RevWalk, RevCommit, List)
+	 * @since 5.2
+	 */
+	public static final class AheadBehind {
+		private final RevCommit commit;
+
+		private final int ahead;
+
+		private final int behind;
+
+		AheadBehind(RevCommit commit, int ahead, int behind) {
+			this.commit = commit;
+			this.ahead = ahead;
+			this.behind = behind;
+		}
+
+		/**
+		 * Get the commit that was compared with the base
+		 *
+		 * @return the commit that was compared with the base
+		 */
+		public RevCommit getCommit() {
+			return commit;
+		}
+
+		/**
+		 * Get number of commits reachable from the commit but not the base
+		 *
+		 * @return number of commits reachable from the commit but not the
+		 *         base
+		 */
+		public int getAheadCount() {
+			return ahead;
+		}
+
+		/**
+		 * Get number of commits reachable from the base but not the commit
+		 *
+		 * @return number of commits reachable from the base but not the
+		 *         commit
+		 */
+		public int getBehindCount() {
+			return behind;
+		}
+	}
+
+	/**
+	 * One traversal counting ahead/behind for as many tips as there are
+	 * free flags.
+	 * <p>
+	 * Every commit reached carries one flag per tip (and one for the base) it
+	 * is reachable from. A commit's contribution to the counts depends only on
+	 * its flags, so commits are counted when popped and recounted if a
+	 * descendant popped later, because of clock skew, adds flags to them.
+	 * Once every queued commit carries all flags, so will every commit not
+	 * yet reached, and none of them is counted. The queue is still drained
+	 * while it holds commits that are not more than {@link #SKEW} older than
+	 * a counted commit, as they may have it as an ancestor.
+	 */
+	private static class AheadBehindCounter {
+		/** Clock skew allowed among committers, in seconds. */
+		private static final int SKEW = 24 * 3600;
+
+		private final RevWalk walk;
+
+		private final int seen;
+
+		private final int popped;
+
+		private final int baseFlag;
+
+		private final int[] tipFlags;
+
+		private final int all;
+
+		private final List<RevCommit> tips;
+
+		private final int[] ahead;
+
+		private final int[] behind;
+
+		private final DateRevQueue queue = new DateRevQueue();
+
+		private final List<RevCommit> touched = new ArrayList<>();
+
+		/** Number of queued commits that do not carry all flags. */
+		private int incomplete;
+
+		/** Commit time of the oldest commit counted when popped. */
+		private int oldestCounted = Integer.MAX_VALUE;
+
+		AheadBehindCounter(RevWalk walk, int reserved, List<RevCommit> tips) {
+			this.walk = walk;
+			int m = reserved;
+			seen = Integer.lowestOneBit(m);
+			m &= ~seen;
+			popped = Integer.lowestOneBit(m);
+			m &= ~popped;
+			baseFlag = m;
+
+			this.tips = tips;
+			tipFlags = new int[tips.size()];
+			int f = baseFlag;
+			for (int i = 0; i < tipFlags.length; i++) {
+				tipFlags[i] = walk.allocFlag();
+				f |= tipFlags[i];
+			}
+			all = f;
+			ahead = new int[tipFlags.length];
+			behind = new int[tipFlags.length];
+		}
+
+		void count(RevCommit base, List<AheadBehind> result)
+				throws MissingObjectException, IncorrectObjectTypeException,
+				IOException {
+			int tipMask = all & ~baseFlag;
+			try {
+				add(base, baseFlag);
+				for (int i = 0; i < tipFlags.length; i++)
+					add(tips.get(i), tipFlags[i]);
+
+				while (incomplete > 0 || mayRecount()) {
+					RevCommit c = queue.next();
+					if ((c.flags & all) != all) {
+						incomplete--;
+						oldestCounted = Math.min(oldestCounted,
+								c.getCommitTime());
+					}
+					c.flags |= popped;
+					update(c, c.flags, 1);
+					for (RevCommit p : c.parents)
+						add(p, c.flags & all);
+				}
+
+				for (int i = 0; i < tipFlags.length; i++)
+					result.add(new AheadBehind(tips.get(i), ahead[i],
+							behind[i]));
+			} finally {
+				int clear = seen | popped | all;
+				for (RevCommit c : touched)
+					c.flags &= ~clear;
+				walk.freeFlag(tipMask);
+			}
+		}
+
+		private boolean mayRecount() {
+			RevCommit c = queue.peek();
+			return c != null
+					&& (long) c.getCommitTime() + SKEW >= oldestCounted;
+		}
+
+		private void add(RevCommit c, int f) throws MissingObjectException,
+				IncorrectObjectTypeException, IOException {
+			if ((c.flags & seen) == 0) {
+				walk.parseHeaders(c);
+				c.flags |= seen | f;
+				touched.add(c);
+				queue.add(c);
+				if ((c.flags & all) != all)
+					incomplete++;
+				return;
+			}
+
+			if ((f & ~c.flags) == 0)
+				return;
+			if ((c.flags & popped) == 0) {
+				boolean wasIncomplete = (c.flags & all) != all;
+				c.flags |= f;
+				if (wasIncomplete && (c.flags & all) == all)
+					incomplete--;
+				return;
+			}
+
+			// Already counted; recount it and its counted ancestors.
+			List<RevCommit> stack = new ArrayList<>();
+			stack.add(c);
+			while (!stack.isEmpty()) {
+				RevCommit r = stack.remove(stack.size() - 1);
+				int newFlags = f & ~r.flags;
+				if (newFlags == 0)
+					continue;
+				if ((r.flags & popped) == 0) {
+					add(r, f);
+					continue;
+				}
+				update(r, r.flags, -1);
+				r.flags |= newFlags;
+				update(r, r.flags, 1);
+				for (RevCommit p : r.parents)
+					stack.add(p);
+			}
+		}
+
+		private void update(RevCommit c, int flags, int delta) {
+			if ((flags & all) == all)
+				return;
+			boolean inBase = (flags & baseFlag) != 0;
+			for (int i = 0; i < tipFlags.length; i++) {
+				boolean inTip = (flags & tipFlags[i]) != 0;
+				if (inTip && !inBase)
+					ahead[i] += delta;
+				else if (inBase && !inTip)
+					behind[i] += delta;
+			}
+		}
+	}
+
 	/**
 	 * Find the list of branches a given commit is reachable from when following
 	 * parent.s
@@ -45,6 +45,7 @@
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.jgit.diff.DiffConfig;
 import org.eclipse.jgit.diff.DiffEntry;
@@ -54,6 +55,7 @@
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.StopWalkException;
+import org.eclipse.jgit.lib.ChangedPathIndex;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.treewalk.TreeWalk;
@@ -77,6 +79,14 @@ public class TreeRevFilter extends RevFilter {
 	private final int rewriteFlag;
 	private final TreeWalk pathFilter;
 
+	private ChangedPathIndex changedPathIndex;
+
+	private boolean changedPathIndexLoaded;
+
+	private TreeFilter changedPathsFilter;
+
+	private Set<byte[]> changedPaths;
+
 	/**
 	 * Create a {@link org.eclipse.jgit.revwalk.filter.RevFilter} from a
 	 * {@link org.eclipse.jgit.treewalk.filter.TreeFilter}.
@@ -148,6 +158,14 @@ public boolean include(RevWalk walker, RevCommit c)
 			trees[i] = p.getTree();
 		}
 		trees[nParents] = c.getTree();
+
+		if (nParents == 1 && !mayHaveChanged(walker, c)) {
+			// The changed path index proves this commit did not touch the
+			// paths we filter on, so it is the same as its parent.
+			//
+			c.flags |= rewriteFlag;
+			return false;
+		}
 		tw.reset(trees);
 
 		if (nParents == 1) {
@@ -271,6 +289,24 @@ public boolean requiresCommitBody() {
 		return false;
 	}
 
+	private boolean mayHaveChanged(RevWalk walker, RevCommit c)
+			throws IOException {
+		TreeFilter f = pathFilter.getFilter();
+		if (f != changedPathsFilter) {
+			changedPathsFilter = f;
+			changedPaths = f.getChangedPathsBestEffort();
+		}
+		if (changedPaths == null) {
+			return true;
+		}
+		if (!changedPathIndexLoaded) {
+			changedPathIndex = walker.getObjectReader().getChangedPathIndex();
+			changedPathIndexLoaded = true;
+		}
+		return changedPathIndex == null
+				|| changedPathIndex.mayHaveChanged(c, changedPaths);
+	}
+
 	private void updateFollowFilter(ObjectId[] trees, DiffConfig cfg)
 			throws MissingObjectException, IncorrectObjectTypeException,
 			CorruptObjectException, IOException {
@@ -123,6 +123,23 @@ public class PackConfig {
 	 */
 	public static final int DEFAULT_BIG_FILE_THRESHOLD = 50 * 1024 * 1024;
 
+	/**
+	 * Default number of threads loading trees while counting objects:
+	 * {@value}
+	 *
+	 * @see #setCountingThreads(int)
+	 * @since 5.2
+	 */
+	public static final int DEFAULT_COUNTING_THREADS = 1;
+
+	/**
+	 * Default number of threads deflating objects while writing: {@value}
+	 *
+	 * @see #setDeflateThreads(int)
+	 * @since 5.2
+	 */
+	public static final int DEFAULT_DEFLATE_THREADS = 1;
+
 	/**
 	 * Default delta cache size: {@value}
 	 *
@@ -240,6 +257,10 @@ public class PackConfig {
 
 	private int threads;
 
+	private int countingThreads = DEFAULT_COUNTING_THREADS;
+
+	private int deflateThreads = DEFAULT_DEFLATE_THREADS;
+
 	private Executor executor;
 
 	private int indexVersion = DEFAULT_INDEX_VERSION;
@@ -315,6 +336,8 @@ public PackConfig(PackConfig cfg) {
 		this.deltaCacheLimit = cfg.deltaCacheLimit;
 		this.bigFileThreshold = cfg.bigFileThreshold;
 		this.threads = cfg.threads;
+		this.countingThreads = cfg.countingThreads;
+		this.deflateThreads = cfg.deflateThreads;
 		this.executor = cfg.executor;
 		this.indexVersion = cfg.indexVersion;
 		this.buildBitmaps = cfg.buildBitmaps;
@@ -793,6 +816,81 @@ public void setThreads(int threads) {
 		this.threads = threads;
 	}
 
+	/**
+	 * Get the number of threads used to load trees while counting objects.
+	 *
+	 * Default setting: {@value #DEFAULT_COUNTING_THREADS}
+	 *
+	 * @return number of threads loading trees during object counting; 1 or
+	 *         less disables parallel counting.
+	 * @since 5.2
+	 */
+	public int getCountingThreads() {
+		return countingThreads;
+	}
+
+	/**
+	 * Set the number of threads to use to load trees while counting objects.
+	 *
+	 * When no bitmap index can be used and the pack has no uninteresting
+	 * objects, worker threads load and scan the trees of the selected commits
+	 * ahead of the single-threaded object walk. The resulting object list and
+	 * statistics are the same as a sequential count.
+	 *
+	 * If {@link #setExecutor(Executor)} supplies an
+	 * {@link java.util.concurrent.ExecutorService} the workers run on it,
+	 * otherwise a temporary pool is created.
+	 *
+	 * Default setting: {@value #DEFAULT_COUNTING_THREADS}
+	 *
+	 * @param threads
+	 *            number of threads to use. If &lt;= 0 the number of available
+	 *            processors for this JVM is used; 1 disables parallel
+	 *            counting.
+	 * @since 5.2
+	 */
+	public void setCountingThreads(int threads) {
+		this.countingThreads = threads;
+	}
+
+	/**
+	 * Get the number of threads used to deflate objects while writing.
+	 *
+	 * Default setting: {@value #DEFAULT_DEFLATE_THREADS}
+	 *
+	 * @return number of threads deflating objects that cannot be reused; 1 or
+	 *         less disables parallel deflate.
+	 * @since 5.2
+	 */
+	public int getDeflateThreads() {
+		return deflateThreads;
+	}
+
+	/**
+	 * Set the number of threads to use to deflate objects while writing.
+	 *
+	 * Objects and deltas that cannot be copied as-is from an existing pack
+	 * must be compressed again. With more than one thread, upcoming objects
+	 * are deflated on worker threads while the writing thread copies the
+	 * results into the pack in order. The pack produced is the same as with
+	 * a single thread.
+	 *
+	 * If {@link #setExecutor(Executor)} supplies an
+	 * {@link java.util.concurrent.ExecutorService} the workers run on it,
+	 * otherwise a temporary pool is created.
+	 *
+	 * Default setting: {@value #DEFAULT_DEFLATE_THREADS}
+	 *
+	 * @param threads
+	 *            number of threads to use. If &lt;= 0 the number of available
+	 *            processors for this JVM is used; 1 disables parallel
+	 *            deflate.
+	 * @since 5.2
+	 */
+	public void setDeflateThreads(int threads) {
+		this.deflateThreads = threads;
+	}
+
 	/**
 	 * Get the preferred thread pool to execute delta search on.
 	 *
@@ -1055,6 +1153,10 @@ public void fromConfig(Config rc) {
 		setBigFileThreshold(rc.getInt(
 				"core", "bigfilethreshold", getBigFileThreshold())); //$NON-NLS-1$ //$NON-NLS-2$
 		setThreads(rc.getInt("pack", "threads", getThreads())); //$NON-NLS-1$ //$NON-NLS-2$
+		setCountingThreads(rc.getInt(
+				"pack", "countingthreads", getCountingThreads())); //$NON-NLS-1$ //$NON-NLS-2$
+		setDeflateThreads(rc.getInt(
+				"pack", "deflatethreads", getDeflateThreads())); //$NON-NLS-1$ //$NON-NLS-2$
 
 		// These variables aren't standardized
 		//
@@ -1099,6 +1201,8 @@ public String toString() {
 		b.append(", indexVersion=").append(getIndexVersion()); //$NON-NLS-1$
 		b.append(", bigFileThreshold=").append(getBigFileThreshold()); //$NON-NLS-1$
 		b.append(", threads=").append(getThreads()); //$NON-NLS-1$
+		b.append(", countingThreads=").append(getCountingThreads()); //$NON-NLS-1$
+		b.append(", deflateThreads=").append(getDeflateThreads()); //$NON-NLS-1$
 		b.append(", reuseDeltas=").append(isReuseDeltas()); //$NON-NLS-1$
 		b.append(", reuseObjects=").append(isReuseObjects()); //$NON-NLS-1$
 		b.append(", deltaCompress=").append(isDeltaCompress()); //$NON-NLS-1$
@@ -95,6 +95,8 @@
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.RefUpdateCoalescer;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.ObjectWalk;
 import org.eclipse.jgit.revwalk.RevBlob;
@@ -197,6 +199,9 @@ public Set<String> getCapabilities() {
 	 */
 	private boolean atomic;
 
+	/** Merges the ref updates with those of concurrent pushes, if set. */
+	private RefUpdateCoalescer refUpdateCoalescer;
+
 	private boolean allowOfsDelta;
 	private boolean allowQuiet = true;
 
@@ -728,6 +733,34 @@ public void setAtomic(boolean atomic) {
 		this.atomic = atomic;
 	}
 
+	/**
+	 * Get the coalescer used to apply the client's commands.
+	 *
+	 * @return the coalescer, or {@code null} if commands are applied directly.
+	 * @since 5.2
+	 */
+	@Nullable
+	public RefUpdateCoalescer getRefUpdateCoalescer() {
+		return refUpdateCoalescer;
+	}
+
+	/**
+	 * Set a coalescer to apply the client's commands together with those of
+	 * concurrent pushes to the same repository.
+	 * <p>
+	 * The coalescer must have been created for the repository this instance
+	 * receives into, and should be shared by all instances receiving into that
+	 * repository. Hooks still run once per push, and each command still gets
+	 * its own result.
+	 *
+	 * @param coalescer
+	 *            the coalescer, or {@code null} to apply commands directly.
+	 * @since 5.2
+	 */
+	public void setRefUpdateCoalescer(@Nullable RefUpdateCoalescer coalescer) {
+		refUpdateCoalescer = coalescer;
+	}
+
 	/**
 	 * Get identity of the user making the changes in the reflog.
 	 *
@@ -1258,7 +1291,13 @@ public void sendAdvertisedRefs(RefAdvertiser adv)
 			adv.advertiseCapability(CAPABILITY_PUSH_OPTIONS);
 		}
 		adv.advertiseCapability(OPTION_AGENT, UserAgent.get());
-		adv.send(getAdvertisedOrDefaultRefs());
+		if (!biDirectionalPipe && refs == null && refFilter.isPerRef()) {
+			// No commands follow on this connection, write each ref as it
+			// is read instead of collecting and sorting all of them.
+			sendAdvertisedRefsStreaming(adv);
+		} else {
+			adv.send(getAdvertisedOrDefaultRefs());
+		}
 		for (ObjectId obj : advertisedHaves)
 			adv.advertiseHave(obj);
 		if (adv.isEmpty())
@@ -1266,6 +1305,22 @@ public void sendAdvertisedRefs(RefAdvertiser adv)
 		adv.end();
 	}
 
+	private void sendAdvertisedRefsStreaming(RefAdvertiser adv)
+			throws IOException {
+		RefDatabase refDb = db.getRefDatabase();
+		Ref head = refDb.exactRef(Constants.HEAD);
+		if (head != null && !head.isSymbolic()) {
+			// A detached HEAD sorts before refs/ and is advertised like
+			// any other ref.
+			adv.sendSorted(Collections.singletonList(head), refFilter);
+		}
+		Set<ObjectId> sent = adv.sendSorted(
+				refDb.getSortedRefsByPrefix(Constants.R_REFS), refFilter);
+		advertisedHaves.clear();
+		advertisedHaves.addAll(sent);
+		advertisedHaves.addAll(db.getAdditionalHaves());
+	}
+
 	/**
 	 * Returns the statistics on the received pack if available. This should be
 	 * called after {@link #receivePack} is called.
@@ -1817,7 +1872,11 @@ protected void executeCommands() {
 		batch.addCommand(toApply);
 		try {
 			batch.setPushCertificate(getPushCertificate());
-			batch.execute(walk, updating);
+			if (refUpdateCoalescer != null) {
+				refUpdateCoalescer.execute(batch, walk, updating);
+			} else {
+				batch.execute(walk, updating);
+			}
 		} catch (IOException err) {
 			for (ReceiveCommand cmd : toApply) {
 				if (cmd.getResult() == Result.NOT_ATTEMPTED)
@@ -224,6 +224,35 @@ public String readStringRaw() throws IOException {
 		return s;
 	}
 
+	/**
+	 * Read a single binary packet from the input stream.
+	 * <p>
+	 * Unlike {@link #readString()} the payload is not decoded, so this can be
+	 * used to receive arbitrary content split into packets.
+	 *
+	 * @param buf
+	 *            buffer to receive the payload. It must be large enough for
+	 *            the largest packet the peer may send, 65516 bytes.
+	 * @return number of bytes stored in {@code buf}; -1 if the packet was the
+	 *         magic flush packet.
+	 * @throws java.io.IOException
+	 *             the stream cannot be read.
+	 * @since 5.2
+	 */
+	public int readPacket(byte[] buf) throws IOException {
+		int len = readLength();
+		if (len == 0) {
+			log.debug("git< 0000"); //$NON-NLS-1$
+			return -1;
+		}
+		if (len == 1 || len - 4 > buf.length) {
+			throw invalidHeader();
+		}
+		len -= 4; // length header (4 bytes)
+		IO.readFully(in, buf, 0, len);
+		return len;
+	}
+
 	void discardUntilEnd() throws IOException {
 		for (;;) {
 			int n = readLength();
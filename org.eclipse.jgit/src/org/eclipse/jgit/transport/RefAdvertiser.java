@@ -313,45 +313,80 @@ public Set<ObjectId> send(Collection<Ref> refs) throws IOException {
 		for (Ref ref : RefComparator.sort(refs)) {
 			// TODO(jrn) revive the SortedMap optimization e.g. by introducing
 			// SortedList
-			ObjectId objectId = ref.getObjectId();
-			if (objectId == null) {
-				continue;
+			advertise(ref);
+		}
+		return sent;
+	}
+
+	/**
+	 * Format an advertisement for refs that are already sorted by name.
+	 * <p>
+	 * Unlike {@link #send(Collection)} the refs are neither copied nor sorted.
+	 * Each ref accepted by the filter is written as soon as {@code refs}
+	 * returns it, so the advertisement starts reaching the client before all
+	 * refs have been read.
+	 *
+	 * @param refs
+	 *            refs in {@link org.eclipse.jgit.lib.RefComparator} order, for
+	 *            example from
+	 *            {@link org.eclipse.jgit.lib.RefDatabase#getSortedRefsByPrefix(String)}.
+	 * @param filter
+	 *            filter deciding about each ref through
+	 *            {@link org.eclipse.jgit.transport.RefFilter#accept(Ref)}.
+	 * @return set of ObjectIds that were advertised to the client.
+	 * @throws java.io.IOException
+	 *             the underlying output stream failed to write out an
+	 *             advertisement record.
+	 * @since 5.2
+	 */
+	public Set<ObjectId> sendSorted(Iterable<Ref> refs, RefFilter filter)
+			throws IOException {
+		for (Ref ref : refs) {
+			if (filter.accept(ref)) {
+				advertise(ref);
 			}
+		}
+		return sent;
+	}
 
-			if (useProtocolV2) {
-				String symrefPart = symrefs.containsKey(ref.getName())
-						? (" symref-target:" + symrefs.get(ref.getName())) //$NON-NLS-1$
-						: ""; //$NON-NLS-1$
-				String peelPart = ""; //$NON-NLS-1$
-				if (derefTags) {
-					if (!ref.isPeeled() && repository != null) {
-						ref = repository.getRefDatabase().peel(ref);
-					}
-					ObjectId peeledObjectId = ref.getPeeledObjectId();
-					if (peeledObjectId != null) {
-						peelPart = " peeled:" + peeledObjectId.getName(); //$NON-NLS-1$
-					}
+	private void advertise(Ref ref) throws IOException {
+		ObjectId objectId = ref.getObjectId();
+		if (objectId == null) {
+			return;
+		}
+
+		if (useProtocolV2) {
+			String symrefPart = symrefs.containsKey(ref.getName())
+					? (" symref-target:" + symrefs.get(ref.getName())) //$NON-NLS-1$
+					: ""; //$NON-NLS-1$
+			String peelPart = ""; //$NON-NLS-1$
+			if (derefTags) {
+				if (!ref.isPeeled() && repository != null) {
+					ref = repository.getRefDatabase().peel(ref);
+				}
+				ObjectId peeledObjectId = ref.getPeeledObjectId();
+				if (peeledObjectId != null) {
+					peelPart = " peeled:" + peeledObjectId.getName(); //$NON-NLS-1$
 				}
-				writeOne(objectId.getName() + " " + ref.getName() + symrefPart //$NON-NLS-1$
-						+ peelPart + "\n"); //$NON-NLS-1$
-				continue;
 			}
+			writeOne(objectId.getName() + " " + ref.getName() + symrefPart //$NON-NLS-1$
+					+ peelPart + "\n"); //$NON-NLS-1$
+			return;
+		}
 
-			advertiseAny(objectId, ref.getName());
+		advertiseAny(objectId, ref.getName());
 
-			if (!derefTags)
-				continue;
+		if (!derefTags)
+			return;
 
-			if (!ref.isPeeled()) {
-				if (repository == null)
-					continue;
-				ref = repository.getRefDatabase().peel(ref);
-			}
-
-			if (ref.getPeeledObjectId() != null)
-				advertiseAny(ref.getPeeledObjectId(), ref.getName() + "^{}"); //$NON-NLS-1$
+		if (!ref.isPeeled()) {
+			if (repository == null)
+				return;
+			ref = repository.getRefDatabase().peel(ref);
 		}
-		return sent;
+
+		if (ref.getPeeledObjectId() != null)
+			advertiseAny(ref.getPeeledObjectId(), ref.getName() + "^{}"); //$NON-NLS-1$
 	}
 
 	/**
@@ -43,6 +43,7 @@
 
 package org.eclipse.jgit.transport;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.jgit.lib.Ref;
@@ -66,6 +67,16 @@ public interface RefFilter {
 		public Map<String, Ref> filter (Map<String, Ref> refs) {
 			return refs;
 		}
+
+		@Override
+		public boolean isPerRef() {
+			return true;
+		}
+
+		@Override
+		public boolean accept(Ref ref) {
+			return true;
+		}
 	};
 
 	/**
@@ -77,4 +88,38 @@ public Map<String, Ref> filter (Map<String, Ref> refs) {
 	 *            the filtered map of refs.
 	 */
 	public Map<String, Ref> filter(Map<String, Ref> refs);
+
+	/**
+	 * Whether this filter decides about each ref independently of the others.
+	 * <p>
+	 * If true, {@link org.eclipse.jgit.transport.UploadPack} and
+	 * {@link org.eclipse.jgit.transport.ReceivePack} may call
+	 * {@link #accept(Ref)} for each ref as it is read from the
+	 * {@link org.eclipse.jgit.lib.RefDatabase} and stream the advertisement,
+	 * instead of collecting all refs into a map for {@link #filter(Map)}.
+	 *
+	 * @return true if {@link #accept(Ref)} gives the same result as
+	 *         {@link #filter(Map)}; false by default.
+	 * @since 5.2
+	 */
+	default boolean isPerRef() {
+		return false;
+	}
+
+	/**
+	 * Filters a single ref before it is advertised to the client.
+	 * <p>
+	 * Only used if {@link #isPerRef()} returns true. The default
+	 * implementation passes a map with only this ref to {@link #filter(Map)}.
+	 *
+	 * @param ref
+	 *            the ref to consider.
+	 * @return true if the ref should be advertised.
+	 * @since 5.2
+	 */
+	default boolean accept(Ref ref) {
+		Map<String, Ref> m = new HashMap<>(2);
+		m.put(ref.getName(), ref);
+		return filter(m).containsKey(ref.getName());
+	}
 }
@@ -289,19 +289,30 @@ public RefFilter getRefFilter() {
 			public Map<String, Ref> filter(Map<String, Ref> refs) {
 				Map<String, Ref> result = new HashMap<>();
 				for (Map.Entry<String, Ref> e : refs.entrySet()) {
-					boolean add = true;
-					for (String hide : hideRefs) {
-						if (e.getKey().equals(hide) || prefixMatch(hide, e.getKey())) {
-							add = false;
-							break;
-						}
-					}
-					if (add)
+					if (!isHidden(e.getKey()))
 						result.put(e.getKey(), e.getValue());
 				}
 				return result;
 			}
 
+			@Override
+			public boolean isPerRef() {
+				return true;
+			}
+
+			@Override
+			public boolean accept(Ref ref) {
+				return !isHidden(ref.getName());
+			}
+
+			private boolean isHidden(String name) {
+				for (String hide : hideRefs) {
+					if (name.equals(hide) || prefixMatch(hide, name))
+						return true;
+				}
+				return false;
+			}
+
 			private boolean prefixMatch(String p, String s) {
 				return p.charAt(p.length() - 1) == '/' && s.startsWith(p);
 			}
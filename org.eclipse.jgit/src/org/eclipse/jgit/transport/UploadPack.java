@@ -97,11 +97,13 @@
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.AsyncRevObjectQueue;
 import org.eclipse.jgit.revwalk.BitmapWalker;
 import org.eclipse.jgit.revwalk.DepthWalk;
 import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.ReachabilityChecker;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevFlagSet;
@@ -793,6 +795,23 @@ public PackStatistics getStatistics() {
 		return statistics;
 	}
 
+	/**
+	 * Whether the advertisement can be streamed from the ref database.
+	 * <p>
+	 * True if no hook has set the advertised refs explicitly, and the
+	 * configured filter can judge each ref on its own.
+	 *
+	 * @return whether refs can be streamed.
+	 */
+	private boolean canStreamRefs() {
+		return refs == null && getEffectiveRefFilter().isPerRef();
+	}
+
+	private RefFilter getEffectiveRefFilter() {
+		return refFilter == RefFilter.DEFAULT ? transferConfig.getRefFilter()
+				: refFilter;
+	}
+
 	private Map<String, Ref> getAdvertisedOrDefaultRefs() throws IOException {
 		if (refs == null)
 			setAdvertisedRefs(db.getRefDatabase().getRefs(ALL));
@@ -921,6 +940,25 @@ private void lsRefsV2() throws IOException {
 		if (req.getPeel()) {
 			adv.setDerefTags(true);
 		}
+		if (canStreamRefs()) {
+			RefFilter filter = getEffectiveRefFilter();
+			if (req.getSymrefs()) {
+				findSymref(adv, filter);
+			}
+			RefDatabase refDb = db.getRefDatabase();
+			if (req.getRefPrefixes().isEmpty()) {
+				adv.sendSorted(refDb.getSortedRefsByPrefix(ALL), filter);
+			} else {
+				for (String prefix : sortedDisjointPrefixes(
+						req.getRefPrefixes())) {
+					adv.sendSorted(refDb.getSortedRefsByPrefix(prefix),
+							filter);
+				}
+			}
+			adv.end();
+			return;
+		}
+
 		Map<String, Ref> refsToSend;
 		if (req.getRefPrefixes().isEmpty()) {
 			refsToSend = getAdvertisedOrDefaultRefs();
@@ -930,6 +968,7 @@ private void lsRefsV2() throws IOException {
 			for (Ref ref : db.getRefDatabase().getRefsByPrefix(prefixes)) {
 				refsToSend.put(ref.getName(), ref);
 			}
+			refsToSend = getEffectiveRefFilter().filter(refsToSend);
 		}
 		if (req.getSymrefs()) {
 			findSymrefs(adv, refsToSend);
@@ -939,6 +978,29 @@ private void lsRefsV2() throws IOException {
 		adv.end();
 	}
 
+	/**
+	 * Sort prefixes and drop those covered by a shorter one.
+	 * <p>
+	 * The remaining prefixes select disjoint ranges of ref names in ascending
+	 * order, so advertising them one after another sends every matching ref
+	 * once, in name order.
+	 *
+	 * @param prefixes
+	 *            ref name prefixes requested by the client.
+	 * @return sorted prefixes, none of which starts with another.
+	 */
+	private static List<String> sortedDisjointPrefixes(List<String> prefixes) {
+		List<String> sorted = new ArrayList<>(prefixes);
+		Collections.sort(sorted);
+		List<String> result = new ArrayList<>(sorted.size());
+		for (String p : sorted) {
+			if (result.isEmpty() || !p.startsWith(result.get(result.size() - 1))) {
+				result.add(p);
+			}
+		}
+		return result;
+	}
+
 	private void fetchV2() throws IOException {
 		// Depending on the requestValidator, #processHaveLines may
 		// require that advertised be set. Set it only in the required
@@ -1326,9 +1388,18 @@ public void sendAdvertisedRefs(RefAdvertiser adv,
 			adv.advertiseCapability(OPTION_FILTER);
 		}
 		adv.setDerefTags(true);
-		Map<String, Ref> advertisedOrDefaultRefs = getAdvertisedOrDefaultRefs();
-		findSymrefs(adv, advertisedOrDefaultRefs);
-		advertised = adv.send(advertisedOrDefaultRefs);
+		if (!biDirectionalPipe && canStreamRefs()) {
+			// Nothing else in this request needs the refs, write each one
+			// as it is read instead of collecting and sorting all of them.
+			RefFilter filter = getEffectiveRefFilter();
+			findSymref(adv, filter);
+			advertised = adv.sendSorted(
+					db.getRefDatabase().getSortedRefsByPrefix(ALL), filter);
+		} else {
+			Map<String, Ref> advertisedOrDefaultRefs = getAdvertisedOrDefaultRefs();
+			findSymrefs(adv, advertisedOrDefaultRefs);
+			advertised = adv.send(advertisedOrDefaultRefs);
+		}
 		if (adv.isEmpty())
 			adv.advertiseId(ObjectId.zeroId(), "capabilities^{}"); //$NON-NLS-1$
 		adv.end();
@@ -1700,6 +1771,8 @@ private static void checkNotAdvertisedWants(UploadPack up,
 
 		ObjectReader reader = up.getRevWalk().getObjectReader();
 		try (RevWalk walk = new RevWalk(reader)) {
+			List<RevCommit> wantCommits = new ArrayList<>(
+					notAdvertisedWants.size());
 			AsyncRevObjectQueue q = walk.parseAny(notAdvertisedWants, true);
 			try {
 				RevObject obj;
@@ -1720,7 +1793,7 @@ private static void checkNotAdvertisedWants(UploadPack up,
 						}
 						throw new WantNotValidException(obj);
 					}
-					walk.markStart((RevCommit) obj);
+					wantCommits.add((RevCommit) obj);
 				}
 			} catch (MissingObjectException notFound) {
 				throw new WantNotValidException(notFound.getObjectId(),
@@ -1728,6 +1801,29 @@ private static void checkNotAdvertisedWants(UploadPack up,
 			} finally {
 				q.release();
 			}
+
+			// With bitmaps most tips are answered without walking.
+			BitmapIndex bitmapIndex = reader.getBitmapIndex();
+			if (bitmapIndex != null) {
+				List<RevCommit> tips = new ArrayList<>(reachableFrom.size());
+				for (ObjectId id : reachableFrom) {
+					try {
+						tips.add(walk.parseCommit(id));
+					} catch (IncorrectObjectTypeException notCommit) {
+						continue;
+					}
+				}
+				RevCommit bad = new ReachabilityChecker(walk, bitmapIndex)
+						.findUnreachable(wantCommits, tips);
+				if (bad != null) {
+					throw new WantNotValidException(bad);
+				}
+				return;
+			}
+
+			for (RevCommit c : wantCommits) {
+				walk.markStart(c);
+			}
 			for (ObjectId id : reachableFrom) {
 				try {
 					walk.markUninteresting(walk.parseCommit(id));
@@ -2043,6 +2139,14 @@ else if (ref.getName().startsWith(Constants.R_HEADS))
 			pckOut.end();
 	}
 
+	private void findSymref(RefAdvertiser adv, RefFilter filter)
+			throws IOException {
+		Ref head = db.getRefDatabase().exactRef(Constants.HEAD);
+		if (head != null && head.isSymbolic() && filter.accept(head)) {
+			adv.addSymref(Constants.HEAD, head.getLeaf().getName());
+		}
+	}
+
 	private static void findSymrefs(
 			final RefAdvertiser adv, final Map<String, Ref> refs) {
 		Ref head = refs.get(Constants.HEAD);
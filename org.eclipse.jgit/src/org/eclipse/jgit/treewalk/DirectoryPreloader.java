@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2018, Google LLC.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.treewalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jgit.internal.util.ThreadPools;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.treewalk.FileTreeIterator.FileEntry;
+import org.eclipse.jgit.treewalk.FileTreeIterator.FileModeStrategy;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator.Entry;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * Lists directories ahead of a {@link org.eclipse.jgit.treewalk.FileTreeIterator}
+ * on a pool of threads.
+ * <p>
+ * Whenever the iterator lists a directory, the listing of each of its
+ * subdirectories is scheduled, in the order the walk will enter them. A
+ * listing reads the directory through a
+ * {@link java.nio.file.DirectoryStream} and the attributes of each entry, so
+ * that entering a subdirectory usually finds its entries already read.
+ * Directories entered before their listing started are listed by the walk
+ * itself.
+ * <p>
+ * A preloader serves a single walk, and must be closed once the walk is done
+ * to stop its threads.
+ *
+ * @since 5.2
+ */
+public class DirectoryPreloader implements AutoCloseable {
+	private final ExecutorService pool;
+
+	private final Map<File, Future<Entry[]>> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * Create a new preloader.
+	 *
+	 * @param threads
+	 *            number of threads listing directories.
+	 */
+	public DirectoryPreloader(int threads) {
+		pool = Executors.newFixedThreadPool(Math.max(1, threads));
+	}
+
+	/**
+	 * Schedule the listing of the subdirectories in a listed directory.
+	 *
+	 * @param list
+	 *            entries of the directory, in walk order.
+	 * @param fs
+	 *            file system of the entries.
+	 * @param fileModeStrategy
+	 *            strategy determining the mode of listed entries.
+	 */
+	void schedule(Entry[] list, FS fs, FileModeStrategy fileModeStrategy) {
+		for (Entry e : list) {
+			if (!(e instanceof FileEntry) || !FileMode.TREE.equals(e.getMode())
+					|| Constants.DOT_GIT.equals(e.getName())) {
+				continue;
+			}
+			File dir = ((FileEntry) e).getFile();
+			if (pending.containsKey(dir)) {
+				continue;
+			}
+			try {
+				pending.put(dir,
+						pool.submit(() -> list(dir, fs, fileModeStrategy)));
+			} catch (RejectedExecutionException closed) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Get the preloaded entries of a directory.
+	 *
+	 * @param dir
+	 *            the directory.
+	 * @return entries of the directory, or null if it was not preloaded and
+	 *         must be listed by the caller.
+	 */
+	Entry[] take(File dir) {
+		Future<Entry[]> task = pending.remove(dir);
+		if (task == null || task.cancel(false)) {
+			// Not started yet, listing it here is faster than waiting.
+			return null;
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (CancellationException e) {
+			return null;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			// Let the caller report the directory the way it lists it.
+			return null;
+		}
+	}
+
+	private static Entry[] list(File dir, FS fs,
+			FileModeStrategy fileModeStrategy) throws IOException {
+		List<Entry> result = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files
+				.newDirectoryStream(dir.toPath())) {
+			for (Path p : stream) {
+				result.add(new FileEntry(p.toFile(), fs, fileModeStrategy));
+			}
+		}
+		return result.toArray(new Entry[0]);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Drops listings not taken by the walk, such as those of ignored
+	 * directories, and waits for the threads to stop.
+	 */
+	@Override
+	public void close() {
+		ThreadPools.shutdown(pool, pending.values());
+		pending.clear();
+	}
+}
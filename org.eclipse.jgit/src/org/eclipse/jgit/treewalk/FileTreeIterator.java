@@ -54,13 +54,20 @@
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.eclipse.jgit.dircache.ContentIdCache;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.dircache.UntrackedCache;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.FileSystemMonitor;
+import org.eclipse.jgit.lib.FileSystemMonitorRegistry;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.RawParseUtils;
 
 /**
  * Working directory iterator for standard Java IO.
@@ -92,6 +99,8 @@ public class FileTreeIterator extends WorkingTreeIterator {
 	 */
 	protected final FileModeStrategy fileModeStrategy;
 
+	private DirectoryPreloader preloader;
+
 	/**
 	 * Create a new iterator to traverse the work tree and its children.
 	 *
@@ -160,7 +169,7 @@ public FileTreeIterator(final File root, FS fs, WorkingTreeOptions options,
 		directory = root;
 		this.fs = fs;
 		this.fileModeStrategy = fileModeStrategy;
-		init(entries());
+		init(entries(null));
 	}
 
 	/**
@@ -204,7 +213,159 @@ protected FileTreeIterator(final WorkingTreeIterator p, final File root,
 		directory = root;
 		this.fs = fs;
 		this.fileModeStrategy = fileModeStrategy;
-		init(entries());
+		if (p instanceof FileTreeIterator) {
+			preloader = ((FileTreeIterator) p).preloader;
+		}
+		long lastModified = usesUntrackedCache() ? lastModified(p, root) : 0;
+		init(entries(lastModified != 0 ? getUntrackedListing(lastModified)
+				: null));
+		if (preloader != null) {
+			preloader.schedule(getEntries(), fs, fileModeStrategy);
+		}
+		if (lastModified != 0) {
+			try {
+				initUntrackedCache(lastModified);
+			} catch (IOException e) {
+				// Entries are classified using the ignore rules instead.
+			}
+		}
+	}
+
+	private long lastModified(WorkingTreeIterator p, File root) {
+		// Prefer the time observed when the parent was listed, it was read
+		// before this directory is listed.
+		if (p instanceof FileTreeIterator
+				&& ((FileTreeIterator) p).getEntryFile().equals(root)) {
+			return p.current().getLastModified();
+		}
+		try {
+			return fs.lastModified(root);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Use and maintain the untracked cache of an index while walking.
+	 * <p>
+	 * Directories whose modification time and ignore rules did not change
+	 * since the cache was recorded answer {@link #isEntryIgnored()} from the
+	 * cache instead of evaluating the ignore rules. Other directories are
+	 * classified using the rules as they are entered, and the result is
+	 * recorded in the cache. Files recorded as untracked in directories that
+	 * did not change are reported as regular files, and only examined if
+	 * their length, modification time or content is asked for. The caller is
+	 * responsible for writing the index if {@link UntrackedCache#isModified()}
+	 * is true after the walk.
+	 * <p>
+	 * Must be called on an iterator created for a repository, before the walk
+	 * enters any subdirectory. Has no effect on other iterators.
+	 *
+	 * @param index
+	 *            the index the walk compares the working tree to. It gets an
+	 *            untracked cache if it has none, or if the one it has was
+	 *            recorded with different global ignore rules.
+	 * @throws java.io.IOException
+	 *             ignore rules could not be read.
+	 * @since 5.2
+	 */
+	public void setUntrackedCache(DirCache index) throws IOException {
+		if (repository == null || parent != null) {
+			return;
+		}
+		initUntrackedCache(index, fs.lastModified(directory));
+	}
+
+	/**
+	 * Use the file system monitor of the repository while walking.
+	 * <p>
+	 * The monitor registered in
+	 * {@link org.eclipse.jgit.lib.FileSystemMonitorRegistry} is asked for the
+	 * paths changed since the index last recorded its token, and those are
+	 * applied to the index. Entries of the index that are still
+	 * {@link DirCacheEntry#isFileSystemMonitorValid() valid} are reported as
+	 * unmodified by
+	 * {@link #isModified(DirCacheEntry, boolean, ObjectReader)}, and files in
+	 * subdirectories matching such entries are not even examined when
+	 * directories are listed. Entries found unmodified are marked valid. The
+	 * caller is responsible for writing the index to record the new token and
+	 * valid entries.
+	 * <p>
+	 * Must be called on an iterator created for a repository, before the walk
+	 * enters any subdirectory. Has no effect on other iterators.
+	 *
+	 * @param index
+	 *            the index the walk compares the working tree to.
+	 * @return true if a monitor is used; false if the repository has none.
+	 * @throws java.io.IOException
+	 *             the monitor could not be queried.
+	 * @since 5.2
+	 */
+	public boolean setFileSystemMonitor(DirCache index) throws IOException {
+		if (repository == null || parent != null) {
+			return false;
+		}
+		FileSystemMonitor monitor = FileSystemMonitorRegistry
+				.get(repository);
+		if (monitor == null) {
+			return false;
+		}
+		index.applyFileSystemMonitorChanges(
+				monitor.getChanges(index.getFileSystemMonitorToken()));
+		initFileSystemMonitor(index);
+		return true;
+	}
+
+	/**
+	 * Use and maintain the content id cache of an index while walking.
+	 * <p>
+	 * Content ids computed for files, for example because their index entry
+	 * is racily clean or only their modification time changed, are recorded
+	 * in the cache. Later walks take the id from the cache instead of reading
+	 * and hashing the file again as long as its length, modification time,
+	 * file key and filters are the same. The caller is responsible for
+	 * writing the index if {@link ContentIdCache#isModified()} is true after
+	 * the walk.
+	 * <p>
+	 * Must be called on a root iterator, before the walk enters any
+	 * subdirectory. Has no effect on other iterators.
+	 *
+	 * @param index
+	 *            the index holding the cache. It gets a content id cache if
+	 *            it has none.
+	 * @since 5.2
+	 */
+	public void setContentIdCache(DirCache index) {
+		if (parent != null) {
+			return;
+		}
+		initContentIdCache(index);
+	}
+
+	/**
+	 * Read directories ahead of the walk.
+	 * <p>
+	 * Subdirectories are listed, and the attributes of their entries read,
+	 * by the threads of the preloader while the walk processes the entries
+	 * preceding them.
+	 * <p>
+	 * Must be called on a root iterator, before the walk enters any
+	 * subdirectory. Has no effect on other iterators, or when a file system
+	 * monitor is used.
+	 *
+	 * @param preloader
+	 *            the preloader to use. The caller is responsible for closing
+	 *            it after the walk.
+	 * @since 5.2
+	 */
+	public void setDirectoryPreloader(DirectoryPreloader preloader) {
+		if (parent != null || getFileSystemMonitorIndex() != null) {
+			return;
+		}
+		this.preloader = preloader;
+		if (preloader != null) {
+			preloader.schedule(getEntries(), fs, fileModeStrategy);
+		}
 	}
 
 	/** {@inheritDoc} */
@@ -240,10 +401,52 @@ protected AbstractTreeIterator enterSubtree() {
 				fileModeStrategy);
 	}
 
-	private Entry[] entries() {
+	private Entry[] entries(UntrackedCache.Directory listing) {
+		DirCache index = getFileSystemMonitorIndex();
+		if (index != null) {
+			return entries(index, listing);
+		}
+		if (preloader != null) {
+			Entry[] preloaded = preloader.take(directory);
+			if (preloaded != null) {
+				return preloaded;
+			}
+		}
+		if (listing != null) {
+			return entries(null, listing);
+		}
 		return fs.list(directory, fileModeStrategy);
 	}
 
+	private Entry[] entries(DirCache index, UntrackedCache.Directory listing) {
+		String[] names = directory.list();
+		if (names == null) {
+			return new Entry[0];
+		}
+		String prefix = RawParseUtils.decode(path, 0, pathOffset);
+		Entry[] result = new Entry[names.length];
+		for (int i = 0; i < names.length; i++) {
+			File f = new File(directory, names[i]);
+			DirCacheEntry e = null;
+			if (index != null) {
+				int idx = index.findEntry(prefix + names[i]);
+				e = idx >= 0 ? index.getEntry(idx) : null;
+			}
+			if (e != null && e.getStage() == 0
+					&& e.isFileSystemMonitorValid()
+					&& !FileMode.GITLINK.equals(e.getFileMode())) {
+				// Unchanged since it was found to match the index.
+				result[i] = new IndexedEntry(f, fs, e);
+			} else if (listing != null && listing.isUntracked(names[i])) {
+				// Still untracked, as the directory did not change.
+				result[i] = new UntrackedEntry(f, fs);
+			} else {
+				result[i] = new FileEntry(f, fs, fileModeStrategy);
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * An interface representing the methods used to determine the FileMode for
 	 * a FileEntry.
@@ -428,6 +631,123 @@ public InputStream openInputStream() throws IOException {
 		public File getFile() {
 			return attributes.getFile();
 		}
+
+		@Override
+		public Object getFileKey() {
+			return attributes.getFileKey();
+		}
+	}
+
+	/**
+	 * Entry of a file known to match its index entry, described by the index
+	 * entry instead of the file system.
+	 */
+	private static class IndexedEntry extends Entry {
+		private final File file;
+
+		private final FS fs;
+
+		private final FileMode mode;
+
+		private final long length;
+
+		private final long lastModified;
+
+		IndexedEntry(File file, FS fs, DirCacheEntry e) {
+			this.file = file;
+			this.fs = fs;
+			mode = e.getFileMode();
+			length = e.getLength();
+			lastModified = e.getLastModified();
+		}
+
+		@Override
+		public FileMode getMode() {
+			return mode;
+		}
+
+		@Override
+		public String getName() {
+			return file.getName();
+		}
+
+		@Override
+		public long getLength() {
+			return length;
+		}
+
+		@Override
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		@Override
+		public InputStream openInputStream() throws IOException {
+			if (FileMode.SYMLINK.equals(mode)) {
+				return new ByteArrayInputStream(
+						fs.readSymLink(file).getBytes(UTF_8));
+			}
+			return new FileInputStream(file);
+		}
+	}
+
+	/**
+	 * Entry of a file recorded as untracked by the untracked cache, in a
+	 * directory that did not change since. It is reported as a regular file,
+	 * and its attributes are only read when needed.
+	 */
+	private static class UntrackedEntry extends Entry {
+		private final File file;
+
+		private final FS fs;
+
+		private FS.Attributes attributes;
+
+		UntrackedEntry(File file, FS fs) {
+			this.file = file;
+			this.fs = fs;
+		}
+
+		private FS.Attributes attributes() {
+			if (attributes == null) {
+				attributes = fs.getAttributes(file);
+			}
+			return attributes;
+		}
+
+		@Override
+		public FileMode getMode() {
+			return FileMode.REGULAR_FILE;
+		}
+
+		@Override
+		public String getName() {
+			return file.getName();
+		}
+
+		@Override
+		public long getLength() {
+			return attributes().getLength();
+		}
+
+		@Override
+		public long getLastModified() {
+			return attributes().getLastModifiedTime();
+		}
+
+		@Override
+		public InputStream openInputStream() throws IOException {
+			if (attributes().isSymbolicLink()) {
+				return new ByteArrayInputStream(
+						fs.readSymLink(file).getBytes(UTF_8));
+			}
+			return new FileInputStream(file);
+		}
+
+		@Override
+		public Object getFileKey() {
+			return attributes().getFileKey();
+		}
 	}
 
 	/**
@@ -447,7 +767,14 @@ public File getDirectory() {
 	 *         reusing an internal File instance.
 	 */
 	public File getEntryFile() {
-		return ((FileEntry) current()).getFile();
+		Entry e = current();
+		if (e instanceof IndexedEntry) {
+			return ((IndexedEntry) e).file;
+		}
+		if (e instanceof UntrackedEntry) {
+			return ((UntrackedEntry) e).file;
+		}
+		return ((FileEntry) e).getFile();
 	}
 
 	/** {@inheritDoc} */
@@ -1412,6 +1412,10 @@ public <T extends AbstractTreeIterator> T getTree(
 	/**
 	 * Inspect config and attributes to return a filtercommand applicable for
 	 * the current path, but without expanding %f occurences
+	 * <p>
+	 * If the filter driver has a long-running process configured, the returned
+	 * command starts with {@link Constants#PROCESS_FILTER_PREFIX}; see
+	 * {@link org.eclipse.jgit.attributes.FilterProcess}.
 	 *
 	 * @param filterCommandType
 	 *            which type of filterCommand should be executed. E.g. "clean",
@@ -1470,14 +1474,24 @@ private String getFilterCommandDefinition(String filterDriverName,
 		boolean useBuiltin = config.getBoolean(
 				ConfigConstants.CONFIG_FILTER_SECTION,
 				filterDriverName, ConfigConstants.CONFIG_KEY_USEJGITBUILTIN, false);
+		String builtinFilterCommand = null;
 		if (useBuiltin) {
-			String builtinFilterCommand = Constants.BUILTIN_FILTER_PREFIX
+			builtinFilterCommand = Constants.BUILTIN_FILTER_PREFIX
 					+ filterDriverName + '/' + filterCommandType;
 			if (filterCommands != null
 					&& filterCommands.contains(builtinFilterCommand)) {
 				filterCommand = builtinFilterCommand;
+			} else {
+				builtinFilterCommand = null;
 			}
 		}
+		if (builtinFilterCommand == null && config.getString(
+				ConfigConstants.CONFIG_FILTER_SECTION, filterDriverName,
+				ConfigConstants.CONFIG_KEY_PROCESS) != null) {
+			// Like C Git, prefer a long-running process over the commands
+			filterCommand = Constants.PROCESS_FILTER_PREFIX + filterDriverName
+					+ '/' + filterCommandType;
+		}
 		if (filterCommand != null) {
 			filterCommandsByNameDotType.put(key, filterCommand);
 		}
@@ -59,20 +59,27 @@
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetEncoder;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.eclipse.jgit.api.errors.FilterFailedException;
 import org.eclipse.jgit.attributes.AttributesNode;
 import org.eclipse.jgit.attributes.AttributesRule;
 import org.eclipse.jgit.attributes.FilterCommand;
 import org.eclipse.jgit.attributes.FilterCommandRegistry;
+import org.eclipse.jgit.attributes.FilterProcess;
 import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.dircache.ContentIdCache;
+import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.dircache.UntrackedCache;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.NoWorkTreeException;
@@ -86,6 +93,7 @@
 import org.eclipse.jgit.lib.CoreConfig.SymLinks;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
@@ -97,6 +105,7 @@
 import org.eclipse.jgit.util.IO;
 import org.eclipse.jgit.util.Paths;
 import org.eclipse.jgit.util.RawParseUtils;
+import org.eclipse.jgit.util.SystemReader;
 import org.eclipse.jgit.util.TemporaryBuffer;
 import org.eclipse.jgit.util.TemporaryBuffer.LocalFile;
 import org.eclipse.jgit.util.io.AutoLFInputStream;
@@ -131,6 +140,14 @@ public abstract class WorkingTreeIterator extends AbstractTreeIterator {
 	 */
 	private static final long MAXIMUM_FILE_SIZE_TO_READ_FULLY = 65536;
 
+	/**
+	 * Directories and files modified less than this many milliseconds before
+	 * they were read are not recorded in the untracked cache and the content
+	 * id cache, as they could be modified again without their timestamp
+	 * changing.
+	 */
+	private static final long RACY_MILLIS = 2500;
+
 	/** Inherited state of this iterator, describing working tree, etc. */
 	private final IteratorState state;
 
@@ -152,6 +169,15 @@ public abstract class WorkingTreeIterator extends AbstractTreeIterator {
 	/** If there is a .gitignore file present, the parsed rules from it. */
 	private IgnoreNode ignoreNode;
 
+	/** The .gitignore file of this directory; null if there is none. */
+	private Entry ignoreFileEntry;
+
+	/** Untracked cache entry of this directory; null if not in use. */
+	private UntrackedCache.Directory untrackedDir;
+
+	/** Whether ignore rules changed since the untracked cache was recorded. */
+	private boolean untrackedRulesChanged;
+
 	/**
 	 * cached clean filter command. Use a Ref in order to distinguish between
 	 * the ref not cached yet and the value null
@@ -333,8 +359,12 @@ public byte[] idBuffer() {
 		}
 		switch (mode & FileMode.TYPE_MASK) {
 		case FileMode.TYPE_SYMLINK:
+			contentIdFromPtr = ptr;
+			return contentId = idBufferBlob(entries[ptr]);
 		case FileMode.TYPE_FILE:
 			contentIdFromPtr = ptr;
+			if (state.contentIdCache != null)
+				return contentId = cachedIdBufferBlob(entries[ptr]);
 			return contentId = idBufferBlob(entries[ptr]);
 		case FileMode.TYPE_GITLINK:
 			contentIdFromPtr = ptr;
@@ -426,6 +456,34 @@ private byte[] idBufferBlob(Entry e) {
 		}
 	}
 
+	private byte[] cachedIdBufferBlob(Entry e) {
+		String filter;
+		try {
+			filter = getEolStreamType(OperationType.CHECKIN_OP) + ":" //$NON-NLS-1$
+					+ getCleanFilterCommand();
+		} catch (IOException err) {
+			return idBufferBlob(e);
+		}
+		ContentIdCache cache = state.contentIdCache;
+		String path = getEntryPathString();
+		long len = e.getLength();
+		long lastModified = e.getLastModified();
+		Object fileKey = e.getFileKey();
+		ObjectId id = cache.get(path, len, lastModified, fileKey, filter);
+		if (id != null) {
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			id.copyRawTo(raw, 0);
+			return raw;
+		}
+		long start = System.currentTimeMillis();
+		byte[] raw = idBufferBlob(e);
+		if (raw != zeroid
+				&& lastModified + RACY_MILLIS < start)
+			cache.put(path, len, lastModified, fileKey, filter,
+					ObjectId.fromRaw(raw));
+		return raw;
+	}
+
 	private InputStream possiblyFilteredInputStream(final Entry e,
 			final InputStream is, final long len) throws IOException {
 		return possiblyFilteredInputStream(e, is, len, null);
@@ -501,6 +559,27 @@ private InputStream filterClean(InputStream in, OperationType opType)
 		in = handleAutoCRLF(in, opType);
 		String filterCommand = getCleanFilterCommand();
 		if (filterCommand != null) {
+			String driver = FilterProcess.getDriverName(filterCommand);
+			FilterProcess process = driver != null
+					? repository.getFilterProcess(driver)
+					: null;
+			if (process != null) {
+				LocalFile buffer = new TemporaryBuffer.LocalFile(null);
+				try {
+					process.clean(getEntryPathString(), in, buffer);
+					buffer.close();
+				} catch (IOException e) {
+					buffer.destroy();
+					throw e;
+				}
+				return buffer.openInputStreamWithAutoDestroy();
+			}
+			if (driver != null) {
+				filterCommand = FilterProcess.getOneShotCommand(repository,
+						filterCommand);
+				if (filterCommand == null)
+					return in;
+			}
 			if (FilterCommandRegistry.isRegistered(filterCommand)) {
 				LocalFile buffer = new TemporaryBuffer.LocalFile(null);
 				FilterCommand command = FilterCommandRegistry
@@ -683,6 +762,12 @@ && getEolStreamType() == EolStreamType.DIRECT)
 	 *             a relevant ignore rule file exists but cannot be read.
 	 */
 	public boolean isEntryIgnored() throws IOException {
+		if (untrackedDir != null) {
+			Boolean ignored = isEntryIgnoredByUntrackedCache();
+			if (ignored != null) {
+				return ignored.booleanValue();
+			}
+		}
 		return isEntryIgnored(pathLen);
 	}
 
@@ -752,6 +837,261 @@ private boolean isEntryIgnored(int pLen, int fileMode)
 						fileMode);
 	}
 
+	/**
+	 * Start using the untracked cache of an index, with this iterator as the
+	 * top level directory of the working tree.
+	 *
+	 * @param index
+	 *            index holding the untracked cache. A cache recorded for a
+	 *            different environment is replaced by an empty one.
+	 * @param lastModified
+	 *            modification time of the top level directory.
+	 * @throws IOException
+	 *             ignore rules could not be read.
+	 */
+	void initUntrackedCache(DirCache index, long lastModified)
+			throws IOException {
+		String ident = "Location " + repository.getWorkTree().getAbsolutePath() //$NON-NLS-1$
+				+ ", system " + getSystemName(); //$NON-NLS-1$
+		FS fs = repository.getFS();
+		ObjectId infoExcludeId = blobId(fs.resolve(repository.getDirectory(),
+				Constants.INFO_EXCLUDE));
+		File excludesFile = getExcludesFile(repository);
+		ObjectId excludesFileId = excludesFile != null ? blobId(excludesFile)
+				: null;
+		UntrackedCache cache = index.getUntrackedCache();
+		if (cache == null
+				|| !cache.isValidFor(ident, 0, infoExcludeId, excludesFileId)) {
+			cache = new UntrackedCache(ident, 0, infoExcludeId,
+					excludesFileId);
+			index.setUntrackedCache(cache);
+		}
+		state.untrackedIndex = index;
+		state.untrackedScanStart = System.currentTimeMillis();
+		loadUntrackedCache(cache.getRoot(), lastModified);
+	}
+
+	/**
+	 * Look up this directory in the untracked cache, if the parent uses one.
+	 *
+	 * @param lastModified
+	 *            modification time of this directory.
+	 * @throws IOException
+	 *             ignore rules could not be read.
+	 */
+	void initUntrackedCache(long lastModified) throws IOException {
+		if (!(parent instanceof WorkingTreeIterator)) {
+			return;
+		}
+		WorkingTreeIterator p = (WorkingTreeIterator) parent;
+		if (p.untrackedDir == null) {
+			return;
+		}
+		UntrackedCache.Directory d = p.untrackedDir
+				.getDirectory(p.current().getName());
+		if (d != null) {
+			untrackedRulesChanged = p.untrackedRulesChanged;
+			loadUntrackedCache(d, lastModified);
+		}
+	}
+
+	/**
+	 * Get the untracked cache listing of this directory, if it is current.
+	 *
+	 * @param lastModified
+	 *            modification time of this directory.
+	 * @return the recorded directory; null if the parent uses no untracked
+	 *         cache, ignore rules above this directory changed, or the
+	 *         listing is missing or out of date.
+	 */
+	UntrackedCache.Directory getUntrackedListing(long lastModified) {
+		if (!(parent instanceof WorkingTreeIterator)) {
+			return null;
+		}
+		WorkingTreeIterator p = (WorkingTreeIterator) parent;
+		if (p.untrackedDir == null || p.untrackedRulesChanged) {
+			return null;
+		}
+		UntrackedCache.Directory d = p.untrackedDir
+				.getDirectory(p.current().getName());
+		return d != null && d.isUpToDate(lastModified) ? d : null;
+	}
+
+	/**
+	 * Whether this iterator is backed by an untracked cache.
+	 *
+	 * @return true if this iterator uses an untracked cache.
+	 */
+	boolean usesUntrackedCache() {
+		return state.untrackedIndex != null;
+	}
+
+	/**
+	 * Use the changes reported by a file system monitor.
+	 *
+	 * @param index
+	 *            index the walk compares the working tree to. Its entries
+	 *            that are {@link DirCacheEntry#isFileSystemMonitorValid()
+	 *            valid} are reported as unmodified, and entries found
+	 *            unmodified are marked valid.
+	 */
+	void initFileSystemMonitor(DirCache index) {
+		state.fileSystemMonitorIndex = index;
+	}
+
+	/**
+	 * Use the content id cache of an index.
+	 *
+	 * @param index
+	 *            index holding the cache. It gets a cache if it has none.
+	 */
+	void initContentIdCache(DirCache index) {
+		ContentIdCache cache = index.getContentIdCache();
+		if (cache == null) {
+			cache = new ContentIdCache();
+			index.setContentIdCache(cache);
+		}
+		state.contentIdCache = cache;
+	}
+
+	/**
+	 * Get the index whose file system monitor state is used.
+	 *
+	 * @return the index; null if no file system monitor is used.
+	 */
+	DirCache getFileSystemMonitorIndex() {
+		return state.fileSystemMonitorIndex;
+	}
+
+	private void loadUntrackedCache(UntrackedCache.Directory d,
+			long lastModified) throws IOException {
+		ObjectId excludeId = ignoreFileEntry != null
+				? blobId(ignoreFileEntry)
+				: null;
+		if (!Objects.equals(excludeId, d.getExcludeId())) {
+			untrackedRulesChanged = true;
+		}
+		if (!untrackedRulesChanged && d.isUpToDate(lastModified)) {
+			untrackedDir = d;
+			return;
+		}
+
+		// Classify all entries using the ignore rules, and record the
+		// result so the next walk can skip that work.
+		List<String> untracked = new ArrayList<>();
+		List<String> dirs = new ArrayList<>();
+		int saved = ptr;
+		try {
+			for (ptr = 0; ptr < entryCnt; ptr++) {
+				parseEntry();
+				Entry e = entries[ptr];
+				FileMode m = e.getMode();
+				boolean isDir = FileMode.TREE.equals(m);
+				if (isTracked(isDir)) {
+					if (isDir) {
+						dirs.add(e.getName());
+					}
+				} else if (!isEntryIgnored(pathLen)) {
+					if (isDir) {
+						dirs.add(e.getName());
+					} else if (FileMode.GITLINK.equals(m)) {
+						untracked.add(e.getName() + '/');
+					} else {
+						untracked.add(e.getName());
+					}
+				}
+			}
+		} finally {
+			ptr = saved;
+			if (!eof()) {
+				parseEntry();
+			}
+		}
+		boolean trusted = lastModified + RACY_MILLIS < state.untrackedScanStart;
+		d.update(lastModified, trusted, excludeId, untracked, dirs,
+				untrackedRulesChanged);
+		untrackedDir = d;
+	}
+
+	private Boolean isEntryIgnoredByUntrackedCache() {
+		boolean isDir = FileMode.TREE.equals(mode);
+		String name = current().getName();
+		if (!isDir && untrackedDir.isUntracked(
+				FileMode.GITLINK.equals(mode) ? name + '/' : name)) {
+			return Boolean.FALSE;
+		}
+		if (isTracked(isDir)) {
+			// Tracked entries may still match ignore rules.
+			return null;
+		}
+		if (isDir && untrackedDir.getDirectory(name) != null) {
+			return Boolean.FALSE;
+		}
+		return Boolean.TRUE;
+	}
+
+	private boolean isTracked(boolean isDir) {
+		DirCache index = state.untrackedIndex;
+		String p = getEntryPathString();
+		if (index.findEntry(p) >= 0) {
+			return true;
+		}
+		if (!isDir) {
+			return false;
+		}
+		p += '/';
+		int i = index.findEntry(p);
+		if (i >= 0) {
+			return true;
+		}
+		i = -(i + 1);
+		return i < index.getEntryCount()
+				&& index.getEntry(i).getPathString().startsWith(p);
+	}
+
+	private static ObjectId blobId(Entry e) throws IOException {
+		try (InputStream in = e.openInputStream();
+				ObjectInserter.Formatter f = new ObjectInserter.Formatter()) {
+			return f.idFor(Constants.OBJ_BLOB, e.getLength(), in);
+		}
+	}
+
+	private static ObjectId blobId(File file) throws IOException {
+		if (!FS.DETECTED.exists(file)) {
+			return null;
+		}
+		try (ObjectInserter.Formatter f = new ObjectInserter.Formatter()) {
+			return f.idFor(Constants.OBJ_BLOB, IO.readFully(file));
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+	}
+
+	private static String getSystemName() {
+		String os = SystemReader.getInstance().getProperty("os.name"); //$NON-NLS-1$
+		if (os == null) {
+			return ""; //$NON-NLS-1$
+		}
+		// Match the sysname C Git records from uname(2).
+		if (os.startsWith("Mac")) { //$NON-NLS-1$
+			return "Darwin"; //$NON-NLS-1$
+		}
+		return os;
+	}
+
+	private static File getExcludesFile(Repository repository) {
+		String path = repository.getConfig().get(CoreConfig.KEY)
+				.getExcludesFile();
+		if (path == null) {
+			return null;
+		}
+		FS fs = repository.getFS();
+		if (path.startsWith("~/")) { //$NON-NLS-1$
+			return fs.resolve(fs.userHome(), path.substring(2));
+		}
+		return fs.resolve(null, path);
+	}
+
 	private IgnoreNode getIgnoreNode() throws IOException {
 		if (ignoreNode instanceof PerDirectoryIgnoreNode)
 			ignoreNode = ((PerDirectoryIgnoreNode) ignoreNode).load();
@@ -807,8 +1147,10 @@ protected void init(Entry[] list) {
 				continue;
 			if (Constants.DOT_GIT.equals(name))
 				continue;
-			if (Constants.DOT_GIT_IGNORE.equals(name))
+			if (Constants.DOT_GIT_IGNORE.equals(name)) {
 				ignoreNode = new PerDirectoryIgnoreNode(e);
+				ignoreFileEntry = e;
+			}
 			if (Constants.DOT_GIT_ATTRIBUTES.equals(name))
 				attributesNode = new PerDirectoryAttributesNode(e);
 			if (i != o)
@@ -836,6 +1178,15 @@ protected Entry current() {
 		return entries[ptr];
 	}
 
+	/**
+	 * Get the entries of this iterator, in walk order.
+	 *
+	 * @return a copy of the entries.
+	 */
+	Entry[] getEntries() {
+		return Arrays.copyOf(entries, entryCnt);
+	}
+
 	/**
 	 * The result of a metadata-comparison between the current entry and a
 	 * {@link DirCacheEntry}
@@ -905,7 +1256,7 @@ public boolean isModeDifferent(int rawMode) {
 	 *         which tells whether and how the entries metadata differ
 	 */
 	public MetadataDiff compareMetadata(DirCacheEntry entry) {
-		if (entry.isAssumeValid())
+		if (entry.isAssumeValid() || entry.isSkipWorkTree())
 			return MetadataDiff.EQUAL;
 
 		if (entry.isUpdateNeeded())
@@ -973,6 +1324,20 @@ public boolean isModified(DirCacheEntry entry, boolean forceContentCheck,
 			ObjectReader reader) throws IOException {
 		if (entry == null)
 			return !FileMode.MISSING.equals(getEntryFileMode());
+		if (state.fileSystemMonitorIndex == null)
+			return compare(entry, forceContentCheck, reader);
+		boolean trusted = entry.getStage() == 0
+				&& !FileMode.GITLINK.equals(entry.getFileMode());
+		if (trusted && entry.isFileSystemMonitorValid())
+			return false;
+		boolean modified = compare(entry, forceContentCheck, reader);
+		if (trusted && !modified)
+			entry.setFileSystemMonitorValid(true);
+		return modified;
+	}
+
+	private boolean compare(DirCacheEntry entry, boolean forceContentCheck,
+			ObjectReader reader) throws IOException {
 		MetadataDiff diff = compareMetadata(entry);
 		switch (diff) {
 		case DIFFER_BY_TIMESTAMP:
@@ -1304,6 +1669,20 @@ public String toString() {
 		 *             the file could not be opened for reading.
 		 */
 		public abstract InputStream openInputStream() throws IOException;
+
+		/**
+		 * Get the key identifying the file of this entry on its file system.
+		 * <p>
+		 * A file replaced by another one gets a different key, even if the
+		 * length and modification time are the same.
+		 *
+		 * @return the key, such as device and inode number; null if it is not
+		 *         known.
+		 * @since 5.2
+		 */
+		public Object getFileKey() {
+			return null;
+		}
 	}
 
 	/** Magic type indicating we know rules exist, but they aren't loaded. */
@@ -1345,16 +1724,9 @@ IgnoreNode load() throws IOException {
 			}
 
 			FS fs = repository.getFS();
-			String path = repository.getConfig().get(CoreConfig.KEY)
-					.getExcludesFile();
-			if (path != null) {
-				File excludesfile;
-				if (path.startsWith("~/")) //$NON-NLS-1$
-					excludesfile = fs.resolve(fs.userHome(), path.substring(2));
-				else
-					excludesfile = fs.resolve(null, path);
+			File excludesfile = getExcludesFile(repository);
+			if (excludesfile != null)
 				loadRulesFromFile(r, excludesfile);
-			}
 
 			File exclude = fs.resolve(repository.getDirectory(),
 					Constants.INFO_EXCLUDE);
@@ -1413,6 +1785,18 @@ private static final class IteratorState {
 
 		final Map<String, Boolean> directoryToIgnored = new HashMap<>();
 
+		/** Index whose untracked cache is used; null if none is used. */
+		DirCache untrackedIndex;
+
+		/** Time the use of the untracked cache started. */
+		long untrackedScanStart;
+
+		/** Index whose file system monitor state is used; null if none. */
+		DirCache fileSystemMonitorIndex;
+
+		/** Cache of content ids used; null if none is used. */
+		ContentIdCache contentIdCache;
+
 		IteratorState(WorkingTreeOptions options) {
 			this.options = options;
 			this.nameEncoder = UTF_8.newEncoder();
@@ -46,7 +46,9 @@
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Set;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.internal.JGitText;
@@ -115,6 +117,37 @@ public static TreeFilter create(Collection<TreeFilter> list) {
 		return new List(subfilters);
 	}
 
+	@Nullable
+	private static Set<byte[]> changedPaths(TreeFilter... filters) {
+		boolean anyDiff = false;
+		for (TreeFilter f : filters) {
+			if (f == TreeFilter.ANY_DIFF) {
+				anyDiff = true;
+			}
+		}
+		for (TreeFilter f : filters) {
+			Set<byte[]> paths = f.getChangedPathsBestEffort();
+			if (paths == null && anyDiff) {
+				paths = f.getLimitingPaths();
+			}
+			if (paths != null) {
+				return paths;
+			}
+		}
+		return null;
+	}
+
+	@Nullable
+	private static Set<byte[]> limitingPaths(TreeFilter... filters) {
+		for (TreeFilter f : filters) {
+			Set<byte[]> paths = f.getLimitingPaths();
+			if (paths != null) {
+				return paths;
+			}
+		}
+		return null;
+	}
+
 	private static class Binary extends AndTreeFilter {
 		private final TreeFilter a;
 
@@ -155,6 +188,16 @@ public boolean shouldBeRecursive() {
 			return a.shouldBeRecursive() || b.shouldBeRecursive();
 		}
 
+		@Override
+		public Set<byte[]> getChangedPathsBestEffort() {
+			return changedPaths(a, b);
+		}
+
+		@Override
+		Set<byte[]> getLimitingPaths() {
+			return limitingPaths(a, b);
+		}
+
 		@Override
 		public TreeFilter clone() {
 			return new Binary(a.clone(), b.clone());
@@ -206,6 +249,16 @@ public boolean shouldBeRecursive() {
 			return false;
 		}
 
+		@Override
+		public Set<byte[]> getChangedPathsBestEffort() {
+			return changedPaths(subfilters);
+		}
+
+		@Override
+		Set<byte[]> getLimitingPaths() {
+			return limitingPaths(subfilters);
+		}
+
 		@Override
 		public TreeFilter clone() {
 			final TreeFilter[] s = new TreeFilter[subfilters.length];
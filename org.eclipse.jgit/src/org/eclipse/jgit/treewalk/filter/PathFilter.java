@@ -44,6 +44,9 @@
 
 package org.eclipse.jgit.treewalk.filter;
 
+import java.util.Collections;
+import java.util.Set;
+
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.treewalk.TreeWalk;
@@ -121,6 +124,11 @@ public boolean shouldBeRecursive() {
 		return false;
 	}
 
+	@Override
+	Set<byte[]> getLimitingPaths() {
+		return Collections.singleton(pathRaw);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public PathFilter clone() {
@@ -45,6 +45,9 @@
 package org.eclipse.jgit.treewalk.filter;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.eclipse.jgit.errors.StopWalkException;
 import org.eclipse.jgit.internal.JGitText;
@@ -169,6 +172,11 @@ public boolean shouldBeRecursive() {
 			return path.shouldBeRecursive();
 		}
 
+		@Override
+		Set<byte[]> getLimitingPaths() {
+			return path.getLimitingPaths();
+		}
+
 		@Override
 		public TreeFilter clone() {
 			return this;
@@ -188,7 +196,10 @@ static class Group extends TreeFilter {
 
 		private byte[] max;
 
+		private final Set<byte[]> paths;
+
 		private Group(PathFilter[] pathFilters) {
+			paths = new HashSet<>(pathFilters.length * 2);
 			fullpaths = new ByteArraySet(pathFilters.length);
 			prefixes = new ByteArraySet(pathFilters.length / 5);
 			// 5 is an empirically derived ratio of #paths/#prefixes from:
@@ -207,6 +218,7 @@ private Group(PathFilter[] pathFilters) {
 				}
 				fullpaths.addIfAbsent(pf.pathRaw, pf.pathRaw.length,
 						hasher.getHash());
+				paths.add(pf.pathRaw);
 				if (compare(max, pf.pathRaw) < 0)
 					max = pf.pathRaw;
 			}
@@ -264,6 +276,11 @@ public boolean shouldBeRecursive() {
 			return !prefixes.isEmpty();
 		}
 
+		@Override
+		Set<byte[]> getLimitingPaths() {
+			return Collections.unmodifiableSet(paths);
+		}
+
 		@Override
 		public TreeFilter clone() {
 			return this;
@@ -44,7 +44,9 @@
 package org.eclipse.jgit.treewalk.filter;
 
 import java.io.IOException;
+import java.util.Set;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.dircache.DirCacheIterator;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -242,6 +244,39 @@ public int matchFilter(TreeWalk walker)
 	 */
 	public abstract boolean shouldBeRecursive();
 
+	/**
+	 * Get the paths this filter is limited to, if it only includes entries
+	 * that differ between the trees of the walk.
+	 * <p>
+	 * If a non-null set is returned, every entry included by this filter
+	 * differs between the trees and lies at or below one of the returned
+	 * paths. Revision walks use this to consult a
+	 * {@link org.eclipse.jgit.lib.ChangedPathIndex} instead of diffing the
+	 * trees of commits which certainly did not touch those paths.
+	 * <p>
+	 * Returning null is always correct, and is the default.
+	 *
+	 * @return the paths (UTF-8 encoded, without trailing '/') changed entries
+	 *         must lie at or below, or null if unknown.
+	 * @since 5.2
+	 */
+	@Nullable
+	public Set<byte[]> getChangedPathsBestEffort() {
+		return null;
+	}
+
+	/**
+	 * Get the paths this filter limits entries to, regardless of whether
+	 * they differ.
+	 *
+	 * @return paths included entries must lie at or below, or null if the
+	 *         filter does not limit entries by path.
+	 */
+	@Nullable
+	Set<byte[]> getLimitingPaths() {
+		return null;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 *
@@ -1426,6 +1426,8 @@ public long getLastModifiedTime() {
 
 		private final boolean exists;
 
+		private final Object fileKey;
+
 		/**
 		 * file length
 		 */
@@ -1437,6 +1439,15 @@ public long getLastModifiedTime() {
 				boolean isExecutable, boolean isSymbolicLink,
 				boolean isRegularFile, long creationTime,
 				long lastModifiedTime, long length) {
+			this(fs, file, exists, isDirectory, isExecutable, isSymbolicLink,
+					isRegularFile, creationTime, lastModifiedTime, length,
+					null);
+		}
+
+		Attributes(FS fs, File file, boolean exists, boolean isDirectory,
+				boolean isExecutable, boolean isSymbolicLink,
+				boolean isRegularFile, long creationTime,
+				long lastModifiedTime, long length, Object fileKey) {
 			this.fs = fs;
 			this.file = file;
 			this.exists = exists;
@@ -1447,6 +1458,7 @@ public long getLastModifiedTime() {
 			this.creationTime = creationTime;
 			this.lastModifiedTime = lastModifiedTime;
 			this.length = length;
+			this.fileKey = fileKey;
 		}
 
 		/**
@@ -1476,6 +1488,16 @@ public String getName() {
 			return file.getName();
 		}
 
+		/**
+		 * @return the key identifying the file on its file system, such as
+		 *         its device and inode number; null if it is not known.
+		 * @see java.nio.file.attribute.BasicFileAttributes#fileKey()
+		 * @since 5.2
+		 */
+		public Object getFileKey() {
+			return fileKey;
+		}
+
 		/**
 		 * @return the file the attributes apply to
 		 */
@@ -775,7 +775,8 @@ static Attributes getFileAttributesBasic(FS fs, File file) {
 					readAttributes.lastModifiedTime().toMillis(),
 					readAttributes.isSymbolicLink() ? Constants
 							.encode(readSymLink(file)).length
-							: readAttributes.size());
+							: readAttributes.size(),
+					readAttributes.fileKey());
 			return attributes;
 		} catch (IOException e) {
 			return new Attributes(file, fs);
@@ -812,7 +813,7 @@ public static Attributes getFileAttributesPosix(FS fs, File file) {
 					readAttributes.isRegularFile(), //
 					readAttributes.creationTime().toMillis(), //
 					readAttributes.lastModifiedTime().toMillis(),
-					readAttributes.size());
+					readAttributes.size(), readAttributes.fileKey());
 			return attributes;
 		} catch (IOException e) {
 			return new Attributes(file, fs);